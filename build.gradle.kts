@@ -34,9 +34,18 @@ dependencies {
   intellijPlatform {
     val version = providers.gradleProperty("platformVersion")
     create(IntelliJPlatformType.IntellijIdeaCommunity, version)  }
+  implementation(project(":launcher"))
   implementation("commons-io:commons-io:2.19.0")
   implementation("io.github.neodix42:liteclient:0.9.9")
   implementation("com.googlecode.json-simple:json-simple:1.1.1")
+  testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+  testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+  // Referenced by the IntelliJ Platform test runtime
+  testRuntimeOnly("junit:junit:4.13.2")
+}
+
+tasks.test {
+  useJUnitPlatform()
 }
 
 
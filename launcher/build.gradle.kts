@@ -0,0 +1,37 @@
+plugins {
+  `java-library`
+  `maven-publish`
+}
+
+group = "org.ton.mylocalton"
+version = providers.gradleProperty("pluginVersion").get()
+
+// Set the JVM language level used to build the project.
+java {
+  toolchain {
+    languageVersion.set(JavaLanguageVersion.of(21))
+  }
+  withSourcesJar()
+}
+
+dependencies {
+  implementation("io.github.neodix42:liteclient:0.9.9")
+  implementation("com.googlecode.json-simple:json-simple:1.1.1")
+  // Provided by the test runtime of the projects using the extension
+  compileOnly("org.junit.jupiter:junit-jupiter-api:5.10.2")
+  testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+  testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+tasks.test {
+  useJUnitPlatform()
+}
+
+publishing {
+  publications {
+    create<MavenPublication>("maven") {
+      artifactId = "mylocalton-launcher"
+      from(components["java"])
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package org.ton.mylocalton.launcher;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.ton.ton4j.liteclient.LiteClient;
+
+/**
+ * The local chain as seen by the lite-client extracted by MyLocalTon, for creating the wallet pool
+ * where tonlib is not loaded, e.g. in the JUnit 5 extension.
+ */
+public class LiteClientChain implements WalletPoolCreator.Chain {
+  // e.g. "result:  [ 5 ] ", followed by the remote result that is not to be trusted
+  private static final Pattern RESULT_PATTERN =
+      Pattern.compile("^result:\\s*\\[\\s*(-?\\d+)\\s*]", Pattern.MULTILINE);
+  private static final Pattern BALANCE_PATTERN = Pattern.compile("account balance is (\\d+)ng");
+  private static final String MESSAGE_ACCEPTED = "external message status is 1";
+
+  private final LiteClient liteClient;
+
+  public LiteClientChain() {
+    liteClient =
+        LiteClient.builder()
+            .pathToGlobalConfig(NodeLauncher.getGlobalConfigPath().toString())
+            .pathToLiteClientBinary(NodeLauncher.getLiteClientPath().toString())
+            .build();
+  }
+
+  @Override
+  public long getSeqno(String address) throws Exception {
+    String output = liteClient.executeRunMethod(address, "seqno", "");
+    Matcher matcher = RESULT_PATTERN.matcher(String.valueOf(output));
+    if (!matcher.find()) {
+      throw new IOException("seqno get-method of " + address + " failed: " + output);
+    }
+    return Long.parseLong(matcher.group(1));
+  }
+
+  @Override
+  public BigInteger getBalance(String address) throws Exception {
+    String output = liteClient.executeGetAccount(address);
+    // No balance line for an account that does not exist
+    Matcher matcher = BALANCE_PATTERN.matcher(String.valueOf(output));
+    return matcher.find() ? new BigInteger(matcher.group(1)) : BigInteger.ZERO;
+  }
+
+  @Override
+  public void sendMessage(byte[] boc) throws Exception {
+    Path file = Files.createTempFile("mylocalton-message-", ".boc");
+    try {
+      Files.write(file, boc);
+      String output = liteClient.executeSendfile(file.toAbsolutePath().toString());
+      if (output == null || !output.contains(MESSAGE_ACCEPTED)) {
+        throw new IOException("Message was not accepted: " + output);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
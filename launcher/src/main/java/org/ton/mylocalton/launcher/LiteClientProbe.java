@@ -0,0 +1,39 @@
+package org.ton.mylocalton.launcher;
+
+import java.nio.file.Files;
+import org.ton.ton4j.liteclient.LiteClient;
+import org.ton.ton4j.liteclient.LiteClientParser;
+import org.ton.ton4j.liteclient.api.ResultLastBlock;
+
+/**
+ * Readiness probe asking the lite-client extracted by MyLocalTon for the last masterchain block.
+ * Used where tonlib is not loaded, e.g. in the JUnit 5 extension.
+ */
+public class LiteClientProbe implements NodeLauncher.ReadinessProbe {
+  private static final System.Logger LOG = System.getLogger(LiteClientProbe.class.getName());
+
+  private LiteClient liteClient;
+
+  @Override
+  public long lastMasterchainSeqno() {
+    try {
+      if (liteClient == null) {
+        // Both files appear only during genesis
+        if (!Files.exists(NodeLauncher.getLiteClientPath())
+            || !Files.exists(NodeLauncher.getGlobalConfigPath())) {
+          return -1;
+        }
+        liteClient =
+            LiteClient.builder()
+                .pathToGlobalConfig(NodeLauncher.getGlobalConfigPath().toString())
+                .pathToLiteClientBinary(NodeLauncher.getLiteClientPath().toString())
+                .build();
+      }
+      ResultLastBlock last = LiteClientParser.parseLast(liteClient.executeLast());
+      return last == null ? -1 : last.getSeqno().longValue();
+    } catch (Exception e) {
+      LOG.log(System.Logger.Level.DEBUG, "Node is not ready yet: " + e.getMessage());
+      return -1;
+    }
+  }
+}
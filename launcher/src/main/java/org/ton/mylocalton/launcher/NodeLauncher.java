@@ -0,0 +1,370 @@
+package org.ton.mylocalton.launcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+/**
+ * Starts, stops and probes the MyLocalTon node. Shared by the IntelliJ plugin (tool window, run
+ * configuration and before-launch task) and the JUnit 5 extension, so it must not depend on the
+ * IntelliJ Platform.
+ */
+public final class NodeLauncher {
+  private static final System.Logger LOG = System.getLogger(NodeLauncher.class.getName());
+
+  private static final long READINESS_POLL_INTERVAL_MS = 1000;
+
+  /** Fixed file names of the MyLocalTon JARs, one per architecture and flavour. */
+  public static final String[] JAR_FILENAMES = {
+    "MyLocalTon-x86-64.jar",
+    "MyLocalTon-arm64.jar",
+    "MyLocalTon-x86-64-testnet.jar",
+    "MyLocalTon-arm64-testnet.jar"
+  };
+
+  private static final boolean IS_WINDOWS =
+      System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("win");
+  private static final boolean IS_MAC =
+      System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("mac");
+
+  private NodeLauncher() {}
+
+  /** Startup parameters, see the "Startup settings" panel of the tool window. */
+  public static class Options {
+    public boolean tonHttpApi;
+    public boolean explorer;
+    public boolean dataGenerator;
+    public boolean noGui;
+    public boolean debug;
+    public int validators;
+
+    /** Command line arguments understood by MyLocalTon. */
+    public List<String> toArguments() {
+      List<String> arguments = new ArrayList<>();
+      if (tonHttpApi) {
+        arguments.add("ton-http-api");
+      }
+      if (explorer) {
+        arguments.add("explorer");
+      }
+      if (dataGenerator) {
+        arguments.add("data-generator");
+      }
+      if (noGui) {
+        arguments.add("nogui");
+      }
+      if (debug) {
+        arguments.add("debug");
+      }
+      if (validators > 0) {
+        arguments.add("with-validators-" + validators);
+      }
+      return arguments;
+    }
+  }
+
+  /** Checks for the current height of the chain, e.g. through tonlib or the lite-client. */
+  public interface ReadinessProbe {
+    /**
+     * Returns the seqno of the last masterchain block.
+     *
+     * @return the seqno, or -1 if the node does not answer yet
+     */
+    long lastMasterchainSeqno();
+  }
+
+  /**
+   * Gets the working directory MyLocalTon is launched from.
+   *
+   * @return {@code ~/.mylocalton}
+   */
+  public static Path getWorkingDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".mylocalton");
+  }
+
+  /**
+   * Gets the directory MyLocalTon keeps its blockchain and binaries in.
+   *
+   * @return {@code ~/.mylocalton/myLocalTon}
+   */
+  public static Path getDataDirectory() {
+    return getWorkingDirectory().resolve("myLocalTon");
+  }
+
+  /**
+   * Gets the global config of the local network, written by MyLocalTon during genesis.
+   *
+   * @return path of {@code my-ton-local.config.json}
+   */
+  public static Path getGlobalConfigPath() {
+    return getDataDirectory().resolve("genesis").resolve("db").resolve("my-ton-local.config.json");
+  }
+
+  /**
+   * Gets the lite-client binary extracted by MyLocalTon.
+   *
+   * @return path of the lite-client executable
+   */
+  public static Path getLiteClientPath() {
+    return getDataDirectory()
+        .resolve("genesis")
+        .resolve("bin")
+        .resolve(IS_WINDOWS ? "lite-client.exe" : "lite-client");
+  }
+
+  /**
+   * Gets an executable of the JDK the current JVM runs on.
+   *
+   * @param executable executable name without extension, e.g. {@code java} or {@code jps}
+   * @return path to the executable
+   */
+  public static String getJdkExecutablePath(String executable) {
+    return System.getProperty("java.home")
+        + File.separator
+        + "bin"
+        + File.separator
+        + (IS_WINDOWS ? executable + ".exe" : executable);
+  }
+
+  /**
+   * Checks if the myLocalTon.lock file exists in the user.home directory.
+   *
+   * @return true if the lock file exists, false otherwise
+   */
+  public static boolean isLockFileExists() {
+    return Files.exists(getLockFile());
+  }
+
+  /**
+   * Gets the lock file MyLocalTon creates while it runs and removes when it stops gracefully.
+   *
+   * @return {@code ~/myLocalTon.lock}
+   */
+  public static Path getLockFile() {
+    return Paths.get(System.getProperty("user.home"), "myLocalTon.lock");
+  }
+
+  /**
+   * Finds the running MyLocalTon JVM by the JAR on its command line. {@link #start} detaches the
+   * node, so this is the only handle to it.
+   *
+   * @return the process, or empty if no MyLocalTon JAR is running
+   */
+  public static Optional<ProcessHandle> findProcess() {
+    return ProcessHandle.allProcesses()
+        .filter(
+            process -> {
+              // Not the shell that launched it
+              Path executable = Paths.get(process.info().command().orElse("")).getFileName();
+              if (executable == null || !executable.toString().startsWith("java")) {
+                return false;
+              }
+              String commandLine = process.info().commandLine().orElse("");
+              for (String jarFilename : JAR_FILENAMES) {
+                if (commandLine.contains(jarFilename)) {
+                  return true;
+                }
+              }
+              return false;
+            })
+        .findFirst();
+  }
+
+  /**
+   * Finds a downloaded MyLocalTon JAR in the working directory.
+   *
+   * @return path of the JAR, or null if MyLocalTon is not installed
+   */
+  public static Path findJar() {
+    for (String jarFilename : JAR_FILENAMES) {
+      Path jar = getWorkingDirectory().resolve(jarFilename);
+      if (Files.exists(jar)) {
+        return jar;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Starts MyLocalTon unless it is already running.
+   *
+   * @param javaExecutable path to the java executable, Java 21+
+   * @param jarPath path to the MyLocalTon JAR, or null if it is not installed
+   * @param options startup parameters
+   * @return the JAR that was launched, or null if MyLocalTon was already running
+   * @throws IOException if MyLocalTon is not installed or cannot be started
+   */
+  public static Path startIfNotRunning(String javaExecutable, Path jarPath, Options options)
+      throws IOException {
+    if (isLockFileExists()) {
+      LOG.log(System.Logger.Level.INFO, "MyLocalTon is already running");
+      return null;
+    }
+    if (jarPath == null || !Files.exists(jarPath)) {
+      throw new IOException(
+          "MyLocalTon is not installed, download it in the MyLocalTon tool window");
+    }
+    start(javaExecutable, jarPath, options);
+    return jarPath;
+  }
+
+  /**
+   * Launches MyLocalTon detached from the caller, without a console window.
+   *
+   * @param javaExecutable path to the java executable, Java 21+
+   * @param jarPath path to the MyLocalTon JAR
+   * @param options startup parameters
+   * @return the launching process, it exits right after MyLocalTon has been spawned
+   * @throws IOException if the process cannot be started
+   */
+  public static Process start(String javaExecutable, Path jarPath, Options options)
+      throws IOException {
+    Path workingDirectory = getWorkingDirectory();
+
+    // Build the command with parameters based on the options
+    StringBuilder command = new StringBuilder();
+    command.append("\"").append(javaExecutable).append("\" -jar \"").append(jarPath).append("\"");
+    for (String argument : options.toArguments()) {
+      command.append(" ").append(argument);
+    }
+
+    // Create a ProcessBuilder for launching without console
+    ProcessBuilder invisibleProcessBuilder = new ProcessBuilder();
+
+    // Set the working directory to where the JAR is located
+    LOG.log(System.Logger.Level.INFO, "working directory: " + workingDirectory);
+    invisibleProcessBuilder.directory(workingDirectory.toFile());
+
+    // Redirect standard output and error to /dev/null or NUL
+    File nullFile = new File(IS_WINDOWS ? "NUL" : "/dev/null");
+    invisibleProcessBuilder.redirectOutput(ProcessBuilder.Redirect.to(nullFile));
+    invisibleProcessBuilder.redirectError(ProcessBuilder.Redirect.to(nullFile));
+
+    if (IS_WINDOWS) {
+      // For Windows, use javaw instead of java to avoid console window
+      String javawCommand = command.toString().replace("java.exe", "javaw.exe");
+      LOG.log(
+          System.Logger.Level.INFO,
+          "Starting MyLocalTon with command: "
+              + "cd \""
+              + workingDirectory
+              + "\" && "
+              + javawCommand);
+      invisibleProcessBuilder.command(
+          "cmd.exe", "/c", "cd " + workingDirectory + " && " + javawCommand);
+    } else {
+      // For macOS and Linux, use java with appropriate flags
+      LOG.log(System.Logger.Level.INFO, "Starting MyLocalTon with command: " + command);
+      invisibleProcessBuilder.command("sh", "-c", command + " &");
+    }
+
+    // Start the process and immediately detach from it
+    Process process = invisibleProcessBuilder.start();
+    process.getInputStream().close();
+    process.getOutputStream().close();
+    process.getErrorStream().close();
+    return process;
+  }
+
+  /**
+   * Stops MyLocalTon gracefully, so that it can remove its lock file.
+   *
+   * @param jpsExecutable path to the jps executable, used on Linux and macOS
+   * @param jarFilename file name of the JAR MyLocalTon was launched from
+   * @throws IOException if the process cannot be found or signalled
+   * @throws InterruptedException if interrupted while waiting for the helper processes
+   */
+  public static void stop(String jpsExecutable, String jarFilename)
+      throws IOException, InterruptedException {
+    if (IS_WINDOWS) {
+      // Windows: Use WMIC command to find all process IDs
+      String wmiCommand =
+          "wmic process where \"CommandLine like '%%" + jarFilename + "%%'\" get ProcessId";
+      LOG.log(System.Logger.Level.INFO, "WMI command: " + wmiCommand);
+      ProcessBuilder wmiProcessBuilder = new ProcessBuilder("cmd.exe", "/c", wmiCommand);
+      Process wmiProcess = wmiProcessBuilder.start();
+      String output =
+          new String(wmiProcess.getInputStream().readAllBytes(), Charset.defaultCharset());
+      wmiProcess.waitFor();
+
+      // Parse the output to get all process IDs
+      String[] lines = output.trim().split("\\s+");
+      List<Long> pids = new ArrayList<>();
+      for (String line : lines) {
+        if (line.matches("\\d+")) {
+          pids.add(Long.parseLong(line));
+        }
+      }
+
+      LOG.log(System.Logger.Level.INFO, "Found " + pids.size() + " processes to terminate");
+
+      // Get the path to the SendSignalCtrlC64.exe utility
+      String p = getDataDirectory().resolve("utils").resolve("SendSignalCtrlC64.exe").toString();
+
+      // Terminate each process
+      for (Long pid : pids) {
+        LOG.log(System.Logger.Level.INFO, "Sending SIGTERM : " + p + " " + pid);
+        ProcessBuilder terminateProcessBuilder = new ProcessBuilder(p, pid.toString());
+        terminateProcessBuilder.start();
+      }
+    } else {
+      String shell = IS_MAC ? "/bin/zsh" : "/bin/sh";
+      String[] command = {
+        shell, "-c", "\"" + jpsExecutable + "\"" + " | grep " + jarFilename + "| awk '{print $1}'"
+      };
+      LOG.log(System.Logger.Level.INFO, "cmd: " + Arrays.toString(command));
+      ProcessBuilder processBuilder = new ProcessBuilder(command);
+      Process mltProcess = processBuilder.start();
+      String pid = new String(mltProcess.getInputStream().readAllBytes(), Charset.defaultCharset());
+      mltProcess.waitFor();
+
+      String signal = IS_MAC ? "-SIGTERM" : "-15";
+      LOG.log(System.Logger.Level.INFO, "kill " + signal + " " + pid.trim());
+      ProcessBuilder killProcessBuilder =
+          new ProcessBuilder(shell, "-c", "kill " + signal + " " + pid.trim());
+      killProcessBuilder.redirectError(ProcessBuilder.Redirect.to(new File("/dev/null")));
+      Process killerProcess = killProcessBuilder.start();
+      killerProcess.waitFor();
+    }
+  }
+
+  /**
+   * Blocks until the chain produces its first masterchain block after genesis.
+   *
+   * @param probe readiness probe
+   * @param timeoutMillis maximum time to wait
+   * @param progress called with the current seqno, or -1 while the node does not answer
+   * @return the seqno of the last masterchain block
+   * @throws TimeoutException if the chain is not ready in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public static long waitUntilReady(ReadinessProbe probe, long timeoutMillis, LongConsumer progress)
+      throws TimeoutException, InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (true) {
+      long seqno = probe.lastMasterchainSeqno();
+      progress.accept(seqno);
+      if (seqno > 0) {
+        return seqno;
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        throw new TimeoutException(
+            "MyLocalTon did not produce a masterchain block within "
+                + TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)
+                + " s");
+      }
+      Thread.sleep(READINESS_POLL_INTERVAL_MS);
+    }
+  }
+}
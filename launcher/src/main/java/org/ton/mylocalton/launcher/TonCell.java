@@ -0,0 +1,367 @@
+package org.ton.mylocalton.launcher;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Minimal ordinary cell with a builder, its representation hash and bag-of-cells serialization.
+ * Just enough to build and sign wallet messages that are handed to tonlib or the lite-client as raw
+ * BOCs and to read the stacks of get-methods run by the plugin's TVM emulator; there is no support
+ * for exotic cells.
+ */
+public final class TonCell {
+  private static final int MAX_BITS = 1023;
+  private static final int MAX_REFS = 4;
+  private static final byte[] BOC_MAGIC = {(byte) 0xb5, (byte) 0xee, (byte) 0x9c, (byte) 0x72};
+
+  private final byte[] data;
+  private final int bitLength;
+  private final List<TonCell> refs;
+  private final int depth;
+  private final byte[] hash;
+
+  private TonCell(byte[] data, int bitLength, List<TonCell> refs) {
+    this.data = data;
+    this.bitLength = bitLength;
+    this.refs = Collections.unmodifiableList(refs);
+    int maxDepth = -1;
+    for (TonCell ref : refs) {
+      maxDepth = Math.max(maxDepth, ref.depth);
+    }
+    this.depth = maxDepth + 1;
+    this.hash = computeHash();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Parses the first root of a bag of cells. Index and checksum are not verified.
+   *
+   * @param boc the BOC bytes
+   * @return the root cell
+   * @throws IllegalArgumentException if the BOC is malformed or contains exotic cells
+   */
+  public static TonCell fromBoc(byte[] boc) {
+    try {
+      if (!Arrays.equals(Arrays.copyOf(boc, 4), BOC_MAGIC)) {
+        throw new IllegalArgumentException("Not a bag of cells");
+      }
+      int flags = boc[4] & 0xff;
+      boolean hasIndex = (flags & 0x80) != 0;
+      int sizeBytes = flags & 0x07;
+      int offsetBytes = boc[5] & 0xff;
+      int position = 6;
+      int cellCount = readInt(boc, position, sizeBytes);
+      position += sizeBytes;
+      int rootCount = readInt(boc, position, sizeBytes);
+      position += 2 * sizeBytes + offsetBytes; // roots, absent, total cells size
+      if (rootCount == 0) {
+        throw new IllegalArgumentException("No root cell");
+      }
+      int root = readInt(boc, position, sizeBytes);
+      position += rootCount * sizeBytes;
+      if (hasIndex) {
+        position += cellCount * offsetBytes;
+      }
+
+      int[] starts = new int[cellCount];
+      for (int i = 0; i < cellCount; i++) {
+        starts[i] = position;
+        int refCount = boc[position] & 0x07;
+        if ((boc[position] & 0x08) != 0) {
+          throw new IllegalArgumentException("Exotic cells are not supported");
+        }
+        int descriptor = boc[position + 1] & 0xff;
+        position += 2 + (descriptor + 1) / 2 + refCount * sizeBytes;
+      }
+      // References always point to later cells, so children are built first
+      TonCell[] cells = new TonCell[cellCount];
+      for (int i = cellCount - 1; i >= 0; i--) {
+        position = starts[i];
+        int refCount = boc[position] & 0x07;
+        int descriptor = boc[position + 1] & 0xff;
+        byte[] data = Arrays.copyOfRange(boc, position + 2, position + 2 + (descriptor + 1) / 2);
+        int bitLength = data.length * 8;
+        if (descriptor % 2 != 0) {
+          // Strip the completion tag, the lowest set bit of the last byte
+          int last = data[data.length - 1] & 0xff;
+          int tag = Integer.numberOfTrailingZeros(last);
+          bitLength -= tag + 1;
+          data[data.length - 1] = (byte) (last & (0xff << (tag + 1)));
+        }
+        position += 2 + data.length;
+        List<TonCell> refs = new ArrayList<>();
+        for (int r = 0; r < refCount; r++) {
+          int ref = readInt(boc, position, sizeBytes);
+          position += sizeBytes;
+          if (ref <= i || ref >= cellCount) {
+            throw new IllegalArgumentException("Invalid cell reference");
+          }
+          refs.add(cells[ref]);
+        }
+        cells[i] = new TonCell(data, bitLength, refs);
+      }
+      return cells[root];
+    } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+      throw new IllegalArgumentException("Truncated bag of cells", e);
+    }
+  }
+
+  public int getBitLength() {
+    return bitLength;
+  }
+
+  /**
+   * Reads a data bit.
+   *
+   * @param index bit index, most significant bit first
+   * @return the bit
+   */
+  public boolean getBit(int index) {
+    if (index < 0 || index >= bitLength) {
+      throw new IndexOutOfBoundsException("Bit " + index + " of " + bitLength);
+    }
+    return (data[index / 8] & (0x80 >>> (index % 8))) != 0;
+  }
+
+  public List<TonCell> getRefs() {
+    return refs;
+  }
+
+  /** Representation hash, e.g. what a wallet checks the signature of a message against. */
+  public byte[] hash() {
+    return hash.clone();
+  }
+
+  /**
+   * Serializes the tree rooted at this cell as a bag of cells with a CRC32C checksum.
+   *
+   * @return the BOC bytes
+   */
+  public byte[] toBoc() {
+    // Pre-order keeps every parent before its children, as the format requires
+    List<TonCell> cells = new ArrayList<>();
+    collect(this, cells);
+    int sizeBytes = bytesFor(cells.size());
+
+    ByteArrayOutputStream cellsData = new ByteArrayOutputStream();
+    int index = 0;
+    for (TonCell cell : cells) {
+      cellsData.write(cell.refs.size());
+      cellsData.write(cell.lengthDescriptor());
+      cellsData.writeBytes(cell.paddedData());
+      int childIndex = index + 1;
+      for (TonCell ref : cell.refs) {
+        writeInt(cellsData, childIndex, sizeBytes);
+        childIndex += ref.subtreeSize();
+      }
+      index++;
+    }
+    byte[] serializedCells = cellsData.toByteArray();
+    int offsetBytes = bytesFor(serializedCells.length);
+
+    ByteArrayOutputStream boc = new ByteArrayOutputStream();
+    boc.writeBytes(BOC_MAGIC);
+    boc.write(0x40 | sizeBytes); // has_crc32c, size of cell references
+    boc.write(offsetBytes);
+    writeInt(boc, cells.size(), sizeBytes);
+    writeInt(boc, 1, sizeBytes); // roots
+    writeInt(boc, 0, sizeBytes); // absent
+    writeInt(boc, serializedCells.length, offsetBytes);
+    writeInt(boc, 0, sizeBytes); // root index
+    boc.writeBytes(serializedCells);
+
+    CRC32C crc = new CRC32C();
+    crc.update(boc.toByteArray());
+    long checksum = crc.getValue();
+    for (int i = 0; i < 4; i++) {
+      boc.write((int) (checksum >>> (8 * i))); // little endian
+    }
+    return boc.toByteArray();
+  }
+
+  private static void collect(TonCell cell, List<TonCell> cells) {
+    cells.add(cell);
+    for (TonCell ref : cell.refs) {
+      collect(ref, cells);
+    }
+  }
+
+  private int subtreeSize() {
+    int size = 1;
+    for (TonCell ref : refs) {
+      size += ref.subtreeSize();
+    }
+    return size;
+  }
+
+  private int lengthDescriptor() {
+    return bitLength / 8 + (bitLength + 7) / 8;
+  }
+
+  /** Data bytes with the completion tag if the last byte is not full. */
+  private byte[] paddedData() {
+    byte[] padded = Arrays.copyOf(data, (bitLength + 7) / 8);
+    if (bitLength % 8 != 0) {
+      padded[bitLength / 8] |= (byte) (0x80 >>> (bitLength % 8));
+    }
+    return padded;
+  }
+
+  private byte[] computeHash() {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    digest.update((byte) refs.size());
+    digest.update((byte) lengthDescriptor());
+    digest.update(paddedData());
+    for (TonCell ref : refs) {
+      digest.update((byte) (ref.depth >>> 8));
+      digest.update((byte) ref.depth);
+    }
+    for (TonCell ref : refs) {
+      digest.update(ref.hash);
+    }
+    return digest.digest();
+  }
+
+  private static int bytesFor(int value) {
+    int bytes = 1;
+    while (value >= 1 << (8 * bytes) && bytes < 4) {
+      bytes++;
+    }
+    return bytes;
+  }
+
+  private static int readInt(byte[] bytes, int offset, int length) {
+    int value = 0;
+    for (int i = 0; i < length; i++) {
+      value = (value << 8) | (bytes[offset + i] & 0xff);
+    }
+    return value;
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value, int bytes) {
+    for (int i = bytes - 1; i >= 0; i--) {
+      out.write(value >>> (8 * i));
+    }
+  }
+
+  /** Appends bits and references, most significant bit first. */
+  public static final class Builder {
+    private final byte[] data = new byte[(MAX_BITS + 7) / 8];
+    private int bitLength;
+    private final List<TonCell> refs = new ArrayList<>();
+
+    private Builder() {}
+
+    public Builder storeBit(boolean bit) {
+      if (bitLength >= MAX_BITS) {
+        throw new IllegalStateException("Cell overflow");
+      }
+      if (bit) {
+        data[bitLength / 8] |= (byte) (0x80 >>> (bitLength % 8));
+      }
+      bitLength++;
+      return this;
+    }
+
+    /**
+     * Stores an unsigned integer.
+     *
+     * @param value value, its low {@code bits} bits are stored
+     * @param bits number of bits, at most 64
+     * @return this builder
+     */
+    public Builder storeUint(long value, int bits) {
+      for (int i = bits - 1; i >= 0; i--) {
+        storeBit(i < 64 && ((value >>> i) & 1) == 1);
+      }
+      return this;
+    }
+
+    /**
+     * Stores a signed integer in two's complement.
+     *
+     * @param value value, must fit into {@code bits} bits
+     * @param bits number of bits
+     * @return this builder
+     */
+    public Builder storeInt(BigInteger value, int bits) {
+      if (value.bitLength() >= bits) {
+        throw new IllegalArgumentException(value + " does not fit into " + bits + " bits");
+      }
+      for (int i = bits - 1; i >= 0; i--) {
+        storeBit(value.testBit(i));
+      }
+      return this;
+    }
+
+    public Builder storeBytes(byte[] bytes) {
+      for (byte b : bytes) {
+        storeUint(b & 0xff, 8);
+      }
+      return this;
+    }
+
+    /**
+     * Stores an amount of nanotons as {@code VarUInteger 16}.
+     *
+     * @param nanotons amount
+     * @return this builder
+     */
+    public Builder storeCoins(BigInteger nanotons) {
+      if (nanotons.signum() == 0) {
+        return storeUint(0, 4);
+      }
+      byte[] bytes = nanotons.toByteArray();
+      int offset = bytes[0] == 0 ? 1 : 0; // drop the sign byte
+      int length = bytes.length - offset;
+      if (nanotons.signum() < 0 || length > 15) {
+        throw new IllegalArgumentException("Invalid amount: " + nanotons);
+      }
+      storeUint(length, 4);
+      return storeBytes(Arrays.copyOfRange(bytes, offset, bytes.length));
+    }
+
+    /**
+     * Stores a standard address ({@code addr_std} without anycast).
+     *
+     * @param rawAddress raw address, {@code workchain:hex}
+     * @return this builder
+     */
+    public Builder storeAddress(String rawAddress) {
+      int colon = rawAddress.indexOf(':');
+      storeUint(0b10, 2);
+      storeBit(false);
+      storeUint(Integer.parseInt(rawAddress.substring(0, colon)), 8);
+      return storeBytes(HexFormat.of().parseHex(rawAddress.substring(colon + 1)));
+    }
+
+    public Builder storeRef(TonCell cell) {
+      if (refs.size() >= MAX_REFS) {
+        throw new IllegalStateException("Too many references");
+      }
+      refs.add(cell);
+      return this;
+    }
+
+    public TonCell build() {
+      return new TonCell(
+          Arrays.copyOf(data, (bitLength + 7) / 8), bitLength, new ArrayList<>(refs));
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.ton.mylocalton.launcher;
+
+/** A pre-funded wallet of the local chain that tests can sign messages with. */
+public class Wallet {
+  private final int index;
+  private final String address;
+  private final String publicKey;
+  private final String privateKey;
+  private final long subWalletId;
+
+  public Wallet(int index, String address, String publicKey, String privateKey, long subWalletId) {
+    this.index = index;
+    this.address = address;
+    this.publicKey = publicKey;
+    this.privateKey = privateKey;
+    this.subWalletId = subWalletId;
+  }
+
+  /** Position of the wallet in the pool file. */
+  public int getIndex() {
+    return index;
+  }
+
+  /** Raw address, {@code workchain:hex}. */
+  public String getAddress() {
+    return address;
+  }
+
+  /** Hex encoded ed25519 public key. */
+  public String getPublicKey() {
+    return publicKey;
+  }
+
+  /** Hex encoded ed25519 private key (seed). */
+  public String getPrivateKey() {
+    return privateKey;
+  }
+
+  public long getSubWalletId() {
+    return subWalletId;
+  }
+
+  @Override
+  public String toString() {
+    return "Wallet #" + index + " " + address;
+  }
+}
@@ -0,0 +1,204 @@
+package org.ton.mylocalton.launcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Pre-funded wallets of the local chain, read from a JSON file with one {@code address}, {@code
+ * publicKey}, {@code privateKey} and {@code subWalletId} object per wallet. The plugin creates this
+ * file right after genesis when "Pool wallets" is set in the tool window.
+ *
+ * <p>Wallets are leased exclusively, so parallel tests never send from the same wallet and never
+ * race on its seqno. Leasing is lock-free: a wallet is claimed by setting its bit in an atomic
+ * bitmap with a CAS, and every lease starts probing at a different wallet so concurrent callers
+ * rarely compete for the same bit. Test workers in other JVMs are kept off the claimed wallet by a
+ * non-blocking lock on its byte of a lock file next to the pool, released by the OS if the worker
+ * dies.
+ */
+public class WalletPool implements AutoCloseable {
+  private static final System.Logger LOG = System.getLogger(WalletPool.class.getName());
+
+  private final List<Wallet> wallets;
+  private final AtomicLongArray leased;
+  private final AtomicInteger nextStart = new AtomicInteger();
+  private final FileChannel lockChannel;
+  private final AtomicReferenceArray<FileLock> fileLocks;
+
+  /**
+   * Creates a pool shared within this JVM only.
+   *
+   * @param wallets wallets of the pool
+   */
+  public WalletPool(List<Wallet> wallets) {
+    this(wallets, null);
+  }
+
+  private WalletPool(List<Wallet> wallets, FileChannel lockChannel) {
+    this.wallets = Collections.unmodifiableList(new ArrayList<>(wallets));
+    this.leased = new AtomicLongArray((wallets.size() + 63) / 64);
+    this.lockChannel = lockChannel;
+    this.fileLocks = new AtomicReferenceArray<>(wallets.size());
+  }
+
+  /**
+   * Gets the default pool file.
+   *
+   * @return {@code ~/.mylocalton/myLocalTon/wallet-pool.json}
+   */
+  public static Path getDefaultFile() {
+    return NodeLauncher.getDataDirectory().resolve("wallet-pool.json");
+  }
+
+  /**
+   * Reads a pool file. Leases are coordinated with other JVMs through {@code <file>.lock}.
+   *
+   * @param file pool file
+   * @return the pool
+   * @throws IOException if the file is missing or malformed
+   */
+  public static WalletPool load(Path file) throws IOException {
+    List<Wallet> wallets = new ArrayList<>();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      JSONArray items = (JSONArray) new JSONParser().parse(reader);
+      for (Object item : items) {
+        JSONObject json = (JSONObject) item;
+        wallets.add(
+            new Wallet(
+                wallets.size(),
+                (String) json.get("address"),
+                (String) json.get("publicKey"),
+                (String) json.get("privateKey"),
+                ((Number) json.get("subWalletId")).longValue()));
+      }
+    } catch (ParseException | ClassCastException | NullPointerException e) {
+      throw new IOException("Malformed wallet pool " + file + ": " + e.getMessage(), e);
+    }
+
+    FileChannel lockChannel = null;
+    try {
+      lockChannel =
+          FileChannel.open(
+              file.resolveSibling(file.getFileName() + ".lock"),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      LOG.log(
+          System.Logger.Level.WARNING,
+          "Wallet leases are not shared with other processes: " + e.getMessage());
+    }
+    return new WalletPool(wallets, lockChannel);
+  }
+
+  public int size() {
+    return wallets.size();
+  }
+
+  /**
+   * Leases a free wallet.
+   *
+   * @return the wallet
+   * @throws IllegalStateException if all wallets are leased
+   */
+  public Wallet lease() {
+    int size = wallets.size();
+    if (size == 0) {
+      throw new IllegalStateException("The wallet pool is empty");
+    }
+    int start = Math.floorMod(nextStart.getAndIncrement(), size);
+    for (int i = 0; i < size; i++) {
+      int index = (start + i) % size;
+      if (!claim(index)) {
+        continue;
+      }
+      if (lockInOtherProcesses(index)) {
+        return wallets.get(index);
+      }
+      // Leased by another JVM
+      unclaim(index);
+    }
+    throw new IllegalStateException("All " + size + " pool wallets are leased");
+  }
+
+  /**
+   * Returns a leased wallet to the pool.
+   *
+   * @param wallet wallet returned by {@link #lease()}
+   */
+  public void release(Wallet wallet) {
+    int index = wallet.getIndex();
+    FileLock fileLock = fileLocks.getAndSet(index, null);
+    if (fileLock != null) {
+      try {
+        fileLock.release();
+      } catch (IOException e) {
+        LOG.log(System.Logger.Level.WARNING, "Cannot release lock of " + wallet, e);
+      }
+    }
+    unclaim(index);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (lockChannel != null) {
+      // Releases all file locks of this JVM
+      lockChannel.close();
+    }
+  }
+
+  private boolean claim(int index) {
+    int word = index >>> 6;
+    long mask = 1L << index;
+    while (true) {
+      long current = leased.get(word);
+      if ((current & mask) != 0) {
+        return false;
+      }
+      if (leased.compareAndSet(word, current, current | mask)) {
+        return true;
+      }
+    }
+  }
+
+  private void unclaim(int index) {
+    long mask = 1L << index;
+    leased.getAndAccumulate(index >>> 6, mask, (current, bit) -> current & ~bit);
+  }
+
+  private boolean lockInOtherProcesses(int index) {
+    if (lockChannel == null) {
+      return true;
+    }
+    try {
+      FileLock fileLock = lockChannel.tryLock(index, 1, false);
+      if (fileLock == null) {
+        return false;
+      }
+      fileLocks.set(index, fileLock);
+      return true;
+    } catch (OverlappingFileLockException e) {
+      // Leased through another pool loaded from the same file in this JVM
+      return false;
+    } catch (IOException e) {
+      LOG.log(System.Logger.Level.WARNING, "Cannot lock wallet " + index + ": " + e.getMessage());
+      return true;
+    }
+  }
+}
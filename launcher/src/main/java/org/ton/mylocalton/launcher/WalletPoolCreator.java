@@ -0,0 +1,379 @@
+package org.ton.mylocalton.launcher;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.EdECPrivateKey;
+import java.security.spec.EdECPrivateKeySpec;
+import java.security.spec.NamedParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Creates the pool of pre-funded wallets right after genesis, so parallel tests each send from
+ * their own wallet instead of racing on the seqno of the few genesis wallets.
+ *
+ * <p>MyLocalTon has no hook to add accounts to the zero state, so the wallets are created as soon
+ * as the new chain produces blocks: fresh ed25519 keys are generated, the wallet v3r2 addresses are
+ * derived from the wallet code and the wallets are funded from the genesis main wallet, four with
+ * every signed external message, confirmed once per message. The keys are written to {@link
+ * WalletPool#getDefaultFile()}, which lives in the MyLocalTon data directory and is therefore
+ * removed together with the chain on Reset and Delete. The chain is accessed through a {@link
+ * Chain}: the plugin uses tonlib, the JUnit 5 extension uses the lite-client.
+ *
+ * <p>Funds are spent before the pool is complete, so creation can be resumed: every wallet is saved
+ * to {@code wallet-pool.json.partial} with the seqno of the main wallet its transfer uses before
+ * the message is sent. A resumed creation skips wallets that have a balance and sends a lost
+ * transfer again with the same seqno, which the main wallet accepts at most once.
+ */
+public class WalletPoolCreator {
+  private static final System.Logger LOG = System.getLogger(WalletPoolCreator.class.getName());
+
+  /** Default subwallet id of wallet v3 in the basechain. */
+  static final long SUB_WALLET_ID = 698983191;
+
+  /** Code of wallet v3r2. */
+  static final TonCell WALLET_V3R2_CODE =
+      TonCell.fromBoc(
+          HexFormat.of()
+              .parseHex(
+                  "B5EE9C724101010100710000DEFF0020DD2082014C97BA218201339CBAB19F71B0ED44D0"
+                      + "D31FD31F31D70BFFE304E0A4F2608308D71820D31FD31FD31FF82313BBF263ED44D0D31F"
+                      + "D31FD3FFD15132BAF2A15144BAF2A204F901541055F910F2A3F8009320D74A96D307D402"
+                      + "FB00E8D101A4C8CB1FCB1FCBFFC9ED5410BD6DAD"));
+
+  private static final String PARTIAL_SUFFIX = ".partial";
+  private static final String FUNDING_SEQNO = "fundingSeqno";
+  private static final long CONFIRMATION_TIMEOUT_MS = 60000;
+  private static final long CONFIRMATION_POLL_INTERVAL_MS = 1000;
+  // Pay transfer fees separately and ignore errors
+  private static final int SEND_MODE = 3;
+  // The main wallet sends every message referenced by a signed body, a cell has up to 4 refs
+  static final int TRANSFERS_PER_MESSAGE = 4;
+
+  /** Access to the local chain. Addresses are raw, {@code workchain:hex}. */
+  public interface Chain {
+    /**
+     * Runs the {@code seqno} get-method of a wallet.
+     *
+     * @param address wallet address
+     * @return the seqno
+     * @throws Exception if the get-method fails
+     */
+    long getSeqno(String address) throws Exception;
+
+    /**
+     * Gets the balance of an account.
+     *
+     * @param address account address
+     * @return balance in nanotons, 0 for an account that does not exist
+     * @throws Exception if the account state cannot be read
+     */
+    BigInteger getBalance(String address) throws Exception;
+
+    /**
+     * Sends an external message.
+     *
+     * @param boc the serialized message
+     * @throws Exception if the message is not accepted
+     */
+    void sendMessage(byte[] boc) throws Exception;
+  }
+
+  private final Chain chain;
+
+  public WalletPoolCreator(Chain chain) {
+    this.chain = chain;
+  }
+
+  /**
+   * Creates and funds the wallets and writes the pool file, resuming an earlier creation.
+   *
+   * @param count number of wallets
+   * @param tonsPerWallet amount each wallet is funded with, in TON
+   * @param poolFile file to write the keys to
+   * @throws Exception if a wallet cannot be created or funded
+   */
+  @SuppressWarnings("unchecked")
+  public void create(int count, long tonsPerWallet, Path poolFile) throws Exception {
+    Path mainWalletKey = findGenesisFile("main-wallet.pk");
+    Path mainWalletAddress = findGenesisFile("main-wallet.addr");
+    PrivateKey mainKey = privateKey(Files.readAllBytes(mainWalletKey));
+    String mainAddress = readFiftAddress(Files.readAllBytes(mainWalletAddress));
+    BigInteger amount = BigDecimal.valueOf(tonsPerWallet).movePointRight(9).toBigInteger();
+    Path partialFile = poolFile.resolveSibling(poolFile.getFileName() + PARTIAL_SUFFIX);
+    JSONArray wallets = readPartial(partialFile);
+    LOG.log(
+        System.Logger.Level.INFO,
+        "Creating "
+            + count
+            + " pool wallets funded from "
+            + mainAddress
+            + (wallets.isEmpty() ? "" : ", resuming after " + wallets.size()));
+
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("Ed25519");
+    for (int start = 0; start < count; start += TRANSFERS_PER_MESSAGE) {
+      int end = Math.min(count, start + TRANSFERS_PER_MESSAGE);
+      while (wallets.size() < end) {
+        KeyPair keyPair = generator.generateKeyPair();
+        byte[] privateKey = ((EdECPrivateKey) keyPair.getPrivate()).getBytes().orElseThrow();
+        byte[] encodedPublicKey = keyPair.getPublic().getEncoded();
+        // X.509 encoding ends with the raw 32-byte key
+        byte[] publicKey =
+            Arrays.copyOfRange(
+                encodedPublicKey, encodedPublicKey.length - 32, encodedPublicKey.length);
+        wallets.add(walletJson(walletAddress(publicKey), publicKey, privateKey));
+      }
+      long seqno = chain.getSeqno(mainAddress);
+      List<JSONObject> unfunded = new ArrayList<>();
+      for (int i = start; i < end; i++) {
+        JSONObject wallet = (JSONObject) wallets.get(i);
+        String address = (String) wallet.get("address");
+        if (hasBalance(address)) {
+          continue;
+        }
+        Object fundingSeqno = wallet.get(FUNDING_SEQNO);
+        if (fundingSeqno != null
+            && seqno > ((Number) fundingSeqno).longValue()
+            && waitForBalance(address)) {
+          // Sent before the creation was interrupted
+          continue;
+        }
+        unfunded.add(wallet);
+      }
+      if (unfunded.isEmpty()) {
+        continue;
+      }
+      List<String> addresses = new ArrayList<>();
+      for (JSONObject wallet : unfunded) {
+        wallet.put(FUNDING_SEQNO, seqno);
+        addresses.add((String) wallet.get("address"));
+      }
+      // Saved before sending, so the key of a funded wallet is never lost
+      write(partialFile, wallets);
+      sendTransfer(mainKey, mainAddress, seqno, addresses, amount);
+      waitForSeqno(mainAddress, seqno + 1);
+      // All transfers of one message are delivered in the same block
+      for (String address : addresses) {
+        if (!waitForBalance(address)) {
+          throw new TimeoutException("Pool wallet " + address + " was not funded");
+        }
+      }
+      LOG.log(
+          System.Logger.Level.INFO,
+          "Funded pool wallets " + start + " to " + (end - 1) + " " + addresses);
+    }
+
+    for (Object wallet : wallets) {
+      ((JSONObject) wallet).remove(FUNDING_SEQNO);
+    }
+    write(poolFile, wallets);
+    Files.deleteIfExists(partialFile);
+    LOG.log(System.Logger.Level.INFO, "Wallet pool written to " + poolFile);
+  }
+
+  /** Reads the wallets saved by an interrupted creation. */
+  private static JSONArray readPartial(Path partialFile) throws IOException {
+    if (!Files.exists(partialFile)) {
+      return new JSONArray();
+    }
+    try {
+      return (JSONArray)
+          new JSONParser().parse(Files.readString(partialFile, StandardCharsets.UTF_8));
+    } catch (ParseException | ClassCastException e) {
+      throw new IOException("Malformed " + partialFile + ": " + e.getMessage(), e);
+    }
+  }
+
+  /** Writes the wallets so that readers never see a partially written file. */
+  private static void write(Path file, JSONArray wallets) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.writeString(tmp, wallets.toJSONString(), StandardCharsets.UTF_8);
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Derives the basechain address of a wallet v3r2: the hash of its state init, which holds the
+   * wallet code and the initial data of seqno 0, the subwallet id and the public key.
+   *
+   * @param publicKey raw 32-byte ed25519 public key
+   * @return raw address
+   */
+  static String walletAddress(byte[] publicKey) {
+    TonCell data =
+        TonCell.builder()
+            .storeUint(0, 32) // seqno
+            .storeUint(SUB_WALLET_ID, 32)
+            .storeBytes(publicKey)
+            .build();
+    TonCell stateInit =
+        TonCell.builder()
+            .storeBit(false) // no split_depth
+            .storeBit(false) // no special
+            .storeBit(true) // code
+            .storeBit(true) // data
+            .storeBit(false) // no library
+            .storeRef(WALLET_V3R2_CODE)
+            .storeRef(data)
+            .build();
+    return "0:" + HexFormat.of().formatHex(stateInit.hash());
+  }
+
+  /** Sends transfers of the same amount from the genesis main wallet in one external message. */
+  private void sendTransfer(
+      PrivateKey key, String from, long seqno, List<String> destinations, BigInteger amount)
+      throws Exception {
+    TonCell external =
+        TonCell.builder()
+            .storeUint(0b10, 2) // ext_in_msg_info$10
+            .storeUint(0, 2) // src: addr_none
+            .storeAddress(from)
+            .storeCoins(BigInteger.ZERO) // import_fee
+            .storeBit(false) // no state init, the main wallet is deployed
+            .storeBit(true) // body in a reference
+            .storeRef(transferBody(key, seqno, destinations, amount))
+            .build();
+    chain.sendMessage(external.toBoc());
+  }
+
+  /**
+   * Builds the signed body of an external message to the genesis main wallet: the signature
+   * followed by the seqno and a send mode and internal message per transfer. The wallet sends every
+   * referenced message, so a body carries up to {@link #TRANSFERS_PER_MESSAGE} transfers.
+   *
+   * @param key private key of the main wallet
+   * @param seqno current seqno of the main wallet
+   * @param destinations raw addresses of the not yet deployed wallets
+   * @param amount amount sent to each wallet, in nanotons
+   * @return the body
+   * @throws IllegalArgumentException if there are more destinations than fit in one body
+   */
+  static TonCell transferBody(
+      PrivateKey key, long seqno, List<String> destinations, BigInteger amount) throws Exception {
+    if (destinations.isEmpty() || destinations.size() > TRANSFERS_PER_MESSAGE) {
+      throw new IllegalArgumentException(
+          "Expected 1 to " + TRANSFERS_PER_MESSAGE + " destinations, got " + destinations.size());
+    }
+    TonCell.Builder unsigned = TonCell.builder().storeUint(seqno, 32);
+    TonCell.Builder body = TonCell.builder();
+    List<TonCell> messages = new ArrayList<>();
+    for (String destination : destinations) {
+      messages.add(
+          TonCell.builder()
+              .storeUint(0, 1) // int_msg_info$0
+              .storeBit(true) // ihr_disabled
+              .storeBit(false) // not bounceable, the wallet is not deployed yet
+              .storeBit(false) // bounced
+              .storeUint(0, 2) // src: addr_none, filled in by the validator
+              .storeAddress(destination)
+              .storeCoins(amount)
+              .storeBit(false) // no extra currencies
+              .storeCoins(BigInteger.ZERO) // ihr_fee
+              .storeCoins(BigInteger.ZERO) // fwd_fee
+              .storeUint(0, 64) // created_lt
+              .storeUint(0, 32) // created_at
+              .storeBit(false) // no state init
+              .storeBit(false) // empty inline body
+              .build());
+    }
+    for (TonCell message : messages) {
+      unsigned.storeUint(SEND_MODE, 8).storeRef(message);
+    }
+
+    Signature signature = Signature.getInstance("Ed25519");
+    signature.initSign(key);
+    signature.update(unsigned.build().hash());
+    body.storeBytes(signature.sign()).storeUint(seqno, 32);
+    for (TonCell message : messages) {
+      body.storeUint(SEND_MODE, 8).storeRef(message);
+    }
+    return body.build();
+  }
+
+  private boolean hasBalance(String address) throws Exception {
+    return chain.getBalance(address).signum() > 0;
+  }
+
+  /**
+   * Waits for the transfer to a wallet to arrive, it is delivered in a block after the one that
+   * accepted it.
+   *
+   * @return false if the wallet still has no balance after the timeout
+   */
+  private boolean waitForBalance(String address) throws Exception {
+    long deadline = System.currentTimeMillis() + CONFIRMATION_TIMEOUT_MS;
+    while (!hasBalance(address)) {
+      if (System.currentTimeMillis() >= deadline) {
+        return false;
+      }
+      Thread.sleep(CONFIRMATION_POLL_INTERVAL_MS);
+    }
+    return true;
+  }
+
+  private void waitForSeqno(String address, long expected) throws Exception {
+    long deadline = System.currentTimeMillis() + CONFIRMATION_TIMEOUT_MS;
+    while (chain.getSeqno(address) < expected) {
+      if (System.currentTimeMillis() >= deadline) {
+        throw new TimeoutException("Transfer from the main wallet was not confirmed");
+      }
+      Thread.sleep(CONFIRMATION_POLL_INTERVAL_MS);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject walletJson(String address, byte[] publicKey, byte[] privateKey) {
+    JSONObject wallet = new JSONObject();
+    wallet.put("address", address);
+    wallet.put("publicKey", HexFormat.of().formatHex(publicKey));
+    wallet.put("privateKey", HexFormat.of().formatHex(privateKey));
+    wallet.put("subWalletId", SUB_WALLET_ID);
+    wallet.put("version", "V3R2");
+    return wallet;
+  }
+
+  /** Finds a file written by the genesis scripts. */
+  private static Path findGenesisFile(String name) throws IOException {
+    Path genesis = NodeLauncher.getDataDirectory().resolve("genesis");
+    for (Path candidate : List.of(genesis.resolve("bin"), genesis.resolve("db"), genesis)) {
+      if (Files.exists(candidate.resolve(name))) {
+        return candidate.resolve(name);
+      }
+    }
+    throw new IOException("Genesis file " + name + " not found in " + genesis);
+  }
+
+  private static PrivateKey privateKey(byte[] seed) throws Exception {
+    return KeyFactory.getInstance("Ed25519")
+        .generatePrivate(new EdECPrivateKeySpec(NamedParameterSpec.ED25519, seed));
+  }
+
+  /** Reads an address saved by Fift's {@code save-address}: 32-byte hash, 4-byte workchain. */
+  static String readFiftAddress(byte[] bytes) throws IOException {
+    if (bytes.length != 36) {
+      throw new IOException("Invalid address file, expected 36 bytes but got " + bytes.length);
+    }
+    int workchain =
+        ((bytes[32] & 0xff) << 24)
+            | ((bytes[33] & 0xff) << 16)
+            | ((bytes[34] & 0xff) << 8)
+            | (bytes[35] & 0xff);
+    return workchain + ":" + HexFormat.of().formatHex(bytes, 0, 32);
+  }
+}
@@ -0,0 +1,155 @@
+package org.ton.mylocalton.launcher.junit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.ton.mylocalton.launcher.LiteClientChain;
+import org.ton.mylocalton.launcher.LiteClientProbe;
+import org.ton.mylocalton.launcher.NodeLauncher;
+import org.ton.mylocalton.launcher.WalletPool;
+import org.ton.mylocalton.launcher.WalletPoolCreator;
+
+/**
+ * The local node shared by all tests of a JVM. It attaches to a running node, e.g. one started from
+ * the IDE, or starts one and stops it again when the JVM's tests are done.
+ *
+ * <p>It is configured with system properties:
+ *
+ * <ul>
+ *   <li>{@code mylocalton.jar} - MyLocalTon JAR to start, defaults to the one in {@code
+ *       ~/.mylocalton}
+ *   <li>{@code mylocalton.validators} - number of additional validators, defaults to 0
+ *   <li>{@code mylocalton.tonHttpApi} - also start ton-http-api, defaults to false
+ *   <li>{@code mylocalton.readinessTimeout} - seconds to wait for the first block, defaults to 300
+ *   <li>{@code mylocalton.walletPool} - wallet pool file, defaults to {@link
+ *       WalletPool#getDefaultFile()}
+ *   <li>{@code mylocalton.poolWallets} - number of wallets to create if there is no pool yet,
+ *       defaults to 0
+ *   <li>{@code mylocalton.poolWalletTons} - amount each created wallet is funded with, defaults to
+ *       1000
+ * </ul>
+ */
+public class LocalNode implements ExtensionContext.Store.CloseableResource {
+  private static final System.Logger LOG = System.getLogger(LocalNode.class.getName());
+
+  private final Path startedJar;
+  private final long readySeqno;
+  private WalletPool walletPool;
+
+  private LocalNode(Path startedJar, long readySeqno) {
+    this.startedJar = startedJar;
+    this.readySeqno = readySeqno;
+  }
+
+  /**
+   * Attaches to the running node or starts one, and waits until it produces blocks.
+   *
+   * @return the node
+   * @throws IOException if MyLocalTon is not installed or cannot be started
+   * @throws TimeoutException if the chain is not ready in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  static LocalNode startOrAttach() throws IOException, TimeoutException, InterruptedException {
+    NodeLauncher.Options options = new NodeLauncher.Options();
+    options.noGui = true;
+    options.tonHttpApi = Boolean.getBoolean("mylocalton.tonHttpApi");
+    options.validators = Integer.getInteger("mylocalton.validators", 0);
+    String jar = System.getProperty("mylocalton.jar");
+
+    Path startedJar =
+        NodeLauncher.startIfNotRunning(
+            NodeLauncher.getJdkExecutablePath("java"),
+            jar == null ? NodeLauncher.findJar() : Paths.get(jar),
+            options);
+    LOG.log(
+        System.Logger.Level.INFO,
+        startedJar == null ? "Attaching to running MyLocalTon" : "Started " + startedJar);
+    long seqno =
+        NodeLauncher.waitUntilReady(
+            new LiteClientProbe(),
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("mylocalton.readinessTimeout", 300)),
+            current -> {});
+    LOG.log(System.Logger.Level.INFO, "MyLocalTon is ready at masterchain seqno " + seqno);
+    return new LocalNode(startedJar, seqno);
+  }
+
+  /** Global config of the local network, for lite-client, tonlib or ton4j. */
+  public Path getGlobalConfigPath() {
+    return NodeLauncher.getGlobalConfigPath();
+  }
+
+  /** Seqno of the last masterchain block when the node became ready. */
+  public long getReadySeqno() {
+    return readySeqno;
+  }
+
+  /** Whether the node was started by the tests rather than attached to. */
+  public boolean isStartedByTests() {
+    return startedJar != null;
+  }
+
+  /**
+   * Gets the pool of pre-funded wallets, read on first use. If there is none and {@code
+   * mylocalton.poolWallets} is set, the pool is created first, which takes a few blocks per wallet.
+   *
+   * @return the wallet pool
+   * @throws IOException if the pool file is missing or malformed, or cannot be created
+   */
+  public synchronized WalletPool getWalletPool() throws IOException {
+    if (walletPool == null) {
+      String file = System.getProperty("mylocalton.walletPool");
+      Path poolFile = file == null ? WalletPool.getDefaultFile() : Paths.get(file);
+      if (!Files.exists(poolFile)) {
+        createWalletPool(poolFile);
+      }
+      walletPool = WalletPool.load(poolFile);
+    }
+    return walletPool;
+  }
+
+  private void createWalletPool(Path poolFile) throws IOException {
+    int count = Integer.getInteger("mylocalton.poolWallets", 0);
+    if (count <= 0) {
+      throw new IOException(
+          "No wallet pool at "
+              + poolFile
+              + ", set \"Pool wallets\" in the MyLocalTon tool window before genesis"
+              + " or the mylocalton.poolWallets system property");
+    }
+    // Attached to a node whose pool the IDE is still creating, it would fund the same wallets
+    if (startedJar == null
+        && Files.exists(poolFile.resolveSibling(poolFile.getFileName() + ".partial"))) {
+      throw new IOException("The wallet pool at " + poolFile + " is still being created");
+    }
+    try {
+      new WalletPoolCreator(new LiteClientChain())
+          .create(count, Long.getLong("mylocalton.poolWalletTons", 1000), poolFile);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while creating the wallet pool", e);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Cannot create the wallet pool: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public void close() throws Exception {
+    synchronized (this) {
+      if (walletPool != null) {
+        walletPool.close();
+      }
+    }
+    // Leave a node that was running before the tests alone
+    if (startedJar != null) {
+      LOG.log(System.Logger.Level.INFO, "Stopping MyLocalTon started by the tests");
+      NodeLauncher.stop(
+          NodeLauncher.getJdkExecutablePath("jps"), startedJar.getFileName().toString());
+    }
+  }
+}
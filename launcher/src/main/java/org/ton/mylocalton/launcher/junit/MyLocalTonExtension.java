@@ -0,0 +1,128 @@
+package org.ton.mylocalton.launcher.junit;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.ton.mylocalton.launcher.Wallet;
+import org.ton.mylocalton.launcher.WalletPool;
+
+/**
+ * JUnit 5 extension running tests against one warm local chain.
+ *
+ * <p>The node is started, or attached to, once per JVM and shared by all test classes. Test methods
+ * and constructors can take a {@link LocalNode} and any number of {@link Wallet} parameters. Every
+ * test class leases its own wallets from the pool of pre-funded wallets: the first {@code Wallet}
+ * parameter of all its tests is the same wallet, the second one another, and so on. Wallets are
+ * returned to the pool when the class is done, so classes running in parallel never share a wallet.
+ */
+public class MyLocalTonExtension implements BeforeAllCallback, ParameterResolver {
+  private static final ExtensionContext.Namespace NAMESPACE =
+      ExtensionContext.Namespace.create(MyLocalTonExtension.class);
+
+  @Override
+  public void beforeAll(ExtensionContext context) {
+    getNode(context);
+  }
+
+  @Override
+  public boolean supportsParameter(
+      ParameterContext parameterContext, ExtensionContext extensionContext) {
+    Class<?> type = parameterContext.getParameter().getType();
+    return type == LocalNode.class || type == Wallet.class;
+  }
+
+  @Override
+  public Object resolveParameter(
+      ParameterContext parameterContext, ExtensionContext extensionContext) {
+    LocalNode node = getNode(extensionContext);
+    if (parameterContext.getParameter().getType() == LocalNode.class) {
+      return node;
+    }
+
+    // Position among the Wallet parameters of this method or constructor
+    int walletIndex = 0;
+    Class<?>[] types = parameterContext.getDeclaringExecutable().getParameterTypes();
+    for (int i = 0; i < parameterContext.getIndex(); i++) {
+      if (types[i] == Wallet.class) {
+        walletIndex++;
+      }
+    }
+    try {
+      ExtensionContext classContext = getClassContext(extensionContext);
+      ClassWallets classWallets =
+          classContext
+              .getStore(NAMESPACE)
+              .getOrComputeIfAbsent(
+                  ClassWallets.class, key -> new ClassWallets(pool(node)), ClassWallets.class);
+      return classWallets.get(walletIndex);
+    } catch (RuntimeException e) {
+      throw new ParameterResolutionException(
+          "Cannot lease a wallet for " + extensionContext.getDisplayName() + ": " + e.getMessage(),
+          e);
+    }
+  }
+
+  private static LocalNode getNode(ExtensionContext context) {
+    return context
+        .getRoot()
+        .getStore(NAMESPACE)
+        .getOrComputeIfAbsent(
+            LocalNode.class,
+            key -> {
+              try {
+                return LocalNode.startOrAttach();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExtensionConfigurationException("Interrupted while starting MyLocalTon");
+              } catch (Exception e) {
+                throw new ExtensionConfigurationException(
+                    "Cannot start MyLocalTon: " + e.getMessage(), e);
+              }
+            },
+            LocalNode.class);
+  }
+
+  private static ExtensionContext getClassContext(ExtensionContext context) {
+    ExtensionContext current = context;
+    while (current.getTestMethod().isPresent() && current.getParent().isPresent()) {
+      current = current.getParent().get();
+    }
+    return current;
+  }
+
+  private static WalletPool pool(LocalNode node) {
+    try {
+      return node.getWalletPool();
+    } catch (Exception e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /** Wallets leased by one test class, returned to the pool when the class is done. */
+  private static class ClassWallets implements ExtensionContext.Store.CloseableResource {
+    private final WalletPool pool;
+    private final List<Wallet> wallets = new ArrayList<>();
+
+    ClassWallets(WalletPool pool) {
+      this.pool = pool;
+    }
+
+    synchronized Wallet get(int index) {
+      while (wallets.size() <= index) {
+        wallets.add(pool.lease());
+      }
+      return wallets.get(index);
+    }
+
+    @Override
+    public synchronized void close() {
+      wallets.forEach(pool::release);
+      wallets.clear();
+    }
+  }
+}
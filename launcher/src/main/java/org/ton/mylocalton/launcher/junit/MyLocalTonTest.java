@@ -0,0 +1,27 @@
+package org.ton.mylocalton.launcher.junit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+/**
+ * Runs a test class against the local chain, see {@link MyLocalTonExtension}.
+ *
+ * <pre>{@code
+ * @MyLocalTonTest
+ * class TransferTest {
+ *   @Test
+ *   void transfer(LocalNode node, Wallet sender, Wallet receiver) { ... }
+ * }
+ * }</pre>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@ExtendWith(MyLocalTonExtension.class)
+public @interface MyLocalTonTest {}
@@ -0,0 +1,61 @@
+package org.ton.mylocalton.launcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class WalletPoolCreatorTest {
+  @Test
+  void walletCodeIsV3r2() {
+    assertEquals(
+        "84dafa449f98a6987789ba232358072bc0f76dc4524002a5d0918b9a75d2d599",
+        HexFormat.of().formatHex(WalletPoolCreator.WALLET_V3R2_CODE.hash()));
+  }
+
+  @Test
+  void walletAddressDependsOnKey() {
+    byte[] key = new byte[32];
+    String address = WalletPoolCreator.walletAddress(key);
+    assertTrue(address.matches("0:[0-9a-f]{64}"), address);
+    assertEquals(address, WalletPoolCreator.walletAddress(key.clone()));
+    key[31] = 1;
+    assertNotEquals(address, WalletPoolCreator.walletAddress(key));
+  }
+
+  @Test
+  void readsFiftAddress() throws IOException {
+    byte[] bytes = new byte[36];
+    bytes[0] = (byte) 0xab;
+    bytes[32] = bytes[33] = bytes[34] = bytes[35] = (byte) 0xff;
+    assertEquals("-1:ab" + "00".repeat(31), WalletPoolCreator.readFiftAddress(bytes));
+    assertThrows(IOException.class, () -> WalletPoolCreator.readFiftAddress(new byte[32]));
+  }
+
+  @Test
+  void transferBodyCarriesUpToFourMessages() throws Exception {
+    PrivateKey key = KeyPairGenerator.getInstance("Ed25519").generateKeyPair().getPrivate();
+    String destination = WalletPoolCreator.walletAddress(new byte[32]);
+    List<String> destinations =
+        Collections.nCopies(WalletPoolCreator.TRANSFERS_PER_MESSAGE, destination);
+
+    TonCell body = WalletPoolCreator.transferBody(key, 5, destinations, BigInteger.TEN);
+    // Signature, seqno and a send mode per message
+    assertEquals(512 + 32 + 4 * 8, body.getBitLength());
+    assertEquals(4, body.getRefs().size());
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            WalletPoolCreator.transferBody(
+                key, 5, Collections.nCopies(5, destination), BigInteger.TEN));
+  }
+}
@@ -0,0 +1,127 @@
+package org.ton.mylocalton.launcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WalletPoolTest {
+  @TempDir Path directory;
+
+  private static List<Wallet> wallets(int count) {
+    List<Wallet> wallets = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      wallets.add(new Wallet(i, "0:" + i, "public" + i, "private" + i, 698983191));
+    }
+    return wallets;
+  }
+
+  @Test
+  void leasesEveryWalletOnce() {
+    WalletPool pool = new WalletPool(wallets(70));
+    Set<Integer> leased = new HashSet<>();
+    for (int i = 0; i < pool.size(); i++) {
+      leased.add(pool.lease().getIndex());
+    }
+    assertEquals(70, leased.size());
+  }
+
+  @Test
+  void exhaustedPoolThrows() {
+    WalletPool pool = new WalletPool(wallets(2));
+    pool.lease();
+    pool.lease();
+    assertThrows(IllegalStateException.class, pool::lease);
+  }
+
+  @Test
+  void emptyPoolThrows() {
+    assertThrows(IllegalStateException.class, new WalletPool(List.of())::lease);
+  }
+
+  @Test
+  void releasedWalletIsLeasedAgain() {
+    WalletPool pool = new WalletPool(wallets(2));
+    Wallet first = pool.lease();
+    Wallet second = pool.lease();
+    pool.release(first);
+    assertEquals(first.getIndex(), pool.lease().getIndex());
+    assertNotEquals(first.getIndex(), second.getIndex());
+  }
+
+  @Test
+  void concurrentLeasesNeverShareWallets() throws Exception {
+    WalletPool pool = new WalletPool(wallets(64));
+    Set<Integer> leased = ConcurrentHashMap.newKeySet();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  for (int i = 0; i < 8; i++) {
+                    if (!leased.add(pool.lease().getIndex())) {
+                      throw new AssertionError("Wallet leased twice");
+                    }
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(64, leased.size());
+    assertThrows(IllegalStateException.class, pool::lease);
+  }
+
+  @Test
+  void poolsOfTheSameFileShareLeases() throws IOException {
+    Path file = directory.resolve("wallet-pool.json");
+    Files.writeString(
+        file,
+        "[{\"address\":\"0:00\",\"publicKey\":\"aa\",\"privateKey\":\"bb\",\"subWalletId\":1},"
+            + "{\"address\":\"0:01\",\"publicKey\":\"cc\",\"privateKey\":\"dd\",\"subWalletId\":1}]",
+        StandardCharsets.UTF_8);
+    try (WalletPool first = WalletPool.load(file);
+        WalletPool second = WalletPool.load(file)) {
+      assertEquals(2, first.size());
+      Wallet wallet = first.lease();
+      assertEquals("0:0" + wallet.getIndex(), wallet.getAddress());
+      assertNotEquals(wallet.getIndex(), second.lease().getIndex());
+      assertThrows(IllegalStateException.class, second::lease);
+
+      first.release(wallet);
+      assertEquals(wallet.getIndex(), second.lease().getIndex());
+    }
+  }
+
+  @Test
+  void malformedFileIsRejected() throws IOException {
+    Path file = directory.resolve("wallet-pool.json");
+    Files.writeString(file, "[{\"address\":\"0:00\"}]", StandardCharsets.UTF_8);
+    assertThrows(IOException.class, () -> WalletPool.load(file));
+  }
+}
@@ -5,6 +5,7 @@ plugins {
 }
 
 rootProject.name = "mylocalton-intellij-plugin"
+include("launcher")
 gradle.startParameter.showStacktrace = ShowStacktrace.ALWAYS_FULL
 
 dependencyResolutionManagement {
@@ -0,0 +1,340 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Watch list of accounts whose balance, state and seqno are shown as they change.
+ *
+ * <p>Watched accounts are not polled. For every new block the {@link ChainFollower} reports the
+ * accounts that have transactions in it, and only watched accounts among them are loaded again, so
+ * the cost per block depends on the accounts touched, not on the size of the watch list. Listeners
+ * get the fields that changed with their old and new values, and every change raises an IDE
+ * notification with the same diff.
+ */
+public class AccountWatcher {
+  private static final Logger LOG = Logger.getInstance(AccountWatcher.class);
+
+  public static final String BALANCE = "balance";
+  public static final String STATE = "state";
+  public static final String SEQNO = "seqno";
+  public static final String LAST_LT = "last lt";
+  public static final String CODE = "code";
+  public static final String DATA = "data";
+
+  /** A field of an account that changed. */
+  public static final class FieldChange {
+    private final String field;
+    private final String oldValue;
+    private final String newValue;
+
+    FieldChange(String field, String oldValue, String newValue) {
+      this.field = field;
+      this.oldValue = oldValue;
+      this.newValue = newValue;
+    }
+
+    public String getField() {
+      return field;
+    }
+
+    public String getOldValue() {
+      return oldValue;
+    }
+
+    public String getNewValue() {
+      return newValue;
+    }
+
+    @Override
+    public String toString() {
+      return field + ": " + oldValue + " -> " + newValue;
+    }
+  }
+
+  /** New fields of a watched account and how they differ from the previous ones. */
+  public static final class Change {
+    private final String address;
+    private final long masterchainSeqno;
+    private final Map<String, String> fields;
+    private final List<FieldChange> changes;
+
+    Change(
+        String address,
+        long masterchainSeqno,
+        Map<String, String> fields,
+        List<FieldChange> changes) {
+      this.address = address;
+      this.masterchainSeqno = masterchainSeqno;
+      this.fields = Collections.unmodifiableMap(fields);
+      this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /** Raw address of the account. */
+    public String getAddress() {
+      return address;
+    }
+
+    /** Block that touched the account, -1 for the first load. */
+    public long getMasterchainSeqno() {
+      return masterchainSeqno;
+    }
+
+    /** All fields, see the field name constants. */
+    public Map<String, String> getFields() {
+      return fields;
+    }
+
+    /** Fields that changed, empty for the first load. */
+    public List<FieldChange> getChanges() {
+      return changes;
+    }
+  }
+
+  private final ChainDataCache chainDataCache;
+  private final TvmEmulator tvmEmulator;
+  private final Set<String> watched = new LinkedHashSet<>();
+  private final Map<String, Map<String, String>> fields = new HashMap<>();
+  // Latest load of each account, results of older loads that finish later are dropped
+  private final Map<String, Long> latestLoad = new HashMap<>();
+  private final List<Consumer<Change>> listeners = new CopyOnWriteArrayList<>();
+  private long loads;
+
+  public AccountWatcher(ChainDataCache chainDataCache, TvmEmulator tvmEmulator) {
+    this.chainDataCache = chainDataCache;
+    this.tvmEmulator = tvmEmulator;
+    watched.addAll(MyLocalTonSettings.getInstance().getWatchedAccounts());
+  }
+
+  /**
+   * Registers a listener called on any thread whenever the fields of a watched account were loaded.
+   *
+   * @param listener the listener
+   */
+  public void addListener(Consumer<Change> listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Consumer<Change> listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Adds an account to the watch list and loads it.
+   *
+   * @param rawAddress address as returned by {@link TonAddress#toRaw(String)}
+   */
+  public void add(String rawAddress) {
+    synchronized (this) {
+      if (!watched.add(rawAddress)) {
+        return;
+      }
+      MyLocalTonSettings.getInstance().setWatchedAccounts(new ArrayList<>(watched));
+    }
+    load(rawAddress, -1);
+  }
+
+  public synchronized void remove(String rawAddress) {
+    watched.remove(rawAddress);
+    fields.remove(rawAddress);
+    latestLoad.remove(rawAddress);
+    MyLocalTonSettings.getInstance().setWatchedAccounts(new ArrayList<>(watched));
+  }
+
+  public synchronized List<String> getWatched() {
+    return new ArrayList<>(watched);
+  }
+
+  /**
+   * Returns the last loaded fields of a watched account.
+   *
+   * @param rawAddress the address
+   * @return the fields, or null if the account was not loaded yet
+   */
+  public synchronized Map<String, String> getFields(String rawAddress) {
+    Map<String, String> accountFields = fields.get(rawAddress);
+    return accountFields == null ? null : new LinkedHashMap<>(accountFields);
+  }
+
+  /** Loads all watched accounts, e.g. when the watch list is shown for the first time. */
+  public void loadAll() {
+    for (String address : getWatched()) {
+      load(address, -1);
+    }
+  }
+
+  /**
+   * Loads the watched accounts touched by a new block.
+   *
+   * @param event block from the {@link ChainFollower}
+   */
+  public void onBlock(ChainFollower.BlockEvent event) {
+    List<String> touched = new ArrayList<>();
+    synchronized (this) {
+      Set<String> accounts = event.getTouchedAccounts();
+      // Iterates the smaller of both sets
+      if (accounts.size() < watched.size()) {
+        for (String address : accounts) {
+          if (watched.contains(address)) {
+            touched.add(address);
+          }
+        }
+      } else {
+        for (String address : watched) {
+          if (accounts.contains(address)) {
+            touched.add(address);
+          }
+        }
+      }
+    }
+    for (String address : touched) {
+      load(address, event.getMasterchainSeqno());
+    }
+  }
+
+  private void load(String address, long masterchainSeqno) {
+    TonlibClient client = TonlibService.getInstance().getClientIfStarted();
+    if (client == null) {
+      return;
+    }
+    long load;
+    synchronized (this) {
+      load = ++loads;
+      latestLoad.put(address, load);
+    }
+    chainDataCache
+        .getAccountState(client, address)
+        .thenCompose(
+            state -> seqno(client, address, state).thenApply(seqno -> toFields(state, seqno)))
+        .whenComplete(
+            (accountFields, error) -> {
+              if (error != null) {
+                LOG.warn(
+                    "Cannot load watched account "
+                        + address
+                        + ": "
+                        + TonlibClient.rootMessage(error));
+              } else {
+                publish(address, load, masterchainSeqno, accountFields);
+              }
+            });
+  }
+
+  private void publish(
+      String address, long load, long masterchainSeqno, Map<String, String> accountFields) {
+    Change change;
+    synchronized (this) {
+      if (!Objects.equals(latestLoad.get(address), load)) {
+        // Removed, or a newer load is running
+        return;
+      }
+      Map<String, String> previous = fields.put(address, accountFields);
+      List<FieldChange> changes = new ArrayList<>();
+      if (previous != null) {
+        for (Map.Entry<String, String> field : accountFields.entrySet()) {
+          String oldValue = previous.get(field.getKey());
+          if (!Objects.equals(oldValue, field.getValue())) {
+            changes.add(new FieldChange(field.getKey(), oldValue, field.getValue()));
+          }
+        }
+        if (changes.isEmpty()) {
+          return;
+        }
+      }
+      change = new Change(address, masterchainSeqno, accountFields, changes);
+    }
+    for (Consumer<Change> listener : listeners) {
+      listener.accept(change);
+    }
+    if (!change.getChanges().isEmpty()) {
+      notifyChange(change);
+    }
+  }
+
+  /** Raises one notification per change with the field diffs, the first load is not a change. */
+  private static void notifyChange(Change change) {
+    StringBuilder content = new StringBuilder();
+    for (FieldChange fieldChange : change.getChanges()) {
+      if (content.length() > 0) {
+        content.append("<br>");
+      }
+      content.append(StringUtil.escapeXmlEntities(fieldChange.toString()));
+    }
+    NotificationGroupManager.getInstance()
+        .getNotificationGroup(NodeLogMonitor.NOTIFICATION_GROUP)
+        .createNotification(
+            "Watched account "
+                + change.getAddress()
+                + " changed in block "
+                + change.getMasterchainSeqno(),
+            content.toString(),
+            NotificationType.INFORMATION)
+        .notify(null);
+  }
+
+  /** Runs the {@code seqno} get-method of active accounts, e.g. wallets, on the cached state. */
+  private CompletableFuture<String> seqno(TonlibClient client, String address, JSONObject state) {
+    if (!"active".equals(InspectorPanel.accountStatus(state))) {
+      return CompletableFuture.completedFuture("-");
+    }
+    return tvmEmulator
+        .runGetMethod(client, address, "seqno", new JSONArray())
+        .handle(
+            (result, error) -> {
+              if (error != null || ChainFollower.number(result, "exit_code") != 0) {
+                // Not a wallet
+                return "-";
+              }
+              JSONObject entry = (JSONObject) ((JSONArray) result.get("stack")).get(0);
+              return String.valueOf(
+                  ChainFollower.number((JSONObject) entry.get("number"), "number"));
+            });
+  }
+
+  private static Map<String, String> toFields(JSONObject state, String seqno) {
+    Map<String, String> accountFields = new LinkedHashMap<>();
+    accountFields.put(BALANCE, InspectorPanel.toTon(state.get("balance")));
+    accountFields.put(STATE, InspectorPanel.accountStatus(state));
+    accountFields.put(SEQNO, seqno);
+    JSONObject lastTransaction = (JSONObject) state.get("last_transaction_id");
+    accountFields.put(
+        LAST_LT, lastTransaction == null ? "-" : String.valueOf(lastTransaction.get("lt")));
+    accountFields.put(CODE, digest((String) state.get("code")));
+    accountFields.put(DATA, digest((String) state.get("data")));
+    return accountFields;
+  }
+
+  /** Short hash of a base64 cell, enough to tell that code or data changed. */
+  private static String digest(String base64) {
+    if (base64 == null || base64.isEmpty()) {
+      return "-";
+    }
+    try {
+      byte[] hash =
+          MessageDigest.getInstance("SHA-256").digest(base64.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(hash, 0, 4);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
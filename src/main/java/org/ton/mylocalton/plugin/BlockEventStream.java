@@ -0,0 +1,267 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Publishes the blocks and transactions found by the {@link ChainFollower} as a Server-Sent Events
+ * stream on localhost, so indexers, the explorer and test tools share the plugin's single poller
+ * instead of each polling the lite-server.
+ *
+ * <ul>
+ *   <li>{@code GET /events} - {@code block} events, one per masterchain block with its shard blocks
+ *       and transaction ids, and a {@code transaction} event per transaction. {@code
+ *       ?account=<address>} only streams the transactions of that account.
+ *   <li>{@code GET /status} - subscribers and dropped events as JSON.
+ * </ul>
+ *
+ * <p>Every subscriber has its own bounded queue. The follower only offers to the queues and never
+ * waits for a slow subscriber; events that do not fit are dropped and the subscriber receives an
+ * {@code overflow} event with their number, telling it to resync from the node.
+ */
+public class BlockEventStream {
+  private static final Logger LOG = Logger.getInstance(BlockEventStream.class);
+
+  private static final int QUEUE_CAPACITY = 1024;
+  private static final long HEARTBEAT_SECONDS = 15;
+
+  private final ChainFollower chainFollower;
+  private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+  private final AtomicLong droppedTotal = new AtomicLong();
+  private final Consumer<ChainFollower.BlockEvent> listener = this::publish;
+  private HttpServer server;
+  private ExecutorService executor;
+
+  public BlockEventStream(ChainFollower chainFollower) {
+    this.chainFollower = chainFollower;
+  }
+
+  /**
+   * Starts serving on the loopback interface.
+   *
+   * @param port port to listen on
+   * @throws IOException if the port cannot be bound
+   */
+  public synchronized void start(int port) throws IOException {
+    stop();
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    AtomicInteger threadNumber = new AtomicInteger();
+    // One thread per connected subscriber, streams are long-lived
+    executor =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              Thread thread =
+                  new Thread(
+                      runnable,
+                      "MyLocalTon-Plugin - Event Stream " + threadNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    server.setExecutor(executor);
+    server.createContext("/events", this::handleEvents);
+    server.createContext("/status", this::handleStatus);
+    server.start();
+    chainFollower.addListener(listener);
+    LOG.warn("Block event stream listening on http://127.0.0.1:" + port + "/events");
+  }
+
+  public synchronized void stop() {
+    if (server == null) {
+      return;
+    }
+    chainFollower.removeListener(listener);
+    subscribers.forEach(Subscriber::close);
+    server.stop(0);
+    executor.shutdownNow();
+    server = null;
+    executor = null;
+  }
+
+  public synchronized boolean isRunning() {
+    return server != null;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /** Called on the monitor thread, must not block. */
+  private void publish(ChainFollower.BlockEvent event) {
+    if (subscribers.isEmpty()) {
+      return;
+    }
+    String blockEvent = sse("block", blockJson(event));
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.account == null) {
+        subscriber.offer(blockEvent);
+      }
+    }
+    for (ChainFollower.ShortTransaction transaction : event.getTransactions()) {
+      String transactionEvent = null;
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.account == null || subscriber.account.equals(transaction.getAddress())) {
+          if (transactionEvent == null) {
+            transactionEvent =
+                sse(
+                    "transaction",
+                    transactionJson(event.getMasterchainSeqno(), transaction).toJSONString());
+          }
+          subscriber.offer(transactionEvent);
+        }
+      }
+    }
+  }
+
+  private void handleEvents(HttpExchange exchange) throws IOException {
+    String account;
+    try {
+      account = accountParameter(exchange.getRequestURI().getRawQuery());
+    } catch (RuntimeException e) {
+      sendPlain(exchange, 400, "Invalid account: " + e.getMessage());
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    exchange.sendResponseHeaders(200, 0);
+
+    Subscriber subscriber = new Subscriber(account);
+    subscribers.add(subscriber);
+    LOG.warn("Event stream subscriber connected, " + subscribers.size() + " in total");
+    try (OutputStream out = exchange.getResponseBody()) {
+      // Tells the client which block the stream starts after
+      write(
+          out,
+          ": following from masterchain seqno " + chainFollower.getLastMasterchainSeqno() + "\n\n");
+      while (!subscriber.closed) {
+        String event = subscriber.queue.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        long dropped = subscriber.dropped.getAndSet(0);
+        if (dropped > 0) {
+          write(out, sse("overflow", "{\"dropped\":" + dropped + "}"));
+        }
+        // A comment line as heartbeat, so dead connections are noticed
+        write(out, event == null ? ": ping\n\n" : event);
+      }
+    } catch (IOException e) {
+      LOG.debug("Event stream subscriber disconnected: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      subscribers.remove(subscriber);
+      exchange.close();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void handleStatus(HttpExchange exchange) throws IOException {
+    JSONObject status = new JSONObject();
+    status.put("subscribers", subscribers.size());
+    status.put("lastMasterchainSeqno", chainFollower.getLastMasterchainSeqno());
+    status.put("droppedEvents", droppedTotal.get());
+    byte[] body = status.toJSONString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static void sendPlain(HttpExchange exchange, int code, String message)
+      throws IOException {
+    byte[] body = message.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(code, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static void write(OutputStream out, String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  private static String accountParameter(String query) {
+    if (query == null) {
+      return null;
+    }
+    for (String parameter : query.split("&")) {
+      if (parameter.startsWith("account=")) {
+        return TonAddress.toRaw(
+            URLDecoder.decode(parameter.substring("account=".length()), StandardCharsets.UTF_8));
+      }
+    }
+    return null;
+  }
+
+  private static String sse(String event, String data) {
+    return "event: " + event + "\ndata: " + data + "\n\n";
+  }
+
+  @SuppressWarnings("unchecked")
+  private static String blockJson(ChainFollower.BlockEvent event) {
+    JSONArray blocks = new JSONArray();
+    blocks.addAll(event.getBlocks());
+    JSONArray transactions = new JSONArray();
+    for (ChainFollower.ShortTransaction transaction : event.getTransactions()) {
+      transactions.add(transactionJson(event.getMasterchainSeqno(), transaction));
+    }
+    JSONObject json = new JSONObject();
+    json.put("masterchainSeqno", event.getMasterchainSeqno());
+    json.put("genUtime", event.getGenUtime());
+    json.put("blocks", blocks);
+    json.put("transactions", transactions);
+    return json.toJSONString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject transactionJson(
+      long masterchainSeqno, ChainFollower.ShortTransaction transaction) {
+    JSONObject json = new JSONObject();
+    json.put("masterchainSeqno", masterchainSeqno);
+    json.put("account", transaction.getAddress());
+    json.put("lt", transaction.getLt());
+    json.put("hash", transaction.getHash());
+    return json;
+  }
+
+  /** A connected client with its own bounded queue. */
+  private class Subscriber {
+    private final String account;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    Subscriber(String account) {
+      this.account = account;
+    }
+
+    void offer(String event) {
+      if (!queue.offer(event)) {
+        dropped.incrementAndGet();
+        droppedTotal.incrementAndGet();
+      }
+    }
+
+    void close() {
+      closed = true;
+    }
+  }
+}
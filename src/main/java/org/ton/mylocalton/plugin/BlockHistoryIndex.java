@@ -0,0 +1,350 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Append-only index of the masterchain blocks seen by the {@link ChainFollower}, kept in a
+ * memory-mapped file under {@code ~/.mylocalton} so it survives IDE restarts.
+ *
+ * <p>The file starts with a {@value #HEADER_SIZE} byte header followed by {@value #RECORD_SIZE}
+ * byte records, one per seqno from the first indexed block on, so a block is found by its seqno
+ * without searching. Blocks produced while the IDE was closed are recorded as gaps with the time of
+ * the block before them, which keeps the times sorted for the binary search by time. The index is
+ * cleared when the chain is replaced, e.g. after Reset, which is recognized by its zero state.
+ *
+ * <pre>
+ * header: magic "MLTB" | version int | record size int | reserved int
+ *         | first seqno long | record count long | zero state root hash 32 bytes
+ * record: seqno long | gen_utime long | root hash 32 bytes | file hash 32 bytes
+ *         | transactions int | flags int
+ * </pre>
+ */
+public class BlockHistoryIndex implements AutoCloseable {
+  private static final Logger LOG = Logger.getInstance(BlockHistoryIndex.class);
+
+  static final int HEADER_SIZE = 64;
+  static final int RECORD_SIZE = 88;
+  private static final int MAGIC = 0x4d4c5442; // MLTB
+  private static final int VERSION = 1;
+  private static final int HASH_SIZE = 32;
+  // The mapping grows by this many records at a time
+  private static final int GROW_RECORDS = 16 * 1024;
+  // Gaps larger than this start a new index instead of being filled
+  private static final long MAX_GAP = 1_000_000;
+  // A mapping is limited to 2 GB, the index starts over once it is full
+  private static final long MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+  private static final long MAX_MAPPING = HEADER_SIZE + MAX_RECORDS * RECORD_SIZE;
+  private static final int FLAG_PRESENT = 1;
+
+  private static final int FIRST_SEQNO_OFFSET = 16;
+  private static final int COUNT_OFFSET = 24;
+  private static final int ZERO_STATE_OFFSET = 32;
+
+  /** An indexed masterchain block. */
+  public static final class Entry {
+    private final long seqno;
+    private final long genUtime;
+    private final String rootHash;
+    private final String fileHash;
+    private final int transactionCount;
+
+    Entry(long seqno, long genUtime, String rootHash, String fileHash, int transactionCount) {
+      this.seqno = seqno;
+      this.genUtime = genUtime;
+      this.rootHash = rootHash;
+      this.fileHash = fileHash;
+      this.transactionCount = transactionCount;
+    }
+
+    public long getSeqno() {
+      return seqno;
+    }
+
+    /** Creation time, unix seconds. */
+    public long getGenUtime() {
+      return genUtime;
+    }
+
+    /** Base64 root hash. */
+    public String getRootHash() {
+      return rootHash;
+    }
+
+    /** Base64 file hash. */
+    public String getFileHash() {
+      return fileHash;
+    }
+
+    /** Transactions in the block and the shard blocks it references. */
+    public int getTransactionCount() {
+      return transactionCount;
+    }
+  }
+
+  private final Path file;
+  private final FileChannel channel;
+  private MappedByteBuffer buffer;
+  private long firstSeqno;
+  private long count;
+
+  /**
+   * Opens the index, creating it if it does not exist. An index with a different format is
+   * replaced.
+   *
+   * @param file the index file
+   * @throws IOException if the file cannot be opened or mapped
+   */
+  public BlockHistoryIndex(Path file) throws IOException {
+    this.file = file;
+    Files.createDirectories(file.getParent());
+    channel =
+        FileChannel.open(
+            file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    boolean valid = channel.size() >= HEADER_SIZE;
+    map(
+        Math.min(
+            Math.max(channel.size(), HEADER_SIZE + (long) GROW_RECORDS * RECORD_SIZE),
+            MAX_MAPPING));
+    if (valid
+        && buffer.getInt(0) == MAGIC
+        && buffer.getInt(4) == VERSION
+        && buffer.getInt(8) == RECORD_SIZE) {
+      firstSeqno = buffer.getLong(FIRST_SEQNO_OFFSET);
+      count = buffer.getLong(COUNT_OFFSET);
+      if (HEADER_SIZE + count * RECORD_SIZE > buffer.capacity()) {
+        LOG.warn("Block history index " + file + " is truncated, starting a new one");
+        clear(null);
+      }
+    } else {
+      clear(null);
+    }
+  }
+
+  /**
+   * Records a new masterchain block. Blocks that are already indexed are ignored.
+   *
+   * @param event block from the {@link ChainFollower}
+   */
+  public void onBlock(ChainFollower.BlockEvent event) {
+    try {
+      append(
+          event.getZeroStateRootHash(),
+          event.getMasterchainSeqno(),
+          event.getGenUtime(),
+          decode((String) event.getMasterchainBlock().get("root_hash")),
+          decode((String) event.getMasterchainBlock().get("file_hash")),
+          event.getTransactions().size());
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Cannot index block " + event.getMasterchainSeqno() + ": " + e.getMessage());
+    }
+  }
+
+  synchronized void append(
+      String zeroStateRootHash,
+      long seqno,
+      long genUtime,
+      byte[] rootHash,
+      byte[] fileHash,
+      int transactionCount)
+      throws IOException {
+    byte[] zeroState = decode(zeroStateRootHash);
+    if (count > 0 && !Arrays.equals(zeroState, zeroStateRootHash())) {
+      LOG.warn("New chain, clearing the block history index");
+      count = 0;
+    }
+    if (count > 0) {
+      long lastSeqno = firstSeqno + count - 1;
+      if (seqno <= lastSeqno) {
+        // Seen before, e.g. by the previous IDE session
+        return;
+      }
+      if (seqno - lastSeqno > MAX_GAP || seqno - firstSeqno >= MAX_RECORDS) {
+        count = 0;
+      }
+    }
+    if (count == 0) {
+      clear(zeroState);
+      firstSeqno = seqno;
+      buffer.putLong(FIRST_SEQNO_OFFSET, firstSeqno);
+    }
+    long index = seqno - firstSeqno;
+    ensureCapacity(index + 1);
+    long gapUtime = count == 0 ? genUtime : buffer.getLong(position(count - 1) + 8);
+    for (long gap = count; gap < index; gap++) {
+      writeRecord(gap, firstSeqno + gap, gapUtime, null, null, 0, 0);
+    }
+    writeRecord(index, seqno, genUtime, rootHash, fileHash, transactionCount, FLAG_PRESENT);
+    // The count is written last, a crash before leaves the index without the new record
+    count = index + 1;
+    buffer.putLong(COUNT_OFFSET, count);
+  }
+
+  /**
+   * Looks up a block by its seqno.
+   *
+   * @param seqno masterchain seqno
+   * @return the block, or null if it was not indexed
+   */
+  public synchronized Entry get(long seqno) {
+    if (seqno < firstSeqno || seqno >= firstSeqno + count) {
+      return null;
+    }
+    return readRecord(seqno - firstSeqno);
+  }
+
+  /**
+   * Finds the block that was the last masterchain block at the given time.
+   *
+   * @param utime unix seconds
+   * @return the last indexed block created at or before the time, or null if there is none
+   */
+  public synchronized Entry findByTime(long utime) {
+    // First record created after the time
+    long low = 0;
+    long high = count;
+    while (low < high) {
+      long middle = (low + high) >>> 1;
+      if (buffer.getLong(position(middle) + 8) <= utime) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    // Gaps carry the time of the block before them
+    for (long index = low - 1; index >= 0; index--) {
+      Entry entry = readRecord(index);
+      if (entry != null) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the newest indexed block.
+   *
+   * @return the block, or null if the index is empty
+   */
+  public synchronized Entry getLast() {
+    return count == 0 ? null : readRecord(count - 1);
+  }
+
+  public synchronized long getFirstSeqno() {
+    return count == 0 ? -1 : firstSeqno;
+  }
+
+  /** Number of records including gaps. */
+  public synchronized long size() {
+    return count;
+  }
+
+  /** Drops all blocks, the next one starts a new index. */
+  public synchronized void clear() {
+    clear(null);
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      buffer.force();
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("Cannot close block history index: " + e.getMessage());
+    }
+  }
+
+  private void clear(byte[] zeroStateRootHash) {
+    count = 0;
+    firstSeqno = 0;
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, RECORD_SIZE);
+    buffer.putInt(12, 0);
+    buffer.putLong(FIRST_SEQNO_OFFSET, 0);
+    buffer.putLong(COUNT_OFFSET, 0);
+    buffer.put(
+        ZERO_STATE_OFFSET,
+        zeroStateRootHash == null ? new byte[HASH_SIZE] : zeroStateRootHash,
+        0,
+        HASH_SIZE);
+  }
+
+  private byte[] zeroStateRootHash() {
+    byte[] hash = new byte[HASH_SIZE];
+    buffer.get(ZERO_STATE_OFFSET, hash);
+    return hash;
+  }
+
+  private void writeRecord(
+      long index,
+      long seqno,
+      long genUtime,
+      byte[] rootHash,
+      byte[] fileHash,
+      int transactionCount,
+      int flags) {
+    int position = position(index);
+    buffer.putLong(position, seqno);
+    buffer.putLong(position + 8, genUtime);
+    buffer.put(position + 16, rootHash == null ? new byte[HASH_SIZE] : rootHash, 0, HASH_SIZE);
+    buffer.put(position + 48, fileHash == null ? new byte[HASH_SIZE] : fileHash, 0, HASH_SIZE);
+    buffer.putInt(position + 80, transactionCount);
+    buffer.putInt(position + 84, flags);
+  }
+
+  /** Reads a record, null for a gap. */
+  private Entry readRecord(long index) {
+    int position = position(index);
+    if ((buffer.getInt(position + 84) & FLAG_PRESENT) == 0) {
+      return null;
+    }
+    byte[] rootHash = new byte[HASH_SIZE];
+    byte[] fileHash = new byte[HASH_SIZE];
+    buffer.get(position + 16, rootHash);
+    buffer.get(position + 48, fileHash);
+    return new Entry(
+        buffer.getLong(position),
+        buffer.getLong(position + 8),
+        Base64.getEncoder().encodeToString(rootHash),
+        Base64.getEncoder().encodeToString(fileHash),
+        buffer.getInt(position + 80));
+  }
+
+  private static int position(long index) {
+    return Math.toIntExact(HEADER_SIZE + index * RECORD_SIZE);
+  }
+
+  private void ensureCapacity(long records) throws IOException {
+    long required = HEADER_SIZE + records * RECORD_SIZE;
+    if (required > buffer.capacity()) {
+      // The last growth stops at the 2 GB limit of a mapping
+      map(Math.min(required + (long) GROW_RECORDS * RECORD_SIZE, MAX_MAPPING));
+    }
+  }
+
+  private void map(long size) throws IOException {
+    // Mapping beyond the end of the file extends it
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+  private static byte[] decode(String base64) {
+    byte[] bytes = new byte[HASH_SIZE];
+    if (base64 != null) {
+      byte[] decoded = Base64.getDecoder().decode(base64);
+      System.arraycopy(decoded, 0, bytes, 0, Math.min(decoded.length, HASH_SIZE));
+    }
+    return bytes;
+  }
+}
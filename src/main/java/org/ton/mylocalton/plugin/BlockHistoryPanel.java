@@ -0,0 +1,118 @@
+package org.ton.mylocalton.plugin;
+
+import java.awt.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Tool window tab looking up masterchain blocks in the {@link BlockHistoryIndex}, by seqno or by
+ * the time they were current, e.g. the time a test failed.
+ */
+public class BlockHistoryPanel extends JPanel {
+  private static final DateTimeFormatter TIME_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+  private static final DateTimeFormatter DATE_TIME_INPUT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm[:ss]");
+  private static final DateTimeFormatter TIME_INPUT = DateTimeFormatter.ofPattern("H:mm[:ss]");
+  // Blocks shown before the one found
+  private static final int CONTEXT_BLOCKS = 10;
+
+  private final JTextField queryField = new JTextField();
+  private final JLabel statusLabel = new JLabel(" ");
+  private final DefaultTableModel model =
+      new DefaultTableModel(
+          new Object[] {"Seqno", "Created", "Transactions", "Root hash", "File hash"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+          return false;
+        }
+      };
+
+  public BlockHistoryPanel() {
+    super(new BorderLayout(0, 5));
+
+    JPanel queryPanel = new JPanel(new BorderLayout(5, 0));
+    queryField.setToolTipText(
+        "Seqno, time (HH:mm[:ss], today) or date and time (yyyy-MM-dd HH:mm[:ss]), empty for the"
+            + " latest blocks");
+    JButton findButton = new JButton("Find");
+    queryPanel.add(queryField, BorderLayout.CENTER);
+    queryPanel.add(findButton, BorderLayout.EAST);
+    queryPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+    add(queryPanel, BorderLayout.NORTH);
+
+    JTable table = new JTable(model);
+    table.setFillsViewportHeight(true);
+    add(new JScrollPane(table), BorderLayout.CENTER);
+
+    statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+    add(statusLabel, BorderLayout.SOUTH);
+
+    findButton.addActionListener(e -> find());
+    queryField.addActionListener(e -> find());
+  }
+
+  /** Looks up the entered seqno or time, the index is memory-mapped so this is fast enough. */
+  private void find() {
+    BlockHistoryIndex index = TonlibService.getInstance().getBlockHistory();
+    model.setRowCount(0);
+    if (index == null || index.size() == 0) {
+      statusLabel.setText("No blocks indexed yet");
+      return;
+    }
+    String query = queryField.getText().trim();
+    BlockHistoryIndex.Entry found;
+    if (query.isEmpty()) {
+      found = index.getLast();
+    } else if (query.matches("\\d+")) {
+      found = index.get(Long.parseLong(query));
+    } else {
+      long utime;
+      try {
+        utime = parseTime(query);
+      } catch (DateTimeParseException e) {
+        statusLabel.setText("Enter a seqno, HH:mm[:ss] or yyyy-MM-dd HH:mm[:ss]");
+        return;
+      }
+      found = index.findByTime(utime);
+    }
+    BlockHistoryIndex.Entry last = index.getLast();
+    String range = "indexed " + index.getFirstSeqno() + " - " + last.getSeqno();
+    if (found == null) {
+      statusLabel.setText("Block not indexed, " + range);
+      return;
+    }
+    // The block found first, then the ones before it
+    for (long seqno = found.getSeqno();
+        seqno > found.getSeqno() - CONTEXT_BLOCKS && seqno >= index.getFirstSeqno();
+        seqno--) {
+      BlockHistoryIndex.Entry entry = index.get(seqno);
+      if (entry != null) {
+        model.addRow(
+            new Object[] {
+              entry.getSeqno(),
+              TIME_FORMAT.format(Instant.ofEpochSecond(entry.getGenUtime())),
+              entry.getTransactionCount(),
+              entry.getRootHash(),
+              entry.getFileHash()
+            });
+      }
+    }
+    statusLabel.setText("Block " + found.getSeqno() + ", " + range);
+  }
+
+  private static long parseTime(String query) {
+    LocalDateTime dateTime =
+        query.contains("-")
+            ? LocalDateTime.parse(query, DATE_TIME_INPUT)
+            : LocalDateTime.of(LocalDate.now(), LocalTime.parse(query, TIME_INPUT));
+    return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+  }
+}
@@ -0,0 +1,131 @@
+package org.ton.mylocalton.plugin;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.simple.JSONObject;
+
+/**
+ * Size-bounded LRU cache of account states and recent transactions of the local chain.
+ *
+ * <p>Entries stay valid until a new block touches the account: {@link ChainFollower} reports the
+ * touched accounts and {@link #invalidate} drops exactly those. Repeated lookups of an idle account
+ * are therefore answered from memory without querying the node.
+ */
+public class ChainDataCache {
+  private static final int MAX_ACCOUNTS = 1024;
+  private static final int MAX_TRANSACTION_LISTS = 256;
+
+  private final Map<String, JSONObject> accounts = lruMap(MAX_ACCOUNTS);
+  private final Map<String, JSONObject> transactions = lruMap(MAX_TRANSACTION_LISTS);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  // Incremented on every invalidation, results loaded across an invalidation are not cached
+  private long generation;
+
+  /**
+   * Gets the state of an account, from the cache if it was not touched since it was loaded.
+   *
+   * @param client tonlib client used on a cache miss
+   * @param address raw address, see {@link TonAddress#toRaw}
+   * @return future with a {@code raw.fullAccountState} object
+   */
+  public CompletableFuture<JSONObject> getAccountState(TonlibClient client, String address) {
+    return get(accounts, address, () -> client.getAccountState(address));
+  }
+
+  /**
+   * Gets the latest transactions of an account, from the cache if it was not touched since they
+   * were loaded.
+   *
+   * @param client tonlib client used on a cache miss
+   * @param address raw address, see {@link TonAddress#toRaw}
+   * @return future with a {@code raw.transactions} object, empty if the account has none
+   */
+  public CompletableFuture<JSONObject> getTransactions(TonlibClient client, String address) {
+    return get(
+        transactions,
+        address,
+        () ->
+            getAccountState(client, address)
+                .thenCompose(
+                    state -> {
+                      JSONObject lastTransaction = (JSONObject) state.get("last_transaction_id");
+                      if (lastTransaction == null
+                          || "0".equals(String.valueOf(lastTransaction.get("lt")))) {
+                        return CompletableFuture.completedFuture(
+                            TonlibClient.request("raw.transactions"));
+                      }
+                      return client.getTransactions(
+                          address,
+                          String.valueOf(lastTransaction.get("lt")),
+                          (String) lastTransaction.get("hash"));
+                    }));
+  }
+
+  /**
+   * Drops cached data of the given accounts.
+   *
+   * @param addresses raw addresses of the accounts touched by a new block
+   */
+  public synchronized void invalidate(Collection<String> addresses) {
+    generation++;
+    for (String address : addresses) {
+      accounts.remove(address);
+      transactions.remove(address);
+    }
+  }
+
+  /** Drops all cached data. */
+  public synchronized void clear() {
+    generation++;
+    accounts.clear();
+    transactions.clear();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  private CompletableFuture<JSONObject> get(
+      Map<String, JSONObject> cache,
+      String address,
+      java.util.function.Supplier<CompletableFuture<JSONObject>> loader) {
+    long loadGeneration;
+    synchronized (this) {
+      JSONObject cached = cache.get(address);
+      if (cached != null) {
+        hits.incrementAndGet();
+        return CompletableFuture.completedFuture(cached);
+      }
+      loadGeneration = generation;
+    }
+    misses.incrementAndGet();
+    return loader
+        .get()
+        .thenApply(
+            result -> {
+              synchronized (this) {
+                if (generation == loadGeneration) {
+                  cache.put(address, result);
+                }
+              }
+              return result;
+            });
+  }
+
+  private static <V> Map<String, V> lruMap(int maxEntries) {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+}
@@ -0,0 +1,348 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Follows new masterchain blocks and the shard blocks they reference, and tells listeners which
+ * blocks and transactions appeared and which accounts they touched.
+ *
+ * <p>It is driven by the blockchain monitor: every time the monitor learns a new masterchain seqno
+ * it calls {@link #onMasterchainInfo}, and the follower walks all blocks since the previous one.
+ */
+public class ChainFollower {
+  private static final Logger LOG = Logger.getInstance(ChainFollower.class);
+
+  private static final String MASTERCHAIN_SHARD = "-9223372036854775808";
+  private static final long QUERY_TIMEOUT_SECONDS = 10;
+  private static final int MAX_BLOCKS_PER_TICK = 16;
+  // Older blocks are not caught up with when following resumes
+  private static final long MAX_CATCH_UP_BLOCKS = 10000;
+  private static final int MAX_CATCH_UP_FAILURES = 3;
+  private static final int TRANSACTIONS_PER_PAGE = 256;
+  private static final String ZERO_ACCOUNT = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=";
+
+  /** A transaction id as listed in a block. */
+  public static class ShortTransaction {
+    private final String address;
+    private final long lt;
+    private final String hash;
+
+    ShortTransaction(String address, long lt, String hash) {
+      this.address = address;
+      this.lt = lt;
+      this.hash = hash;
+    }
+
+    /** Raw address of the account, {@code workchain:hex}. */
+    public String getAddress() {
+      return address;
+    }
+
+    public long getLt() {
+      return lt;
+    }
+
+    /** Base64 transaction hash. */
+    public String getHash() {
+      return hash;
+    }
+  }
+
+  /** Everything that happened in one masterchain block, including its shard blocks. */
+  public static class BlockEvent {
+    private final long masterchainSeqno;
+    private final long genUtime;
+    private final String zeroStateRootHash;
+    private final JSONObject masterchainBlock;
+    private final List<JSONObject> blocks;
+    private final List<ShortTransaction> transactions;
+    private final Set<String> touchedAccounts;
+
+    BlockEvent(
+        long masterchainSeqno,
+        long genUtime,
+        String zeroStateRootHash,
+        JSONObject masterchainBlock,
+        List<JSONObject> blocks,
+        List<ShortTransaction> transactions) {
+      this.masterchainSeqno = masterchainSeqno;
+      this.genUtime = genUtime;
+      this.zeroStateRootHash = zeroStateRootHash;
+      this.masterchainBlock = masterchainBlock;
+      this.blocks = Collections.unmodifiableList(blocks);
+      this.transactions = Collections.unmodifiableList(transactions);
+      Set<String> accounts = new LinkedHashSet<>();
+      for (ShortTransaction transaction : transactions) {
+        accounts.add(transaction.getAddress());
+      }
+      this.touchedAccounts = Collections.unmodifiableSet(accounts);
+    }
+
+    public long getMasterchainSeqno() {
+      return masterchainSeqno;
+    }
+
+    /** Creation time of the masterchain block, unix seconds. */
+    public long getGenUtime() {
+      return genUtime;
+    }
+
+    /** Base64 root hash of the zero state, identifies the chain across resets. */
+    public String getZeroStateRootHash() {
+      return zeroStateRootHash;
+    }
+
+    /** {@code ton.blockIdExt} of the masterchain block. */
+    public JSONObject getMasterchainBlock() {
+      return masterchainBlock;
+    }
+
+    /** {@code ton.blockIdExt} of the masterchain block followed by its new shard blocks. */
+    public List<JSONObject> getBlocks() {
+      return blocks;
+    }
+
+    public List<ShortTransaction> getTransactions() {
+      return transactions;
+    }
+
+    /** Raw addresses of all accounts that have transactions in these blocks. */
+    public Set<String> getTouchedAccounts() {
+      return touchedAccounts;
+    }
+  }
+
+  private final List<Consumer<BlockEvent>> listeners = new CopyOnWriteArrayList<>();
+  private final Map<String, Long> lastShardSeqno = new HashMap<>();
+  private long lastMasterchainSeqno = -1;
+  // Where following resumes after a reset or an IDE restart if the chain is the same
+  private long resumeSeqno = -1;
+  private String resumeZeroStateRootHash;
+  private int catchUpFailures;
+
+  /**
+   * Registers a listener for new blocks. Listeners are called on the monitor thread and must not
+   * block it.
+   *
+   * @param listener listener to add
+   */
+  public void addListener(Consumer<BlockEvent> listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Consumer<BlockEvent> listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the seqno of the last masterchain block that was processed.
+   *
+   * @return the seqno, or -1 if none yet
+   */
+  public synchronized long getLastMasterchainSeqno() {
+    return lastMasterchainSeqno;
+  }
+
+  /**
+   * Forgets the followed position, e.g. after the node was stopped. If the node comes back with the
+   * same chain, following resumes after the last processed block.
+   */
+  public synchronized void reset() {
+    lastMasterchainSeqno = -1;
+    lastShardSeqno.clear();
+  }
+
+  /**
+   * Sets the block after which following resumes instead of starting from the current block, e.g.
+   * the last block an index saw in the previous IDE session. It is ignored for another chain and at
+   * most {@value #MAX_CATCH_UP_BLOCKS} blocks are caught up with.
+   *
+   * @param seqno last processed masterchain seqno
+   * @param zeroStateRootHash base64 root hash of the zero state of the chain of the block
+   */
+  public synchronized void setResumePoint(long seqno, String zeroStateRootHash) {
+    resumeSeqno = seqno;
+    resumeZeroStateRootHash = zeroStateRootHash;
+  }
+
+  /**
+   * Processes all masterchain blocks up to the one in the given masterchain info. At most {@value
+   * #MAX_BLOCKS_PER_TICK} blocks are processed per call, the rest on the following calls.
+   *
+   * @param client tonlib client to query blocks with
+   * @param masterchainInfo {@code blocks.masterchainInfo} returned by tonlib
+   */
+  public synchronized void onMasterchainInfo(TonlibClient client, JSONObject masterchainInfo) {
+    if (listeners.isEmpty()) {
+      // Nobody is interested, start from the current block once somebody is
+      reset();
+      return;
+    }
+    JSONObject last = (JSONObject) masterchainInfo.get("last");
+    JSONObject init = (JSONObject) masterchainInfo.get("init");
+    String zeroStateRootHash = init == null ? null : (String) init.get("root_hash");
+    long seqno = number(last, "seqno");
+    if (lastMasterchainSeqno < 0 || seqno < lastMasterchainSeqno) {
+      // First block or the chain was reset, start following from here
+      lastMasterchainSeqno = seqno - 1;
+      lastShardSeqno.clear();
+      catchUpFailures = 0;
+      if (resumeSeqno >= 0
+          && resumeSeqno < lastMasterchainSeqno
+          && zeroStateRootHash != null
+          && zeroStateRootHash.equals(resumeZeroStateRootHash)) {
+        lastMasterchainSeqno = Math.max(resumeSeqno, lastMasterchainSeqno - MAX_CATCH_UP_BLOCKS);
+        LOG.warn("Catching up with masterchain blocks " + (lastMasterchainSeqno + 1) + "-" + seqno);
+      }
+    }
+    try {
+      long target = Math.min(seqno, lastMasterchainSeqno + MAX_BLOCKS_PER_TICK);
+      for (long next = lastMasterchainSeqno + 1; next <= target; next++) {
+        JSONObject masterchainBlock =
+            next == seqno ? last : lookupBlock(client, -1, MASTERCHAIN_SHARD, next);
+        BlockEvent event = readBlock(client, next, zeroStateRootHash, masterchainBlock);
+        lastMasterchainSeqno = next;
+        resumeSeqno = next;
+        resumeZeroStateRootHash = zeroStateRootHash;
+        catchUpFailures = 0;
+        for (Consumer<BlockEvent> listener : listeners) {
+          try {
+            listener.accept(event);
+          } catch (RuntimeException e) {
+            LOG.warn("Block listener failed: " + e.getMessage(), e);
+          }
+        }
+      }
+    } catch (Exception e) {
+      LOG.warn("Cannot follow masterchain block: " + TonlibClient.rootMessage(e));
+      if (lastMasterchainSeqno < seqno - 1 && ++catchUpFailures >= MAX_CATCH_UP_FAILURES) {
+        // Old blocks may have been pruned, continue with the current one
+        LOG.warn("Giving up catching up with blocks before " + seqno);
+        lastMasterchainSeqno = seqno - 1;
+        lastShardSeqno.clear();
+      }
+    }
+  }
+
+  private BlockEvent readBlock(
+      TonlibClient client, long seqno, String zeroStateRootHash, JSONObject masterchainBlock)
+      throws Exception {
+    List<JSONObject> blocks = new ArrayList<>();
+    blocks.add(masterchainBlock);
+
+    JSONObject headerRequest = TonlibClient.request("blocks.getBlockHeader");
+    headerRequest.put("id", masterchainBlock);
+    JSONObject header = client.send(headerRequest).get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    JSONObject request = TonlibClient.request("blocks.getShards");
+    request.put("id", masterchainBlock);
+    JSONObject shards = client.send(request).get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    // Committed once all transactions are read, a failed block is read again in full
+    Map<String, Long> shardSeqnos = new HashMap<>();
+    for (Object item : (JSONArray) shards.get("shards")) {
+      JSONObject shardBlock = (JSONObject) item;
+      long workchain = number(shardBlock, "workchain");
+      String shard = String.valueOf(shardBlock.get("shard"));
+      long shardSeqno = number(shardBlock, "seqno");
+      String key = workchain + ":" + shard;
+      Long previous = lastShardSeqno.get(key);
+      // Shard blocks created since the previous masterchain block, oldest first
+      long from = previous == null ? shardSeqno : previous + 1;
+      for (long next = from; next < shardSeqno; next++) {
+        blocks.add(lookupBlock(client, workchain, shard, next));
+      }
+      if (from <= shardSeqno) {
+        blocks.add(shardBlock);
+      }
+      shardSeqnos.put(key, shardSeqno);
+    }
+
+    List<ShortTransaction> transactions = new ArrayList<>();
+    for (JSONObject block : blocks) {
+      readTransactions(client, block, transactions);
+    }
+    lastShardSeqno.putAll(shardSeqnos);
+    return new BlockEvent(
+        seqno,
+        number(header, "gen_utime"),
+        zeroStateRootHash,
+        masterchainBlock,
+        blocks,
+        transactions);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readTransactions(
+      TonlibClient client, JSONObject block, List<ShortTransaction> transactions) throws Exception {
+    long workchain = number(block, "workchain");
+    JSONObject after = TonlibClient.request("blocks.accountTransactionId");
+    after.put("account", ZERO_ACCOUNT);
+    after.put("lt", 0);
+    boolean first = true;
+    while (true) {
+      JSONObject request = TonlibClient.request("blocks.getTransactions");
+      request.put("id", block);
+      // 1 | 2 | 4: return account, lt and hash; 128: continue after the given transaction
+      request.put("mode", first ? 7 : 7 | 128);
+      request.put("count", TRANSACTIONS_PER_PAGE);
+      request.put("after", after);
+      JSONObject result = client.send(request).get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      JSONArray items = (JSONArray) result.get("transactions");
+      for (Object item : items) {
+        JSONObject transaction = (JSONObject) item;
+        transactions.add(
+            new ShortTransaction(
+                TonAddress.fromBase64Id(workchain, (String) transaction.get("account")),
+                number(transaction, "lt"),
+                (String) transaction.get("hash")));
+      }
+      if (!Boolean.TRUE.equals(result.get("incomplete")) || items.isEmpty()) {
+        return;
+      }
+      JSONObject lastItem = (JSONObject) items.get(items.size() - 1);
+      after = TonlibClient.request("blocks.accountTransactionId");
+      after.put("account", lastItem.get("account"));
+      after.put("lt", lastItem.get("lt"));
+      first = false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static JSONObject lookupBlock(TonlibClient client, long workchain, String shard, long seqno)
+      throws Exception {
+    JSONObject id = TonlibClient.request("ton.blockId");
+    id.put("workchain", workchain);
+    id.put("shard", shard);
+    id.put("seqno", seqno);
+    JSONObject request = TonlibClient.request("blocks.lookupBlock");
+    request.put("mode", 1); // by seqno
+    request.put("id", id);
+    request.put("lt", 0);
+    request.put("utime", 0);
+    JSONObject block = client.send(request).get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    // The result is passed back to tonlib as a block id, drop the request tag
+    block.remove("@extra");
+    return block;
+  }
+
+  /** Reads a number that tonlib may return either as a JSON number or as a string (int64). */
+  static long number(JSONObject json, String key) {
+    Object value = json.get(key);
+    if (value instanceof Number) {
+      return ((Number) value).longValue();
+    }
+    return Long.parseLong(String.valueOf(value));
+  }
+}
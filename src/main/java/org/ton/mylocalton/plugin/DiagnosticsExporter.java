@@ -0,0 +1,255 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.application.PathManager;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Writes a zip with everything needed to report a problem: the logs of MyLocalTon and of the IDE,
+ * {@code settings.json}, the global config, crash reports and a snapshot of the plugin's counters.
+ *
+ * <p>Files are streamed into the zip through a fixed buffer, so logs of any size never end up in
+ * memory. Logs can be limited to their last part, which is read from a seek to that offset instead
+ * of the start of the file; rotated segments are then added newest first while they fit into the
+ * same limit. Files are read up to the size they had when opened, the node keeps writing meanwhile.
+ */
+public class DiagnosticsExporter {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String LOGS = "logs/";
+
+  private final long maxLogBytes;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int files;
+
+  /**
+   * Creates an exporter.
+   *
+   * @param maxLogBytes bytes of every log to export at most, 0 for whole logs
+   */
+  public DiagnosticsExporter(long maxLogBytes) {
+    this.maxLogBytes = maxLogBytes;
+  }
+
+  /**
+   * Writes the diagnostics bundle. Blocks while files are copied, so call it off the EDT.
+   *
+   * @param target the zip to write, replaced if it exists
+   * @return number of files in the bundle
+   * @throws IOException if the zip cannot be written
+   */
+  public int export(Path target) throws IOException {
+    files = 0;
+    try (ZipOutputStream zip =
+        new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE))) {
+      long logBudget = maxLogBytes;
+      for (Path log : LogRotator.getInstance().getLogFiles(true)) {
+        String name = LOGS + log.getFileName();
+        if (log.getFileName().toString().endsWith(LogRotator.GZIP_SUFFIX)) {
+          long size = size(log);
+          if (maxLogBytes > 0 && size > logBudget) {
+            // Older segments do not fit either, they are older and about the same size
+            break;
+          }
+          // Compressing again gains nothing
+          zip.setLevel(Deflater.NO_COMPRESSION);
+          logBudget -= copy(log, name, 0, zip);
+          zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        } else {
+          logBudget -= copy(log, name, maxLogBytes, zip);
+        }
+      }
+      Path ideaLog = Paths.get(PathManager.getLogPath(), "idea.log");
+      copy(ideaLog, LOGS + ideaLog.getFileName(), maxLogBytes, zip);
+
+      copy(NodeLauncher.getDataDirectory().resolve("settings.json"), "settings.json", 0, zip);
+      Path globalConfig = NodeLauncher.getGlobalConfigPath();
+      copy(globalConfig, globalConfig.getFileName().toString(), 0, zip);
+      copyReports(zip);
+
+      zip.putNextEntry(new ZipEntry("metrics.json"));
+      // Closing the writer would close the zip
+      Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+      metrics().writeJSONString(writer);
+      writer.flush();
+      zip.closeEntry();
+      files++;
+    } catch (IOException e) {
+      Files.deleteIfExists(target);
+      throw e;
+    }
+    return files;
+  }
+
+  /** Adds all crash reports of the {@link NodeSupervisor}, their number is limited. */
+  private void copyReports(ZipOutputStream zip) throws IOException {
+    Path reports = NodeSupervisor.getReportsDirectory();
+    if (!Files.isDirectory(reports)) {
+      return;
+    }
+    try (DirectoryStream<Path> directories = Files.newDirectoryStream(reports)) {
+      for (Path directory : directories) {
+        if (!Files.isDirectory(directory)) {
+          continue;
+        }
+        try (DirectoryStream<Path> reportFiles = Files.newDirectoryStream(directory)) {
+          for (Path file : reportFiles) {
+            String name = "crash-reports/" + directory.getFileName() + "/" + file.getFileName();
+            copy(file, name, maxLogBytes, zip);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Streams a file into the zip, or its end if it is larger than the limit.
+   *
+   * @return number of bytes copied, 0 if the file does not exist
+   */
+  private long copy(Path file, String name, long limit, ZipOutputStream zip) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long start = limit > 0 ? Math.max(0, size - limit) : 0;
+      ZipEntry entry = new ZipEntry(name);
+      entry.setLastModifiedTime(Files.getLastModifiedTime(file));
+      if (start > 0) {
+        entry.setComment("Last " + (size - start) + " of " + size + " bytes");
+      }
+      zip.putNextEntry(entry);
+      channel.position(start);
+      InputStream in = Channels.newInputStream(channel);
+      // Skips the line cut in the middle
+      boolean skipLine = start > 0;
+      long remaining = size - start;
+      long copied = 0;
+      while (remaining > 0) {
+        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          // Truncated by the rotator while copying
+          break;
+        }
+        remaining -= read;
+        int offset = 0;
+        if (skipLine) {
+          while (offset < read && buffer[offset] != '\n') {
+            offset++;
+          }
+          if (offset == read) {
+            continue;
+          }
+          skipLine = false;
+          offset++;
+        }
+        zip.write(buffer, offset, read - offset);
+        copied += read - offset;
+      }
+      zip.closeEntry();
+      files++;
+      return copied;
+    } catch (NoSuchFileException e) {
+      // Not created yet, or pruned by the rotator
+      return 0;
+    }
+  }
+
+  private static long size(Path file) throws IOException {
+    try {
+      return Files.size(file);
+    } catch (NoSuchFileException e) {
+      return 0;
+    }
+  }
+
+  /** Snapshot of the node state and the counters of the plugin's services. */
+  @SuppressWarnings("unchecked")
+  private static JSONObject metrics() {
+    JSONObject metrics = new JSONObject();
+    metrics.put("exportedAt", Instant.now().toString());
+    metrics.put("javaVersion", System.getProperty("java.version"));
+    metrics.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    metrics.put("heapUsedBytes", heap.getUsed());
+    metrics.put("heapMaxBytes", heap.getMax());
+
+    JSONObject node = new JSONObject();
+    node.put("attachedTo", MyLocalTonSettings.getInstance().getAttachHost());
+    node.put("lockFile", NodeLauncher.isLockFileExists());
+    node.put("pid", NodeLauncher.findProcess().map(ProcessHandle::pid).orElse(-1L));
+    ReleaseStore.Release release = ReleaseStore.getDefault().getActive();
+    node.put("version", release == null ? null : release.getVersion());
+    node.put("lastCrash", NodeSupervisor.getInstance().getLastCrash());
+    node.put("diskUsageBytes", DiskQuotaGuard.getInstance().getLastUsageBytes());
+    metrics.put("node", node);
+
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    JSONObject settingsJson = new JSONObject();
+    JSONArray startArguments = new JSONArray();
+    startArguments.addAll(settings.getStartOptions().toArguments());
+    settingsJson.put("startArguments", startArguments);
+    settingsJson.put("readinessTimeoutSeconds", settings.getReadinessTimeoutSeconds());
+    settingsJson.put("autoRestart", settings.isAutoRestart());
+    settingsJson.put("hangTimeoutSeconds", settings.getHangTimeoutSeconds());
+    settingsJson.put("eventStreamPort", settings.getEventStreamPort());
+    settingsJson.put("apiProxyPort", settings.getApiProxyPort());
+    settingsJson.put("logRotateSizeMb", settings.getLogRotateSizeMb());
+    settingsJson.put("logRotateHours", settings.getLogRotateHours());
+    settingsJson.put("diskBudgetGb", settings.getDiskBudgetGb());
+    metrics.put("settings", settingsJson);
+
+    JSONObject logEvents = new JSONObject();
+    for (Map.Entry<NodeLogMonitor.Type, Long> count :
+        NodeLogMonitor.getInstance().getCounts().entrySet()) {
+      logEvents.put(count.getKey().name(), count.getValue());
+    }
+    metrics.put("logEvents", logEvents);
+
+    JSONArray startups = new JSONArray();
+    List<StartupTracer.Run> history = StartupTracer.getInstance().getHistory();
+    for (StartupTracer.Run run : history) {
+      startups.add(run.toJson());
+    }
+    StartupTracer.Run current = StartupTracer.getInstance().getCurrent();
+    if (current != null) {
+      startups.add(current.toJson());
+    }
+    metrics.put("startups", startups);
+
+    TonlibService tonlibService = TonlibService.getInstance();
+    JSONObject chain = new JSONObject();
+    chain.put("lastMasterchainSeqno", tonlibService.getChainFollower().getLastMasterchainSeqno());
+    chain.put("cacheHits", tonlibService.getChainDataCache().getHits());
+    chain.put("cacheMisses", tonlibService.getChainDataCache().getMisses());
+    BlockHistoryIndex blockHistory = tonlibService.getBlockHistory();
+    if (blockHistory != null) {
+      chain.put("blockHistoryFirstSeqno", blockHistory.getFirstSeqno());
+      chain.put("blockHistorySize", blockHistory.size());
+    }
+    chain.put("indexedTransactions", tonlibService.getTransactionIndex().getTransactionCount());
+    chain.put("transactionIndexSeqno", tonlibService.getTransactionIndex().getLastSeqno());
+    metrics.put("chain", chain);
+    return metrics;
+  }
+}
@@ -0,0 +1,348 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Keeps the MyLocalTon data directory and the images of the {@link GenesisImageCache} within the
+ * disk budget set in the settings. Every few minutes both are measured on a low-priority thread;
+ * when they exceed the budget, space is freed in this order until it fits again:
+ *
+ * <ol>
+ *   <li>rotated segments of {@code myLocalTon.log}, oldest first,
+ *   <li>genesis images, least recently used first, they only speed up the next Reset,
+ *   <li>text log files of the nodes, largest first, truncated in place since the nodes keep them
+ *       open, and rotated RocksDB info logs {@code LOG.old.*}, which are deleted. The current
+ *       RocksDB info log {@code LOG} is left alone, RocksDB writes it at its own offsets,
+ *   <li>block packages in {@code archive/packages} of every node, oldest first, only while the node
+ *       is stopped, since its archive database refers to them while it runs. The newest {@link
+ *       #KEEP_PACKAGES} packages of each node and all key block packages are kept, so the nodes
+ *       keep their recent state and can still sync and prove blocks.
+ * </ol>
+ *
+ * <p>Blocks of deleted packages can no longer be queried from the node.
+ */
+public class DiskQuotaGuard implements Disposable {
+  private static final Logger LOG = Logger.getInstance(DiskQuotaGuard.class);
+
+  private static final long CHECK_PERIOD_MINUTES = 5;
+  private static final int KEEP_PACKAGES = 4;
+  private static final long MB = 1024L * 1024L;
+  // RocksDB write-ahead logs are named <number>.log and must never be touched
+  private static final Pattern WAL_FILENAME = Pattern.compile("\\d+\\.log");
+
+  private final Path dataDirectory;
+  private final ScheduledExecutorService executorService;
+  private volatile long lastUsageBytes = -1;
+
+  public DiskQuotaGuard() {
+    this(NodeLauncher.getDataDirectory());
+  }
+
+  DiskQuotaGuard(Path dataDirectory) {
+    this.dataDirectory = dataDirectory;
+    executorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Disk Quota Guard");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    executorService.scheduleWithFixedDelay(
+        () -> {
+          try {
+            check(MyLocalTonSettings.getInstance().getDiskBudgetGb() * 1024L * MB);
+          } catch (Exception e) {
+            LOG.warn("Disk quota check failed: " + e.getMessage());
+          }
+        },
+        1,
+        CHECK_PERIOD_MINUTES,
+        TimeUnit.MINUTES);
+  }
+
+  public static DiskQuotaGuard getInstance() {
+    return ApplicationManager.getApplication().getService(DiskQuotaGuard.class);
+  }
+
+  /**
+   * Returns the size of the data directory measured by the last check.
+   *
+   * @return size in bytes, or -1 if it was not measured yet
+   */
+  public long getLastUsageBytes() {
+    return lastUsageBytes;
+  }
+
+  /**
+   * Measures the data directory and prunes it if it exceeds the budget.
+   *
+   * @param budgetBytes disk budget, 0 disables the guard
+   * @return bytes freed
+   * @throws IOException if the data directory cannot be measured
+   */
+  synchronized long check(long budgetBytes) throws IOException {
+    if (budgetBytes <= 0 || !Files.isDirectory(dataDirectory)) {
+      return 0;
+    }
+    Usage usage = measure();
+    GenesisImageCache genesisImageCache = GenesisImageCache.getInstance();
+    usage.totalBytes += genesisImageCache.getSizeBytes();
+    lastUsageBytes = usage.totalBytes;
+    long excess = usage.totalBytes - budgetBytes;
+    if (excess <= 0) {
+      return 0;
+    }
+    LOG.warn(
+        "MyLocalTon uses "
+            + usage.totalBytes / MB
+            + " MB, over the budget of "
+            + budgetBytes / MB
+            + " MB, pruning");
+
+    long freed = 0;
+    for (Path segment : LogRotator.listSegments(dataDirectory)) {
+      if (freed >= excess) {
+        break;
+      }
+      freed += delete(segment);
+    }
+
+    if (freed < excess) {
+      freed += genesisImageCache.free(excess - freed);
+    }
+
+    usage.logs.sort(Comparator.comparingLong((LogFile logFile) -> logFile.bytes).reversed());
+    for (LogFile logFile : usage.logs) {
+      if (freed >= excess) {
+        break;
+      }
+      freed += truncate(logFile);
+    }
+
+    boolean nodeRunning = NodeLauncher.isLockFileExists() || NodeLauncher.findProcess().isPresent();
+    if (!nodeRunning) {
+      for (Package blockPackage : usage.prunablePackages()) {
+        if (freed >= excess) {
+          break;
+        }
+        freed += delete(blockPackage);
+      }
+    }
+
+    lastUsageBytes = usage.totalBytes - freed;
+    if (freed < excess) {
+      LOG.warn(
+          "MyLocalTon is still "
+              + (excess - freed) / MB
+              + " MB over the disk budget after pruning, "
+              + (nodeRunning
+                  ? "block packages are pruned once it is stopped"
+                  : "only Reset frees more space"));
+    } else {
+      LOG.warn("Freed " + freed / MB + " MB of MyLocalTon data");
+    }
+    return freed;
+  }
+
+  private Usage measure() throws IOException {
+    Usage usage = new Usage();
+    Files.walkFileTree(
+        dataDirectory,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (!attrs.isRegularFile()) {
+              return FileVisitResult.CONTINUE;
+            }
+            usage.totalBytes += attrs.size();
+            if (!usage.addPackageFile(file, attrs.size()) && isNodeLog(file)) {
+              usage.logs.add(new LogFile(file, attrs.size()));
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // Files come and go while the node is running
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return usage;
+  }
+
+  private static boolean isNodeLog(Path file) {
+    String name = file.getFileName().toString();
+    if (name.startsWith(LogRotator.LOG_FILENAME) || WAL_FILENAME.matcher(name).matches()) {
+      return false;
+    }
+    // The current RocksDB info log LOG is not truncated, see the class comment
+    return name.startsWith("LOG.old.") || name.equals("log") || name.endsWith(".log");
+  }
+
+  private static long truncate(LogFile logFile) {
+    String name = logFile.path.getFileName().toString();
+    try {
+      if (name.startsWith("LOG.old.")) {
+        // Old RocksDB info logs are not open anymore
+        return delete(logFile.path);
+      }
+      try (FileChannel channel = FileChannel.open(logFile.path, StandardOpenOption.WRITE)) {
+        channel.truncate(0);
+      }
+      LOG.warn("Truncated " + logFile.path);
+      return logFile.bytes;
+    } catch (IOException e) {
+      LOG.warn("Cannot truncate " + logFile.path + ": " + e.getMessage());
+      return 0;
+    }
+  }
+
+  private static long delete(Path file) {
+    try {
+      long size = Files.size(file);
+      Files.delete(file);
+      LOG.warn("Deleted " + file);
+      return size;
+    } catch (NoSuchFileException e) {
+      return 0;
+    } catch (IOException e) {
+      LOG.warn("Cannot delete " + file + ": " + e.getMessage());
+      return 0;
+    }
+  }
+
+  /** Deletes the {@code .pack} file and {@code .index} directory of a package. */
+  private static long delete(Package blockPackage) {
+    long freed = 0;
+    for (Path entry : blockPackage.entries) {
+      if (!Files.isDirectory(entry)) {
+        freed += delete(entry);
+        continue;
+      }
+      try (Stream<Path> paths = Files.walk(entry)) {
+        List<Path> sorted = new ArrayList<>();
+        paths.forEach(sorted::add);
+        // Children before their directories
+        sorted.sort(Comparator.reverseOrder());
+        for (Path path : sorted) {
+          if (Files.isDirectory(path)) {
+            Files.deleteIfExists(path);
+          } else {
+            freed += delete(path);
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Cannot delete " + entry + ": " + e.getMessage());
+      }
+    }
+    return freed;
+  }
+
+  @Override
+  public void dispose() {
+    executorService.shutdownNow();
+  }
+
+  private static class LogFile {
+    final Path path;
+    final long bytes;
+
+    LogFile(Path path, long bytes) {
+      this.path = path;
+      this.bytes = bytes;
+    }
+  }
+
+  /** Block package {@code archive.<id>} with its {@code .pack} file and {@code .index} database. */
+  private static class Package {
+    final long id;
+    final Set<Path> entries = new LinkedHashSet<>();
+
+    Package(long id) {
+      this.id = id;
+    }
+  }
+
+  private static class Usage {
+    long totalBytes;
+    final List<LogFile> logs = new ArrayList<>();
+    // Packages by the archive/packages directory of their node
+    final Map<Path, Map<Long, Package>> packages = new HashMap<>();
+
+    /**
+     * Records a file of {@code archive/packages/archNNNN/archive.NNNNN.*}, key block packages in
+     * {@code keyNNN} directories are not recorded.
+     */
+    boolean addPackageFile(Path file, long size) {
+      for (Path dir = file.getParent(); dir != null; dir = dir.getParent()) {
+        Path packagesDir = dir.getParent();
+        if (isNamed(packagesDir, "packages") && isNamed(packagesDir.getParent(), "archive")) {
+          if (!dir.getFileName().toString().startsWith("arch")) {
+            return false;
+          }
+          Path entry = dir.resolve(file.subpath(dir.getNameCount(), dir.getNameCount() + 1));
+          String[] parts = entry.getFileName().toString().split("\\.");
+          if (parts.length < 3 || !parts[0].equals("archive")) {
+            return false;
+          }
+          long id;
+          try {
+            id = Long.parseLong(parts[1]);
+          } catch (NumberFormatException e) {
+            return false;
+          }
+          packages
+              .computeIfAbsent(packagesDir, key -> new HashMap<>())
+              .computeIfAbsent(id, Package::new)
+              .entries
+              .add(entry);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean isNamed(Path path, String name) {
+      return path != null
+          && path.getFileName() != null
+          && path.getFileName().toString().equals(name);
+    }
+
+    /** Returns the packages that may be deleted, oldest first. */
+    List<Package> prunablePackages() {
+      List<Package> prunable = new ArrayList<>();
+      for (Map<Long, Package> nodePackages : packages.values()) {
+        List<Package> sorted = new ArrayList<>(nodePackages.values());
+        sorted.sort(Comparator.comparingLong(blockPackage -> blockPackage.id));
+        prunable.addAll(sorted.subList(0, Math.max(0, sorted.size() - KEEP_PACKAGES)));
+      }
+      prunable.sort(Comparator.comparingLong(blockPackage -> blockPackage.id));
+      return prunable;
+    }
+  }
+}
@@ -0,0 +1,365 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.ton.mylocalton.launcher.LiteClientProbe;
+import org.ton.mylocalton.launcher.NodeLauncher;
+import org.ton.mylocalton.launcher.WalletPool;
+
+/**
+ * Cache of newly created chains, one per configuration, so that a Reset followed by a Start with a
+ * configuration used before takes seconds instead of a full genesis.
+ *
+ * <p>An image is keyed by the MyLocalTon release, the number of validators and the features stored
+ * in the chain's {@code settings.json}. A start on an empty data directory restores the image of
+ * its configuration. If there is none, the start runs genesis itself: the node is stopped as soon
+ * as the new chain produces its first masterchain block, the data directory is saved as the image
+ * and the caller then starts the node as usual. A Stop meanwhile {@link #cancel() cancels} the
+ * preparation, and the caller does not start the node. Nothing has used the chain at that point, so
+ * an image holds no contracts, balances or wallet pool of an earlier session. Files are copied, not
+ * linked, because the node appends to its files in place and would change the image through a hard
+ * link; the JDK copies inside the kernel, so file systems that support it share the blocks
+ * copy-on-write. The least recently used images beyond the configured number are deleted, and
+ * images count towards the disk budget of the {@link DiskQuotaGuard}.
+ */
+public class GenesisImageCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance(GenesisImageCache.class);
+
+  private static final String IMAGES_DIRECTORY = "genesis-images";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final long EXIT_TIMEOUT_MS = 120_000;
+  private static final long EXIT_POLL_MS = 500;
+
+  private final Path dataDirectory;
+  private final Path imagesDirectory;
+  private final ExecutorService executorService;
+  // Held while images are copied or deleted
+  private final Object imagesLock = new Object();
+  // Incremented by every Stop, a preparation that sees it change is canceled
+  private final AtomicInteger stops = new AtomicInteger();
+
+  public GenesisImageCache() {
+    this(
+        NodeLauncher.getDataDirectory(),
+        NodeLauncher.getWorkingDirectory().resolve(IMAGES_DIRECTORY));
+  }
+
+  GenesisImageCache(Path dataDirectory, Path imagesDirectory) {
+    this.dataDirectory = dataDirectory;
+    this.imagesDirectory = imagesDirectory;
+    executorService =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Genesis Images");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+  }
+
+  public static GenesisImageCache getInstance() {
+    return ApplicationManager.getApplication().getService(GenesisImageCache.class);
+  }
+
+  /**
+   * Builds the key of a configuration.
+   *
+   * @param release the release to start
+   * @param options the startup parameters
+   * @return the key, usable as a file name
+   */
+  static String key(ReleaseStore.Release release, NodeLauncher.Options options) {
+    StringBuilder key = new StringBuilder(release.getSha256().substring(0, 12));
+    key.append("-validators-").append(options.validators);
+    // Stored in settings.json during genesis
+    if (options.tonHttpApi) {
+      key.append("-ton-http-api");
+    }
+    if (options.explorer) {
+      key.append("-explorer");
+    }
+    if (options.dataGenerator) {
+      key.append("-data-generator");
+    }
+    return key.toString();
+  }
+
+  /**
+   * Prepares the data directory for a start: restores the image of the configuration if the
+   * directory is empty, or runs genesis and saves its image if there is none yet. Blocks for as
+   * long as genesis takes, so call it off the EDT. The caller starts the node afterwards as usual.
+   *
+   * @param jarPath the MyLocalTon JAR to run genesis with
+   * @param options the startup parameters
+   * @return true if an image was restored
+   * @throws IOException if the image cannot be restored
+   * @throws InterruptedException if interrupted while genesis runs
+   * @throws CancellationException if the node was stopped meanwhile, it must not be started then
+   */
+  public boolean prepare(Path jarPath, NodeLauncher.Options options)
+      throws IOException, InterruptedException {
+    int stop = stops.get();
+    boolean restored = prepare(jarPath, options, stop);
+    checkStopped(stop);
+    return restored;
+  }
+
+  private boolean prepare(Path jarPath, NodeLauncher.Options options, int stop)
+      throws IOException, InterruptedException {
+    int maxImages = MyLocalTonSettings.getInstance().getGenesisImages();
+    ReleaseStore.Release release = ReleaseStore.getDefault().getActive();
+    if (maxImages <= 0
+        || release == null
+        || jarPath == null
+        || NodeLauncher.isLockFileExists()
+        || !isEmpty(dataDirectory)) {
+      // An existing chain is started as it is
+      return false;
+    }
+    String key = key(release, options);
+    Path image = imagesDirectory.resolve(key);
+    if (Files.isDirectory(image)) {
+      restore(image, key);
+      return true;
+    }
+    capture(jarPath, options, image, key, stop);
+    return false;
+  }
+
+  /**
+   * Cancels a running {@link #prepare}, e.g. because the user pressed Stop while genesis runs. The
+   * genesis node itself is stopped by the caller.
+   */
+  public void cancel() {
+    stops.incrementAndGet();
+  }
+
+  private void checkStopped(int stop) {
+    if (stops.get() != stop) {
+      throw new CancellationException("MyLocalTon was stopped while preparing its start");
+    }
+  }
+
+  private void restore(Path image, String key) throws IOException {
+    long start = System.currentTimeMillis();
+    synchronized (imagesLock) {
+      try {
+        FileUtils.copyDirectory(image.toFile(), dataDirectory.toFile());
+      } catch (IOException e) {
+        // A partial copy would be started as a broken chain
+        if (Files.isDirectory(dataDirectory)) {
+          FileUtils.cleanDirectory(dataDirectory.toFile());
+        }
+        throw e;
+      }
+      // Recently used images are kept longest
+      Files.setLastModifiedTime(image, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+    // Images are saved before a pool exists, this only guards against older images
+    Path poolFile = WalletPool.getDefaultFile();
+    Files.deleteIfExists(poolFile);
+    Files.deleteIfExists(poolFile.resolveSibling(poolFile.getFileName() + ".partial"));
+    // Same zero state as the chain that was reset, the indexes cannot tell them apart
+    TonlibService.getInstance().clearIndexes();
+    LOG.warn(
+        "Restored genesis image " + key + " in " + (System.currentTimeMillis() - start) + " ms");
+  }
+
+  /**
+   * Runs genesis up to the first masterchain block, stops the node and saves the data directory. If
+   * anything fails, the chain is left as it is and the caller starts it as usual.
+   */
+  private void capture(Path jarPath, NodeLauncher.Options options, Path image, String key, int stop)
+      throws IOException, InterruptedException {
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    long start = System.currentTimeMillis();
+    LOG.warn("Running genesis for genesis image " + key);
+    checkStopped(stop);
+    NodeLauncher.start(
+        MyLocalTonToolWindowFactory.getBundledExecutablePath("java"), jarPath, options);
+    try {
+      long seqno =
+          NodeLauncher.waitUntilReady(
+              new LiteClientProbe(),
+              TimeUnit.SECONDS.toMillis(settings.getReadinessTimeoutSeconds()),
+              current -> checkStopped(stop));
+      // The traced start is the genesis, the node is stopped before anything sees its block
+      StartupTracer.getInstance().onBlock(seqno);
+    } catch (TimeoutException e) {
+      // Left running, the caller waits for it and reports the timeout
+      LOG.warn("Genesis image " + key + " is not saved: " + e.getMessage());
+      return;
+    } catch (CancellationException e) {
+      // The Stop may have come before the genesis node was started
+      NodeLauncher.stop(
+          MyLocalTonToolWindowFactory.getBundledExecutablePath("jps"),
+          jarPath.getFileName().toString());
+      throw e;
+    }
+    NodeLauncher.stop(
+        MyLocalTonToolWindowFactory.getBundledExecutablePath("jps"),
+        jarPath.getFileName().toString());
+    long deadline = System.currentTimeMillis() + EXIT_TIMEOUT_MS;
+    while (NodeLauncher.findProcess().isPresent() || NodeLauncher.isLockFileExists()) {
+      if (System.currentTimeMillis() > deadline) {
+        LOG.warn("MyLocalTon did not exit, genesis image " + key + " is not saved");
+        return;
+      }
+      checkStopped(stop);
+      Thread.sleep(EXIT_POLL_MS);
+    }
+    try {
+      synchronized (imagesLock) {
+        Path temp = imagesDirectory.resolve(key + TEMP_SUFFIX);
+        FileUtils.deleteDirectory(temp.toFile());
+        FileUtils.copyDirectory(dataDirectory.toFile(), temp.toFile());
+        // Complete images only
+        Files.move(temp, image, StandardCopyOption.ATOMIC_MOVE);
+      }
+      LOG.warn(
+          "Saved genesis image " + key + " in " + (System.currentTimeMillis() - start) + " ms");
+      prune(settings.getGenesisImages());
+    } catch (IOException e) {
+      LOG.warn("Cannot save genesis image " + key + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Deletes the least recently used images beyond a number in the background, e.g. after the
+   * setting was lowered.
+   *
+   * @param maxImages number of images to keep, 0 deletes all
+   */
+  public void pruneLater(int maxImages) {
+    executorService.execute(
+        () -> {
+          try {
+            prune(maxImages);
+          } catch (IOException e) {
+            LOG.warn("Cannot delete genesis images: " + e.getMessage());
+          }
+        });
+  }
+
+  /**
+   * Measures the saved images.
+   *
+   * @return size of all images in bytes
+   * @throws IOException if the images cannot be listed
+   */
+  long getSizeBytes() throws IOException {
+    if (!Files.isDirectory(imagesDirectory)) {
+      return 0;
+    }
+    long[] bytes = new long[1];
+    Files.walkFileTree(
+        imagesDirectory,
+        new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            bytes[0] += attrs.size();
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    return bytes[0];
+  }
+
+  /**
+   * Deletes the least recently used images until enough space is freed, for the {@link
+   * DiskQuotaGuard}.
+   *
+   * @param bytes space to free
+   * @return bytes freed
+   * @throws IOException if the images cannot be listed
+   */
+  long free(long bytes) throws IOException {
+    long freed = 0;
+    synchronized (imagesLock) {
+      for (Path image : listImages()) {
+        if (freed >= bytes) {
+          break;
+        }
+        long size = FileUtils.sizeOfDirectory(image.toFile());
+        LOG.warn("Deleting genesis image " + image.getFileName() + " to stay within the budget");
+        FileUtils.deleteDirectory(image.toFile());
+        freed += size;
+      }
+    }
+    return freed;
+  }
+
+  /** Deletes the least recently used images beyond a number. */
+  private void prune(int maxImages) throws IOException {
+    synchronized (imagesLock) {
+      List<Path> images = listImages();
+      for (int i = 0; i < images.size() - Math.max(0, maxImages); i++) {
+        LOG.warn("Deleting genesis image " + images.get(i).getFileName());
+        FileUtils.deleteDirectory(images.get(i).toFile());
+      }
+    }
+  }
+
+  /** Lists the complete images, least recently used first. */
+  private List<Path> listImages() throws IOException {
+    List<Path> images = new ArrayList<>();
+    if (!Files.isDirectory(imagesDirectory)) {
+      return images;
+    }
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(imagesDirectory)) {
+      for (Path entry : entries) {
+        if (Files.isDirectory(entry) && !entry.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+          images.add(entry);
+        }
+      }
+    }
+    images.sort(
+        Comparator.comparing(
+            (Path image) -> {
+              try {
+                return Files.getLastModifiedTime(image);
+              } catch (IOException e) {
+                return FileTime.fromMillis(0);
+              }
+            }));
+    return images;
+  }
+
+  private static boolean isEmpty(Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return true;
+    }
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      return !entries.iterator().hasNext();
+    }
+  }
+
+  @Override
+  public void dispose() {
+    executorService.shutdownNow();
+  }
+}
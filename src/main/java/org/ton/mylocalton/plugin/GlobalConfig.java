@@ -0,0 +1,214 @@
+package org.ton.mylocalton.plugin;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Parsed global config of the local network, {@code my-ton-local.config.json}. Instances are
+ * immutable and shared by all clients through {@link GlobalConfigService}; a new instance means the
+ * file changed, e.g. after Reset.
+ */
+public final class GlobalConfig {
+
+  /** Lite-server entry of the config. */
+  public static final class LiteServer {
+    private final int index;
+    private final String host;
+    private final int port;
+    private final String publicKey;
+
+    LiteServer(int index, String host, int port, String publicKey) {
+      this.index = index;
+      this.host = host;
+      this.port = port;
+      this.publicKey = publicKey;
+    }
+
+    /**
+     * Position in the {@code liteservers} array, as used by the {@code -i} option of lite-client.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    public String getHost() {
+      return host;
+    }
+
+    public int getPort() {
+      return port;
+    }
+
+    /** Base64 encoded ed25519 public key of the server. */
+    public String getPublicKey() {
+      return publicKey;
+    }
+
+    @Override
+    public String toString() {
+      return host + ":" + port;
+    }
+  }
+
+  private final Path path;
+  private final long lastModified;
+  private final long size;
+  private final String text;
+  private final List<LiteServer> liteServers;
+
+  private GlobalConfig(
+      Path path, long lastModified, long size, String text, List<LiteServer> liteServers) {
+    this.path = path;
+    this.lastModified = lastModified;
+    this.size = size;
+    this.text = text;
+    this.liteServers = Collections.unmodifiableList(liteServers);
+  }
+
+  /**
+   * Reads and parses a global config.
+   *
+   * @param path the config file
+   * @param lastModified modification time of the file in milliseconds, read before the file
+   * @param size size of the file, read before the file
+   * @return the config
+   * @throws IOException if the file cannot be read or is not a valid config, e.g. while it is being
+   *     written
+   */
+  static GlobalConfig parse(Path path, long lastModified, long size) throws IOException {
+    String text = Files.readString(path, StandardCharsets.UTF_8);
+    List<LiteServer> liteServers = new ArrayList<>();
+    try {
+      JSONObject json = (JSONObject) new JSONParser().parse(text);
+      JSONArray servers = (JSONArray) json.get("liteservers");
+      if (servers != null) {
+        for (int i = 0; i < servers.size(); i++) {
+          JSONObject server = (JSONObject) servers.get(i);
+          JSONObject id = (JSONObject) server.get("id");
+          liteServers.add(
+              new LiteServer(
+                  i,
+                  ipToHost(ChainFollower.number(server, "ip")),
+                  (int) ChainFollower.number(server, "port"),
+                  id == null ? null : (String) id.get("key")));
+        }
+      }
+    } catch (ParseException | ClassCastException | NumberFormatException e) {
+      throw new IOException("Invalid global config " + path + ": " + e.getMessage(), e);
+    }
+    if (liteServers.isEmpty()) {
+      throw new IOException("Global config " + path + " has no liteservers");
+    }
+    return new GlobalConfig(path, lastModified, size, text, liteServers);
+  }
+
+  /**
+   * Rewrites a global config to use a single lite-server, e.g. one of a node on another machine
+   * whose config lists its lite-servers on 127.0.0.1.
+   *
+   * @param text the config
+   * @param address IPv4 address of the lite-server
+   * @param port port of the lite-server, 0 to keep the port of the first lite-server in the config
+   * @param publicKey base64 public key of the lite-server, empty to keep the key of the first one
+   * @return the rewritten config
+   * @throws IOException if the config is invalid
+   */
+  @SuppressWarnings("unchecked")
+  static String withLiteServer(String text, Inet4Address address, int port, String publicKey)
+      throws IOException {
+    try {
+      JSONObject json = (JSONObject) new JSONParser().parse(text);
+      JSONArray servers = (JSONArray) json.get("liteservers");
+      if (servers == null || servers.isEmpty()) {
+        throw new IOException("Global config has no liteservers");
+      }
+      JSONObject server = (JSONObject) servers.get(0);
+      byte[] ip = address.getAddress();
+      // Signed, like the configs written by the node
+      server.put(
+          "ip", (ip[0] << 24) | ((ip[1] & 0xff) << 16) | ((ip[2] & 0xff) << 8) | (ip[3] & 0xff));
+      if (port > 0) {
+        server.put("port", port);
+      }
+      if (!publicKey.isEmpty()) {
+        JSONObject id = new JSONObject();
+        id.put("@type", "pub.ed25519");
+        id.put("key", publicKey);
+        server.put("id", id);
+      }
+      JSONArray rewritten = new JSONArray();
+      rewritten.add(server);
+      json.put("liteservers", rewritten);
+      return json.toJSONString();
+    } catch (ParseException | ClassCastException e) {
+      throw new IOException("Invalid global config: " + e.getMessage(), e);
+    }
+  }
+
+  /** The config stores IPv4 addresses as signed 32-bit integers. */
+  private static String ipToHost(long ip) {
+    return ((ip >> 24) & 0xff)
+        + "."
+        + ((ip >> 16) & 0xff)
+        + "."
+        + ((ip >> 8) & 0xff)
+        + "."
+        + (ip & 0xff);
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /** The config as it was read, e.g. to pass it to tonlib. */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Returns the config with a single lite-server, so that a tonlib connection made with it talks to
+   * that server only.
+   *
+   * @param liteServer one of {@link #getLiteServers()}
+   * @return the config as JSON
+   */
+  @SuppressWarnings("unchecked")
+  public String getText(LiteServer liteServer) {
+    if (liteServers.size() == 1) {
+      return text;
+    }
+    try {
+      JSONObject json = (JSONObject) new JSONParser().parse(text);
+      JSONArray servers = new JSONArray();
+      servers.add(((JSONArray) json.get("liteservers")).get(liteServer.getIndex()));
+      json.put("liteservers", servers);
+      return json.toJSONString();
+    } catch (ParseException e) {
+      // Parsed successfully before
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** All lite-servers of the network, at least one. */
+  public List<LiteServer> getLiteServers() {
+    return liteServers;
+  }
+
+  boolean isCurrent(long lastModified, long size) {
+    return this.lastModified == lastModified && this.size == size;
+  }
+}
@@ -0,0 +1,157 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Supplier;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Application service holding the parsed global config of the local network. The file is parsed
+ * once and parsed again only when its modification time or size changes, so every caller gets a
+ * config that matches the file on disk, also after Reset regenerated it, for the price of a stat.
+ *
+ * <p>Clients built from a config should keep the {@link GlobalConfig} they were built from and
+ * rebuild themselves when {@link #get()} returns a different instance.
+ *
+ * <p>When the plugin is attached to a node elsewhere, the config is the copy of that node's config
+ * from the settings with its lite-servers replaced by the attached one, written to {@value
+ * #ATTACHED_CONFIG_FILE} so lite-client can use it too. It is written again when the copy or the
+ * attach settings change.
+ */
+public class GlobalConfigService {
+  private static final Logger LOG = Logger.getInstance(GlobalConfigService.class);
+
+  private static final String ATTACHED_CONFIG_FILE = "attached.config.json";
+
+  private final Path configFile;
+  private final Path attachedFile;
+  private final Supplier<MyLocalTonSettings> settingsSupplier;
+  private GlobalConfig config;
+  private GlobalConfig attachedConfig;
+  // Attach settings the attached config was written for
+  private String attachedTarget;
+
+  public GlobalConfigService() {
+    this(
+        NodeLauncher.getGlobalConfigPath(),
+        NodeLauncher.getWorkingDirectory().resolve(ATTACHED_CONFIG_FILE),
+        MyLocalTonSettings::getInstance);
+  }
+
+  GlobalConfigService(
+      Path configFile, Path attachedFile, Supplier<MyLocalTonSettings> settingsSupplier) {
+    this.configFile = configFile;
+    this.attachedFile = attachedFile;
+    this.settingsSupplier = settingsSupplier;
+  }
+
+  public static GlobalConfigService getInstance() {
+    return ApplicationManager.getApplication().getService(GlobalConfigService.class);
+  }
+
+  public Path getConfigFile() {
+    return configFile;
+  }
+
+  /**
+   * Returns the current config, parsing the file again if it changed since the last call.
+   *
+   * @return the config
+   * @throws IOException if the file does not exist yet or cannot be parsed
+   */
+  public synchronized GlobalConfig get() throws IOException {
+    MyLocalTonSettings settings = settingsSupplier.get();
+    if (settings.isAttached()) {
+      return getAttached(settings);
+    }
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(configFile, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      config = null;
+      throw new IOException("MyLocalTon is not started yet, global config is missing");
+    }
+    long lastModified = attrs.lastModifiedTime().toMillis();
+    if (config == null || !config.isCurrent(lastModified, attrs.size())) {
+      // A config being written fails to parse, the previous one is kept until the next call
+      config = GlobalConfig.parse(configFile, lastModified, attrs.size());
+      LOG.warn(
+          "Loaded global config with "
+              + config.getLiteServers().size()
+              + " liteservers: "
+              + config.getLiteServers());
+    }
+    return config;
+  }
+
+  private GlobalConfig getAttached(MyLocalTonSettings settings) throws IOException {
+    if (settings.getAttachConfig().isEmpty()) {
+      throw new IOException("Global config of the attached node is not set");
+    }
+    Path source = Paths.get(settings.getAttachConfig());
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(source, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      attachedConfig = null;
+      throw new IOException("Global config of the attached node is missing: " + source);
+    }
+    long lastModified = attrs.lastModifiedTime().toMillis();
+    String target =
+        settings.getAttachHost()
+            + ":"
+            + settings.getAttachPort()
+            + " "
+            + settings.getAttachKey()
+            + " "
+            + source;
+    if (attachedConfig == null
+        || !target.equals(attachedTarget)
+        || !attachedConfig.isCurrent(lastModified, attrs.size())) {
+      Inet4Address address = null;
+      for (InetAddress candidate : InetAddress.getAllByName(settings.getAttachHost())) {
+        if (candidate instanceof Inet4Address) {
+          address = (Inet4Address) candidate;
+          break;
+        }
+      }
+      if (address == null) {
+        throw new IOException(settings.getAttachHost() + " has no IPv4 address");
+      }
+      String text =
+          GlobalConfig.withLiteServer(
+              Files.readString(source, StandardCharsets.UTF_8),
+              address,
+              settings.getAttachPort(),
+              settings.getAttachKey());
+      Files.createDirectories(attachedFile.getParent());
+      Files.writeString(attachedFile, text, StandardCharsets.UTF_8);
+      attachedConfig = GlobalConfig.parse(attachedFile, lastModified, attrs.size());
+      attachedTarget = target;
+      LOG.warn("Attached to lite-server " + attachedConfig.getLiteServers().get(0));
+    }
+    return attachedConfig;
+  }
+
+  /**
+   * Returns the current config like {@link #get()}, without failing.
+   *
+   * @return the config, or null if it does not exist yet or cannot be parsed
+   */
+  public GlobalConfig getIfPresent() {
+    try {
+      return get();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,371 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.awt.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.DefaultTableModel;
+import org.apache.commons.lang3.StringUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Tool window tab showing the state and recent transactions of an account of the local chain.
+ * Lookups go through the {@link ChainDataCache}, so repeated lookups of an account that has not
+ * been touched by a new block are answered from memory. All transactions of the account are listed
+ * from the {@link TransactionIndex}, and get-methods without arguments run in the {@link
+ * TvmEmulator} with the gas each of them used.
+ */
+public class InspectorPanel extends JPanel {
+  private static final Logger LOG = Logger.getInstance(InspectorPanel.class);
+
+  private static final DateTimeFormatter TIME_FORMAT =
+      DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+  // Rows of the indexed transactions table
+  private static final int MAX_INDEXED_ROWS = 10000;
+
+  private final JTextField addressField = new JTextField();
+  private final JButton lookupButton = new JButton("Lookup");
+  private final JLabel balanceLabel = new JLabel(" ");
+  private final JLabel stateLabel = new JLabel(" ");
+  private final JLabel lastTransactionLabel = new JLabel(" ");
+  private final JLabel cacheLabel = new JLabel(" ");
+  private final JTextField methodsField = new JTextField("seqno");
+  private final JButton runButton = new JButton("Run");
+  private final DefaultTableModel transactionsModel =
+      new DefaultTableModel(new Object[] {"Time", "LT", "From", "Value", "Fee", "Out"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+          return false;
+        }
+      };
+  private final DefaultTableModel indexedModel =
+      new DefaultTableModel(new Object[] {"Time", "LT", "Block"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+          return false;
+        }
+      };
+
+  private final DefaultTableModel getMethodsModel =
+      new DefaultTableModel(new Object[] {"Method", "Exit code", "Gas", "Time, us", "Result"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+          return false;
+        }
+      };
+
+  public InspectorPanel() {
+    super(new BorderLayout(0, 5));
+
+    // Address input
+    JPanel lookupPanel = new JPanel(new BorderLayout(5, 0));
+    addressField.setToolTipText("Account address, raw (0:...) or user-friendly (EQ...)");
+    lookupPanel.add(addressField, BorderLayout.CENTER);
+    lookupPanel.add(lookupButton, BorderLayout.EAST);
+    lookupPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+    add(lookupPanel, BorderLayout.NORTH);
+
+    // Account details
+    JPanel accountPanel = new JPanel(new GridLayout(0, 1, 0, 2));
+    accountPanel.setBorder(
+        BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(Color.GRAY),
+            "Account",
+            TitledBorder.LEFT,
+            TitledBorder.TOP));
+    accountPanel.add(balanceLabel);
+    accountPanel.add(stateLabel);
+    accountPanel.add(lastTransactionLabel);
+
+    // Recent transactions from the node, all transactions from the local index
+    JTable transactionsTable = new JTable(transactionsModel);
+    transactionsTable.setFillsViewportHeight(true);
+    JTable indexedTable = new JTable(indexedModel);
+    indexedTable.setFillsViewportHeight(true);
+    JTabbedPane transactionsTabs = new JTabbedPane();
+    transactionsTabs.addTab("Recent", new JScrollPane(transactionsTable));
+    transactionsTabs.addTab("All (indexed)", new JScrollPane(indexedTable));
+    transactionsTabs.setBorder(
+        BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(Color.GRAY),
+            "Transactions",
+            TitledBorder.LEFT,
+            TitledBorder.TOP));
+
+    // Get-methods of the account, run in parallel on its cached state
+    JPanel getMethodsPanel = new JPanel(new BorderLayout(0, 5));
+    JPanel runPanel = new JPanel(new BorderLayout(5, 0));
+    methodsField.setToolTipText("Get-methods without arguments, separated by commas");
+    runPanel.add(methodsField, BorderLayout.CENTER);
+    runPanel.add(runButton, BorderLayout.EAST);
+    getMethodsPanel.add(runPanel, BorderLayout.NORTH);
+    JTable getMethodsTable = new JTable(getMethodsModel);
+    getMethodsTable.setFillsViewportHeight(true);
+    JScrollPane getMethodsScrollPane = new JScrollPane(getMethodsTable);
+    getMethodsScrollPane.setPreferredSize(new Dimension(0, 120));
+    getMethodsPanel.add(getMethodsScrollPane, BorderLayout.CENTER);
+    getMethodsPanel.setBorder(
+        BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(Color.GRAY),
+            "Get methods",
+            TitledBorder.LEFT,
+            TitledBorder.TOP));
+
+    JPanel centerPanel = new JPanel(new BorderLayout(0, 5));
+    centerPanel.add(accountPanel, BorderLayout.NORTH);
+    centerPanel.add(transactionsTabs, BorderLayout.CENTER);
+    centerPanel.add(getMethodsPanel, BorderLayout.SOUTH);
+    add(centerPanel, BorderLayout.CENTER);
+
+    cacheLabel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+    add(cacheLabel, BorderLayout.SOUTH);
+
+    lookupButton.addActionListener(e -> lookup());
+    addressField.addActionListener(e -> lookup());
+    runButton.addActionListener(e -> runGetMethods());
+    methodsField.addActionListener(e -> runGetMethods());
+  }
+
+  /** Looks up the entered address. */
+  private void lookup() {
+    String address;
+    try {
+      address = TonAddress.toRaw(addressField.getText());
+    } catch (RuntimeException e) {
+      stateLabel.setText("Invalid address");
+      return;
+    }
+    lookupButton.setEnabled(false);
+    stateLabel.setText("Loading...");
+    showIndexed(address);
+
+    new Thread(
+            () -> {
+              try {
+                TonlibService tonlibService = TonlibService.getInstance();
+                TonlibClient client = tonlibService.getClient();
+                ChainDataCache cache = tonlibService.getChainDataCache();
+                // Transactions start from the last transaction of the (then cached) state
+                cache
+                    .getAccountState(client, address)
+                    .thenCompose(
+                        state ->
+                            cache
+                                .getTransactions(client, address)
+                                .thenApply(transactions -> render(state, transactions)))
+                    .whenComplete(
+                        (result, error) -> {
+                          if (error != null) {
+                            showError(error);
+                          }
+                        });
+              } catch (Exception e) {
+                showError(e);
+              }
+            },
+            "MyLocalTon-Plugin - Inspector")
+        .start();
+  }
+
+  /** Runs the entered get-methods of the entered address as one batch. */
+  private void runGetMethods() {
+    String address;
+    try {
+      address = TonAddress.toRaw(addressField.getText());
+    } catch (RuntimeException e) {
+      stateLabel.setText("Invalid address");
+      return;
+    }
+    List<TvmEmulator.Call> calls = new ArrayList<>();
+    for (String method : methodsField.getText().split("[,\\s]+")) {
+      if (!method.isEmpty()) {
+        calls.add(new TvmEmulator.Call(address, method, new JSONArray()));
+      }
+    }
+    if (calls.isEmpty()) {
+      return;
+    }
+    runButton.setEnabled(false);
+    getMethodsModel.setRowCount(0);
+
+    new Thread(
+            () -> {
+              try {
+                TonlibService tonlibService = TonlibService.getInstance();
+                tonlibService
+                    .getTvmEmulator()
+                    .runGetMethods(tonlibService.getClient(), calls)
+                    .whenComplete(
+                        (results, error) ->
+                            SwingUtilities.invokeLater(
+                                () -> {
+                                  runButton.setEnabled(true);
+                                  if (error != null) {
+                                    showGetMethodError(error);
+                                  } else {
+                                    showGetMethods(calls, results);
+                                  }
+                                  updateCacheLabel();
+                                }));
+              } catch (Exception e) {
+                SwingUtilities.invokeLater(
+                    () -> {
+                      runButton.setEnabled(true);
+                      showGetMethodError(e);
+                    });
+              }
+            },
+            "MyLocalTon-Plugin - Inspector")
+        .start();
+  }
+
+  private void showGetMethods(List<TvmEmulator.Call> calls, List<JSONObject> results) {
+    for (int i = 0; i < calls.size(); i++) {
+      JSONObject result = results.get(i);
+      if ("error".equals(result.get("@type"))) {
+        getMethodsModel.addRow(
+            new Object[] {calls.get(i).getMethod(), "", "", "", result.get("message")});
+      } else {
+        getMethodsModel.addRow(
+            new Object[] {
+              calls.get(i).getMethod(),
+              result.get("exit_code"),
+              result.get("gas_used"),
+              result.get("time_us"),
+              stackToString((JSONArray) result.get("stack"))
+            });
+      }
+    }
+  }
+
+  private void showGetMethodError(Throwable error) {
+    LOG.warn("Get-methods failed: " + error.getMessage());
+    getMethodsModel.addRow(new Object[] {"", "", "", "", TonlibClient.rootMessage(error)});
+  }
+
+  /** Numbers as they are, other entries by their type. */
+  private static String stackToString(JSONArray stack) {
+    List<String> entries = new ArrayList<>();
+    for (Object item : stack) {
+      JSONObject entry = (JSONObject) item;
+      JSONObject number = (JSONObject) entry.get("number");
+      entries.add(
+          number != null
+              ? String.valueOf(number.get("number"))
+              : StringUtils.removeStart((String) entry.get("@type"), "tvm.stackEntry"));
+    }
+    return String.join(", ", entries);
+  }
+
+  private Void render(JSONObject state, JSONObject transactions) {
+    SwingUtilities.invokeLater(
+        () -> {
+          lookupButton.setEnabled(true);
+          balanceLabel.setText("Balance: " + toTon(state.get("balance")) + " TON");
+          stateLabel.setText("State: " + accountStatus(state));
+          JSONObject lastTransaction = (JSONObject) state.get("last_transaction_id");
+          lastTransactionLabel.setText(
+              "Last transaction LT: "
+                  + (lastTransaction == null ? "-" : lastTransaction.get("lt")));
+
+          transactionsModel.setRowCount(0);
+          JSONArray items = (JSONArray) transactions.get("transactions");
+          if (items != null) {
+            for (Object item : items) {
+              JSONObject transaction = (JSONObject) item;
+              JSONObject inMsg = (JSONObject) transaction.get("in_msg");
+              JSONArray outMsgs = (JSONArray) transaction.get("out_msgs");
+              transactionsModel.addRow(
+                  new Object[] {
+                    TIME_FORMAT.format(
+                        Instant.ofEpochSecond(ChainFollower.number(transaction, "utime"))),
+                    ((JSONObject) transaction.get("transaction_id")).get("lt"),
+                    inMsg == null ? "" : sourceOf(inMsg),
+                    inMsg == null ? "" : toTon(inMsg.get("value")),
+                    toTon(transaction.get("fee")),
+                    outMsgs == null ? 0 : outMsgs.size()
+                  });
+            }
+          }
+          updateCacheLabel();
+        });
+    return null;
+  }
+
+  /** Fills the indexed transactions, answered from memory without asking the node. */
+  private void showIndexed(String address) {
+    TonlibService tonlibService = TonlibService.getInstance();
+    BlockHistoryIndex blockHistory = tonlibService.getBlockHistory();
+    indexedModel.setRowCount(0);
+    for (TransactionIndex.Entry entry :
+        tonlibService.getTransactionIndex().getTransactions(address, MAX_INDEXED_ROWS)) {
+      BlockHistoryIndex.Entry block =
+          blockHistory == null ? null : blockHistory.get(entry.getMasterchainSeqno());
+      indexedModel.addRow(
+          new Object[] {
+            block == null ? "" : TIME_FORMAT.format(Instant.ofEpochSecond(block.getGenUtime())),
+            entry.getLt(),
+            entry.getMasterchainSeqno()
+          });
+    }
+  }
+
+  private void showError(Throwable error) {
+    LOG.warn("Account lookup failed: " + error.getMessage());
+    SwingUtilities.invokeLater(
+        () -> {
+          lookupButton.setEnabled(true);
+          stateLabel.setText("Error: " + TonlibClient.rootMessage(error));
+          updateCacheLabel();
+        });
+  }
+
+  private void updateCacheLabel() {
+    ChainDataCache cache = TonlibService.getInstance().getChainDataCache();
+    TransactionIndex transactionIndex = TonlibService.getInstance().getTransactionIndex();
+    cacheLabel.setText(
+        "Cache hits: "
+            + cache.getHits()
+            + ", misses: "
+            + cache.getMisses()
+            + ", indexed transactions: "
+            + transactionIndex.getTransactionCount()
+            + " up to block "
+            + transactionIndex.getLastSeqno());
+  }
+
+  static String accountStatus(JSONObject state) {
+    if (StringUtils.isNotEmpty((String) state.get("code"))) {
+      return "active";
+    }
+    if (StringUtils.isNotEmpty((String) state.get("frozen_hash"))) {
+      return "frozen";
+    }
+    return "uninit";
+  }
+
+  private static String sourceOf(JSONObject message) {
+    Object source = message.get("source");
+    if (source instanceof JSONObject) {
+      source = ((JSONObject) source).get("account_address");
+    }
+    return StringUtils.defaultIfEmpty((String) source, "external");
+  }
+
+  static String toTon(Object nanotons) {
+    if (nanotons == null) {
+      return "0";
+    }
+    return new BigDecimal(String.valueOf(nanotons))
+        .movePointLeft(9)
+        .stripTrailingZeros()
+        .toPlainString();
+  }
+}
@@ -0,0 +1,224 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Rotates {@code myLocalTon.log} by size and age, so debug sessions running for days do not fill
+ * the disk. Rotated segments are named {@code myLocalTon.log.<yyyyMMdd-HHmmss-SSS>.gz}, compressed
+ * in the background and pruned to the configured number.
+ *
+ * <p>The node keeps its log open in append mode, so the log is copied and truncated in place
+ * instead of renamed. Lines appended while copying are copied as well before the truncation, only
+ * lines written in the few microseconds between the last copy and the truncation can be lost.
+ */
+public class LogRotator implements Disposable {
+  private static final Logger LOG = Logger.getInstance(LogRotator.class);
+
+  static final String LOG_FILENAME = "myLocalTon.log";
+  private static final String SEGMENT_PREFIX = LOG_FILENAME + ".";
+  static final String GZIP_SUFFIX = ".gz";
+  private static final String TMP_SUFFIX = ".tmp";
+  private static final DateTimeFormatter SEGMENT_TIME =
+      DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneId.systemDefault());
+  // Other files starting with the log's name, e.g. backups, are not segments
+  private static final Pattern SEGMENT_NAME =
+      Pattern.compile(Pattern.quote(SEGMENT_PREFIX) + "\\d{8}-\\d{6}-\\d{3}(\\.gz)?");
+  private static final long CHECK_PERIOD_SECONDS = 60;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path logDirectory;
+  private final ScheduledExecutorService executorService;
+  // Start of the current segment, rotation by age counts from here
+  private volatile long segmentStartedAt = System.currentTimeMillis();
+
+  public LogRotator() {
+    this(NodeLauncher.getDataDirectory());
+  }
+
+  LogRotator(Path logDirectory) {
+    this.logDirectory = logDirectory;
+    executorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Log Rotator");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    executorService.scheduleWithFixedDelay(
+        () -> {
+          try {
+            check();
+          } catch (Exception e) {
+            LOG.warn("Log rotation failed: " + e.getMessage());
+          }
+        },
+        CHECK_PERIOD_SECONDS,
+        CHECK_PERIOD_SECONDS,
+        TimeUnit.SECONDS);
+  }
+
+  public static LogRotator getInstance() {
+    return ApplicationManager.getApplication().getService(LogRotator.class);
+  }
+
+  public Path getLogFile() {
+    return logDirectory.resolve(LOG_FILENAME);
+  }
+
+  /** Rotates the log if it exceeds the configured size or age and prunes old segments. */
+  synchronized void check() throws IOException {
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    long maxBytes = settings.getLogRotateSizeMb() * 1024L * 1024L;
+    long maxAgeMs = TimeUnit.HOURS.toMillis(settings.getLogRotateHours());
+    // Segments left uncompressed by a previous IDE session
+    compressPending();
+
+    Path logFile = getLogFile();
+    long size = Files.exists(logFile) ? Files.size(logFile) : 0;
+    if (size == 0) {
+      segmentStartedAt = System.currentTimeMillis();
+    } else if ((maxBytes > 0 && size >= maxBytes)
+        || (maxAgeMs > 0 && System.currentTimeMillis() - segmentStartedAt >= maxAgeMs)) {
+      rotate();
+    }
+    prune(settings.getLogKeepSegments());
+  }
+
+  /**
+   * Moves the current content of the log into a new compressed segment.
+   *
+   * @return the compressed segment, or null if the log is empty
+   * @throws IOException if the log cannot be copied or truncated
+   */
+  public synchronized Path rotate() throws IOException {
+    Path logFile = getLogFile();
+    if (!Files.exists(logFile) || Files.size(logFile) == 0) {
+      return null;
+    }
+    Path segment = logDirectory.resolve(SEGMENT_PREFIX + SEGMENT_TIME.format(Instant.now()));
+    long copied = 0;
+    try (FileChannel source =
+            FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel target =
+            FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      long size;
+      // Catches up with lines appended while copying, then truncates right away
+      while ((size = source.size()) > copied) {
+        copied += source.transferTo(copied, size - copied, target);
+      }
+      source.truncate(0);
+    }
+    segmentStartedAt = System.currentTimeMillis();
+    LOG.warn("Rotated " + copied + " bytes of " + LOG_FILENAME + " to " + segment.getFileName());
+    return compress(segment);
+  }
+
+  /** Compresses rotated segments that are not compressed yet. */
+  private void compressPending() throws IOException {
+    for (Path segment : listSegments(logDirectory)) {
+      if (!segment.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+        compress(segment);
+      }
+    }
+  }
+
+  private static Path compress(Path segment) throws IOException {
+    Path compressed = segment.resolveSibling(segment.getFileName() + GZIP_SUFFIX);
+    Path tmp = compressed.resolveSibling(compressed.getFileName() + TMP_SUFFIX);
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE)) {
+      Files.copy(segment, out);
+    }
+    // Searches never see a partially written segment
+    Files.move(
+        tmp, compressed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.delete(segment);
+    return compressed;
+  }
+
+  /** Deletes the oldest segments beyond the given number. */
+  private void prune(int keep) throws IOException {
+    List<Path> segments = listSegments(logDirectory);
+    for (int i = 0; i < segments.size() - Math.max(keep, 0); i++) {
+      try {
+        Files.delete(segments.get(i));
+        LOG.warn("Deleted old log segment " + segments.get(i).getFileName());
+      } catch (NoSuchFileException e) {
+        // Already gone
+      }
+    }
+  }
+
+  /**
+   * Lists the rotated segments of the log in a directory, {@code myLocalTon.log.<time>[.gz]}.
+   *
+   * @param logDirectory directory of {@code myLocalTon.log}
+   * @return segments, oldest first
+   * @throws IOException if the directory cannot be listed
+   */
+  static List<Path> listSegments(Path logDirectory) throws IOException {
+    List<Path> segments = new ArrayList<>();
+    if (!Files.isDirectory(logDirectory)) {
+      return segments;
+    }
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(logDirectory, SEGMENT_PREFIX + "*")) {
+      for (Path path : stream) {
+        if (SEGMENT_NAME.matcher(path.getFileName().toString()).matches()) {
+          segments.add(path);
+        }
+      }
+    }
+    // Timestamps in the names sort chronologically
+    Collections.sort(segments);
+    return segments;
+  }
+
+  /**
+   * Lists the log files to search, the current log first and then the segments, newest first.
+   *
+   * @param includeSegments whether rotated segments are included
+   * @return existing log files
+   * @throws IOException if the directory cannot be listed
+   */
+  public List<Path> getLogFiles(boolean includeSegments) throws IOException {
+    List<Path> files = new ArrayList<>();
+    if (Files.exists(getLogFile())) {
+      files.add(getLogFile());
+    }
+    if (includeSegments) {
+      List<Path> segments = listSegments(logDirectory);
+      Collections.reverse(segments);
+      files.addAll(segments);
+    }
+    return files;
+  }
+
+  @Override
+  public void dispose() {
+    executorService.shutdownNow();
+  }
+}
@@ -0,0 +1,114 @@
+package org.ton.mylocalton.plugin;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Searches the MyLocalTon log and its rotated segments line by line. Compressed segments are
+ * decompressed while reading, so memory use does not depend on the size of the logs, and the search
+ * stops as soon as enough lines matched.
+ */
+public final class LogSearch {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private LogSearch() {}
+
+  /** Receives matching lines. */
+  public interface Listener {
+    /**
+     * Called for every matching line.
+     *
+     * @param file file the line was found in
+     * @param lineNumber number of the line in the file, starting from 1
+     * @param line the line
+     */
+    void onMatch(Path file, long lineNumber, String line);
+  }
+
+  /**
+   * Searches files in the given order.
+   *
+   * @param files files to search, see {@link LogRotator#getLogFiles(boolean)}
+   * @param matcher selects the lines to report
+   * @param maxMatches number of matches after which the search stops
+   * @param cancelled polled while reading, stops the search when it returns true
+   * @param listener receives the matches
+   * @return number of matches
+   * @throws IOException if a file cannot be read
+   */
+  public static int search(
+      List<Path> files,
+      Predicate<String> matcher,
+      int maxMatches,
+      BooleanSupplier cancelled,
+      Listener listener)
+      throws IOException {
+    int matches = 0;
+    for (Path file : files) {
+      try (BufferedReader reader = open(file)) {
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lineNumber++;
+          if (matcher.test(line)) {
+            listener.onMatch(file, lineNumber, line);
+            if (++matches >= maxMatches) {
+              return matches;
+            }
+          }
+          // Cancellation is checked every few thousand lines only
+          if ((lineNumber & 0xfff) == 0 && cancelled.getAsBoolean()) {
+            return matches;
+          }
+        }
+      } catch (NoSuchFileException e) {
+        // Pruned by the rotator while searching
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Reads the end of a log file.
+   *
+   * @param file uncompressed log file
+   * @param maxBytes number of bytes to read at most
+   * @return the last complete lines within {@code maxBytes}
+   * @throws IOException if the file cannot be read
+   */
+  public static String tail(Path file, int maxBytes) throws IOException {
+    if (!Files.exists(file)) {
+      return "";
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+      long length = raf.length();
+      long start = Math.max(0, length - maxBytes);
+      byte[] bytes = new byte[(int) (length - start)];
+      raf.seek(start);
+      raf.readFully(bytes);
+      String text = new String(bytes, StandardCharsets.UTF_8);
+      // Skips the line cut in the middle
+      int firstLine = start == 0 ? 0 : text.indexOf('\n') + 1;
+      return text.substring(firstLine);
+    }
+  }
+
+  private static BufferedReader open(Path file) throws IOException {
+    InputStream in = Files.newInputStream(file);
+    if (file.getFileName().toString().endsWith(LogRotator.GZIP_SUFFIX)) {
+      in = new GZIPInputStream(in, BUFFER_SIZE);
+    }
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+  }
+}
@@ -0,0 +1,236 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.*;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Tool window tab with the end of {@code myLocalTon.log} and a search over the log and its rotated
+ * segments. Searches run in the background and show at most {@link #MAX_MATCHES} lines. The
+ * counters of the {@link NodeLogMonitor} are shown below. Diagnostics bundles for bug reports are
+ * exported from here too.
+ */
+public class LogViewerPanel extends JPanel implements Disposable {
+  private static final Logger LOG = Logger.getInstance(LogViewerPanel.class);
+
+  private static final int MAX_MATCHES = 2000;
+  private static final int TAIL_BYTES = 256 * 1024;
+  private static final int EVENTS_REFRESH_MS = 1000;
+
+  private final JTextField queryField = new JTextField();
+  private final JCheckBox regexCheckbox = new JCheckBox("Regex");
+  private final JCheckBox rotatedCheckbox = new JCheckBox("Rotated logs", true);
+  private final JButton searchButton = new JButton("Search");
+  private final JButton rotateButton = new JButton("Rotate Now");
+  private final JButton exportButton = new JButton("Export Diagnostics");
+  private final JTextArea textArea = new JTextArea();
+  private final JLabel statusLabel = new JLabel(" ");
+  private final JLabel eventsLabel = new JLabel(" ");
+  // Counters change with every block, a timer keeps the updates cheap
+  private final Timer eventsTimer = new Timer(EVENTS_REFRESH_MS, e -> updateEventsLabel());
+  // A new search makes the running one stop
+  private final AtomicInteger searchGeneration = new AtomicInteger();
+
+  public LogViewerPanel() {
+    super(new BorderLayout(0, 5));
+
+    // Search input
+    JPanel optionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+    optionsPanel.add(regexCheckbox);
+    optionsPanel.add(rotatedCheckbox);
+    optionsPanel.add(searchButton);
+    optionsPanel.add(rotateButton);
+    optionsPanel.add(exportButton);
+    JPanel searchPanel = new JPanel(new BorderLayout(5, 0));
+    queryField.setToolTipText("Text to find in myLocalTon.log, empty to show its end");
+    searchPanel.add(queryField, BorderLayout.CENTER);
+    searchPanel.add(optionsPanel, BorderLayout.EAST);
+    searchPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+    add(searchPanel, BorderLayout.NORTH);
+
+    textArea.setEditable(false);
+    textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize()));
+    add(new JScrollPane(textArea), BorderLayout.CENTER);
+
+    JPanel statusPanel = new JPanel(new GridLayout(0, 1, 0, 2));
+    statusPanel.add(statusLabel);
+    statusPanel.add(eventsLabel);
+    statusPanel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+    add(statusPanel, BorderLayout.SOUTH);
+
+    eventsTimer.start();
+
+    searchButton.addActionListener(e -> search());
+    queryField.addActionListener(e -> search());
+    rotateButton.addActionListener(e -> rotate());
+    exportButton.addActionListener(e -> exportDiagnostics());
+  }
+
+  private void updateEventsLabel() {
+    List<String> counts = new ArrayList<>();
+    for (Map.Entry<NodeLogMonitor.Type, Long> count :
+        NodeLogMonitor.getInstance().getCounts().entrySet()) {
+      counts.add(count.getKey().getTitle().toLowerCase() + ": " + count.getValue());
+    }
+    eventsLabel.setText("Since IDE start: " + String.join(", ", counts));
+  }
+
+  /** Searches the logs for the entered text, or shows the end of the log if it is empty. */
+  private void search() {
+    String query = queryField.getText();
+    Predicate<String> matcher;
+    try {
+      matcher = matcher(query, regexCheckbox.isSelected());
+    } catch (PatternSyntaxException e) {
+      statusLabel.setText("Invalid regex: " + e.getDescription());
+      return;
+    }
+    boolean includeRotated = rotatedCheckbox.isSelected();
+    int generation = searchGeneration.incrementAndGet();
+    statusLabel.setText(query.isEmpty() ? "Loading..." : "Searching...");
+
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              try {
+                LogRotator logRotator = LogRotator.getInstance();
+                if (query.isEmpty()) {
+                  String tail = LogSearch.tail(logRotator.getLogFile(), TAIL_BYTES);
+                  show(generation, tail, "End of " + LogRotator.LOG_FILENAME, true);
+                  return;
+                }
+                List<Path> files = logRotator.getLogFiles(includeRotated);
+                StringBuilder text = new StringBuilder();
+                Path[] lastFile = new Path[1];
+                int matches =
+                    LogSearch.search(
+                        files,
+                        matcher,
+                        MAX_MATCHES,
+                        () -> searchGeneration.get() != generation,
+                        (file, lineNumber, line) -> {
+                          if (!file.equals(lastFile[0])) {
+                            text.append("=== ").append(file.getFileName()).append('\n');
+                            lastFile[0] = file;
+                          }
+                          text.append(lineNumber).append(": ").append(line).append('\n');
+                        });
+                show(
+                    generation,
+                    text.toString(),
+                    matches
+                        + (matches >= MAX_MATCHES ? "+" : "")
+                        + " matching lines in "
+                        + files.size()
+                        + " files",
+                    false);
+              } catch (IOException | RuntimeException e) {
+                LOG.warn("Log search failed: " + e.getMessage(), e);
+                show(generation, "", "Error: " + e.getMessage(), false);
+              }
+            });
+  }
+
+  private void rotate() {
+    rotateButton.setEnabled(false);
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              String status = "Error: rotation failed";
+              try {
+                Path segment = LogRotator.getInstance().rotate();
+                status = segment == null ? "Log is empty" : "Rotated to " + segment.getFileName();
+              } catch (IOException | RuntimeException e) {
+                LOG.warn("Log rotation failed: " + e.getMessage(), e);
+                status = "Error: " + e.getMessage();
+              } finally {
+                String finalStatus = status;
+                SwingUtilities.invokeLater(
+                    () -> {
+                      rotateButton.setEnabled(true);
+                      statusLabel.setText(finalStatus);
+                    });
+              }
+            });
+  }
+
+  /** Asks for a zip file and writes the diagnostics bundle to it in the background. */
+  private void exportDiagnostics() {
+    JFileChooser chooser = new JFileChooser();
+    chooser.setDialogTitle("Export MyLocalTon Diagnostics");
+    chooser.setSelectedFile(
+        new File(
+            "mylocalton-diagnostics-"
+                + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now())
+                + ".zip"));
+    if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    Path target = chooser.getSelectedFile().toPath();
+    long maxLogBytes = MyLocalTonSettings.getInstance().getDiagnosticsLogMb() * 1024L * 1024L;
+    exportButton.setEnabled(false);
+    statusLabel.setText("Exporting diagnostics...");
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              String status = "Error: export failed";
+              try {
+                int files = new DiagnosticsExporter(maxLogBytes).export(target);
+                status = "Exported " + files + " files to " + target;
+              } catch (IOException | RuntimeException e) {
+                LOG.warn("Diagnostics export failed: " + e.getMessage(), e);
+                status = "Error: " + e.getMessage();
+                // A partial zip is of no use
+                FileUtils.deleteQuietly(target.toFile());
+              } finally {
+                String finalStatus = status;
+                SwingUtilities.invokeLater(
+                    () -> {
+                      exportButton.setEnabled(true);
+                      statusLabel.setText(finalStatus);
+                    });
+              }
+            });
+  }
+
+  private void show(int generation, String text, String status, boolean scrollToEnd) {
+    SwingUtilities.invokeLater(
+        () -> {
+          // Results of a search replaced by a newer one are dropped
+          if (searchGeneration.get() != generation) {
+            return;
+          }
+          textArea.setText(text);
+          textArea.setCaretPosition(scrollToEnd ? text.length() : 0);
+          statusLabel.setText(status);
+        });
+  }
+
+  private static Predicate<String> matcher(String query, boolean regex) {
+    if (regex) {
+      Pattern pattern = Pattern.compile(query);
+      return line -> pattern.matcher(line).find();
+    }
+    return line -> line.contains(query);
+  }
+
+  @Override
+  public void dispose() {
+    eventsTimer.stop();
+  }
+}
@@ -0,0 +1,139 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.execution.BeforeRunTask;
+import com.intellij.execution.BeforeRunTaskProvider;
+import com.intellij.execution.configurations.RunConfiguration;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.IconLoader;
+import com.intellij.openapi.util.Key;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import javax.swing.*;
+import org.jetbrains.annotations.NotNull;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * "Start MyLocalTon" before-launch task. It can be added to any run configuration, e.g. integration
+ * tests, and blocks the launch until the local chain has produced its first masterchain block. The
+ * node is started with the parameters last used in the tool window unless it is already running.
+ * When the plugin is attached to a node elsewhere, the task only waits for that node.
+ */
+public class MyLocalTonBeforeRunTaskProvider
+    extends BeforeRunTaskProvider<MyLocalTonBeforeRunTaskProvider.StartNodeTask> {
+  private static final Logger LOG = Logger.getInstance(MyLocalTonBeforeRunTaskProvider.class);
+
+  public static final Key<StartNodeTask> ID = Key.create("MyLocalTon.StartNode");
+
+  public static class StartNodeTask extends BeforeRunTask<StartNodeTask> {
+    StartNodeTask() {
+      super(ID);
+    }
+  }
+
+  @Override
+  public Key<StartNodeTask> getId() {
+    return ID;
+  }
+
+  @Override
+  public String getName() {
+    return "Start MyLocalTon";
+  }
+
+  @Override
+  public Icon getIcon() {
+    return IconLoader.getIcon("/ton_symbol.svg", MyLocalTonBeforeRunTaskProvider.class);
+  }
+
+  @Override
+  public String getDescription(StartNodeTask task) {
+    return "Start MyLocalTon and wait until the chain is ready";
+  }
+
+  @Override
+  public StartNodeTask createTask(@NotNull RunConfiguration runConfiguration) {
+    // Never added to configurations implicitly, only when picked in the before-launch list
+    return new StartNodeTask();
+  }
+
+  @Override
+  public boolean executeTask(
+      @NotNull DataContext context,
+      @NotNull RunConfiguration configuration,
+      @NotNull ExecutionEnvironment environment,
+      @NotNull StartNodeTask task) {
+    // Called on a background thread, so blocking until the chain is ready is fine here
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    try {
+      if (indicator != null) {
+        indicator.setText("Starting MyLocalTon...");
+      }
+      if (!settings.isAttached()) {
+        Path jar = ReleaseStore.getDefault().getLaunchableJar();
+        // Traced from here, a first start runs genesis while preparing
+        if (!NodeLauncher.isLockFileExists()) {
+          ReleaseStore.Release release = ReleaseStore.getDefault().getActive();
+          StartupTracer.getInstance().begin(release == null ? null : release.getVersion());
+        }
+        GenesisImageCache.getInstance().prepare(jar, settings.getStartOptions());
+        NodeLauncher.startIfNotRunning(
+            MyLocalTonToolWindowFactory.getBundledExecutablePath("java"),
+            jar,
+            settings.getStartOptions());
+        NodeSupervisor.getInstance().started();
+      }
+      long seqno =
+          NodeLauncher.waitUntilReady(
+              TonlibService.getInstance(),
+              TimeUnit.SECONDS.toMillis(settings.getReadinessTimeoutSeconds()),
+              current -> {
+                if (indicator != null) {
+                  indicator.checkCanceled();
+                  indicator.setText2(
+                      current < 0 ? "Waiting for the node" : "Masterchain seqno: " + current);
+                }
+              });
+      StartupTracer.getInstance().onBlock(seqno);
+      LOG.warn("MyLocalTon is ready at masterchain seqno " + seqno);
+      if (indicator != null) {
+        indicator.setText2("Waiting for the wallet pool");
+      }
+      TonlibService.getInstance()
+          .ensureWalletPool()
+          .get(settings.getReadinessTimeoutSeconds(), TimeUnit.SECONDS);
+      return true;
+    } catch (ProcessCanceledException e) {
+      // Canceled by the user, the node keeps starting and can be stopped in the tool window
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (CancellationException e) {
+      // Stopped in the tool window while genesis ran
+      LOG.warn(e.getMessage());
+      return false;
+    } catch (Exception e) {
+      LOG.warn("Before-launch task failed: " + e.getMessage(), e);
+      ApplicationManager.getApplication()
+          .invokeLater(
+              () ->
+                  Messages.showErrorDialog(
+                      configuration.getProject(),
+                      "Cannot start MyLocalTon before launching "
+                          + configuration.getName()
+                          + ": "
+                          + e.getMessage(),
+                      "MyLocalTon Plugin"));
+      return false;
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.options.ConfigurationException;
+import java.awt.*;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import javax.swing.*;
+import org.apache.commons.lang3.StringUtils;
+
+/** Settings page under Settings | Tools | MyLocalTon. */
+public class MyLocalTonConfigurable implements Configurable {
+  private JPanel panel;
+  private JTextField mirrorUrlField;
+  private JSpinner readinessTimeoutSpinner;
+  private JCheckBox autoRestartCheckbox;
+  private JSpinner hangTimeoutSpinner;
+  private JTextField attachHostField;
+  private JSpinner attachPortSpinner;
+  private JTextField attachKeyField;
+  private JTextField attachConfigField;
+  private JSpinner eventStreamPortSpinner;
+  private JSpinner apiProxyPortSpinner;
+  private JTextField apiProxyUpstreamField;
+  private JSpinner logRotateSizeSpinner;
+  private JSpinner logRotateHoursSpinner;
+  private JSpinner logKeepSegmentsSpinner;
+  private JSpinner diskBudgetSpinner;
+  private JSpinner diagnosticsLogSpinner;
+  private JSpinner genesisImagesSpinner;
+
+  @Override
+  public String getDisplayName() {
+    return "MyLocalTon";
+  }
+
+  @Override
+  public JComponent createComponent() {
+    panel = new JPanel(new GridBagLayout());
+    GridBagConstraints gbc = new GridBagConstraints();
+    gbc.anchor = GridBagConstraints.WEST;
+    gbc.insets = new Insets(2, 2, 2, 2);
+
+    // Mirror row
+    mirrorUrlField = new JTextField(40);
+    mirrorUrlField.setToolTipText(
+        "<html>Base URL (https://mirror.local/mylocalton/) or shared directory with MyLocalTon"
+            + " JARs.<br>Optional &lt;jar&gt;.sha256 or SHA256SUMS files are used to verify them."
+            + "<br>Leave empty to download from GitHub.</html>");
+    addRow("Mirror URL or directory:", mirrorUrlField, gbc);
+
+    // Before-launch task row
+    readinessTimeoutSpinner = new JSpinner(new SpinnerNumberModel(180, 10, 3600, 10));
+    readinessTimeoutSpinner.setToolTipText(
+        "How long the \"Start MyLocalTon\" before-launch task waits for the first block.");
+    addRow("Readiness timeout (s):", readinessTimeoutSpinner, gbc);
+
+    // Supervisor rows
+    autoRestartCheckbox = new JCheckBox("Restart MyLocalTon after a crash or hang");
+    autoRestartCheckbox.setToolTipText(
+        "<html>Waits 5 s before the first restart and twice as long before every further one,"
+            + "<br>up to 5 minutes. A crash report is kept in ~/.mylocalton/crash-reports"
+            + " either way.</html>");
+    addRow("Supervisor:", autoRestartCheckbox, gbc);
+    hangTimeoutSpinner = new JSpinner(new SpinnerNumberModel(120, 0, 3600, 10));
+    hangTimeoutSpinner.setToolTipText(
+        "A running node without a new block for this long counts as hung, 0 disables the check.");
+    addRow("Hang timeout (s):", hangTimeoutSpinner, gbc);
+
+    // Attach rows
+    attachHostField = new JTextField(40);
+    attachHostField.setToolTipText(
+        "<html>Host of a MyLocalTon running elsewhere, e.g. on a build server, to monitor and"
+            + " inspect instead of a local node.<br>Empty to use the local node.</html>");
+    addRow("Attach to host:", attachHostField, gbc);
+    attachPortSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 65535, 1));
+    attachPortSpinner.setEditor(new JSpinner.NumberEditor(attachPortSpinner, "#"));
+    attachPortSpinner.setToolTipText(
+        "Lite-server port of the attached node, 0 to take it from its global config.");
+    addRow("Lite-server port:", attachPortSpinner, gbc);
+    attachKeyField = new JTextField(40);
+    attachKeyField.setToolTipText(
+        "Base64 public key of the attached lite-server, empty to take it from its global config.");
+    addRow("Lite-server key:", attachKeyField, gbc);
+    attachConfigField = new JTextField(40);
+    attachConfigField.setToolTipText(
+        "<html>Copy of myLocalTon/genesis/db/my-ton-local.config.json of the attached node.<br>It"
+            + " holds the zero state of the chain, which tonlib needs to connect.</html>");
+    addRow("Attached global config:", attachConfigField, gbc);
+
+    // Event stream row
+    eventStreamPortSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 65535, 1));
+    eventStreamPortSpinner.setEditor(new JSpinner.NumberEditor(eventStreamPortSpinner, "#"));
+    eventStreamPortSpinner.setToolTipText(
+        "<html>Publishes new blocks and transactions as Server-Sent Events on"
+            + " http://127.0.0.1:&lt;port&gt;/events.<br>0 disables the stream.</html>");
+    addRow("Event stream port:", eventStreamPortSpinner, gbc);
+
+    // ton-http-api proxy rows
+    apiProxyPortSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 65535, 1));
+    apiProxyPortSpinner.setEditor(new JSpinner.NumberEditor(apiProxyPortSpinner, "#"));
+    apiProxyPortSpinner.setToolTipText(
+        "<html>Caching proxy for ton-http-api on http://127.0.0.1:&lt;port&gt;, statistics on"
+            + " /proxy/stats.<br>0 disables the proxy.</html>");
+    addRow("ton-http-api proxy port:", apiProxyPortSpinner, gbc);
+    apiProxyUpstreamField = new JTextField(40);
+    apiProxyUpstreamField.setToolTipText("ton-http-api started by MyLocalTon.");
+    addRow("ton-http-api URL:", apiProxyUpstreamField, gbc);
+
+    // Log rotation rows
+    logRotateSizeSpinner = new JSpinner(new SpinnerNumberModel(50, 0, 10240, 10));
+    logRotateSizeSpinner.setToolTipText(
+        "Rotates myLocalTon.log when it reaches this size, 0 disables rotation by size.");
+    addRow("Rotate log at (MB):", logRotateSizeSpinner, gbc);
+    logRotateHoursSpinner = new JSpinner(new SpinnerNumberModel(24, 0, 720, 1));
+    logRotateHoursSpinner.setToolTipText(
+        "Rotates myLocalTon.log after this many hours, 0 disables rotation by age.");
+    addRow("Rotate log every (h):", logRotateHoursSpinner, gbc);
+    logKeepSegmentsSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 1000, 1));
+    logKeepSegmentsSpinner.setToolTipText(
+        "Number of compressed myLocalTon.log.*.gz files kept, older ones are deleted.");
+    addRow("Keep rotated logs:", logKeepSegmentsSpinner, gbc);
+
+    // Disk budget row
+    diskBudgetSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 10000, 1));
+    diskBudgetSpinner.setToolTipText(
+        "<html>Prunes old logs and block packages when ~/.mylocalton/myLocalTon grows beyond this"
+            + " size.<br>0 disables the limit.</html>");
+    addRow("Disk budget (GB):", diskBudgetSpinner, gbc);
+
+    // Diagnostics row
+    diagnosticsLogSpinner = new JSpinner(new SpinnerNumberModel(50, 0, 10240, 10));
+    diagnosticsLogSpinner.setToolTipText(
+        "<html>Exported diagnostics contain the end of every log up to this size.<br>0 exports"
+            + " whole logs.</html>");
+    addRow("Diagnostics log size (MB):", diagnosticsLogSpinner, gbc);
+
+    // Genesis image row
+    genesisImagesSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 20, 1));
+    genesisImagesSpinner.setToolTipText(
+        "<html>Saves the chain of every configuration (release, validators, features) right"
+            + " after genesis.<br>A Start after Reset restores it instead of running genesis"
+            + " again. 0 disables the cache.</html>");
+    addRow("Genesis images kept:", genesisImagesSpinner, gbc);
+
+    // Push everything to the top
+    gbc.gridy++;
+    gbc.weighty = 1.0;
+    panel.add(new JPanel(), gbc);
+
+    reset();
+    return panel;
+  }
+
+  private void addRow(String label, JComponent component, GridBagConstraints gbc) {
+    gbc.gridx = 0;
+    gbc.weightx = 0.0;
+    gbc.fill = GridBagConstraints.NONE;
+    panel.add(new JLabel(label), gbc);
+    gbc.gridx = 1;
+    gbc.weightx = 1.0;
+    gbc.fill = GridBagConstraints.HORIZONTAL;
+    panel.add(component, gbc);
+    gbc.gridy++;
+  }
+
+  @Override
+  public boolean isModified() {
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    return !mirrorUrlField.getText().trim().equals(settings.getMirrorUrl())
+        || (Integer) readinessTimeoutSpinner.getValue() != settings.getReadinessTimeoutSeconds()
+        || autoRestartCheckbox.isSelected() != settings.isAutoRestart()
+        || (Integer) hangTimeoutSpinner.getValue() != settings.getHangTimeoutSeconds()
+        || !attachHostField.getText().trim().equals(settings.getAttachHost())
+        || (Integer) attachPortSpinner.getValue() != settings.getAttachPort()
+        || !attachKeyField.getText().trim().equals(settings.getAttachKey())
+        || !attachConfigField.getText().trim().equals(settings.getAttachConfig())
+        || (Integer) eventStreamPortSpinner.getValue() != settings.getEventStreamPort()
+        || (Integer) apiProxyPortSpinner.getValue() != settings.getApiProxyPort()
+        || !apiProxyUpstreamField.getText().trim().equals(settings.getApiProxyUpstream())
+        || (Integer) logRotateSizeSpinner.getValue() != settings.getLogRotateSizeMb()
+        || (Integer) logRotateHoursSpinner.getValue() != settings.getLogRotateHours()
+        || (Integer) logKeepSegmentsSpinner.getValue() != settings.getLogKeepSegments()
+        || (Integer) diskBudgetSpinner.getValue() != settings.getDiskBudgetGb()
+        || (Integer) diagnosticsLogSpinner.getValue() != settings.getDiagnosticsLogMb()
+        || (Integer) genesisImagesSpinner.getValue() != settings.getGenesisImages();
+  }
+
+  @Override
+  public void apply() throws ConfigurationException {
+    String mirrorUrl = mirrorUrlField.getText().trim();
+    if (StringUtils.isNotEmpty(mirrorUrl) && !OfflineInstaller.isLocalMirror(mirrorUrl)) {
+      try {
+        URI uri = new URI(mirrorUrl);
+        if (uri.getScheme() == null || uri.getHost() == null) {
+          throw new ConfigurationException("Mirror must be an http(s) URL or a directory");
+        }
+      } catch (java.net.URISyntaxException e) {
+        throw new ConfigurationException("Invalid mirror URL: " + e.getMessage());
+      }
+    }
+    if (OfflineInstaller.isLocalMirror(mirrorUrl)
+        && !Files.isDirectory(Paths.get(OfflineInstaller.toLocalPath(mirrorUrl)))) {
+      throw new ConfigurationException("Mirror directory does not exist: " + mirrorUrl);
+    }
+    MyLocalTonSettings.getInstance().setMirrorUrl(mirrorUrl);
+    MyLocalTonSettings.getInstance()
+        .setReadinessTimeoutSeconds((Integer) readinessTimeoutSpinner.getValue());
+    MyLocalTonSettings.getInstance().setAutoRestart(autoRestartCheckbox.isSelected());
+    MyLocalTonSettings.getInstance().setHangTimeoutSeconds((Integer) hangTimeoutSpinner.getValue());
+
+    String attachHost = attachHostField.getText().trim();
+    String attachKey = attachKeyField.getText().trim();
+    String attachConfig = attachConfigField.getText().trim();
+    if (StringUtils.isNotEmpty(attachHost)) {
+      if (StringUtils.isEmpty(attachConfig) || !Files.isRegularFile(Paths.get(attachConfig))) {
+        throw new ConfigurationException(
+            "Global config of the attached node does not exist: " + attachConfig);
+      }
+      if (StringUtils.isNotEmpty(attachKey) && !isPublicKey(attachKey)) {
+        throw new ConfigurationException("Lite-server key must be a base64 ed25519 public key");
+      }
+    }
+    boolean attachHostChanged =
+        !attachHost.equals(MyLocalTonSettings.getInstance().getAttachHost());
+    MyLocalTonSettings.getInstance().setAttachHost(attachHost);
+    MyLocalTonSettings.getInstance().setAttachPort((Integer) attachPortSpinner.getValue());
+    MyLocalTonSettings.getInstance().setAttachKey(attachKey);
+    MyLocalTonSettings.getInstance().setAttachConfig(attachConfig);
+
+    MyLocalTonSettings.getInstance().setLogRotateSizeMb((Integer) logRotateSizeSpinner.getValue());
+    MyLocalTonSettings.getInstance().setLogRotateHours((Integer) logRotateHoursSpinner.getValue());
+    MyLocalTonSettings.getInstance()
+        .setLogKeepSegments((Integer) logKeepSegmentsSpinner.getValue());
+    MyLocalTonSettings.getInstance().setDiskBudgetGb((Integer) diskBudgetSpinner.getValue());
+    MyLocalTonSettings.getInstance()
+        .setDiagnosticsLogMb((Integer) diagnosticsLogSpinner.getValue());
+    int genesisImages = (Integer) genesisImagesSpinner.getValue();
+    if (genesisImages < MyLocalTonSettings.getInstance().getGenesisImages()) {
+      GenesisImageCache.getInstance().pruneLater(genesisImages);
+    }
+    MyLocalTonSettings.getInstance().setGenesisImages(genesisImages);
+
+    int eventStreamPort = (Integer) eventStreamPortSpinner.getValue();
+    if (eventStreamPort != MyLocalTonSettings.getInstance().getEventStreamPort()) {
+      MyLocalTonSettings.getInstance().setEventStreamPort(eventStreamPort);
+      try {
+        TonlibService.getInstance().restartEventStream();
+      } catch (IOException e) {
+        throw new ConfigurationException(
+            "Cannot listen on port " + eventStreamPort + ": " + e.getMessage());
+      }
+    }
+
+    int apiProxyPort = (Integer) apiProxyPortSpinner.getValue();
+    String apiProxyUpstream = apiProxyUpstreamField.getText().trim();
+    if (StringUtils.isNotEmpty(apiProxyUpstream)) {
+      try {
+        URI uri = new URI(apiProxyUpstream);
+        if (uri.getScheme() == null || uri.getHost() == null) {
+          throw new ConfigurationException("ton-http-api URL must be an http(s) URL");
+        }
+      } catch (java.net.URISyntaxException e) {
+        throw new ConfigurationException("Invalid ton-http-api URL: " + e.getMessage());
+      }
+    }
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    // The upstream follows the attached host
+    if (apiProxyPort != settings.getApiProxyPort()
+        || !apiProxyUpstream.equals(settings.getApiProxyUpstream())
+        || attachHostChanged) {
+      settings.setApiProxyPort(apiProxyPort);
+      settings.setApiProxyUpstream(apiProxyUpstream);
+      try {
+        TonlibService.getInstance().restartApiProxy();
+      } catch (IOException e) {
+        throw new ConfigurationException(
+            "Cannot listen on port " + apiProxyPort + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private static boolean isPublicKey(String base64) {
+    try {
+      return Base64.getDecoder().decode(base64).length == 32;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void reset() {
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    mirrorUrlField.setText(settings.getMirrorUrl());
+    readinessTimeoutSpinner.setValue(settings.getReadinessTimeoutSeconds());
+    autoRestartCheckbox.setSelected(settings.isAutoRestart());
+    hangTimeoutSpinner.setValue(settings.getHangTimeoutSeconds());
+    attachHostField.setText(settings.getAttachHost());
+    attachPortSpinner.setValue(settings.getAttachPort());
+    attachKeyField.setText(settings.getAttachKey());
+    attachConfigField.setText(settings.getAttachConfig());
+    eventStreamPortSpinner.setValue(settings.getEventStreamPort());
+    apiProxyPortSpinner.setValue(settings.getApiProxyPort());
+    apiProxyUpstreamField.setText(settings.getApiProxyUpstream());
+    logRotateSizeSpinner.setValue(settings.getLogRotateSizeMb());
+    logRotateHoursSpinner.setValue(settings.getLogRotateHours());
+    logKeepSegmentsSpinner.setValue(settings.getLogKeepSegments());
+    diskBudgetSpinner.setValue(settings.getDiskBudgetGb());
+    diagnosticsLogSpinner.setValue(settings.getDiagnosticsLogMb());
+    genesisImagesSpinner.setValue(settings.getGenesisImages());
+  }
+
+  @Override
+  public void disposeUIResources() {
+    panel = null;
+    mirrorUrlField = null;
+    readinessTimeoutSpinner = null;
+    eventStreamPortSpinner = null;
+    apiProxyPortSpinner = null;
+    apiProxyUpstreamField = null;
+    logRotateSizeSpinner = null;
+    logRotateHoursSpinner = null;
+    logKeepSegmentsSpinner = null;
+    diskBudgetSpinner = null;
+  }
+}
@@ -0,0 +1,47 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.execution.Executor;
+import com.intellij.execution.configurations.ConfigurationFactory;
+import com.intellij.execution.configurations.RunConfiguration;
+import com.intellij.execution.configurations.RunConfigurationBase;
+import com.intellij.execution.configurations.RunProfileState;
+import com.intellij.execution.configurations.RuntimeConfigurationException;
+import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.openapi.options.SettingsEditor;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+/** Run configuration that brings up the local chain, see {@link MyLocalTonRunConfigurationType}. */
+public class MyLocalTonRunConfiguration
+    extends RunConfigurationBase<MyLocalTonRunConfigurationOptions> {
+
+  protected MyLocalTonRunConfiguration(Project project, ConfigurationFactory factory, String name) {
+    super(project, factory, name);
+  }
+
+  @Override
+  protected @NotNull MyLocalTonRunConfigurationOptions getOptions() {
+    return (MyLocalTonRunConfigurationOptions) super.getOptions();
+  }
+
+  @Override
+  public @NotNull SettingsEditor<? extends RunConfiguration> getConfigurationEditor() {
+    return new MyLocalTonRunConfigurationEditor();
+  }
+
+  @Override
+  public void checkConfiguration() throws RuntimeConfigurationException {
+    if (getOptions().getReadinessTimeoutSeconds() <= 0) {
+      throw new RuntimeConfigurationException("Readiness timeout must be positive");
+    }
+  }
+
+  @Override
+  public RunProfileState getState(
+      @NotNull Executor executor, @NotNull ExecutionEnvironment environment) {
+    return new MyLocalTonRunProfileState(
+        environment.getProject(),
+        getOptions().toStartOptions(),
+        getOptions().getReadinessTimeoutSeconds());
+  }
+}
@@ -0,0 +1,68 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.options.SettingsEditor;
+import java.awt.*;
+import javax.swing.*;
+import org.jetbrains.annotations.NotNull;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/** Editor of the "MyLocalTon node" run configuration. */
+public class MyLocalTonRunConfigurationEditor extends SettingsEditor<MyLocalTonRunConfiguration> {
+  private final JCheckBox tonHttpApi = new JCheckBox("TON HTTP API v2");
+  private final JCheckBox explorer = new JCheckBox("Web explorer");
+  private final JCheckBox dataGenerator = new JCheckBox("Data generator");
+  private final JCheckBox debug = new JCheckBox("Debug mode");
+  private final JComboBox<Integer> validators = new JComboBox<>(new Integer[] {0, 1, 2, 3, 4, 5});
+  private final JSpinner timeout = new JSpinner(new SpinnerNumberModel(180, 10, 3600, 10));
+
+  @Override
+  protected void resetEditorFrom(@NotNull MyLocalTonRunConfiguration configuration) {
+    MyLocalTonRunConfigurationOptions options = configuration.getOptions();
+    NodeLauncher.Options startOptions = options.toStartOptions();
+    tonHttpApi.setSelected(startOptions.tonHttpApi);
+    explorer.setSelected(startOptions.explorer);
+    dataGenerator.setSelected(startOptions.dataGenerator);
+    debug.setSelected(startOptions.debug);
+    validators.setSelectedItem(startOptions.validators);
+    timeout.setValue(options.getReadinessTimeoutSeconds());
+  }
+
+  @Override
+  protected void applyEditorTo(@NotNull MyLocalTonRunConfiguration configuration) {
+    NodeLauncher.Options startOptions = new NodeLauncher.Options();
+    startOptions.tonHttpApi = tonHttpApi.isSelected();
+    startOptions.explorer = explorer.isSelected();
+    startOptions.dataGenerator = dataGenerator.isSelected();
+    startOptions.debug = debug.isSelected();
+    startOptions.validators = (Integer) validators.getSelectedItem();
+    configuration.getOptions().setStartOptions(startOptions);
+    configuration.getOptions().setReadinessTimeoutSeconds((Integer) timeout.getValue());
+  }
+
+  @Override
+  protected @NotNull JComponent createEditor() {
+    JPanel panel = new JPanel(new GridBagLayout());
+    GridBagConstraints gbc = new GridBagConstraints();
+    gbc.anchor = GridBagConstraints.WEST;
+    gbc.insets = new Insets(2, 2, 2, 2);
+    gbc.gridx = 0;
+    gbc.gridy = 0;
+    gbc.gridwidth = 2;
+    for (JCheckBox checkBox : new JCheckBox[] {tonHttpApi, explorer, dataGenerator, debug}) {
+      panel.add(checkBox, gbc);
+      gbc.gridy++;
+    }
+
+    gbc.gridwidth = 1;
+    panel.add(new JLabel("Validators:"), gbc);
+    gbc.gridx = 1;
+    panel.add(validators, gbc);
+
+    gbc.gridx = 0;
+    gbc.gridy++;
+    panel.add(new JLabel("Readiness timeout (s):"), gbc);
+    gbc.gridx = 1;
+    panel.add(timeout, gbc);
+    return panel;
+  }
+}
@@ -0,0 +1,58 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.execution.configurations.RunConfigurationOptions;
+import com.intellij.openapi.components.StoredProperty;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/** Persisted options of the "MyLocalTon node" run configuration. */
+public class MyLocalTonRunConfigurationOptions extends RunConfigurationOptions {
+  private final StoredProperty<Boolean> tonHttpApi =
+      property(false).provideDelegate(this, "tonHttpApi");
+  private final StoredProperty<Boolean> explorer =
+      property(false).provideDelegate(this, "explorer");
+  private final StoredProperty<Boolean> dataGenerator =
+      property(false).provideDelegate(this, "dataGenerator");
+  private final StoredProperty<Boolean> debug = property(false).provideDelegate(this, "debug");
+  private final StoredProperty<Integer> validators =
+      property(0).provideDelegate(this, "validators");
+  private final StoredProperty<Integer> readinessTimeoutSeconds =
+      property(180).provideDelegate(this, "readinessTimeoutSeconds");
+
+  /**
+   * Builds the startup options. The node always runs without its own GUI when started from a run
+   * configuration.
+   *
+   * @return the startup options
+   */
+  public NodeLauncher.Options toStartOptions() {
+    NodeLauncher.Options options = new NodeLauncher.Options();
+    options.tonHttpApi = tonHttpApi.getValue(this);
+    options.explorer = explorer.getValue(this);
+    options.dataGenerator = dataGenerator.getValue(this);
+    options.noGui = true;
+    options.debug = debug.getValue(this);
+    options.validators = validators.getValue(this);
+    return options;
+  }
+
+  /**
+   * Stores the startup options.
+   *
+   * @param options the startup options
+   */
+  public void setStartOptions(NodeLauncher.Options options) {
+    tonHttpApi.setValue(this, options.tonHttpApi);
+    explorer.setValue(this, options.explorer);
+    dataGenerator.setValue(this, options.dataGenerator);
+    debug.setValue(this, options.debug);
+    validators.setValue(this, options.validators);
+  }
+
+  public int getReadinessTimeoutSeconds() {
+    return readinessTimeoutSeconds.getValue(this);
+  }
+
+  public void setReadinessTimeoutSeconds(int seconds) {
+    readinessTimeoutSeconds.setValue(this, seconds);
+  }
+}
@@ -0,0 +1,48 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.execution.configurations.ConfigurationFactory;
+import com.intellij.execution.configurations.ConfigurationType;
+import com.intellij.execution.configurations.ConfigurationTypeBase;
+import com.intellij.execution.configurations.RunConfiguration;
+import com.intellij.openapi.components.BaseState;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.IconLoader;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * "MyLocalTon node" run configuration type. Running it starts the local chain, or reuses the
+ * running one, and finishes starting once the first masterchain block has been produced.
+ */
+public class MyLocalTonRunConfigurationType extends ConfigurationTypeBase {
+  public static final String ID = "MyLocalTonNode";
+
+  public MyLocalTonRunConfigurationType() {
+    super(
+        ID,
+        "MyLocalTon node",
+        "Starts the local TON blockchain and waits until it produces blocks",
+        IconLoader.getIcon("/ton_symbol.svg", MyLocalTonRunConfigurationType.class));
+    addFactory(new Factory(this));
+  }
+
+  static class Factory extends ConfigurationFactory {
+    Factory(ConfigurationType type) {
+      super(type);
+    }
+
+    @Override
+    public @NotNull String getId() {
+      return ID;
+    }
+
+    @Override
+    public @NotNull RunConfiguration createTemplateConfiguration(@NotNull Project project) {
+      return new MyLocalTonRunConfiguration(project, this, "MyLocalTon node");
+    }
+
+    @Override
+    public Class<? extends BaseState> getOptionsClass() {
+      return MyLocalTonRunConfigurationOptions.class;
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.execution.DefaultExecutionResult;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.ExecutionResult;
+import com.intellij.execution.Executor;
+import com.intellij.execution.configurations.RunProfileState;
+import com.intellij.execution.filters.TextConsoleBuilderFactory;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.execution.runners.ProgramRunner;
+import com.intellij.execution.ui.ConsoleView;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.jetbrains.annotations.NotNull;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Runs a "MyLocalTon node" configuration: starts the node unless it is already running and reports
+ * in the console until the chain has produced its first masterchain block.
+ *
+ * <p>The run stays active while the node is running and ends when its process exits, e.g. when it
+ * is stopped from the tool window or crashes. A run attached to a node on another host stays active
+ * until it is stopped. Stopping the run stops the node only if it was started by this run, a node
+ * started from the tool window or one the plugin is attached to is left alone.
+ */
+public class MyLocalTonRunProfileState implements RunProfileState {
+  private static final Logger LOG = Logger.getInstance(MyLocalTonRunProfileState.class);
+
+  private final Project project;
+  private final NodeLauncher.Options options;
+  private final int readinessTimeoutSeconds;
+
+  public MyLocalTonRunProfileState(
+      Project project, NodeLauncher.Options options, int readinessTimeoutSeconds) {
+    this.project = project;
+    this.options = options;
+    this.readinessTimeoutSeconds = readinessTimeoutSeconds;
+  }
+
+  @Override
+  public ExecutionResult execute(Executor executor, @NotNull ProgramRunner<?> runner)
+      throws ExecutionException {
+    NodeProcessHandler processHandler = new NodeProcessHandler();
+    ConsoleView console =
+        TextConsoleBuilderFactory.getInstance().createBuilder(project).getConsole();
+    console.attachToProcess(processHandler);
+    processHandler.startNotify();
+    ApplicationManager.getApplication().executeOnPooledThread(processHandler::launch);
+    return new DefaultExecutionResult(console, processHandler);
+  }
+
+  /** Process handler standing in for the detached MyLocalTon process. */
+  private class NodeProcessHandler extends ProcessHandler {
+    private volatile Path startedJar;
+
+    private void launch() {
+      try {
+        MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+        if (settings.isAttached()) {
+          print(
+              "Attached to MyLocalTon on " + settings.getAttachHost() + ", waiting for the chain");
+        } else {
+          Path jar = ReleaseStore.getDefault().getLaunchableJar();
+          // Traced from here, a first start runs genesis while preparing
+          if (!NodeLauncher.isLockFileExists()) {
+            ReleaseStore.Release release = ReleaseStore.getDefault().getActive();
+            StartupTracer.getInstance().begin(release == null ? null : release.getVersion());
+          }
+          if (GenesisImageCache.getInstance().prepare(jar, options)) {
+            print("Restored the cached genesis image");
+          }
+          startedJar =
+              NodeLauncher.startIfNotRunning(
+                  MyLocalTonToolWindowFactory.getBundledExecutablePath("java"), jar, options);
+          NodeSupervisor.getInstance().started();
+          print(
+              startedJar == null
+                  ? "MyLocalTon is already running, waiting for the chain"
+                  : "Started MyLocalTon " + startedJar.getFileName() + " " + options.toArguments());
+        }
+        long seqno =
+            NodeLauncher.waitUntilReady(
+                TonlibService.getInstance(),
+                TimeUnit.SECONDS.toMillis(readinessTimeoutSeconds),
+                new ProgressPrinter());
+        StartupTracer.getInstance().onBlock(seqno);
+        print("Chain is ready, last masterchain block: " + seqno);
+        Path poolFile =
+            TonlibService.getInstance()
+                .ensureWalletPool()
+                .get(readinessTimeoutSeconds, TimeUnit.SECONDS);
+        if (poolFile != null) {
+          print("Wallet pool: " + poolFile);
+        }
+        if (!settings.isAttached()) {
+          followNode();
+        }
+      } catch (TimeoutException e) {
+        printError(e.getMessage());
+        stopNode();
+        notifyProcessTerminated(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        notifyProcessTerminated(1);
+      } catch (CancellationException e) {
+        print(e.getMessage());
+        notifyProcessTerminated(1);
+      } catch (Exception e) {
+        LOG.warn("Cannot start MyLocalTon: " + e.getMessage(), e);
+        printError("Cannot start MyLocalTon: " + e.getMessage());
+        notifyProcessTerminated(1);
+      }
+    }
+
+    /** Ends the run once the node process exits. */
+    private void followNode() {
+      ProcessHandle node = NodeLauncher.findProcess().orElse(null);
+      if (node == null) {
+        print("MyLocalTon is not running anymore");
+        notifyProcessTerminated(1);
+        return;
+      }
+      node.onExit()
+          .thenRun(
+              () -> {
+                // Not when the run itself stopped the node
+                if (!isProcessTerminating() && !isProcessTerminated()) {
+                  print("MyLocalTon exited");
+                  notifyProcessTerminated(0);
+                }
+              });
+    }
+
+    private void stopNode() {
+      // Also while a first start runs genesis, before the node is started for the run
+      GenesisImageCache.getInstance().cancel();
+      Path jar = startedJar;
+      if (jar == null) {
+        return;
+      }
+      try {
+        print("Stopping MyLocalTon");
+        NodeSupervisor.getInstance().stopped();
+        NodeLauncher.stop(
+            MyLocalTonToolWindowFactory.getBundledExecutablePath("jps"),
+            jar.getFileName().toString());
+        TonlibService.getInstance().invalidate();
+      } catch (Exception e) {
+        LOG.warn("Cannot stop MyLocalTon: " + e.getMessage(), e);
+        printError("Cannot stop MyLocalTon: " + e.getMessage());
+      }
+    }
+
+    private void print(String text) {
+      notifyTextAvailable(text + "\n", ProcessOutputTypes.SYSTEM);
+    }
+
+    private void printError(String text) {
+      notifyTextAvailable(text + "\n", ProcessOutputTypes.STDERR);
+    }
+
+    @Override
+    protected void destroyProcessImpl() {
+      ApplicationManager.getApplication()
+          .executeOnPooledThread(
+              () -> {
+                stopNode();
+                notifyProcessTerminated(0);
+              });
+    }
+
+    @Override
+    protected void detachProcessImpl() {
+      notifyProcessDetached();
+    }
+
+    @Override
+    public boolean detachIsDefault() {
+      return false;
+    }
+
+    @Override
+    public OutputStream getProcessInput() {
+      return null;
+    }
+
+    /** Prints the seqno whenever it changes, and once while the node does not answer. */
+    private class ProgressPrinter implements java.util.function.LongConsumer {
+      private long lastSeqno = Long.MIN_VALUE;
+
+      @Override
+      public void accept(long seqno) {
+        if (seqno != lastSeqno) {
+          print(seqno < 0 ? "Waiting for the node to answer..." : "Masterchain seqno: " + seqno);
+          lastSeqno = seqno;
+        }
+      }
+    }
+  }
+}
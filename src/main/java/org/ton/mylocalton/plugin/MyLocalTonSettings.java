@@ -0,0 +1,328 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/** Application-wide settings of the MyLocalTon plugin, stored in mylocalton.xml. */
+@State(name = "MyLocalTonSettings", storages = @Storage("mylocalton.xml"))
+public class MyLocalTonSettings implements PersistentStateComponent<MyLocalTonSettings.State> {
+
+  /** Serialized settings, public fields are persisted by the platform. */
+  public static class State {
+    /**
+     * Base URL or local directory to install MyLocalTon JARs from instead of GitHub releases. Empty
+     * to use GitHub.
+     */
+    public String mirrorUrl = "";
+
+    // Startup parameters last used in the tool window, reused by the before-launch task
+    public boolean startTonHttpApi;
+    public boolean startExplorer;
+    public boolean startDataGenerator;
+    public boolean startNoGui = true;
+    public boolean startDebug;
+    public int startValidators;
+
+    // Pre-funded wallets created for tests right after genesis
+    public int poolWallets;
+    public long poolWalletTons = 1000;
+
+    /** Port of the localhost block event stream, 0 if it is disabled. */
+    public int eventStreamPort;
+
+    /** Port of the caching ton-http-api proxy, 0 if it is disabled. */
+    public int apiProxyPort;
+
+    public String apiProxyUpstream = "http://127.0.0.1:8081";
+
+    // Rotation of myLocalTon.log, 0 disables the size or age limit
+    public int logRotateSizeMb = 50;
+    public int logRotateHours = 24;
+    public int logKeepSegments = 10;
+
+    /** Size the MyLocalTon data directory is pruned to, in GB, 0 if it is not limited. */
+    public int diskBudgetGb;
+
+    /** Last part of every log put into diagnostics bundles, in MB, 0 for whole logs. */
+    public int diagnosticsLogMb = 50;
+
+    /** How long run configurations wait for the first masterchain block, in seconds. */
+    public int readinessTimeoutSeconds = 180;
+
+    /** Number of chains kept after genesis to start again without one, 0 disables the cache. */
+    public int genesisImages;
+
+    /** Whether a crashed or hung node is started again, with a growing delay. */
+    public boolean autoRestart;
+
+    /** How long a running node may go without a new block before it counts as hung, 0 never. */
+    public int hangTimeoutSeconds = 120;
+
+    /**
+     * Host of a lite-server of a MyLocalTon running elsewhere to attach to instead of the local
+     * node. Empty to use the local node.
+     */
+    public String attachHost = "";
+
+    /** Port of the attached lite-server, 0 to take it from the attached global config. */
+    public int attachPort;
+
+    /** Base64 public key of the attached lite-server, empty to take it from the global config. */
+    public String attachKey = "";
+
+    /** Copy of the global config of the attached node, it holds the zero state of its chain. */
+    public String attachConfig = "";
+
+    /** Raw addresses of the accounts on the watch list. */
+    public List<String> watchedAccounts = new ArrayList<>();
+  }
+
+  private State state = new State();
+
+  public static MyLocalTonSettings getInstance() {
+    return ApplicationManager.getApplication().getService(MyLocalTonSettings.class);
+  }
+
+  @Override
+  public @NotNull State getState() {
+    return state;
+  }
+
+  @Override
+  public void loadState(@NotNull State state) {
+    this.state = state;
+  }
+
+  public String getMirrorUrl() {
+    return state.mirrorUrl == null ? "" : state.mirrorUrl.trim();
+  }
+
+  public void setMirrorUrl(String mirrorUrl) {
+    state.mirrorUrl = mirrorUrl;
+  }
+
+  /**
+   * Returns the startup parameters last used in the tool window.
+   *
+   * @return the startup options
+   */
+  public NodeLauncher.Options getStartOptions() {
+    NodeLauncher.Options options = new NodeLauncher.Options();
+    options.tonHttpApi = state.startTonHttpApi;
+    options.explorer = state.startExplorer;
+    options.dataGenerator = state.startDataGenerator;
+    options.noGui = state.startNoGui;
+    options.debug = state.startDebug;
+    options.validators = state.startValidators;
+    return options;
+  }
+
+  /**
+   * Returns the number of pre-funded wallets to create after genesis.
+   *
+   * @return the pool size, 0 if no pool is created
+   */
+  public int getPoolWallets() {
+    return state.poolWallets;
+  }
+
+  public void setPoolWallets(int poolWallets) {
+    state.poolWallets = poolWallets;
+  }
+
+  public long getPoolWalletTons() {
+    return state.poolWalletTons;
+  }
+
+  public int getEventStreamPort() {
+    return state.eventStreamPort;
+  }
+
+  public void setEventStreamPort(int eventStreamPort) {
+    state.eventStreamPort = eventStreamPort;
+  }
+
+  public int getApiProxyPort() {
+    return state.apiProxyPort;
+  }
+
+  public void setApiProxyPort(int apiProxyPort) {
+    state.apiProxyPort = apiProxyPort;
+  }
+
+  public String getApiProxyUpstream() {
+    return state.apiProxyUpstream == null || state.apiProxyUpstream.isBlank()
+        ? "http://127.0.0.1:8081"
+        : state.apiProxyUpstream.trim();
+  }
+
+  public void setApiProxyUpstream(String apiProxyUpstream) {
+    state.apiProxyUpstream = apiProxyUpstream;
+  }
+
+  /**
+   * Returns the ton-http-api the proxy forwards to. While attached, an upstream on this machine,
+   * e.g. the default one, is moved to the attached host, where ton-http-api runs next to the node.
+   *
+   * @return base URL of ton-http-api
+   */
+  public String getEffectiveApiProxyUpstream() {
+    String upstream = getApiProxyUpstream();
+    if (!isAttached()) {
+      return upstream;
+    }
+    try {
+      URI uri = new URI(upstream);
+      if (uri.getHost() == null || !isLoopback(uri.getHost())) {
+        return upstream;
+      }
+      return new URI(
+              uri.getScheme(),
+              uri.getUserInfo(),
+              getAttachHost(),
+              uri.getPort(),
+              uri.getPath(),
+              uri.getQuery(),
+              uri.getFragment())
+          .toString();
+    } catch (URISyntaxException e) {
+      return upstream;
+    }
+  }
+
+  private static boolean isLoopback(String host) {
+    return host.equalsIgnoreCase("localhost") || host.startsWith("127.") || host.equals("[::1]");
+  }
+
+  public int getLogRotateSizeMb() {
+    return state.logRotateSizeMb;
+  }
+
+  public void setLogRotateSizeMb(int logRotateSizeMb) {
+    state.logRotateSizeMb = logRotateSizeMb;
+  }
+
+  public int getLogRotateHours() {
+    return state.logRotateHours;
+  }
+
+  public void setLogRotateHours(int logRotateHours) {
+    state.logRotateHours = logRotateHours;
+  }
+
+  public int getLogKeepSegments() {
+    return state.logKeepSegments;
+  }
+
+  public void setLogKeepSegments(int logKeepSegments) {
+    state.logKeepSegments = logKeepSegments;
+  }
+
+  public int getDiskBudgetGb() {
+    return state.diskBudgetGb;
+  }
+
+  public void setDiskBudgetGb(int diskBudgetGb) {
+    state.diskBudgetGb = diskBudgetGb;
+  }
+
+  public int getDiagnosticsLogMb() {
+    return state.diagnosticsLogMb;
+  }
+
+  public void setDiagnosticsLogMb(int diagnosticsLogMb) {
+    state.diagnosticsLogMb = diagnosticsLogMb;
+  }
+
+  public int getReadinessTimeoutSeconds() {
+    return state.readinessTimeoutSeconds;
+  }
+
+  public void setReadinessTimeoutSeconds(int readinessTimeoutSeconds) {
+    state.readinessTimeoutSeconds = readinessTimeoutSeconds;
+  }
+
+  public int getGenesisImages() {
+    return state.genesisImages;
+  }
+
+  public void setGenesisImages(int genesisImages) {
+    state.genesisImages = genesisImages;
+  }
+
+  public boolean isAutoRestart() {
+    return state.autoRestart;
+  }
+
+  public void setAutoRestart(boolean autoRestart) {
+    state.autoRestart = autoRestart;
+  }
+
+  public int getHangTimeoutSeconds() {
+    return state.hangTimeoutSeconds;
+  }
+
+  public void setHangTimeoutSeconds(int hangTimeoutSeconds) {
+    state.hangTimeoutSeconds = hangTimeoutSeconds;
+  }
+
+  /**
+   * Whether the plugin is attached to a MyLocalTon running elsewhere. Nothing is started, stopped
+   * or supervised locally then, monitoring and inspection talk to the attached lite-server.
+   *
+   * @return true if an attach host is set
+   */
+  public boolean isAttached() {
+    return !getAttachHost().isEmpty();
+  }
+
+  public String getAttachHost() {
+    return state.attachHost == null ? "" : state.attachHost.trim();
+  }
+
+  public void setAttachHost(String attachHost) {
+    state.attachHost = attachHost;
+  }
+
+  public int getAttachPort() {
+    return state.attachPort;
+  }
+
+  public void setAttachPort(int attachPort) {
+    state.attachPort = attachPort;
+  }
+
+  public String getAttachKey() {
+    return state.attachKey == null ? "" : state.attachKey.trim();
+  }
+
+  public void setAttachKey(String attachKey) {
+    state.attachKey = attachKey;
+  }
+
+  public String getAttachConfig() {
+    return state.attachConfig == null ? "" : state.attachConfig.trim();
+  }
+
+  public void setAttachConfig(String attachConfig) {
+    state.attachConfig = attachConfig;
+  }
+
+  public List<String> getWatchedAccounts() {
+    return state.watchedAccounts == null
+        ? new ArrayList<>()
+        : new ArrayList<>(state.watchedAccounts);
+  }
+
+  public void setWatchedAccounts(List<String> watchedAccounts) {
+    state.watchedAccounts = new ArrayList<>(watchedAccounts);
+  }
+}
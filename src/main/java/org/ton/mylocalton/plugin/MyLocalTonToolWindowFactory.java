@@ -1,7 +1,6 @@
 package org.ton.mylocalton.plugin;
 
-import static java.util.Objects.isNull;
-
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.ProjectJdkTable;
@@ -9,9 +8,10 @@ import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.projectRoots.SdkType;
 import com.intellij.openapi.projectRoots.SdkTypeId;
 import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowFactory;
+import com.intellij.openapi.wm.ex.ToolWindowManagerListener;
 import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
 import java.awt.*;
@@ -26,25 +26,35 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
 
-import com.intellij.util.SystemProperties;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.jetbrains.annotations.NotNull;
+import org.json.simple.JSONObject;
+import org.ton.mylocalton.launcher.NodeLauncher;
+import org.ton.mylocalton.launcher.WalletPool;
 import org.ton.ton4j.liteclient.LiteClient;
 import org.ton.ton4j.liteclient.LiteClientParser;
 import org.ton.ton4j.liteclient.api.ResultLastBlock;
@@ -65,8 +75,15 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
   private JPanel startupSettingsPanel;
   private JCheckBox testnetCheckbox; // Reference to the testnet checkbox
   private JButton downloadButton;
+  private JComboBox<ReleaseStore.Release> releasesComboBox; // Stored releases of the flavour
+  private boolean isSwitchingRelease = false; // Suppresses combobox events while refilling it
+  // Refills of the combobox, only the latest one is shown
+  private final AtomicInteger releasesRefreshes = new AtomicInteger();
+  private UpdateChecker updateChecker;
+  private ReleaseStore.Release pendingUpdate; // Downloaded update waiting for the node to stop
   private Process process;
   ScheduledExecutorService monitorExecutorService;
+  private boolean monitorStopped;
   // References to startup settings checkboxes and combobox
   private JCheckBox tonHttpApiV2;
   private JCheckBox webExplorer;
@@ -74,7 +91,20 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
   private JCheckBox noGuiMode;
   private JCheckBox debugMode;
   private JComboBox<Integer> validators;
+  private JComboBox<Integer> poolWallets;
   LiteClient liteClient;
+  private GlobalConfig liteClientConfig; // Config the lite-client was built with
+  private static final long TONLIB_RETRY_DELAY_MS = 30000;
+  private long tonlibRetryAt = 0; // Time after which tonlib is tried again after a failure
+
+  /** State read from disk in the background before the tool window content is built. */
+  private static class InitialState {
+    ReleaseStore.Release activeRelease;
+    boolean lockExists;
+    boolean enableTonHttpApi;
+    boolean enableBlockchainExplorer;
+    boolean enableDataGenerator;
+  }
 
   /**
    * Checks if the myLocalTon.lock file exists in the user.dir directory.
@@ -82,9 +112,16 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
    * @return true if the lock file exists, false otherwise
    */
   private boolean isLockFileExists() {
-    String userDir = System.getProperty("user.home");
-    Path lockFilePath = Paths.get(userDir, "myLocalTon.lock");
-    return Files.exists(lockFilePath);
+    return NodeLauncher.isLockFileExists();
+  }
+
+  /**
+   * Checks if there is a chain to monitor: the local one, or the one the plugin is attached to.
+   *
+   * @return true if the lock file exists or the plugin is attached to a node elsewhere
+   */
+  private boolean isChainExpected() {
+    return MyLocalTonSettings.getInstance().isAttached() || isLockFileExists();
   }
 
   // Flags to track states
@@ -96,8 +133,25 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
    * JAR file existence.
    */
   private void updateStatusLabel() {
+    applyStatus(isLockFileExists(), checkIfJarExists());
+  }
+
+  /**
+   * Checks the lock file and the JAR on the calling thread and updates the controls on the EDT.
+   */
+  private void updateStatusLabelLater() {
     boolean lockExists = isLockFileExists();
     boolean jarExists = checkIfJarExists();
+    SwingUtilities.invokeLater(() -> applyStatus(lockExists, jarExists));
+  }
+
+  /**
+   * Updates the status label, button states, and panel states.
+   *
+   * @param lockExists Whether the lock file of a running MyLocalTon exists
+   * @param jarExists Whether the JAR of the selected flavour exists
+   */
+  private void applyStatus(boolean lockExists, boolean jarExists) {
 
     // Update isProcessRunning flag based on lock file existence
     if (lockExists) {
@@ -106,8 +160,14 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
       isProcessRunning = false;
     }
 
+    // The local node is neither started nor stopped while attached to one elsewhere
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    boolean attached = settings.isAttached();
+
     if (statusLabel != null) {
-      if (lockExists) {
+      if (attached) {
+        statusLabel.setText("Status: attached to " + settings.getAttachHost());
+      } else if (lockExists) {
         statusLabel.setText("Status: running");
       } else {
         statusLabel.setText("Status: not running");
@@ -117,7 +177,8 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     // Update button states based on lock file existence
     if (startButton != null) {
       startButton.setEnabled(
-          !lockExists
+          !attached
+              && !lockExists
               && jarExists
               && !isDownloadInProgress); // Disable Start when lock exists, no JAR exists, or
       // download in progress
@@ -125,11 +186,28 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
 
     if (stopButton != null) {
       stopButton.setEnabled(
-          lockExists
+          !attached
+              && lockExists
               && !isDownloadInProgress); // Disable Stop when lock doesn't exist or download in
       // progress
     }
 
+    // Apply an update downloaded in the background once the old release is no longer running
+    if (!lockExists && !isDownloadInProgress && pendingUpdate != null) {
+      ReleaseStore.Release update = pendingUpdate;
+      pendingUpdate = null;
+      SwingUtilities.invokeLater(() -> switchRelease(null, update));
+    }
+
+    // Releases can be switched only while MyLocalTon is not running
+    if (testnetCheckbox != null) {
+      testnetCheckbox.setEnabled(!lockExists && !isDownloadInProgress);
+    }
+    if (releasesComboBox != null) {
+      releasesComboBox.setEnabled(
+          !lockExists && !isDownloadInProgress && releasesComboBox.getItemCount() > 1);
+    }
+
     // Disable/enable the startup settings panel based on lock file existence, JAR existence, and
     // download status
     if (startupSettingsPanel != null) {
@@ -154,53 +232,94 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
   }
 
   /**
-   * Checks if any JAR file exists (both mainnet and testnet versions for both architectures).
+   * Checks if the JAR file of the selected flavour (mainnet or testnet) is in place.
    *
-   * @return true if any JAR file exists, false otherwise
+   * @return true if the JAR file exists, false otherwise
    */
   private boolean checkIfJarExists() {
     Path downloadDir = Paths.get(System.getProperty("user.home"), ".mylocalton");
-
-    // Check for mainnet JAR files
-    Path mainnetX86JarPath = downloadDir.resolve("MyLocalTon-x86-64.jar");
-    Path mainnetArmJarPath = downloadDir.resolve("MyLocalTon-arm64.jar");
-
-    // Check for testnet JAR files
-    Path testnetX86JarPath = downloadDir.resolve("MyLocalTon-x86-64-testnet.jar");
-    Path testnetArmJarPath = downloadDir.resolve("MyLocalTon-arm64-testnet.jar");
-
-    // Check if any JAR file exists
-    return Files.exists(mainnetX86JarPath)
-        || Files.exists(mainnetArmJarPath)
-        || Files.exists(testnetX86JarPath)
-        || Files.exists(testnetArmJarPath);
+    boolean isTestnet = testnetCheckbox != null && testnetCheckbox.isSelected();
+    return Files.exists(downloadDir.resolve(getJarFilename(isTestnet)));
   }
 
   @Override
   public void createToolWindowContent(Project project, ToolWindow toolWindow) {
     LOG.warn("Creating tool window content for project: " + project.getName());
 
+    // Show a lightweight placeholder right away, the real content needs file I/O
+    JPanel loadingPanel = new JPanel(new BorderLayout());
+    loadingPanel.add(
+        new JLabel("Loading MyLocalTon...", SwingConstants.CENTER), BorderLayout.CENTER);
+    ContentFactory contentFactory = ContentFactory.getInstance();
+    Content content = contentFactory.createContent(loadingPanel, "MyLocalTon", false);
+    toolWindow.getContentManager().addContent(content);
+
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              InitialState state = loadInitialState();
+              SwingUtilities.invokeLater(
+                  () -> {
+                    if (!project.isDisposed()) {
+                      buildContent(project, toolWindow, content, state);
+                    }
+                  });
+            });
+  }
+
+  /**
+   * Reads everything the tool window needs from disk. Runs on a background thread.
+   *
+   * @return The initial state
+   */
+  private InitialState loadInitialState() {
+    InitialState state = new InitialState();
+    // Pick up JARs downloaded before the release store existed
+    ReleaseStore releaseStore = ReleaseStore.getDefault();
+    releaseStore.importLegacyJars();
+    state.activeRelease = releaseStore.getActive();
+    state.lockExists = isLockFileExists();
+    loadSettingsFromFile(state);
+    return state;
+  }
+
+  /**
+   * Builds the tool window content from the state loaded in the background.
+   *
+   * @param project The current project
+   * @param toolWindow The tool window
+   * @param content The content showing the placeholder, gets the main panel
+   * @param state The initial state
+   */
+  private void buildContent(
+      Project project, ToolWindow toolWindow, Content content, InitialState state) {
     try {
       // Create main panel with vertical BoxLayout
       JPanel mainPanel = new JPanel();
       mainPanel.setLayout(new BoxLayout(mainPanel, BoxLayout.Y_AXIS));
 
       // 1. Installation Section
-      JPanel installationPanel = createInstallationPanel(project);
+      JPanel installationPanel = createInstallationPanel(project, state);
+      // The checker is shared by all projects, each tool window applies updates to its own
+      Consumer<ReleaseStore.Release> updateListener =
+          release -> SwingUtilities.invokeLater(() -> onUpdateDownloaded(project, release));
+      updateChecker.addListener(updateListener);
+      Disposer.register(
+          toolWindow.getDisposable(), () -> updateChecker.removeListener(updateListener));
       installationPanel.setAlignmentX(Component.LEFT_ALIGNMENT); // Top align
       installationPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 160)); // Fixed height
       mainPanel.add(installationPanel);
       mainPanel.add(Box.createVerticalStrut(5)); // Reduced spacing for compactness
 
       // 2. Startup settings Section
-      startupSettingsPanel = createStartupSettingsPanel(project);
+      startupSettingsPanel = createStartupSettingsPanel(project, state);
       startupSettingsPanel.setAlignmentX(Component.LEFT_ALIGNMENT); // Top align
       startupSettingsPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 160)); // Fixed height
       mainPanel.add(startupSettingsPanel);
       mainPanel.add(Box.createVerticalStrut(5)); // Reduced spacing for compactness
 
       // 3. Actions Section
-      JPanel actionsPanel = createActionsPanel(project);
+      JPanel actionsPanel = createActionsPanel(project, state);
       actionsPanel.setAlignmentX(Component.LEFT_ALIGNMENT); // Top align
       actionsPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 200)); // Fixed height
       mainPanel.add(actionsPanel);
@@ -212,77 +331,247 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
       uninstallPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 120)); // Fixed height
       mainPanel.add(uninstallPanel);
 
-      // Add the panel to the tool window
+      // Replace the placeholder
+      content.setComponent(mainPanel);
       ContentFactory contentFactory = ContentFactory.getInstance();
-      Content content = contentFactory.createContent(mainPanel, "MyLocalTon", false);
-      toolWindow.getContentManager().addContent(content);
 
-      monitorExecutorService = Executors.newSingleThreadScheduledExecutor();
-      monitorExecutorService.scheduleWithFixedDelay(
-          () -> {
-            Thread.currentThread().setName("MyLocalTon-Plugin - Blockchain Monitor");
-
-            try {
-              String userHomeDir = System.getProperty("user.home");
-              String last = "";
-              if (isLockFileExists()) {
-                if (isNull(liteClient)) {
-                  if (Files.exists(Paths.get(getLiteClientPath(userHomeDir)))) {
-                    liteClient =
-                        LiteClient.builder()
-                            .pathToGlobalConfig(getGlobalConfigPath(userHomeDir))
-                            .pathToLiteClientBinary(getLiteClientPath(userHomeDir))
-                            .build();
+      // Account and transaction inspector tab
+      Content inspectorContent =
+          contentFactory.createContent(new InspectorPanel(), "Inspector", false);
+      toolWindow.getContentManager().addContent(inspectorContent);
+
+      // Block history tab
+      Content blocksContent =
+          contentFactory.createContent(new BlockHistoryPanel(), "Blocks", false);
+      toolWindow.getContentManager().addContent(blocksContent);
+
+      // Account watch list tab
+      WatchListPanel watchListPanel = new WatchListPanel();
+      Disposer.register(toolWindow.getDisposable(), watchListPanel);
+      Content watchContent = contentFactory.createContent(watchListPanel, "Watch", false);
+      toolWindow.getContentManager().addContent(watchContent);
+
+      // Log viewer tab, also starts the log rotation, the disk quota guard, the log monitor and the
+      // node supervisor
+      LogRotator.getInstance();
+      DiskQuotaGuard.getInstance();
+      NodeLogMonitor.getInstance();
+      NodeSupervisor.getInstance();
+      LogViewerPanel logViewerPanel = new LogViewerPanel();
+      Disposer.register(toolWindow.getDisposable(), logViewerPanel);
+      Content logsContent = contentFactory.createContent(logViewerPanel, "Logs", false);
+      toolWindow.getContentManager().addContent(logsContent);
+
+      // Startup phase timeline tab
+      StartupTimelinePanel startupTimelinePanel = new StartupTimelinePanel();
+      Disposer.register(toolWindow.getDisposable(), startupTimelinePanel);
+      Content startupContent = contentFactory.createContent(startupTimelinePanel, "Startup", false);
+      toolWindow.getContentManager().addContent(startupContent);
+
+      // Poll the node only while somebody has looked at the tool window
+      Disposer.register(toolWindow.getDisposable(), this::stopMonitor);
+      if (toolWindow.isVisible()) {
+        startMonitor();
+      } else {
+        project
+            .getMessageBus()
+            .connect(toolWindow.getDisposable())
+            .subscribe(
+                ToolWindowManagerListener.TOPIC,
+                new ToolWindowManagerListener() {
+                  @Override
+                  public void toolWindowShown(@NotNull ToolWindow shownToolWindow) {
+                    if (shownToolWindow == toolWindow) {
+                      startMonitor();
+                    }
                   }
-                }
+                });
+      }
 
-                //            String size =
-                // getDirectorySizeUsingDu(getMyLocalTonPath(userHomeDir));
+      LOG.warn("Tool window content created successfully");
 
-                last = liteClient.executeLast();
-              }
-              if (last.contains("latest masterchain block known to server")) {
-                ResultLastBlock resultLastBlock = LiteClientParser.parseLast(last);
-                startButton.setEnabled(false);
-                stopButton.setEnabled(true);
-
-                // Make sure the startup panel is disabled when the process is running
-                if (startupSettingsPanel != null) {
-                  startupSettingsPanel.setEnabled(false);
-                  setEnabledRecursively(startupSettingsPanel, false);
-                }
+    } catch (Exception e) {
+      LOG.warn("Error creating tool window content: " + e.getMessage(), e);
+    }
+  }
 
-                //                          java.util.List<ResultLastBlock> shards =
-                // LiteClientParser.parseAllShards(liteClient.executeAllshards(resultLastBlock));
-                //                        LOG.warn("size last shards "+ size+" "+
-                // resultLastBlock.getSeqno()+" "+shards.size());
-                statusLabel.setText("Block: " + resultLastBlock.getSeqno());
-              } else {
-                updateStatusLabel();
-              }
-            } catch (Exception ex) {
-              // Don't call updateStatusLabel() directly as it might re-enable the panel
-              // Instead, check if the process is running first
-              if (isProcessRunning) {
-                // If process is running, ensure the startup panel stays disabled
-                if (startupSettingsPanel != null) {
-                  startupSettingsPanel.setEnabled(false);
-                  setEnabledRecursively(startupSettingsPanel, false);
-                }
-              } else {
-                // Only update the status label if the process is not running
-                updateStatusLabel();
+  /** Starts polling the last block of the local node, once. */
+  private synchronized void startMonitor() {
+    if (monitorExecutorService != null || monitorStopped) {
+      return;
+    }
+    monitorExecutorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Blockchain Monitor");
+              thread.setDaemon(true);
+              return thread;
+            });
+    monitorExecutorService.scheduleWithFixedDelay(
+        () -> {
+          try {
+            String userHomeDir = System.getProperty("user.home");
+            String last = "";
+            long seqno = -1;
+            if (isChainExpected()) {
+              // Ask the shared tonlib session first, it does not fork a process per query
+              seqno = getLastSeqnoFromTonlib();
+            }
+            if (seqno >= 0) {
+              showLastBlockLater(seqno);
+              return;
+            }
+            if (isChainExpected()) {
+              // Rebuilt when Reset regenerated the global config
+              GlobalConfig config = GlobalConfigService.getInstance().getIfPresent();
+              if (config != null
+                  && config != liteClientConfig
+                  && Files.exists(Paths.get(getLiteClientPath(userHomeDir)))) {
+                liteClient =
+                    LiteClient.builder()
+                        .pathToGlobalConfig(config.getPath().toString())
+                        .pathToLiteClientBinary(getLiteClientPath(userHomeDir))
+                        .build();
+                liteClientConfig = config;
               }
+
+              //            String size =
+              // getDirectorySizeUsingDu(getMyLocalTonPath(userHomeDir));
+
+              last = liteClient.executeLast();
+            }
+            if (last.contains("latest masterchain block known to server")) {
+              ResultLastBlock resultLastBlock = LiteClientParser.parseLast(last);
+
+              //                          java.util.List<ResultLastBlock> shards =
+              // LiteClientParser.parseAllShards(liteClient.executeAllshards(resultLastBlock));
+              //                        LOG.warn("size last shards "+ size+" "+
+              // resultLastBlock.getSeqno()+" "+shards.size());
+              showLastBlockLater(resultLastBlock.getSeqno().longValue());
+            } else {
+              updateStatusLabelLater();
+            }
+          } catch (Exception ex) {
+            // Don't call updateStatusLabel() directly as it might re-enable the panel
+            // Instead, check if the process is running first
+            if (isProcessRunning) {
+              // If process is running, ensure the startup panel stays disabled
+              SwingUtilities.invokeLater(
+                  () -> {
+                    if (startupSettingsPanel != null) {
+                      startupSettingsPanel.setEnabled(false);
+                      setEnabledRecursively(startupSettingsPanel, false);
+                    }
+                  });
+            } else {
+              // Only update the status label if the process is not running
+              updateStatusLabelLater();
             }
-          },
-          2L,
-          2L,
-          TimeUnit.SECONDS);
+          }
+        },
+        2L,
+        2L,
+        TimeUnit.SECONDS);
+  }
 
-      LOG.warn("Tool window content created successfully");
+  /** Stops polling when the tool window is disposed, it is not started again. */
+  private synchronized void stopMonitor() {
+    monitorStopped = true;
+    if (monitorExecutorService != null) {
+      monitorExecutorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Collects the startup parameters from the "Startup settings" panel.
+   *
+   * @return The startup options
+   */
+  private NodeLauncher.Options getStartOptions() {
+    NodeLauncher.Options options = new NodeLauncher.Options();
+    options.tonHttpApi = tonHttpApiV2.isSelected();
+    options.explorer = webExplorer.isSelected();
+    options.dataGenerator = dataGenerator.isSelected();
+    options.noGui = noGuiMode.isSelected();
+    options.debug = debugMode.isSelected();
+    options.validators = (Integer) validators.getSelectedItem();
+    return options;
+  }
+
+  /**
+   * Remembers the startup parameters, the before-launch task starts the node with them.
+   *
+   * @param options The startup options
+   */
+  private void saveStartOptions(NodeLauncher.Options options) {
+    MyLocalTonSettings.State state = MyLocalTonSettings.getInstance().getState();
+    state.startTonHttpApi = options.tonHttpApi;
+    state.startExplorer = options.explorer;
+    state.startDataGenerator = options.dataGenerator;
+    state.startNoGui = options.noGui;
+    state.startDebug = options.debug;
+    state.startValidators = options.validators;
+    state.poolWallets = (Integer) poolWallets.getSelectedItem();
+  }
+
+  /**
+   * Shows the last masterchain block and keeps the controls in the "running" state.
+   *
+   * @param seqno The seqno of the last masterchain block
+   */
+  private void showLastBlock(long seqno) {
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    startButton.setEnabled(false);
+    // An attached node is stopped where it runs
+    stopButton.setEnabled(!settings.isAttached());
+
+    // Make sure the startup panel is disabled when the process is running
+    if (startupSettingsPanel != null) {
+      startupSettingsPanel.setEnabled(false);
+      setEnabledRecursively(startupSettingsPanel, false);
+    }
+
+    statusLabel.setText(
+        settings.isAttached()
+            ? "Block: " + seqno + " on " + settings.getAttachHost()
+            : "Block: " + seqno);
+  }
+
+  /**
+   * Reports the last masterchain block to the startup tracer and shows it on the EDT.
+   *
+   * @param seqno The seqno of the last masterchain block
+   */
+  private void showLastBlockLater(long seqno) {
+    StartupTracer.getInstance().onBlock(seqno);
+    SwingUtilities.invokeLater(() -> showLastBlock(seqno));
+  }
 
+  /**
+   * Gets the seqno of the last masterchain block through the shared tonlib session. After a failure
+   * (e.g. the node is still starting) tonlib is not retried for a while and the lite-client is used
+   * instead.
+   *
+   * @return The seqno, or -1 if tonlib is not available
+   */
+  private long getLastSeqnoFromTonlib() {
+    if (System.currentTimeMillis() < tonlibRetryAt) {
+      return -1;
+    }
+    try {
+      TonlibService tonlibService = TonlibService.getInstance();
+      TonlibClient client = tonlibService.getClient();
+      JSONObject info = client.getMasterchainInfo().get(5, TimeUnit.SECONDS);
+      // Let the follower walk new blocks, e.g. to invalidate cached accounts they touched
+      tonlibService.getChainFollower().onMasterchainInfo(client, info);
+      // Right after genesis, fund the wallet pool for tests if one is configured
+      tonlibService.ensureWalletPool();
+      return ((Number) ((JSONObject) info.get("last")).get("seqno")).longValue();
     } catch (Exception e) {
-      LOG.warn("Error creating tool window content: " + e.getMessage(), e);
+      LOG.debug("tonlib is not available yet: " + e.getMessage());
+      TonlibService.getInstance().invalidate();
+      tonlibRetryAt = System.currentTimeMillis() + TONLIB_RETRY_DELAY_MS;
+      return -1;
     }
   }
 
@@ -319,11 +608,28 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
    * @return The URL to download the JAR file from
    */
   private String getDownloadUrl(boolean isTestnet) {
-    String baseUrl = "https://github.com/neodix42/mylocalton/releases/latest/download/";
-    return baseUrl + getJarFilename(isTestnet);
+    return getDownloadBaseUrl() + getJarFilename(isTestnet);
   }
 
-  private JPanel createInstallationPanel(Project project) {
+  /**
+   * Gets the base URL JAR files are downloaded from, either the configured mirror or GitHub. A
+   * local mirror directory is returned as a {@code file:} URL.
+   *
+   * @return The base URL ending with a slash
+   */
+  private String getDownloadBaseUrl() {
+    String mirrorUrl = MyLocalTonSettings.getInstance().getMirrorUrl();
+    if (OfflineInstaller.isLocalMirror(mirrorUrl)) {
+      return StringUtils.appendIfMissing(
+          Paths.get(OfflineInstaller.toLocalPath(mirrorUrl)).toUri().toString(), "/");
+    }
+    if (StringUtils.isNotEmpty(mirrorUrl)) {
+      return StringUtils.appendIfMissing(mirrorUrl, "/");
+    }
+    return "https://github.com/neodix42/mylocalton/releases/latest/download/";
+  }
+
+  private JPanel createInstallationPanel(Project project, InitialState state) {
     JPanel panel = new JPanel(new BorderLayout(0, 0));
     panel.setBorder(
         BorderFactory.createTitledBorder(
@@ -348,63 +654,82 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     testnetCheckbox.setToolTipText(
         "Download MyLocalTon based on TON binaries from testnet branch.");
 
-    // Check if any JAR file exists (both mainnet and testnet versions for both architectures)
+    // Legacy JARs were imported into the store while loading the initial state
     Path downloadDir = Paths.get(System.getProperty("user.home"), ".mylocalton");
+    ReleaseStore releaseStore = ReleaseStore.getDefault();
+    updateChecker = UpdateChecker.getInstance();
 
-    // Check for mainnet JAR files
-    Path mainnetX86JarPath = downloadDir.resolve("MyLocalTon-x86-64.jar");
-    Path mainnetArmJarPath = downloadDir.resolve("MyLocalTon-arm64.jar");
-
-    // Check for testnet JAR files
-    Path testnetX86JarPath = downloadDir.resolve("MyLocalTon-x86-64-testnet.jar");
-    Path testnetArmJarPath = downloadDir.resolve("MyLocalTon-arm64-testnet.jar");
-
-    // Check if any JAR file exists
-    boolean mainnetJarExists = Files.exists(mainnetX86JarPath) || Files.exists(mainnetArmJarPath);
-    boolean testnetJarExists = Files.exists(testnetX86JarPath) || Files.exists(testnetArmJarPath);
-    boolean jarExists = mainnetJarExists || testnetJarExists;
-
-    // If a testnet JAR exists, select the testnet checkbox
-    if (testnetJarExists) {
+    // Select the flavour of the currently active release
+    ReleaseStore.Release activeRelease = state.activeRelease;
+    if (activeRelease != null && activeRelease.isTestnet()) {
       testnetCheckbox.setSelected(true);
     }
+    boolean jarExists = activeRelease != null;
 
-    // If any JAR file exists, execute it with "version" parameter to get the version
-    if (jarExists) {
-      new Thread(
-              () -> {
-                try {
-                  // Determine which JAR file to use
-                  Path jarPath;
-                  if (testnetJarExists) {
-                    jarPath =
-                        testnetCheckbox.isSelected()
-                            ? (Files.exists(testnetArmJarPath)
-                                ? testnetArmJarPath
-                                : testnetX86JarPath)
-                            : (Files.exists(mainnetArmJarPath)
-                                ? mainnetArmJarPath
-                                : mainnetX86JarPath);
-                  } else {
-                    jarPath =
-                        Files.exists(mainnetArmJarPath) ? mainnetArmJarPath : mainnetX86JarPath;
-                  }
+    // Create combobox with the stored releases of the selected flavour
+    releasesComboBox = new JComboBox<>();
+    releasesComboBox.setToolTipText("Stored MyLocalTon releases, select one to switch to it.");
+    releasesComboBox.addActionListener(
+        e -> {
+          if (isSwitchingRelease) {
+            return;
+          }
+          ReleaseStore.Release selected =
+              (ReleaseStore.Release) releasesComboBox.getSelectedItem();
+          if (selected != null && selected != releaseStore.getActive()) {
+            switchRelease(project, selected);
+          }
+        });
+    versionPanel.add(releasesComboBox, 0);
 
-                  // Trim the output and update the version label
-                  final String version = getMyLocalTonVersion(jarPath.toString());
+    // Link to install from a local file or a shared directory without internet access
+    JLabel installFromLink = createLink("Install from...", project, null);
+    installFromLink.setToolTipText(
+        "Install MyLocalTon from a local JAR file or a shared directory (air-gapped machines).");
+    installFromLink.addMouseListener(
+        new MouseAdapter() {
+          @Override
+          public void mouseClicked(MouseEvent e) {
+            if (!installFromLink.isEnabled() || isDownloadInProgress) {
+              return;
+            }
+            JPopupMenu menu = new JPopupMenu();
+            JMenuItem fileItem = new JMenuItem("JAR file...");
+            fileItem.addActionListener(event -> chooseOfflineSource(project, panel, false));
+            JMenuItem directoryItem = new JMenuItem("Directory...");
+            directoryItem.addActionListener(event -> chooseOfflineSource(project, panel, true));
+            menu.add(fileItem);
+            menu.add(directoryItem);
+            menu.show(installFromLink, 0, installFromLink.getHeight());
+          }
+        });
+    versionPanel.add(installFromLink, 0);
+    refreshReleases();
 
-                  // Update the version label in the UI thread
-                  SwingUtilities.invokeLater(
-                      () -> {
-                        versionLabel.setText(version);
-                        versionLabel.repaint(); // Force repaint
-                      });
-                } catch (Exception ex) {
-                  LOG.warn("Error getting version on startup: " + ex.getMessage(), ex);
-                }
-              })
-          .start();
+    // Show the version of the active release, asking the JAR only once per release
+    if (activeRelease != null) {
+      if (StringUtils.isNotEmpty(activeRelease.getVersion())) {
+        versionLabel.setText(activeRelease.getVersion());
+      } else {
+        detectVersion(activeRelease, downloadDir.resolve(activeRelease.getFileName()));
+      }
     }
+    startUpdateChecker();
+
+    testnetCheckbox.addActionListener(
+        e -> {
+          ReleaseStore.Release latest = releaseStore.latest(testnetCheckbox.isSelected());
+          if (latest != null) {
+            // The flavour is already stored, switch to it without downloading
+            switchRelease(project, latest);
+          } else {
+            refreshReleases();
+            downloadButton.setText("DOWNLOAD");
+            downloadButton.setEnabled(true);
+            versionLabel.setText(" ");
+            updateStatusLabel();
+          }
+        });
 
     // Create download panel with centered Download button and progress bar
     JPanel downloadPanel = new JPanel();
@@ -434,7 +759,6 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     // Download button - set initial state based on JAR existence
     downloadButton.setText(jarExists ? "DOWNLOADED" : "DOWNLOAD");
     downloadButton.setEnabled(!jarExists); // Disable if JAR exists
-    testnetCheckbox.setEnabled(!jarExists);
     downloadButton.setPreferredSize(new Dimension(150, 30));
     downloadButton.addActionListener(
         new ActionListener() {
@@ -507,13 +831,44 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
                           Files.createDirectories(downloadDir);
                         }
 
-                        // Path where the file will be saved
+                        // Download into the release store, the same content is kept only once
                         String jarFilename = getJarFilename(isTestnet);
-                        Path targetPath = downloadDir.resolve(jarFilename);
-                        File targetFile = targetPath.toFile();
+                        String mirrorUrl = MyLocalTonSettings.getInstance().getMirrorUrl();
+                        ReleaseStore.Release release;
+                        if (OfflineInstaller.isLocalMirror(mirrorUrl)) {
+                          // The mirror is a shared directory, copy from it instead
+                          release =
+                              new OfflineInstaller(releaseStore)
+                                  .installFromDirectory(
+                                      Paths.get(OfflineInstaller.toLocalPath(mirrorUrl)),
+                                      isTestnet,
+                                      jarFilename);
+                        } else {
+                          // Mirrors may publish checksums, fetch them while downloading
+                          CompletableFuture<String> expectedSha256 =
+                              StringUtils.isEmpty(mirrorUrl)
+                                  ? CompletableFuture.completedFuture(null)
+                                  : OfflineInstaller.fetchChecksumAsync(
+                                      getDownloadBaseUrl(), jarFilename);
+                          Path tempPath = releaseStore.createTempFile();
+                          String sha256;
+                          try {
+                            // Download the file and update progress
+                            sha256 = downloadFile(fileUrl, tempPath.toFile(), progressBar);
+                            OfflineInstaller.verify(fileUrl, sha256, expectedSha256.join());
+                          } catch (Exception downloadException) {
+                            Files.deleteIfExists(tempPath);
+                            throw downloadException;
+                          }
+                          release = releaseStore.put(tempPath, sha256, isTestnet, jarFilename);
+                        }
+                        Path targetPath = releaseStore.activate(release);
 
-                        // Download the file and update progress
-                        downloadFile(fileUrl, targetFile, progressBar);
+                        final String version = getMyLocalTonVersion(targetPath.toString());
+                        LOG.warn("MyLocalTon Version detected: " + version);
+                        if (StringUtils.isNotEmpty(version)) {
+                          releaseStore.setVersion(release, version);
+                        }
 
                         // Show success message
                         SwingUtilities.invokeLater(
@@ -524,7 +879,8 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
                               // Change download button text and keep it disabled
                               downloadButton.setText("DOWNLOADED");
                               downloadButton.setEnabled(false);
-                              testnetCheckbox.setEnabled(false);
+                              refreshReleases();
+                              startUpdateChecker();
 
                               // Make sure the progress bar is hidden
                               progressBar.setVisible(false);
@@ -593,8 +949,6 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
                               // buttons
                               updateStatusLabel();
 
-                              final String version = getMyLocalTonVersion(targetPath.toString());
-                              LOG.warn("MyLocalTon Version detected: " + version);
                               if (StringUtils.isEmpty(version)) {
                                 SwingUtilities.invokeLater(
                                     () ->
@@ -757,9 +1111,12 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
   }
 
   /**
-   * Loads settings from the settings.json file if it exists and sets the checkboxes accordingly.
+   * Loads settings from the settings.json file if it exists. Runs on a background thread, the
+   * checkboxes are set from the state when the panel is created.
+   *
+   * @param state The initial state to fill
    */
-  private void loadSettingsFromFile() {
+  private void loadSettingsFromFile(InitialState state) {
     String userHome = System.getProperty("user.home");
     String osName = System.getProperty("os.name").toLowerCase();
     String settingsFilePath;
@@ -787,18 +1144,9 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
             jsonContent.contains("\"enableBlockchainExplorer\": true");
         boolean enableDataGenerator = jsonContent.contains("\"enableDataGenerator\": true");
 
-        // Set checkboxes based on settings
-        if (tonHttpApiV2 != null) {
-          tonHttpApiV2.setSelected(enableTonHttpApi);
-        }
-
-        if (webExplorer != null) {
-          webExplorer.setSelected(enableBlockchainExplorer);
-        }
-
-        if (dataGenerator != null) {
-          dataGenerator.setSelected(enableDataGenerator);
-        }
+        state.enableTonHttpApi = enableTonHttpApi;
+        state.enableBlockchainExplorer = enableBlockchainExplorer;
+        state.enableDataGenerator = enableDataGenerator;
 
         LOG.warn("Settings loaded successfully from file");
       } catch (IOException e) {
@@ -809,7 +1157,7 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     }
   }
 
-  private JPanel createStartupSettingsPanel(Project project) {
+  private JPanel createStartupSettingsPanel(Project project, InitialState state) {
     JPanel panel = new JPanel(new BorderLayout());
     panel.setBorder(
         BorderFactory.createTitledBorder(
@@ -855,6 +1203,16 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     // Add the listbox to the panel
     listboxPanel.add(validators);
 
+    // Pre-funded wallets for parallel tests, created right after genesis
+    poolWallets = new JComboBox<>(new Integer[] {0, 4, 8, 16, 32, 64});
+    poolWallets.setSelectedItem(MyLocalTonSettings.getInstance().getPoolWallets());
+    poolWallets.setToolTipText(
+        "Creates pre-funded wallets after genesis and writes their keys to "
+            + WalletPool.getDefaultFile()
+            + ". Tests lease them via the JUnit 5 extension.");
+    listboxPanel.add(new JLabel("Pool wallets:"));
+    listboxPanel.add(poolWallets);
+
     debugMode = new JCheckBox("Debug mode");
     debugMode.setToolTipText(
         "Launches MyLocalTon in debug mode that add lots of useful information into log files.");
@@ -869,13 +1227,15 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     contentPanel.add(checkboxPanel);
     panel.add(contentPanel, BorderLayout.CENTER);
 
-    // Load settings from file if it exists
-    loadSettingsFromFile();
+    // Set checkboxes based on the settings file
+    tonHttpApiV2.setSelected(state.enableTonHttpApi);
+    webExplorer.setSelected(state.enableBlockchainExplorer);
+    dataGenerator.setSelected(state.enableDataGenerator);
 
     return panel;
   }
 
-  private JPanel createActionsPanel(Project project) {
+  private JPanel createActionsPanel(Project project, InitialState state) {
     JPanel panel = new JPanel(new BorderLayout());
     panel.setBorder(
         BorderFactory.createTitledBorder(
@@ -901,16 +1261,10 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
               // Get the path to the downloaded JAR file
               Path downloadDir = Paths.get(userHomeDir, ".mylocalton");
 
-              // Check for any of the possible JAR files
-              String jarFilename = getJarFilename(false); // Try mainnet first
+              // Use the JAR of the selected flavour, it is linked from the release store
+              String jarFilename = getJarFilename(testnetCheckbox.isSelected());
               Path jarPath = downloadDir.resolve(jarFilename);
 
-              if (!Files.exists(jarPath)) {
-                // Try testnet version
-                jarFilename = getJarFilename(true);
-                jarPath = downloadDir.resolve(jarFilename);
-              }
-
               if (!Files.exists(jarPath)) {
                 SwingUtilities.invokeLater(
                     () ->
@@ -921,19 +1275,6 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
                 return;
               }
 
-              final String version = getMyLocalTonVersion(jarPath.toString());
-              LOG.warn("MyLocalTon Version detected: " + version);
-              if (StringUtils.isEmpty(version)) {
-                SwingUtilities.invokeLater(
-                        () ->
-                                Messages.showWarningDialog(
-                                        project,
-                                        "MyLocalTon requires Java 21+\nDetected Java version: "
-                                                + extractJavaMajorVersion(getJavaVersion()),
-                                        "MyLocalTon Plugin"));
-                return;
-              }
-
               // Set the process running flag to true
               isProcessRunning = true;
 
@@ -950,89 +1291,58 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
               resetButton.setEnabled(false);
               deleteButton.setEnabled(false);
 
-              // Build the command with parameters based on checkbox states
-              StringBuilder command = new StringBuilder();
-              command
-                  .append("\"")
-                  .append(getBundledExecutablePath("java"))
-                  .append("\" -jar \"")
-                  .append(jarPath)
-                  .append("\"");
-
-              // Add parameters based on checkbox states
-              if (tonHttpApiV2.isSelected()) {
-                command.append(" ton-http-api");
-              }
-              if (webExplorer.isSelected()) {
-                command.append(" explorer");
-              }
-              if (dataGenerator.isSelected()) {
-                command.append(" data-generator");
-              }
-              if (noGuiMode.isSelected()) {
-                command.append(" nogui");
-              }
-              if (debugMode.isSelected()) {
-                command.append(" debug");
-              }
-
-              // Add validators parameter if not 0
-              int validatorsCount = (Integer) validators.getSelectedItem();
-              if (validatorsCount > 0) {
-                command.append(" with-validators-").append(validatorsCount);
-              }
-
-              // Launch the process in a detached way without console window
-              String osName = System.getProperty("os.name").toLowerCase();
-
-              // Create a ProcessBuilder for launching without console
-              ProcessBuilder invisibleProcessBuilder = new ProcessBuilder();
-
-              // Set the working directory to where the JAR is located
-              LOG.warn("working directory: " + downloadDir);
-              invisibleProcessBuilder.directory(downloadDir.toFile());
-
-              // Redirect standard output and error to /dev/null or NUL
-              invisibleProcessBuilder.redirectOutput(
-                  ProcessBuilder.Redirect.to(
-                      new File(osName.contains("win") ? "NUL" : "/dev/null")));
-              invisibleProcessBuilder.redirectError(
-                  ProcessBuilder.Redirect.to(
-                      new File(osName.contains("win") ? "NUL" : "/dev/null")));
-
-              if (osName.contains("win")) {
-                // For Windows, use javaw instead of java to avoid console window
-                String javawCommand = command.toString().replace("java.exe", "javaw.exe");
-                LOG.warn(
-                    "Starting MyLocalTon with command: "
-                        + "cd \""
-                        + downloadDir
-                        + "\" && "
-                        + javawCommand);
-                invisibleProcessBuilder.command(
-                    "cmd.exe", "/c", "cd " + downloadDir + " && " + javawCommand);
-              } else {
-                // For macOS and Linux, use java with appropriate flags
-                LOG.warn("Starting MyLocalTon with command: " + command);
-                invisibleProcessBuilder.command("sh", "-c", command + " &");
-              }
-
-              // Start the process and immediately detach from it
-              process = invisibleProcessBuilder.start();
-              process.getInputStream().close();
-              process.getOutputStream().close();
-              process.getErrorStream().close();
+              // Launch MyLocalTon with parameters based on checkbox states
+              NodeLauncher.Options options = getStartOptions();
+              saveStartOptions(options);
 
-              // For extra safety, start a thread to ensure we don't wait for the process
-              new Thread(
+              // Off the EDT, the version check forks the JAR and a genesis image may be
+              // restored or saved first
+              ApplicationManager.getApplication()
+                  .executeOnPooledThread(
                       () -> {
                         try {
-                          process.waitFor(100, TimeUnit.MILLISECONDS);
+                          final String version = getMyLocalTonVersion(jarPath.toString());
+                          LOG.warn("MyLocalTon Version detected: " + version);
+                          if (StringUtils.isEmpty(version)) {
+                            int javaVersion = extractJavaMajorVersion(getJavaVersion());
+                            SwingUtilities.invokeLater(
+                                () -> {
+                                  isProcessRunning = false;
+                                  updateStatusLabel();
+                                  Messages.showWarningDialog(
+                                      project,
+                                      "MyLocalTon requires Java 21+\nDetected Java version: "
+                                          + javaVersion,
+                                      "MyLocalTon Plugin");
+                                });
+                            return;
+                          }
+                          // Traced from here, a first start runs genesis while preparing
+                          StartupTracer.getInstance().begin(version);
+                          GenesisImageCache.getInstance().prepare(jarPath, options);
+                          // Genesis that did not finish in time is left running
+                          if (!NodeLauncher.isLockFileExists()) {
+                            process =
+                                NodeLauncher.start(
+                                    getBundledExecutablePath("java"), jarPath, options);
+                          }
+                          NodeSupervisor.getInstance().started();
+                        } catch (CancellationException ex) {
+                          // Stopped while genesis ran, the node is not started again
+                          LOG.warn(ex.getMessage());
+                          updateStatusLabelLater();
                         } catch (Exception ex) {
-                          // Ignore any exceptions
+                          LOG.warn("Error executing command: " + ex.getMessage(), ex);
+                          SwingUtilities.invokeLater(
+                              () -> {
+                                updateStatusLabel();
+                                Messages.showErrorDialog(
+                                    project,
+                                    "Error executing command: " + ex.getMessage(),
+                                    "MyLocalTon Plugin");
+                              });
                         }
-                      })
-                  .start();
+                      });
 
               showCopiedMessage("Starting...");
 
@@ -1054,84 +1364,15 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
           LOG.warn("Stop button clicked");
 
           try {
-            // Get the operating system
-            String osName = System.getProperty("os.name").toLowerCase();
-            String jarFilename = getJarFilename(testnetCheckbox.isSelected());
-
-            if (osName.contains("win")) {
-              // Windows: Use WMIC command to find all process IDs
-              String wmiCommand =
-                  "wmic process where \"CommandLine like '%%" + jarFilename + "%%'\" get ProcessId";
-              LOG.warn("WMI command: " + wmiCommand);
-              ProcessBuilder wmiProcessBuilder = new ProcessBuilder("cmd.exe", "/c", wmiCommand);
-              Process wmiProcess = wmiProcessBuilder.start();
-              String output =
-                  IOUtils.toString(wmiProcess.getInputStream(), Charset.defaultCharset());
-              wmiProcess.waitFor();
-
-              // Parse the output to get all process IDs
-              String[] lines = output.trim().split("\\s+");
-              java.util.List<Long> pids = new ArrayList<>();
-              for (String line : lines) {
-                if (line.matches("\\d+")) {
-                  pids.add(Long.parseLong(line));
-                }
-              }
-
-              LOG.warn("Found " + pids.size() + " processes to terminate");
-
-              // Get the path to the SendSignalCtrlC64.exe utility
-              String p =
-                  Paths.get(
-                          System.getProperty("user.home"),
-                          ".mylocalton/myLocalTon/utils/SendSignalCtrlC64.exe")
-                      .toString();
-
-              // Terminate each process
-              for (Long pid : pids) {
-                LOG.warn("Sending SIGTERM : " + p + " " + pid);
-                ProcessBuilder terminateProcessBuilder = new ProcessBuilder(p, pid.toString());
-                terminateProcessBuilder.start();
-              }
-            } else {
-
-              String shell;
-              if (osName.contains("mac")) {
-                shell = "/bin/zsh";
-              } else {
-                shell = "/bin/sh";
-              }
-              String[] command = {
-                shell,
-                "-c",
-                "\"" + getBundledExecutablePath("jps") + "\"" + " | grep " + jarFilename + "| awk '{print $1}'"
-              };
-              LOG.warn("cmd: " + Arrays.toString(command));
-              ProcessBuilder processBuilder = new ProcessBuilder(command);
-              Process mltProcess = processBuilder.start();
-              String pid = IOUtils.toString(mltProcess.getInputStream(), Charset.defaultCharset());
-              mltProcess.waitFor();
-              ProcessBuilder killProcessBuilder;
-
-              if (osName.contains("mac")) {
-                LOG.warn("kill -SIGTERM " + pid.trim());
-                killProcessBuilder = new ProcessBuilder(shell, "-c", "kill -SIGTERM " + pid.trim());
-                killProcessBuilder.redirectError(
-                    ProcessBuilder.Redirect.to(
-                        new File(SystemUtils.IS_OS_WINDOWS ? "NUL" : "/dev/null")));
-              } else {
-                LOG.warn("kill -15 " + pid.trim());
-                killProcessBuilder = new ProcessBuilder("sh", "-c", "kill -15 " + pid.trim());
-                killProcessBuilder.redirectError(
-                    ProcessBuilder.Redirect.to(
-                        new File(SystemUtils.IS_OS_WINDOWS ? "NUL" : "/dev/null")));
-              }
-              Process killerProcess = killProcessBuilder.start();
-              killerProcess.waitFor();
-            }
+            NodeSupervisor.getInstance().stopped();
+            GenesisImageCache.getInstance().cancel();
+            NodeLauncher.stop(
+                getBundledExecutablePath("jps"), getJarFilename(testnetCheckbox.isSelected()));
 
             // Set the process running flag to false
             isProcessRunning = false;
+            TonlibService.getInstance().invalidate();
+            StartupTracer.getInstance().cancel();
 
             showCopiedMessage("Stopping...");
 
@@ -1340,15 +1581,15 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     statusConstraints.insets = new Insets(0, 0, 5, 10); // Add some padding at the bottom and right
     southPanel.add(statusLabel, statusConstraints);
 
-    // Initial check of lock file status and update button states
-    updateStatusLabel();
+    // Initial lock file status and button states, checked while loading the initial state
+    applyStatus(state.lockExists, state.activeRelease != null);
 
     panel.add(southPanel, BorderLayout.SOUTH);
 
     return panel;
   }
 
-  private @NotNull String getGlobalConfigPath(String userHome) {
+  static @NotNull String getGlobalConfigPath(String userHome) {
     String osName = System.getProperty("os.name").toLowerCase();
     String configPath;
 
@@ -1362,7 +1603,7 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     return configPath;
   }
 
-  private @NotNull String getTonlibPath(String userHome) {
+  static @NotNull String getTonlibPath(String userHome) {
     String osName = System.getProperty("os.name").toLowerCase();
     String tonlibPath;
 
@@ -1378,7 +1619,7 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     return tonlibPath;
   }
 
-  private @NotNull String getLiteClientPath(String userHome) {
+  static @NotNull String getLiteClientPath(String userHome) {
     String osName = System.getProperty("os.name").toLowerCase();
     String tonlibPath;
 
@@ -1405,7 +1646,7 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     return tonlibPath;
   }
 
-  private static @NotNull String getMyLocalTonPath(String userHome) {
+  static @NotNull String getMyLocalTonPath(String userHome) {
     String osName = System.getProperty("os.name").toLowerCase();
     String configPath;
 
@@ -1465,10 +1706,23 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
                 if (Files.exists(mylocaltonDir)) {
                   try {
                     // Delete all files and subdirectories inside the directory, but keep the
-                    // directory itself
-                    FileUtils.cleanDirectory(mylocaltonDir.toFile());
+                    // directory itself and the open indexes, which are emptied instead
+                    TonlibService.getInstance().invalidate();
+                    TonlibService.getInstance().clearIndexes();
+                    Set<Path> indexFiles = TonlibService.getInstance().getIndexFiles();
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(mylocaltonDir)) {
+                      for (Path entry : entries) {
+                        if (!indexFiles.contains(entry)) {
+                          FileUtils.forceDelete(entry.toFile());
+                        }
+                      }
+                    }
                     Path lockFilePath = Paths.get(userHome, "myLocalTon.lock");
                     Files.deleteIfExists(lockFilePath);
+                    ReleaseStore.getDefault().reload();
+                    updateChecker.stop();
+                    updateChecker.clearCache();
+                    pendingUpdate = null;
 
                   } catch (IOException ex) {
                     // If an IOException occurs, it means deletion failed
@@ -1570,6 +1824,7 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
 
     // Reset version label to hide version information
     versionLabel.setText(" ");
+    refreshReleases();
 
     // Clear any "Open Location" links from the bottom panel
     JPanel installationPanel = (JPanel) mainPanel.getComponent(0); // Get the installation panel
@@ -1596,6 +1851,217 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     }
   }
 
+  /**
+   * Refills the releases combobox with the stored releases of the selected flavour and selects the
+   * active one.
+   */
+  private void refreshReleases() {
+    boolean testnet = testnetCheckbox.isSelected();
+    int refresh = releasesRefreshes.incrementAndGet();
+    // The store reads its index from disk, off the EDT
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              ReleaseStore releaseStore = ReleaseStore.getDefault();
+              ReleaseStore.Release active = releaseStore.getActive();
+              List<ReleaseStore.Release> releases = releaseStore.list(testnet);
+              SwingUtilities.invokeLater(
+                  () -> {
+                    if (refresh == releasesRefreshes.get()) {
+                      showReleases(releases, active);
+                    }
+                  });
+            });
+  }
+
+  private void showReleases(List<ReleaseStore.Release> releases, ReleaseStore.Release active) {
+    isSwitchingRelease = true;
+    try {
+      releasesComboBox.removeAllItems();
+      for (ReleaseStore.Release release : releases) {
+        releasesComboBox.addItem(release);
+        if (active != null && release.getSha256().equals(active.getSha256())) {
+          releasesComboBox.setSelectedItem(release);
+        }
+      }
+    } finally {
+      isSwitchingRelease = false;
+    }
+    releasesComboBox.setVisible(releasesComboBox.getItemCount() > 1);
+    releasesComboBox.setEnabled(!isProcessRunning && !isDownloadInProgress);
+  }
+
+  /**
+   * Switches to a stored release by re-linking its JAR, without downloading anything.
+   *
+   * @param project The current project
+   * @param release The stored release to launch from now on
+   */
+  private void switchRelease(Project project, ReleaseStore.Release release) {
+    // Activation copies the JAR where it cannot be linked
+    releasesComboBox.setEnabled(false);
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              try {
+                Path jarPath = ReleaseStore.getDefault().activate(release);
+                SwingUtilities.invokeLater(() -> onReleaseSwitched(release, jarPath));
+              } catch (IOException ex) {
+                LOG.warn("Error switching release: " + ex.getMessage(), ex);
+                SwingUtilities.invokeLater(
+                    () -> {
+                      refreshReleases();
+                      Messages.showErrorDialog(
+                          project,
+                          "Error switching release: " + ex.getMessage(),
+                          "MyLocalTon Plugin");
+                    });
+              }
+            });
+  }
+
+  /** Shows the release activated by {@link #switchRelease}. */
+  private void onReleaseSwitched(ReleaseStore.Release release, Path jarPath) {
+    testnetCheckbox.setSelected(release.isTestnet());
+    refreshReleases();
+    downloadButton.setText("DOWNLOADED");
+    downloadButton.setEnabled(false);
+    if (StringUtils.isNotEmpty(release.getVersion())) {
+      versionLabel.setText(release.getVersion());
+    } else {
+      versionLabel.setText(" ");
+      detectVersion(release, jarPath);
+    }
+    updateStatusLabel();
+    startUpdateChecker();
+    showCopiedMessage("Switched to " + release);
+  }
+
+  /**
+   * Lets the user pick a local JAR file or a shared directory and installs MyLocalTon from it.
+   *
+   * @param project The current project
+   * @param installationPanel The installation panel, used as the dialog parent
+   * @param directory Whether to choose a directory rather than a JAR file
+   */
+  private void chooseOfflineSource(Project project, JPanel installationPanel, boolean directory) {
+    JFileChooser chooser = new JFileChooser();
+    if (directory) {
+      chooser.setDialogTitle("Select Directory with MyLocalTon JARs");
+      chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+    } else {
+      chooser.setDialogTitle("Select MyLocalTon JAR");
+      chooser.setFileFilter(
+          new javax.swing.filechooser.FileNameExtensionFilter("MyLocalTon JAR", "jar"));
+    }
+    if (chooser.showOpenDialog(installationPanel) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    Path source = chooser.getSelectedFile().toPath();
+    boolean isTestnet =
+        directory
+            ? testnetCheckbox.isSelected()
+            : source.getFileName().toString().contains("testnet");
+    String jarFilename = getJarFilename(isTestnet);
+
+    isDownloadInProgress = true;
+    downloadButton.setEnabled(false);
+    updateStatusLabel();
+    showCopiedMessage("Installing...");
+
+    new Thread(
+            () -> {
+              try {
+                OfflineInstaller installer = new OfflineInstaller(ReleaseStore.getDefault());
+                ReleaseStore.Release release =
+                    directory
+                        ? installer.installFromDirectory(source, isTestnet, jarFilename)
+                        : installer.installFromFile(
+                            source,
+                            OfflineInstaller.findChecksum(
+                                source.getParent(), source.getFileName().toString()),
+                            isTestnet,
+                            jarFilename);
+                SwingUtilities.invokeLater(
+                    () -> {
+                      isDownloadInProgress = false;
+                      // Switches right away unless the node is running
+                      onUpdateDownloaded(project, release);
+                    });
+              } catch (Exception ex) {
+                LOG.warn("Error installing MyLocalTon from " + source + ": " + ex.getMessage(), ex);
+                SwingUtilities.invokeLater(
+                    () -> {
+                      isDownloadInProgress = false;
+                      downloadButton.setEnabled(!checkIfJarExists());
+                      updateStatusLabel();
+                      Messages.showErrorDialog(
+                          project,
+                          "Error installing MyLocalTon: " + ex.getMessage(),
+                          "MyLocalTon Plugin");
+                    });
+              }
+            })
+        .start();
+  }
+
+  /** (Re)starts background update checks for the "latest" URL of the active release flavour. */
+  private void startUpdateChecker() {
+    ReleaseStore.Release active = ReleaseStore.getDefault().getActive();
+    if (active == null) {
+      updateChecker.stop();
+      return;
+    }
+    updateChecker.start(
+        getDownloadUrl(active.isTestnet()), active.isTestnet(), active.getFileName());
+  }
+
+  /**
+   * Called when a newer release has been downloaded in the background. It is applied right away if
+   * MyLocalTon is not running, otherwise after it is stopped.
+   *
+   * @param project The current project
+   * @param release The newly stored release
+   */
+  private void onUpdateDownloaded(Project project, ReleaseStore.Release release) {
+    LOG.warn("MyLocalTon update downloaded: " + release.getSha256());
+    if (isProcessRunning || isLockFileExists()) {
+      pendingUpdate = release;
+      refreshReleases();
+      showCopiedMessage("Update downloaded, applied after Stop");
+    } else {
+      switchRelease(project, release);
+    }
+  }
+
+  /**
+   * Launches the JAR to find out its version in a background thread and remembers it in the
+   * release store.
+   *
+   * @param release The stored release
+   * @param jarPath Path of the launchable JAR
+   */
+  private void detectVersion(ReleaseStore.Release release, Path jarPath) {
+    ApplicationManager.getApplication()
+        .executeOnPooledThread(
+            () -> {
+              try {
+                final String version = getMyLocalTonVersion(jarPath.toString());
+                if (StringUtils.isNotEmpty(version)) {
+                  ReleaseStore.getDefault().setVersion(release, version);
+                }
+                // Update the version label in the UI thread
+                SwingUtilities.invokeLater(
+                    () -> {
+                      versionLabel.setText(version);
+                      versionLabel.repaint(); // Force repaint
+                    });
+              } catch (Exception ex) {
+                LOG.warn("Error getting version on startup: " + ex.getMessage(), ex);
+              }
+            });
+  }
+
   /**
    * Recursively sets the enabled state of a container and all its child components.
    *
@@ -1626,6 +2092,8 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
 
           try {
             if (Files.exists(mylocaltonDir)) {
+              TonlibService.getInstance().invalidate();
+              TonlibService.getInstance().clearIndexes();
               FileUtils.cleanDirectory(mylocaltonDir.toFile());
               Path lockFilePath = Paths.get(userHome, "myLocalTon.lock");
               Files.deleteIfExists(lockFilePath);
@@ -1677,14 +2145,6 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     return link;
   }
 
-  /**
-   * Downloads a file from the specified URL and updates the progress bar.
-   *
-   * @param fileUrl URL of the file to download
-   * @param targetFile File where the downloaded content will be saved
-   * @param progressBar JProgressBar to update with download progress
-   * @throws IOException If an I/O error occurs during download
-   */
   /**
    * Copies the given text to the system clipboard.
    *
@@ -1720,7 +2180,16 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     hideTimer.start();
   }
 
-  private void downloadFile(String fileUrl, File targetFile, JProgressBar progressBar)
+  /**
+   * Downloads a file from the specified URL and updates the progress bar.
+   *
+   * @param fileUrl URL of the file to download
+   * @param targetFile File where the downloaded content will be saved
+   * @param progressBar JProgressBar to update with download progress
+   * @return SHA-256 of the downloaded content, computed while downloading
+   * @throws IOException If an I/O error occurs during download
+   */
+  private String downloadFile(String fileUrl, File targetFile, JProgressBar progressBar)
       throws IOException, URISyntaxException {
     URI uri = new URI(fileUrl);
     URL url = uri.toURL();
@@ -1734,9 +2203,10 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
     // Get file size if available
     int fileSize = connection.getContentLength();
 
-    // Open streams
+    // Open streams, hashing the content on the fly for the release store
+    MessageDigest digest = ReleaseStore.newSha256();
     try (InputStream in = connection.getInputStream();
-        FileOutputStream out = new FileOutputStream(targetFile)) {
+        OutputStream out = new DigestOutputStream(new FileOutputStream(targetFile), digest)) {
 
       byte[] buffer = new byte[8192]; // 8KB buffer
       int bytesRead;
@@ -1757,6 +2227,11 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
       // Ensure progress bar shows 100% when done
       SwingUtilities.invokeLater(() -> progressBar.setValue(100));
     }
+    String sha256 = HexFormat.of().formatHex(digest.digest());
+
+    // Remember ETag/Last-Modified so that update checks can be conditional
+    updateChecker.recordValidators(fileUrl, connection, sha256);
+    return sha256;
   }
 
   public String getDirectorySizeUsingDu(String path) {
@@ -1817,12 +2292,8 @@ public class MyLocalTonToolWindowFactory implements ToolWindowFactory {
 //  }
 
   public static String getBundledExecutablePath(String executable) {
-      String bundledJavaHome = SystemProperties.getJavaHome();
-      LOG.info("bundledJavaHome: " + bundledJavaHome);
-      return bundledJavaHome
-              + File.separator+"bin"+File.separator
-              + (SystemInfo.isWindows ? executable + ".exe" : executable);
-
+      // The IDE runs on its bundled JBR, so its java.home is the bundled one
+      return NodeLauncher.getJdkExecutablePath(executable);
   }
 
 
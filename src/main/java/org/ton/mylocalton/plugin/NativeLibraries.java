@@ -0,0 +1,112 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Loads the native libraries extracted by MyLocalTon, e.g. tonlibjson, from copies in a temporary
+ * directory of the IDE session. JNA never unloads a library and Windows keeps a loaded DLL locked,
+ * so loading it from {@code ~/.mylocalton/myLocalTon/genesis/bin} would make Reset and Delete fail
+ * for the rest of the session. Copies left behind by earlier sessions are deleted on first use.
+ * Every session holds a lock on a file in its directory until the IDE exits, so the directories of
+ * other running IDEs are recognized and kept.
+ */
+final class NativeLibraries {
+  private static final Logger LOG = Logger.getInstance(NativeLibraries.class);
+
+  private static final String DIRECTORY_PREFIX = "mylocalton-native-";
+  private static final String LOCK_FILE = "session.lock";
+
+  private static Path sessionDirectory;
+  // Released by the OS when the IDE exits
+  private static FileChannel sessionLockChannel;
+
+  private NativeLibraries() {}
+
+  /**
+   * Loads a copy of a library.
+   *
+   * @param library path of the library
+   * @param type interface of the library's functions
+   * @return the library
+   * @throws IOException if the library cannot be copied
+   * @throws UnsatisfiedLinkError if the library cannot be loaded
+   */
+  static <T extends Library> T load(Path library, Class<T> type) throws IOException {
+    return Native.load(copy(library).toString(), type);
+  }
+
+  private static synchronized Path copy(Path library) throws IOException {
+    if (sessionDirectory == null) {
+      deleteEarlierSessions();
+      Path directory = Files.createTempDirectory(DIRECTORY_PREFIX);
+      sessionLockChannel =
+          FileChannel.open(
+              directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      sessionLockChannel.lock();
+      sessionDirectory = directory;
+    }
+    // A library changed on disk, e.g. by an update, is loaded from a new copy
+    Path copy =
+        sessionDirectory.resolve(
+            Files.getLastModifiedTime(library).toMillis() + "-" + library.getFileName());
+    if (!Files.exists(copy)) {
+      Path tmp = copy.resolveSibling(copy.getFileName() + ".tmp");
+      Files.copy(library, tmp, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(tmp, copy, StandardCopyOption.ATOMIC_MOVE);
+    }
+    return copy;
+  }
+
+  /** Deletes the copies of sessions that ended, copies still loaded by another IDE stay. */
+  private static void deleteEarlierSessions() {
+    Path tempDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+    try (DirectoryStream<Path> directories =
+        Files.newDirectoryStream(tempDirectory, DIRECTORY_PREFIX + "*")) {
+      for (Path directory : directories) {
+        if (isSessionEnded(directory)) {
+          FileUtils.deleteQuietly(directory.toFile());
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Cannot delete native libraries of earlier sessions: " + e.getMessage());
+    }
+  }
+
+  /** Whether no running IDE holds the lock of a session directory. */
+  private static boolean isSessionEnded(Path directory) {
+    Path lockFile = directory.resolve(LOCK_FILE);
+    if (!Files.exists(lockFile)) {
+      // Being created by another IDE right now, or left by a version without locks
+      return isOlderThanOneDay(directory);
+    }
+    try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+        FileLock lock = channel.tryLock()) {
+      return lock != null;
+    } catch (IOException | OverlappingFileLockException e) {
+      return false;
+    }
+  }
+
+  private static boolean isOlderThanOneDay(Path directory) {
+    try {
+      return Files.getLastModifiedTime(directory).toMillis()
+          < System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
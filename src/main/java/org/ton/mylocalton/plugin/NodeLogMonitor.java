@@ -0,0 +1,299 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Follows {@code myLocalTon.log} and turns known lines into typed events with counters, so node
+ * errors show up as IDE notifications within a second instead of being found by searching the log.
+ *
+ * <p>The log is read incrementally from the last byte offset, so every byte is read once no matter
+ * how large the log grows. Following starts at the end of the log as it is when the monitor starts;
+ * a log that shrinks was truncated by the {@link LogRotator} and is followed from its start again.
+ * Errors, exceptions and loss of sync are reported as notifications, at most one per event type
+ * every {@value #ALERT_INTERVAL_MS} ms with the number of events since the last one.
+ */
+public class NodeLogMonitor implements Disposable {
+  private static final Logger LOG = Logger.getInstance(NodeLogMonitor.class);
+
+  static final String NOTIFICATION_GROUP = "MyLocalTon";
+  private static final long POLL_INTERVAL_MS = 250;
+  private static final long ALERT_INTERVAL_MS = 30_000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // Longer lines are cut, e.g. a dump of a whole block
+  private static final int MAX_LINE_LENGTH = 16 * 1024;
+  private static final int MAX_RECENT_EVENTS = 200;
+
+  /** Kinds of log lines, a line is of the first kind whose marker it contains. */
+  public enum Type {
+    OUT_OF_SYNC(
+        "Out of sync",
+        Pattern.compile(
+            "(?i)out[ -]of[ -]sync|not in sync|(sync|synchroni[sz]ation) (lost|failed)"),
+        true),
+    EXCEPTION(
+        "Exception",
+        Pattern.compile("^(Exception in thread|[\\w$.]+(Exception|Error)(: |$))"),
+        true),
+    ERROR("Error", Pattern.compile("\\b(ERROR|FATAL|SEVERE)\\b"), true),
+    VALIDATOR_ELECTED(
+        "Validator elected",
+        Pattern.compile("(?i)\\b(elected|election(s)? (won|finished|completed))\\b"),
+        false),
+    BLOCK_PRODUCED(
+        "Block produced",
+        Pattern.compile("(?i)\\b(new|created|produced|generated|applied)\\b.{0,40}\\bblock\\b"),
+        false);
+
+    private final String title;
+    private final Pattern marker;
+    private final boolean alert;
+
+    Type(String title, Pattern marker, boolean alert) {
+      this.title = title;
+      this.marker = marker;
+      this.alert = alert;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+
+    /** Whether events of this type are raised as IDE notifications. */
+    public boolean isAlert() {
+      return alert;
+    }
+  }
+
+  /** A recognized log line. */
+  public static final class Event {
+    private final Type type;
+    private final String line;
+    private final long time;
+
+    Event(Type type, String line, long time) {
+      this.type = type;
+      this.line = line;
+      this.time = time;
+    }
+
+    public Type getType() {
+      return type;
+    }
+
+    public String getLine() {
+      return line;
+    }
+
+    /** Time the line was read, unix milliseconds. */
+    public long getTime() {
+      return time;
+    }
+  }
+
+  private final Path logFile;
+  private final ScheduledExecutorService executorService;
+  private final List<Consumer<Event>> listeners = new CopyOnWriteArrayList<>();
+  private final Map<Type, Long> counts = new EnumMap<>(Type.class);
+  private final Deque<Event> recentEvents = new ArrayDeque<>();
+  // Events suppressed since the last notification and the time of that notification, per type
+  private final Map<Type, Integer> suppressedAlerts = new EnumMap<>(Type.class);
+  private final Map<Type, Long> lastAlerts = new EnumMap<>(Type.class);
+  private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private long offset = -1;
+
+  public NodeLogMonitor() {
+    this(NodeLauncher.getDataDirectory().resolve(LogRotator.LOG_FILENAME));
+  }
+
+  NodeLogMonitor(Path logFile) {
+    this.logFile = logFile;
+    for (Type type : Type.values()) {
+      counts.put(type, 0L);
+    }
+    executorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Log Monitor");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    executorService.scheduleWithFixedDelay(
+        () -> {
+          try {
+            poll();
+          } catch (Exception e) {
+            LOG.warn("Cannot follow " + logFile + ": " + e.getMessage());
+          }
+        },
+        0,
+        POLL_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public static NodeLogMonitor getInstance() {
+    return ApplicationManager.getApplication().getService(NodeLogMonitor.class);
+  }
+
+  /**
+   * Registers a listener called on the monitor thread for every recognized line.
+   *
+   * @param listener the listener
+   */
+  public void addListener(Consumer<Event> listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Consumer<Event> listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the number of lines of every type seen since the monitor started.
+   *
+   * @return counts by type
+   */
+  public synchronized Map<Type, Long> getCounts() {
+    return new EnumMap<>(counts);
+  }
+
+  /**
+   * Returns the latest events of alert types.
+   *
+   * @return events, newest first
+   */
+  public synchronized List<Event> getRecentEvents() {
+    return new ArrayList<>(recentEvents);
+  }
+
+  /** Reads the lines appended since the last poll. */
+  void poll() throws IOException {
+    long size;
+    try {
+      size = Files.size(logFile);
+    } catch (NoSuchFileException e) {
+      // Not created yet or deleted with the data directory
+      size = 0;
+    }
+    if (offset < 0) {
+      // Old lines were written before the monitor started
+      offset = size;
+      return;
+    }
+    if (size < offset) {
+      offset = 0;
+      partialLine.reset();
+    }
+    if (size == offset) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+      int read;
+      while ((read = channel.read(buffer.clear(), offset)) > 0) {
+        offset += read;
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < read; i++) {
+          if (bytes[i] == '\n') {
+            onLine(partialLine.toString(StandardCharsets.UTF_8));
+            partialLine.reset();
+          } else if (bytes[i] != '\r' && partialLine.size() < MAX_LINE_LENGTH) {
+            partialLine.write(bytes[i]);
+          }
+        }
+      }
+    }
+  }
+
+  private void onLine(String line) {
+    for (Type type : Type.values()) {
+      if (type.marker.matcher(line).find()) {
+        Event event = new Event(type, line, System.currentTimeMillis());
+        boolean notify;
+        int suppressed;
+        synchronized (this) {
+          counts.merge(type, 1L, Long::sum);
+          if (type.alert) {
+            recentEvents.addFirst(event);
+            if (recentEvents.size() > MAX_RECENT_EVENTS) {
+              recentEvents.removeLast();
+            }
+          }
+          notify = type.alert && shouldAlert(type, event.time);
+          suppressed = notify ? suppressedAlerts.getOrDefault(type, 0) : 0;
+          if (notify) {
+            suppressedAlerts.put(type, 0);
+          }
+        }
+        if (notify) {
+          alert(event, suppressed);
+        }
+        for (Consumer<Event> listener : listeners) {
+          listener.accept(event);
+        }
+        return;
+      }
+    }
+  }
+
+  /** Whether an event is notified, otherwise it is counted for the next notification. */
+  private boolean shouldAlert(Type type, long time) {
+    Long lastAlert = lastAlerts.get(type);
+    if (lastAlert != null && time - lastAlert < ALERT_INTERVAL_MS) {
+      suppressedAlerts.merge(type, 1, Integer::sum);
+      return false;
+    }
+    lastAlerts.put(type, time);
+    return true;
+  }
+
+  private static void alert(Event event, int suppressed) {
+    // Notification content is HTML, the line is shown as it is
+    String content = StringUtil.escapeXmlEntities(StringUtils.abbreviate(event.line.trim(), 300));
+    if (suppressed > 0) {
+      content += " (" + suppressed + " more since the last notification)";
+    }
+    NotificationGroupManager.getInstance()
+        .getNotificationGroup(NOTIFICATION_GROUP)
+        .createNotification(
+            "MyLocalTon: " + event.type.title,
+            content,
+            event.type == Type.ERROR || event.type == Type.EXCEPTION
+                ? NotificationType.ERROR
+                : NotificationType.WARNING)
+        .notify(null);
+  }
+
+  @Override
+  public void dispose() {
+    executorService.shutdownNow();
+  }
+}
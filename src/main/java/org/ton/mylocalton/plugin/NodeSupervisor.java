@@ -0,0 +1,407 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Watches a started MyLocalTon node for crashes and hangs. The lock file alone cannot tell, it
+ * stays behind when the JVM dies.
+ *
+ * <p>The node runs detached, so it is found by the JAR on its command line and followed through its
+ * process handle. A new block is the heartbeat: either the lite-server reports a higher masterchain
+ * seqno, asked without dropping the shared tonlib client when it does not answer, or the {@link
+ * NodeLogMonitor} reads a block line from the log, so a tonlib connection problem alone does not
+ * make a healthy node look hung. The node counts as crashed when its process is gone and as hung
+ * when no new block arrived within the hang timeout, or none at all within the readiness timeout
+ * after the start. Timeouts are measured with the monotonic clock and start over after the machine
+ * slept. In both cases the end of {@code myLocalTon.log} is saved with any {@code hs_err_pid*.log}
+ * of the JVM to {@code ~/.mylocalton/crash-reports}. If enabled in the settings, a hung node is
+ * stopped together with its validator engines, the lock file left behind is removed and the node is
+ * started again after a delay that doubles with every restart that does not result in a stable
+ * node; otherwise the failure is only reported.
+ */
+public class NodeSupervisor implements Disposable {
+  private static final Logger LOG = Logger.getInstance(NodeSupervisor.class);
+
+  private static final String REPORTS_DIRECTORY = "crash-reports";
+  private static final DateTimeFormatter REPORT_TIME =
+      DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneId.systemDefault());
+  private static final int MAX_REPORTS = 20;
+  private static final int LOG_TAIL_BYTES = 256 * 1024;
+  private static final long CHECK_PERIOD_SECONDS = 5;
+  // A longer pause between checks means the machine slept, the timeouts start over
+  private static final long SLEEP_GAP_MS = 6 * CHECK_PERIOD_SECONDS * 1000;
+  private static final long STOP_TIMEOUT_SECONDS = 30;
+  // The detached JVM needs a moment to show up in the process list
+  private static final long PROCESS_GRACE_MS = 60_000;
+  private static final long FIRST_RESTART_DELAY_MS = 5_000;
+  private static final long MAX_RESTART_DELAY_MS = 5 * 60_000;
+  // A node producing blocks this long after its start resets the restart delay
+  private static final long STABLE_MS = 10 * 60_000;
+
+  private final ScheduledExecutorService executorService;
+  private boolean supervising;
+  private ProcessHandle process;
+  // Times in ms of the monotonic clock, except the wall clock start time for the report
+  private long startedAt;
+  private long startedAtWall;
+  private long lastCheckAt;
+  private long lastSeqno;
+  private long lastBlockAt;
+  private boolean sawBlock;
+  private int restarts;
+  private String lastCrash;
+
+  public NodeSupervisor() {
+    executorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Node Supervisor");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    executorService.scheduleWithFixedDelay(
+        () -> {
+          try {
+            check();
+          } catch (Exception e) {
+            LOG.warn("Node supervision failed: " + e.getMessage());
+          }
+        },
+        CHECK_PERIOD_SECONDS,
+        CHECK_PERIOD_SECONDS,
+        TimeUnit.SECONDS);
+    NodeLogMonitor.getInstance()
+        .addListener(
+            event -> {
+              if (event.getType() == NodeLogMonitor.Type.BLOCK_PRODUCED) {
+                onBlockLogged();
+              }
+            });
+    if (NodeLauncher.isLockFileExists() && !MyLocalTonSettings.getInstance().isAttached()) {
+      // Started in an earlier IDE session
+      started();
+    }
+  }
+
+  public static NodeSupervisor getInstance() {
+    return ApplicationManager.getApplication().getService(NodeSupervisor.class);
+  }
+
+  /** Starts supervising the node that was just started or is found running. */
+  public synchronized void started() {
+    supervising = true;
+    process = null;
+    startedAt = now();
+    startedAtWall = System.currentTimeMillis();
+    lastCheckAt = startedAt;
+    lastSeqno = -1;
+    lastBlockAt = startedAt;
+    sawBlock = false;
+  }
+
+  /** Stops supervising because the node is stopped on purpose. */
+  public synchronized void stopped() {
+    supervising = false;
+    process = null;
+    restarts = 0;
+  }
+
+  /**
+   * Gets the directory crash reports are saved in, one subdirectory per crash.
+   *
+   * @return {@code ~/.mylocalton/crash-reports}
+   */
+  static Path getReportsDirectory() {
+    return NodeLauncher.getWorkingDirectory().resolve(REPORTS_DIRECTORY);
+  }
+
+  /**
+   * Describes the last crash or hang.
+   *
+   * @return the reason and the crash report, or null if there was none since the IDE started
+   */
+  public synchronized String getLastCrash() {
+    return lastCrash;
+  }
+
+  private static long now() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+  }
+
+  private synchronized void onBlockLogged() {
+    lastBlockAt = now();
+    sawBlock = true;
+  }
+
+  private void check() {
+    boolean attached = MyLocalTonSettings.getInstance().isAttached();
+    ProcessHandle handle;
+    long now = now();
+    synchronized (this) {
+      if (attached) {
+        // The node runs elsewhere, nothing to supervise here
+        supervising = false;
+      }
+      if (!supervising) {
+        return;
+      }
+      if (process == null) {
+        process = NodeLauncher.findProcess().orElse(null);
+      }
+      handle = process;
+      if (now - lastCheckAt > SLEEP_GAP_MS) {
+        LOG.warn("No check for " + (now - lastCheckAt) / 1000 + " s, the machine slept");
+        // The node did not run either, its timeouts start over
+        startedAt += now - lastCheckAt;
+        lastBlockAt = now;
+      }
+      lastCheckAt = now;
+    }
+    if (handle == null) {
+      if (now - startedAt > PROCESS_GRACE_MS) {
+        onFailure(null, "MyLocalTon is not running");
+      }
+      return;
+    }
+    if (!handle.isAlive()) {
+      onFailure(null, "MyLocalTon exited unexpectedly");
+      return;
+    }
+
+    // Heartbeat of the lite-server, the client is shared with the rest of the IDE
+    long seqno = TonlibService.getInstance().queryMasterchainSeqno();
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    String hang = null;
+    synchronized (this) {
+      if (seqno > lastSeqno) {
+        lastSeqno = seqno;
+        lastBlockAt = now;
+        sawBlock = true;
+        if (restarts > 0 && now - startedAt > STABLE_MS) {
+          LOG.warn("MyLocalTon is stable again after " + restarts + " restarts");
+          restarts = 0;
+        }
+      }
+      long hangTimeoutMs = TimeUnit.SECONDS.toMillis(settings.getHangTimeoutSeconds());
+      if (!sawBlock
+          && now - startedAt > TimeUnit.SECONDS.toMillis(settings.getReadinessTimeoutSeconds())) {
+        hang = "MyLocalTon produced no block within the readiness timeout";
+      } else if (sawBlock && hangTimeoutMs > 0 && now - lastBlockAt > hangTimeoutMs) {
+        hang = "MyLocalTon produced no block for " + (now - lastBlockAt) / 1000 + " s";
+      }
+    }
+    if (hang != null) {
+      onFailure(handle, hang);
+    }
+  }
+
+  /**
+   * Reports the failure and, if restarts are enabled, stops a hung node and schedules a restart. A
+   * hung node is left running otherwise.
+   */
+  private void onFailure(ProcessHandle hungProcess, String reason) {
+    long started;
+    long seqno;
+    synchronized (this) {
+      if (!supervising) {
+        return;
+      }
+      supervising = false;
+      process = null;
+      started = startedAtWall;
+      seqno = lastSeqno;
+    }
+    LOG.warn(reason);
+    boolean restart = MyLocalTonSettings.getInstance().isAutoRestart();
+    if (hungProcess != null && restart) {
+      stopHung(hungProcess);
+    }
+    if (hungProcess == null || restart) {
+      if (NodeLauncher.findProcess().isEmpty()) {
+        try {
+          // Left behind by the dead JVM, it would keep the node shown as running
+          Files.deleteIfExists(NodeLauncher.getLockFile());
+        } catch (IOException e) {
+          LOG.warn("Cannot delete stale lock file: " + e.getMessage());
+        }
+      }
+      TonlibService.getInstance().invalidate();
+      StartupTracer.getInstance().cancel();
+    }
+
+    Path report = null;
+    try {
+      report = saveReport(reason, started, seqno);
+    } catch (IOException e) {
+      LOG.warn("Cannot save crash report: " + e.getMessage());
+    }
+
+    long delay = 0;
+    synchronized (this) {
+      lastCrash = reason + (report == null ? "" : ", report in " + report);
+      if (restart) {
+        delay = Math.min(FIRST_RESTART_DELAY_MS << Math.min(restarts, 16), MAX_RESTART_DELAY_MS);
+        restarts++;
+      }
+    }
+    String content =
+        (report == null ? "" : "Report: " + report + "<br>")
+            + (restart
+                ? "Restarting in " + delay / 1000 + " s"
+                : hungProcess != null
+                    ? "Left running, automatic restart is disabled"
+                    : "Not restarted");
+    NotificationGroupManager.getInstance()
+        .getNotificationGroup(NodeLogMonitor.NOTIFICATION_GROUP)
+        .createNotification(reason, content, NotificationType.ERROR)
+        .notify(null);
+    if (restart) {
+      executorService.schedule(this::restart, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stops a hung node gracefully, then kills what is left of it. The validator engines are children
+   * of the JVM and would keep their ports and database locks, so they are killed before it.
+   */
+  private static void stopHung(ProcessHandle hungProcess) {
+    // Listed first, the engines are orphaned once the JVM is gone
+    List<ProcessHandle> children = hungProcess.descendants().toList();
+    try {
+      Path jar = ReleaseStore.getDefault().getLaunchableJar();
+      if (jar != null) {
+        NodeLauncher.stop(
+            MyLocalTonToolWindowFactory.getBundledExecutablePath("jps"),
+            jar.getFileName().toString());
+        hungProcess.onExit().get(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      LOG.warn("Hung MyLocalTon did not stop: " + e.getMessage());
+    }
+    children.forEach(ProcessHandle::destroyForcibly);
+    hungProcess.destroyForcibly();
+    try {
+      hungProcess.onExit().get(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      LOG.warn("Hung MyLocalTon did not exit: " + e.getMessage());
+    }
+  }
+
+  private void restart() {
+    synchronized (this) {
+      if (supervising) {
+        // Started by hand meanwhile
+        return;
+      }
+    }
+    try {
+      Path jar =
+          NodeLauncher.startIfNotRunning(
+              MyLocalTonToolWindowFactory.getBundledExecutablePath("java"),
+              ReleaseStore.getDefault().getLaunchableJar(),
+              MyLocalTonSettings.getInstance().getStartOptions());
+      LOG.warn("Restarted MyLocalTon " + (jar == null ? "(already running)" : jar.getFileName()));
+      if (jar != null) {
+        ReleaseStore.Release release = ReleaseStore.getDefault().getActive();
+        StartupTracer.getInstance().begin(release == null ? null : release.getVersion());
+      }
+      started();
+    } catch (IOException e) {
+      LOG.warn("Cannot restart MyLocalTon: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Saves the reason, the end of the log and the JVM crash logs written since the start.
+   *
+   * @return the report directory
+   */
+  private Path saveReport(String reason, long started, long seqno) throws IOException {
+    Path reports = getReportsDirectory();
+    Path report = reports.resolve(REPORT_TIME.format(Instant.now()));
+    Files.createDirectories(report);
+    Files.writeString(
+        report.resolve("reason.txt"),
+        reason
+            + "\nStarted: "
+            + Instant.ofEpochMilli(started)
+            + "\nLast masterchain block: "
+            + seqno
+            + "\n",
+        StandardCharsets.UTF_8);
+    Path logFile = LogRotator.getInstance().getLogFile();
+    Files.writeString(
+        report.resolve(LogRotator.LOG_FILENAME),
+        LogSearch.tail(logFile, LOG_TAIL_BYTES),
+        StandardCharsets.UTF_8);
+    // The JVM writes them into its working directory
+    for (Path directory :
+        List.of(NodeLauncher.getWorkingDirectory(), NodeLauncher.getDataDirectory())) {
+      if (!Files.isDirectory(directory)) {
+        continue;
+      }
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "hs_err_pid*.log")) {
+        for (Path file : files) {
+          if (Files.getLastModifiedTime(file).toMillis() >= started) {
+            Files.copy(
+                file, report.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+          }
+        }
+      }
+    }
+    prune(reports);
+    return report;
+  }
+
+  /** Deletes the oldest reports beyond {@link #MAX_REPORTS}. */
+  private static void prune(Path reports) throws IOException {
+    List<Path> directories = new ArrayList<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(reports)) {
+      for (Path entry : entries) {
+        if (Files.isDirectory(entry)) {
+          directories.add(entry);
+        }
+      }
+    }
+    // Names are timestamps
+    Collections.sort(directories);
+    for (int i = 0; i < directories.size() - MAX_REPORTS; i++) {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directories.get(i))) {
+        for (Path file : files) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(directories.get(i));
+    }
+  }
+
+  @Override
+  public void dispose() {
+    executorService.shutdownNow();
+  }
+}
@@ -0,0 +1,351 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Installs MyLocalTon JARs without access to GitHub: from a local file, a shared directory or a
+ * mirror base URL.
+ *
+ * <p>Local files are copied into the {@link ReleaseStore} with {@link FileChannel#transferTo}, so
+ * the kernel moves the bytes without passing them through the heap. The SHA-256 of the source is
+ * computed at the same time on another thread; it is the checksum of the copy, which is what gets
+ * installed, unless the source changed while it was copied. If a checksum is published next to the
+ * JAR (either {@code <jar>.sha256} or a {@code SHA256SUMS} file), the content must match it. A JAR
+ * whose entries name the other architecture is rejected, since it would be stored and launched
+ * under the name of this one.
+ */
+public class OfflineInstaller {
+  private static final Logger LOG = Logger.getInstance(OfflineInstaller.class);
+
+  private static final List<String> CHECKSUM_LISTS = List.of("SHA256SUMS", "sha256sums.txt");
+  private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-fA-F]{64}");
+  private static final String ARM64 = "arm64";
+  private static final String X86_64 = "x86-64";
+
+  private static final ExecutorService VERIFY_EXECUTOR =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread thread = new Thread(r, "MyLocalTon-Plugin - Checksum Verifier");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final ReleaseStore releaseStore;
+
+  public OfflineInstaller(ReleaseStore releaseStore) {
+    this.releaseStore = releaseStore;
+  }
+
+  /**
+   * Checks whether the mirror setting points to a directory rather than an http(s) server.
+   *
+   * @param mirror mirror setting, base URL or path
+   * @return true for local paths and file: URLs
+   */
+  public static boolean isLocalMirror(String mirror) {
+    if (StringUtils.isBlank(mirror)) {
+      return false;
+    }
+    String lower = mirror.trim().toLowerCase(Locale.ROOT);
+    return !lower.startsWith("http://") && !lower.startsWith("https://");
+  }
+
+  /**
+   * Converts a local mirror setting (plain path or file: URL) to a file system path.
+   *
+   * @param mirror local mirror setting
+   * @return path string
+   */
+  public static String toLocalPath(String mirror) {
+    String trimmed = mirror.trim();
+    if (trimmed.toLowerCase(Locale.ROOT).startsWith("file:")) {
+      return Paths.get(URI.create(trimmed)).toString();
+    }
+    return trimmed;
+  }
+
+  /**
+   * Installs the JAR of the given flavour from a shared directory.
+   *
+   * @param directory directory containing the MyLocalTon JARs
+   * @param testnet whether the testnet JAR is installed
+   * @param jarFilename fixed file name of the JAR for this architecture
+   * @return the stored release
+   * @throws IOException if the JAR is missing or its checksum does not match
+   */
+  public ReleaseStore.Release installFromDirectory(
+      Path directory, boolean testnet, String jarFilename) throws IOException {
+    Path jar = directory.resolve(jarFilename);
+    if (!Files.isRegularFile(jar)) {
+      throw new IOException(jarFilename + " not found in " + directory);
+    }
+    return installFromFile(jar, findChecksum(directory, jarFilename), testnet, jarFilename);
+  }
+
+  /**
+   * Copies a JAR into the release store, verifying it against the expected checksum if given.
+   *
+   * @param source JAR file to install, it is left untouched
+   * @param expectedSha256 expected SHA-256, or null if none is published
+   * @param testnet whether the JAR is built from the testnet branch
+   * @param jarFilename fixed file name the JAR is launched from
+   * @return the stored release
+   * @throws IOException if copying fails or the checksum does not match
+   */
+  public ReleaseStore.Release installFromFile(
+      Path source, String expectedSha256, boolean testnet, String jarFilename) throws IOException {
+    LOG.warn("Installing MyLocalTon from " + source);
+    Path tempPath = releaseStore.createTempFile();
+    FileTime modified = Files.getLastModifiedTime(source);
+    // Hashed while it is copied, rather than reading the copy again afterwards
+    Future<String> sourceSha256 = VERIFY_EXECUTOR.submit(() -> sha256(source));
+    String sha256;
+    try {
+      transfer(source, tempPath);
+      sha256 = await(sourceSha256);
+      // Only the copy is installed, the hash is its hash if the source did not change meanwhile
+      if (Files.size(tempPath) != Files.size(source)
+          || !modified.equals(Files.getLastModifiedTime(source))) {
+        throw new IOException(source + " changed while it was copied");
+      }
+      verify(source.toString(), sha256, expectedSha256);
+      verifyArchitecture(source.getFileName().toString(), tempPath, jarFilename);
+    } catch (IOException e) {
+      sourceSha256.cancel(true);
+      Files.deleteIfExists(tempPath);
+      throw e;
+    }
+    return releaseStore.put(tempPath, sha256, testnet, jarFilename);
+  }
+
+  /**
+   * Fetches the checksum published next to a JAR on a mirror server, in parallel with the download
+   * of the JAR itself.
+   *
+   * @param baseUrl mirror base URL ending with a slash
+   * @param jarFilename JAR file name
+   * @return future with the published SHA-256, or null if the mirror does not publish one
+   */
+  public static CompletableFuture<String> fetchChecksumAsync(String baseUrl, String jarFilename) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          String sha256 = fetchChecksum(baseUrl + jarFilename + ".sha256", null);
+          for (int i = 0; sha256 == null && i < CHECKSUM_LISTS.size(); i++) {
+            sha256 = fetchChecksum(baseUrl + CHECKSUM_LISTS.get(i), jarFilename);
+          }
+          return sha256;
+        },
+        VERIFY_EXECUTOR);
+  }
+
+  /**
+   * Compares a computed checksum with the published one.
+   *
+   * @param name name of the verified file, for the error message
+   * @param actualSha256 computed SHA-256
+   * @param expectedSha256 published SHA-256, or null if none is published
+   * @throws IOException if the checksums differ
+   */
+  public static void verify(String name, String actualSha256, String expectedSha256)
+      throws IOException {
+    if (expectedSha256 == null) {
+      LOG.warn("No checksum published for " + name + ", installing unverified");
+      return;
+    }
+    if (!expectedSha256.equalsIgnoreCase(actualSha256)) {
+      throw new IOException(
+          "Checksum mismatch for "
+              + name
+              + "\nexpected: "
+              + expectedSha256
+              + "\nactual: "
+              + actualSha256);
+    }
+    LOG.warn("Checksum verified for " + name);
+  }
+
+  /**
+   * Looks for a published checksum of a JAR in a directory.
+   *
+   * @param directory directory containing the JAR
+   * @param jarFilename JAR file name
+   * @return the SHA-256, or null if none is published
+   */
+  static String findChecksum(Path directory, String jarFilename) {
+    try {
+      Path sidecar = directory.resolve(jarFilename + ".sha256");
+      if (Files.isRegularFile(sidecar)) {
+        return parseChecksum(Files.readString(sidecar, StandardCharsets.UTF_8), null);
+      }
+      for (String list : CHECKSUM_LISTS) {
+        Path sums = directory.resolve(list);
+        if (Files.isRegularFile(sums)) {
+          return parseChecksum(Files.readString(sums, StandardCharsets.UTF_8), jarFilename);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Cannot read checksum of " + jarFilename + ": " + e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Extracts a checksum from sha256sum-style output.
+   *
+   * @param content content of a checksum file
+   * @param jarFilename file to look for in a list, or null for a single-entry file
+   * @return the SHA-256, or null if not found
+   */
+  static String parseChecksum(String content, String jarFilename) {
+    for (String line : content.split("\\R")) {
+      String[] parts = line.trim().split("\\s+\\*?", 2);
+      if (parts.length == 0 || !SHA256_PATTERN.matcher(parts[0]).matches()) {
+        continue;
+      }
+      if (jarFilename == null || (parts.length == 2 && parts[1].trim().equals(jarFilename))) {
+        return parts[0].toLowerCase(Locale.ROOT);
+      }
+    }
+    return null;
+  }
+
+  private static String fetchChecksum(String url, String jarFilename) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URI(url).toURL().openConnection();
+      connection.setConnectTimeout(10000); // 10 seconds
+      connection.setReadTimeout(10000); // 10 seconds
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        connection.disconnect();
+        return null;
+      }
+      try (InputStream in = connection.getInputStream()) {
+        return parseChecksum(IOUtils.toString(in, StandardCharsets.UTF_8), jarFilename);
+      }
+    } catch (Exception e) {
+      LOG.warn("Cannot fetch checksum " + url + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static void transfer(Path source, Path target) throws IOException {
+    try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+        FileChannel out =
+            FileChannel.open(
+                target,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+      long size = in.size();
+      long position = 0;
+      // transferTo may move fewer bytes than requested, e.g. 2GB per call on Linux
+      while (position < size) {
+        long transferred = in.transferTo(position, size - position, out);
+        if (transferred <= 0) {
+          // Nothing left to read, the source was truncated while it was copied
+          throw new IOException(source + " changed while it was copied");
+        }
+        position += transferred;
+      }
+    }
+  }
+
+  /**
+   * Checks that a JAR is built for the architecture of the file name it is launched from. The
+   * MyLocalTon JARs bundle the node binaries of one architecture, recognized by the entry names; a
+   * JAR without such entries is accepted.
+   *
+   * @param name name of the verified file, for the error message
+   * @param jar JAR to check
+   * @param jarFilename fixed file name the JAR is launched from
+   * @throws IOException if the JAR cannot be read or is built for the other architecture
+   */
+  static void verifyArchitecture(String name, Path jar, String jarFilename) throws IOException {
+    String expected = architecture(jarFilename);
+    boolean arm = false;
+    boolean x86 = false;
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      Enumeration<JarEntry> entries = jarFile.entries();
+      while (entries.hasMoreElements()) {
+        String architecture = architecture(entries.nextElement().getName());
+        arm |= ARM64.equals(architecture);
+        x86 |= X86_64.equals(architecture);
+      }
+    }
+    if (expected == null || arm == x86) {
+      // Both or neither, nothing to go by
+      return;
+    }
+    String actual = arm ? ARM64 : X86_64;
+    if (!expected.equals(actual)) {
+      throw new IOException(
+          name + " is built for " + actual + ", this IDE runs MyLocalTon for " + expected);
+    }
+  }
+
+  private static String architecture(String name) {
+    String lower = name.toLowerCase(Locale.ROOT);
+    if (lower.contains("arm64") || lower.contains("aarch64")) {
+      return ARM64;
+    }
+    if (lower.contains("x86-64") || lower.contains("x86_64") || lower.contains("amd64")) {
+      return X86_64;
+    }
+    return null;
+  }
+
+  private static String await(Future<String> sha256) throws IOException {
+    try {
+      return sha256.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while the checksum is computed", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      }
+      throw new IOException("Cannot compute the checksum: " + e.getCause(), e.getCause());
+    }
+  }
+
+  private static String sha256(Path file) throws IOException {
+    MessageDigest digest = ReleaseStore.newSha256();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // Read into a direct buffer rather than mapping the file: a mapping outlives the channel and
+      // would keep the copy locked on Windows when the release store moves it into place
+      ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+}
@@ -0,0 +1,475 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Content-addressed store of downloaded MyLocalTon releases.
+ *
+ * <p>Every JAR is kept once under {@code ~/.mylocalton/store/blobs/<sha256>.jar}, described by an
+ * entry in {@code ~/.mylocalton/store/releases.json}. The release that MyLocalTon actually runs is
+ * exposed under its usual fixed name (e.g. {@code MyLocalTon-x86-64.jar}) as a hard link to the
+ * blob, so switching between stored releases and flavours does not copy or re-download anything.
+ */
+public class ReleaseStore {
+  private static final Logger LOG = Logger.getInstance(ReleaseStore.class);
+
+  private static final String STORE_DIR = "store";
+  private static final String BLOBS_DIR = "blobs";
+  private static final String METADATA_FILE = "releases.json";
+
+  /** Fixed JAR names MyLocalTon can be launched from, see {@code getJarFilename}. */
+  static final String[] JAR_FILENAMES = NodeLauncher.JAR_FILENAMES;
+
+  private static ReleaseStore defaultStore;
+
+  private final Path rootDir;
+  private final Path storeDir;
+  private final Path blobsDir;
+  private final Path metadataFile;
+
+  private final Map<String, Release> releases = new LinkedHashMap<>();
+  private String activeSha256;
+  private boolean loaded;
+
+  public ReleaseStore(Path rootDir) {
+    this.rootDir = rootDir;
+    this.storeDir = rootDir.resolve(STORE_DIR);
+    this.blobsDir = storeDir.resolve(BLOBS_DIR);
+    this.metadataFile = storeDir.resolve(METADATA_FILE);
+  }
+
+  /**
+   * Returns the store located in {@code ~/.mylocalton}.
+   *
+   * @return the shared release store
+   */
+  public static synchronized ReleaseStore getDefault() {
+    if (defaultStore == null) {
+      defaultStore = new ReleaseStore(Paths.get(System.getProperty("user.home"), ".mylocalton"));
+    }
+    return defaultStore;
+  }
+
+  /**
+   * Returns the directory holding the blobs and the metadata.
+   *
+   * @return store directory
+   */
+  public Path getStoreDir() {
+    return storeDir;
+  }
+
+  /** A single stored MyLocalTon JAR. */
+  public static class Release {
+    private final String sha256;
+    private final boolean testnet;
+    private final String fileName;
+    private final long size;
+    private final long storedAt;
+    private String version;
+
+    Release(
+        String sha256, boolean testnet, String fileName, long size, long storedAt, String version) {
+      this.sha256 = sha256;
+      this.testnet = testnet;
+      this.fileName = fileName;
+      this.size = size;
+      this.storedAt = storedAt;
+      this.version = version;
+    }
+
+    public String getSha256() {
+      return sha256;
+    }
+
+    public boolean isTestnet() {
+      return testnet;
+    }
+
+    /** Fixed file name under which this release is launched, e.g. MyLocalTon-arm64.jar. */
+    public String getFileName() {
+      return fileName;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getStoredAt() {
+      return storedAt;
+    }
+
+    public String getVersion() {
+      return version;
+    }
+
+    @Override
+    public String toString() {
+      String name = (version == null || version.isEmpty()) ? sha256.substring(0, 12) : version;
+      return name + (testnet ? " (testnet)" : "");
+    }
+  }
+
+  /**
+   * Creates a temporary file inside the store, on the same file system as the blobs so that it can
+   * later be moved into place atomically.
+   *
+   * @return path of the new temporary file
+   * @throws IOException if the store directory cannot be created
+   */
+  public Path createTempFile() throws IOException {
+    Files.createDirectories(blobsDir);
+    return storeDir.resolve("download-" + UUID.randomUUID() + ".part");
+  }
+
+  /**
+   * Adds a file to the store. If a blob with the same content is already stored, the file is
+   * discarded and the existing release is returned.
+   *
+   * @param file file to add, it is moved into the store
+   * @param sha256 SHA-256 of the file content, or null to compute it
+   * @param testnet whether the JAR is built from the testnet branch
+   * @param fileName fixed file name the JAR is launched from
+   * @return the stored release
+   * @throws IOException if the file cannot be moved or the metadata cannot be written
+   */
+  public synchronized Release put(Path file, String sha256, boolean testnet, String fileName)
+      throws IOException {
+    load();
+    if (sha256 == null) {
+      sha256 = sha256(file);
+    }
+
+    Release existing = releases.get(sha256);
+    Path blob = blobPath(sha256);
+    if (existing != null && Files.exists(blob)) {
+      LOG.warn("Release " + sha256 + " is already stored, skipping duplicate");
+      if (!isFixedJar(file)) {
+        Files.deleteIfExists(file);
+      }
+      return existing;
+    }
+
+    Files.createDirectories(blobsDir);
+    if (isFixedJar(file)) {
+      // legacy JAR that is launched from its fixed name, keep it and link the blob to it
+      linkOrCopy(file, blob);
+    } else {
+      moveAtomically(file, blob);
+    }
+    Release release =
+        new Release(sha256, testnet, fileName, Files.size(blob), System.currentTimeMillis(), null);
+    releases.put(sha256, release);
+    save();
+    LOG.warn("Stored release " + release + " as " + blob);
+    return release;
+  }
+
+  /**
+   * Makes the given release the one that is launched: its blob is linked under its fixed file name
+   * and all other fixed JARs are removed, so only one flavour is present at a time.
+   *
+   * @param release release to activate
+   * @return path of the launchable JAR
+   * @throws IOException if the link cannot be created
+   */
+  public synchronized Path activate(Release release) throws IOException {
+    load();
+    Path blob = blobPath(release.getSha256());
+    if (!Files.exists(blob)) {
+      throw new IOException("Stored release is missing: " + blob);
+    }
+    for (String jarFilename : JAR_FILENAMES) {
+      Files.deleteIfExists(rootDir.resolve(jarFilename));
+    }
+    Path target = rootDir.resolve(release.getFileName());
+    linkOrCopy(blob, target);
+    activeSha256 = release.getSha256();
+    save();
+    LOG.warn("Activated release " + release + " at " + target);
+    return target;
+  }
+
+  /**
+   * Imports JARs that were downloaded before the store existed, so they become switchable too. Does
+   * nothing for JARs that are already stored.
+   */
+  public synchronized void importLegacyJars() {
+    try {
+      load();
+      for (String jarFilename : JAR_FILENAMES) {
+        Path jar = rootDir.resolve(jarFilename);
+        if (Files.isRegularFile(jar) && !isStored(jar)) {
+          Release release = put(jar, null, jarFilename.contains("testnet"), jarFilename);
+          if (activeSha256 == null) {
+            activeSha256 = release.getSha256();
+            save();
+          }
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Cannot import existing MyLocalTon JARs into the store: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Records the version reported by the JAR, so it does not have to be launched again to find out.
+   *
+   * @param release stored release
+   * @param version version string reported by {@code java -jar ... version}
+   */
+  public synchronized void setVersion(Release release, String version) {
+    release.version = version;
+    try {
+      save();
+    } catch (IOException e) {
+      LOG.warn("Cannot save release metadata: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Removes a release from the store. The active release cannot be removed.
+   *
+   * @param release release to remove
+   * @throws IOException if the blob cannot be deleted
+   */
+  public synchronized void remove(Release release) throws IOException {
+    load();
+    if (release.getSha256().equals(activeSha256)) {
+      throw new IOException("Active release cannot be removed");
+    }
+    Files.deleteIfExists(blobPath(release.getSha256()));
+    releases.remove(release.getSha256());
+    save();
+  }
+
+  /**
+   * Lists stored releases of the given flavour, newest first.
+   *
+   * @param testnet whether to list testnet or mainnet releases
+   * @return stored releases
+   */
+  public synchronized List<Release> list(boolean testnet) {
+    load();
+    List<Release> result = new ArrayList<>();
+    for (Release release : releases.values()) {
+      if (release.isTestnet() == testnet && release.getFileName().equals(jarFilename(testnet))) {
+        result.add(release);
+      }
+    }
+    result.sort(Comparator.comparingLong(Release::getStoredAt).reversed());
+    return result;
+  }
+
+  /**
+   * Returns the most recently stored release of the given flavour.
+   *
+   * @param testnet whether to look for a testnet or a mainnet release
+   * @return the latest release, or null if none is stored
+   */
+  public synchronized Release latest(boolean testnet) {
+    List<Release> stored = list(testnet);
+    return stored.isEmpty() ? null : stored.get(0);
+  }
+
+  /**
+   * Returns the release that is currently linked under its fixed name.
+   *
+   * @return the active release, or null if none
+   */
+  public synchronized Release getActive() {
+    load();
+    if (activeSha256 == null) {
+      return null;
+    }
+    Release release = releases.get(activeSha256);
+    if (release == null || !Files.exists(rootDir.resolve(release.getFileName()))) {
+      return null;
+    }
+    return release;
+  }
+
+  /**
+   * Gets the JAR to launch: the active release, or any JAR downloaded before the store existed.
+   *
+   * @return path of the JAR, or null if MyLocalTon is not installed
+   */
+  public Path getLaunchableJar() {
+    Release active = getActive();
+    return active != null ? rootDir.resolve(active.getFileName()) : NodeLauncher.findJar();
+  }
+
+  /** Forgets the cached metadata, e.g. after the store directory has been deleted. */
+  public synchronized void reload() {
+    releases.clear();
+    activeSha256 = null;
+    loaded = false;
+  }
+
+  private boolean isStored(Path jar) throws IOException {
+    for (Release release : releases.values()) {
+      if (release.getFileName().equals(jar.getFileName().toString())
+          && Files.isSameFile(jar, blobPath(release.getSha256()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isFixedJar(Path file) {
+    for (String jarFilename : JAR_FILENAMES) {
+      if (file.equals(rootDir.resolve(jarFilename))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Path blobPath(String sha256) {
+    return blobsDir.resolve(sha256 + ".jar");
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (!Files.exists(metadataFile)) {
+      return;
+    }
+    try (Reader reader = Files.newBufferedReader(metadataFile, StandardCharsets.UTF_8)) {
+      JSONObject json = (JSONObject) new JSONParser().parse(reader);
+      activeSha256 = (String) json.get("active");
+      JSONArray entries = (JSONArray) json.get("releases");
+      if (entries != null) {
+        for (Object entry : entries) {
+          JSONObject item = (JSONObject) entry;
+          Release release =
+              new Release(
+                  (String) item.get("sha256"),
+                  Boolean.TRUE.equals(item.get("testnet")),
+                  (String) item.get("fileName"),
+                  ((Number) item.get("size")).longValue(),
+                  ((Number) item.get("storedAt")).longValue(),
+                  (String) item.get("version"));
+          if (Files.exists(blobPath(release.getSha256()))) {
+            releases.put(release.getSha256(), release);
+          }
+        }
+      }
+    } catch (IOException | ParseException | RuntimeException e) {
+      LOG.warn("Cannot read " + metadataFile + ", starting with an empty store", e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void save() throws IOException {
+    JSONArray entries = new JSONArray();
+    for (Release release : releases.values()) {
+      JSONObject item = new JSONObject();
+      item.put("sha256", release.getSha256());
+      item.put("testnet", release.isTestnet());
+      item.put("fileName", release.getFileName());
+      item.put("size", release.getSize());
+      item.put("storedAt", release.getStoredAt());
+      item.put("version", release.getVersion());
+      entries.add(item);
+    }
+    JSONObject json = new JSONObject();
+    json.put("active", activeSha256);
+    json.put("releases", entries);
+
+    Files.createDirectories(storeDir);
+    Path tmp = storeDir.resolve(METADATA_FILE + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      json.writeJSONString(writer);
+    }
+    moveAtomically(tmp, metadataFile);
+  }
+
+  /**
+   * Gets the fixed JAR filename for the current architecture.
+   *
+   * @param testnet whether testnet is selected
+   * @return the JAR filename
+   */
+  static String jarFilename(boolean testnet) {
+    String arch = System.getProperty("os.arch").toLowerCase();
+    boolean isArm = arch.contains("arm") || arch.contains("aarch");
+    if (isArm) {
+      return testnet ? "MyLocalTon-arm64-testnet.jar" : "MyLocalTon-arm64.jar";
+    } else {
+      return testnet ? "MyLocalTon-x86-64-testnet.jar" : "MyLocalTon-x86-64.jar";
+    }
+  }
+
+  /**
+   * Computes the SHA-256 of a file.
+   *
+   * @param file file to hash
+   * @return lowercase hex digest
+   * @throws IOException if the file cannot be read
+   */
+  public static String sha256(Path file) throws IOException {
+    MessageDigest digest = newSha256();
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[65536];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, bytesRead);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void linkOrCopy(Path source, Path target) throws IOException {
+    Files.deleteIfExists(target);
+    try {
+      Files.createLink(target, source);
+    } catch (IOException | UnsupportedOperationException e) {
+      LOG.warn("Cannot hard link " + target + ", copying instead: " + e.getMessage());
+      Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static void moveAtomically(Path source, Path target) throws IOException {
+    try {
+      Files.move(
+          source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
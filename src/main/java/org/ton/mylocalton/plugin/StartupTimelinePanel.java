@@ -0,0 +1,164 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import java.awt.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Tool window tab with the startup phases of the current and previous starts of MyLocalTon, newest
+ * first, and the change of the median startup time against the previous MyLocalTon version.
+ */
+public class StartupTimelinePanel extends JPanel implements Disposable {
+  private static final DateTimeFormatter TIME_FORMAT =
+      DateTimeFormatter.ofPattern("MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+  private final DefaultTableModel model;
+  private final JLabel summaryLabel = new JLabel(" ");
+  private final Runnable tracerListener = this::refresh;
+
+  public StartupTimelinePanel() {
+    super(new BorderLayout(0, 5));
+    List<String> columns = new ArrayList<>();
+    columns.add("Started");
+    columns.add("Version");
+    for (StartupTracer.Phase phase : StartupTracer.Phase.values()) {
+      columns.add(phase.getTitle() + " (s)");
+    }
+    columns.add("First block (s)");
+    columns.add("Outcome");
+    model =
+        new DefaultTableModel(columns.toArray(), 0) {
+          @Override
+          public boolean isCellEditable(int row, int column) {
+            return false;
+          }
+        };
+    JTable table = new JTable(model);
+    table.setFillsViewportHeight(true);
+    add(new JScrollPane(table), BorderLayout.CENTER);
+
+    summaryLabel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+    add(summaryLabel, BorderLayout.SOUTH);
+
+    StartupTracer.getInstance().addListener(tracerListener);
+    refresh();
+  }
+
+  @Override
+  public void dispose() {
+    StartupTracer.getInstance().removeListener(tracerListener);
+  }
+
+  /** Reads the history in the background and shows it. */
+  private void refresh() {
+    new Thread(
+            () -> {
+              StartupTracer tracer = StartupTracer.getInstance();
+              List<StartupTracer.Run> runs = tracer.getHistory();
+              StartupTracer.Run current = tracer.getCurrent();
+              String summary = summary(runs);
+              SwingUtilities.invokeLater(
+                  () -> {
+                    model.setRowCount(0);
+                    if (current != null) {
+                      model.addRow(row(current));
+                    }
+                    for (int i = runs.size() - 1; i >= 0; i--) {
+                      model.addRow(row(runs.get(i)));
+                    }
+                    summaryLabel.setText(summary);
+                  });
+            },
+            "MyLocalTon-Plugin - Startup Timeline")
+        .start();
+  }
+
+  private static Object[] row(StartupTracer.Run run) {
+    List<Object> row = new ArrayList<>();
+    row.add(TIME_FORMAT.format(Instant.ofEpochMilli(run.getStartedAt())));
+    row.add(Objects.toString(run.getVersion(), ""));
+    for (StartupTracer.Phase phase : StartupTracer.Phase.values()) {
+      row.add(seconds(run.getDuration(phase)));
+    }
+    row.add(seconds(run.getFirstBlockMs()));
+    row.add(run.getOutcome() == null ? "starting..." : run.getOutcome());
+    return row.toArray();
+  }
+
+  /** Compares the median time to the first block of the last version with the version before. */
+  private static String summary(List<StartupTracer.Run> runs) {
+    List<StartupTracer.Run> successful = new ArrayList<>();
+    for (StartupTracer.Run run : runs) {
+      if ("ok".equals(run.getOutcome())) {
+        successful.add(run);
+      }
+    }
+    if (successful.isEmpty()) {
+      return "No successful start traced yet";
+    }
+    String version = successful.get(successful.size() - 1).getVersion();
+    String previousVersion = null;
+    for (int i = successful.size() - 1; i >= 0; i--) {
+      if (!Objects.equals(successful.get(i).getVersion(), version)) {
+        previousVersion = successful.get(i).getVersion();
+        break;
+      }
+    }
+    long median = median(successful, version, null);
+    String text = "Median start of " + version + ": " + seconds(median) + " s";
+    if (previousVersion == null) {
+      return text;
+    }
+    text +=
+        ", " + previousVersion + ": " + seconds(median(successful, previousVersion, null)) + " s";
+
+    // Points at the phase that changed the most
+    StartupTracer.Phase slowest = null;
+    long slowestDelta = 0;
+    for (StartupTracer.Phase phase : StartupTracer.Phase.values()) {
+      long now = median(successful, version, phase);
+      long before = median(successful, previousVersion, phase);
+      if (now >= 0 && before >= 0 && Math.abs(now - before) > Math.abs(slowestDelta)) {
+        slowest = phase;
+        slowestDelta = now - before;
+      }
+    }
+    if (slowest != null) {
+      text +=
+          ", " + slowest.getTitle() + String.format(Locale.ROOT, " %+.1f s", slowestDelta / 1000.0);
+    }
+    return text;
+  }
+
+  /** Median of the time to the first block, or of a phase if one is given, of a version. */
+  private static long median(
+      List<StartupTracer.Run> runs, String version, StartupTracer.Phase phase) {
+    List<Long> values = new ArrayList<>();
+    for (StartupTracer.Run run : runs) {
+      if (Objects.equals(run.getVersion(), version)) {
+        long value = phase == null ? run.getFirstBlockMs() : run.getDuration(phase);
+        if (value >= 0) {
+          values.add(value);
+        }
+      }
+    }
+    if (values.isEmpty()) {
+      return -1;
+    }
+    Collections.sort(values);
+    return values.get(values.size() / 2);
+  }
+
+  private static String seconds(long millis) {
+    return millis < 0 ? "-" : String.format(Locale.ROOT, "%.1f", millis / 1000.0);
+  }
+}
@@ -0,0 +1,364 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.ton.mylocalton.launcher.NodeLauncher;
+
+/**
+ * Measures where the time between a start of MyLocalTon and its first block goes. While the node
+ * starts, new lines of {@code myLocalTon.log} are matched against markers of the startup phases;
+ * the first block is reported by the blockchain monitor. Every finished run is appended to {@code
+ * ~/.mylocalton/startup-history.json}, which survives Reset, so phases can be compared between runs
+ * and MyLocalTon versions.
+ *
+ * <p>Phases are only matched forward: once a later phase is seen, markers of earlier phases are
+ * ignored, and phases that do not happen (e.g. genesis of an existing chain) are left out.
+ */
+public class StartupTracer {
+  private static final Logger LOG = Logger.getInstance(StartupTracer.class);
+
+  private static final String HISTORY_FILE = "startup-history.json";
+  private static final int MAX_HISTORY = 100;
+  private static final long POLL_INTERVAL_MS = 250;
+  private static final long TIMEOUT_MS = 15 * 60 * 1000;
+
+  /** Startup phases in the order they happen. */
+  public enum Phase {
+    JVM_START("JVM start", null),
+    BINARIES("Binaries", Pattern.compile("(?i)extract")),
+    GENESIS(
+        "Genesis", Pattern.compile("(?i)(creat|initiali|generat)\\w*.{0,40}(genesis|zero ?state)")),
+    VALIDATORS("Validators", Pattern.compile("(?i)(start|launch|run)\\w*.{0,40}validator"));
+
+    private final String title;
+    private final Pattern marker;
+
+    Phase(String title, Pattern marker) {
+      this.title = title;
+      this.marker = marker;
+    }
+
+    public String getTitle() {
+      return title;
+    }
+  }
+
+  /** A traced start, phase offsets are in milliseconds after the start. */
+  public static class Run {
+    private final long startedAt;
+    private final String version;
+    private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+    private volatile long firstBlockMs = -1;
+    private volatile String outcome;
+
+    Run(long startedAt, String version) {
+      this.startedAt = startedAt;
+      this.version = version;
+    }
+
+    public long getStartedAt() {
+      return startedAt;
+    }
+
+    public String getVersion() {
+      return version;
+    }
+
+    public synchronized Map<Phase, Long> getPhases() {
+      return new EnumMap<>(phases);
+    }
+
+    /**
+     * Returns how long a phase took: until the next phase that happened, or the first block.
+     *
+     * @param phase the phase
+     * @return duration in milliseconds, or -1 if the phase did not happen or has not ended yet
+     */
+    public synchronized long getDuration(Phase phase) {
+      Long start = phases.get(phase);
+      if (start == null) {
+        return -1;
+      }
+      for (Phase next : Phase.values()) {
+        if (next.ordinal() > phase.ordinal() && phases.containsKey(next)) {
+          return phases.get(next) - start;
+        }
+      }
+      return firstBlockMs < 0 ? -1 : firstBlockMs - start;
+    }
+
+    /**
+     * Returns the time until the first block.
+     *
+     * @return milliseconds after the start, or -1 if no block was produced
+     */
+    public long getFirstBlockMs() {
+      return firstBlockMs;
+    }
+
+    /**
+     * Returns how the run ended.
+     *
+     * @return "ok", "stopped" or "timeout", or null while the node is starting
+     */
+    public String getOutcome() {
+      return outcome;
+    }
+
+    synchronized boolean reach(Phase phase, long offsetMs) {
+      for (Phase reached : phases.keySet()) {
+        if (reached.ordinal() >= phase.ordinal()) {
+          return false;
+        }
+      }
+      phases.put(phase, offsetMs);
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized JSONObject toJson() {
+      JSONObject phasesJson = new JSONObject();
+      phases.forEach((phase, offset) -> phasesJson.put(phase.name(), offset));
+      JSONObject json = new JSONObject();
+      json.put("startedAt", startedAt);
+      json.put("version", version);
+      json.put("phases", phasesJson);
+      json.put("firstBlockMs", firstBlockMs);
+      json.put("outcome", outcome);
+      return json;
+    }
+
+    static Run fromJson(JSONObject json) {
+      Run run = new Run(ChainFollower.number(json, "startedAt"), (String) json.get("version"));
+      JSONObject phasesJson = (JSONObject) json.get("phases");
+      if (phasesJson != null) {
+        for (Phase phase : Phase.values()) {
+          if (phasesJson.get(phase.name()) != null) {
+            run.phases.put(phase, ChainFollower.number(phasesJson, phase.name()));
+          }
+        }
+      }
+      run.firstBlockMs = ChainFollower.number(json, "firstBlockMs");
+      run.outcome = (String) json.get("outcome");
+      return run;
+    }
+  }
+
+  private final Path logFile;
+  private final Path historyFile;
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+  private volatile Run current;
+  private Thread tailThread;
+
+  public StartupTracer() {
+    this(
+        NodeLauncher.getDataDirectory().resolve(LogRotator.LOG_FILENAME),
+        NodeLauncher.getWorkingDirectory().resolve(HISTORY_FILE));
+  }
+
+  StartupTracer(Path logFile, Path historyFile) {
+    this.logFile = logFile;
+    this.historyFile = historyFile;
+  }
+
+  public static StartupTracer getInstance() {
+    return ApplicationManager.getApplication().getService(StartupTracer.class);
+  }
+
+  /**
+   * Registers a listener called on any thread whenever the current run or the history changes.
+   *
+   * @param listener the listener
+   */
+  public void addListener(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Runnable listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the run being traced.
+   *
+   * @return the run, or null if the node is not starting
+   */
+  public Run getCurrent() {
+    return current;
+  }
+
+  /**
+   * Starts tracing a start of the node. Only log lines written from now on are matched.
+   *
+   * @param version MyLocalTon version being started, may be null
+   */
+  public synchronized void begin(String version) {
+    finish("stopped");
+    Run run = new Run(System.currentTimeMillis(), version);
+    run.reach(Phase.JVM_START, 0);
+    current = run;
+    long offset = size(logFile);
+    tailThread = new Thread(() -> tail(run, offset), "MyLocalTon-Plugin - Startup Tracer");
+    tailThread.setDaemon(true);
+    tailThread.start();
+    LOG.warn("Tracing startup of MyLocalTon " + version);
+    notifyListeners();
+  }
+
+  /**
+   * Reports a new masterchain block, which ends the traced run.
+   *
+   * @param seqno the seqno of the block
+   */
+  public void onBlock(long seqno) {
+    Run run = current;
+    if (run == null) {
+      return;
+    }
+    run.firstBlockMs = System.currentTimeMillis() - run.startedAt;
+    LOG.warn("First block " + seqno + " " + run.firstBlockMs + " ms after start");
+    finish("ok");
+  }
+
+  /** Ends the traced run because the node was stopped. */
+  public void cancel() {
+    finish("stopped");
+  }
+
+  private synchronized void finish(String outcome) {
+    Run run = current;
+    if (run == null) {
+      return;
+    }
+    current = null;
+    run.outcome = outcome;
+    if (tailThread != null) {
+      tailThread.interrupt();
+      tailThread = null;
+    }
+    try {
+      appendHistory(run);
+    } catch (IOException e) {
+      LOG.warn("Cannot save startup history: " + e.getMessage());
+    }
+    notifyListeners();
+  }
+
+  /** Follows the log from the given offset until the run ends. */
+  private void tail(Run run, long offset) {
+    ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try {
+      while (current == run) {
+        if (System.currentTimeMillis() - run.startedAt > TIMEOUT_MS) {
+          finish("timeout");
+          return;
+        }
+        long size = size(logFile);
+        if (size < offset) {
+          // Truncated by the log rotator
+          offset = 0;
+        }
+        if (size > offset) {
+          try (RandomAccessFile raf = new RandomAccessFile(logFile.toFile(), "r")) {
+            raf.seek(offset);
+            int read;
+            while ((read = raf.read(buffer)) > 0) {
+              offset += read;
+              for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                  match(run, partialLine.toString(StandardCharsets.UTF_8));
+                  partialLine.reset();
+                } else {
+                  partialLine.write(buffer[i]);
+                }
+              }
+            }
+          }
+        }
+        Thread.sleep(POLL_INTERVAL_MS);
+      }
+    } catch (InterruptedException e) {
+      // Run ended
+    } catch (IOException e) {
+      LOG.warn("Cannot follow " + logFile + ": " + e.getMessage());
+    }
+  }
+
+  private void match(Run run, String line) {
+    long offsetMs = System.currentTimeMillis() - run.startedAt;
+    for (Phase phase : Phase.values()) {
+      if (phase.marker != null && phase.marker.matcher(line).find() && run.reach(phase, offsetMs)) {
+        LOG.warn("Startup phase " + phase.getTitle() + " reached after " + offsetMs + " ms");
+        notifyListeners();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads the history of traced runs.
+   *
+   * @return runs, oldest first
+   */
+  public synchronized List<Run> getHistory() {
+    List<Run> runs = new ArrayList<>();
+    if (!Files.exists(historyFile)) {
+      return runs;
+    }
+    try (Reader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+      for (Object item : (JSONArray) new JSONParser().parse(reader)) {
+        runs.add(Run.fromJson((JSONObject) item));
+      }
+    } catch (IOException | ParseException | ClassCastException e) {
+      LOG.warn("Cannot read startup history: " + e.getMessage());
+    }
+    return runs;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void appendHistory(Run run) throws IOException {
+    List<Run> runs = getHistory();
+    runs.add(run);
+    JSONArray json = new JSONArray();
+    for (Run item : runs.subList(Math.max(0, runs.size() - MAX_HISTORY), runs.size())) {
+      json.add(item.toJson());
+    }
+    Files.createDirectories(historyFile.getParent());
+    Path tmp = historyFile.resolveSibling(HISTORY_FILE + ".tmp");
+    Files.writeString(tmp, json.toJSONString(), StandardCharsets.UTF_8);
+    Files.move(tmp, historyFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void notifyListeners() {
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  private static long size(Path file) {
+    try {
+      return Files.exists(file) ? Files.size(file) : 0;
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+}
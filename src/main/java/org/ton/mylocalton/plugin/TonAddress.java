@@ -0,0 +1,53 @@
+package org.ton.mylocalton.plugin;
+
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/** Conversions between the address forms used by tonlib, lite-client and the user. */
+public final class TonAddress {
+
+  private TonAddress() {}
+
+  /**
+   * Normalizes an address to the raw form {@code workchain:hex} with a lowercase hash.
+   *
+   * @param address raw ({@code 0:abc...}) or user-friendly (base64/base64url, 48 chars) address
+   * @return the raw address
+   * @throws IllegalArgumentException if the address cannot be parsed
+   */
+  public static String toRaw(String address) {
+    String trimmed = address.trim();
+    int colon = trimmed.indexOf(':');
+    if (colon > 0) {
+      int workchain = Integer.parseInt(trimmed.substring(0, colon));
+      String hash = trimmed.substring(colon + 1).toLowerCase(Locale.ROOT);
+      if (hash.length() != 64) {
+        throw new IllegalArgumentException("Invalid raw address: " + address);
+      }
+      HexFormat.of().parseHex(hash);
+      return workchain + ":" + hash;
+    }
+    if (trimmed.length() != 48) {
+      throw new IllegalArgumentException("Invalid address: " + address);
+    }
+    byte[] bytes = Base64.getUrlDecoder().decode(trimmed.replace('+', '-').replace('/', '_'));
+    // tag(1) + workchain(1) + hash(32) + crc16(2)
+    int workchain = bytes[1];
+    byte[] hash = new byte[32];
+    System.arraycopy(bytes, 2, hash, 0, 32);
+    return workchain + ":" + HexFormat.of().formatHex(hash);
+  }
+
+  /**
+   * Builds a raw address from a workchain and the base64 account id tonlib returns in block
+   * transaction lists.
+   *
+   * @param workchain workchain of the block
+   * @param base64AccountId base64 encoded 32-byte account id
+   * @return the raw address
+   */
+  public static String fromBase64Id(long workchain, String base64AccountId) {
+    return workchain + ":" + HexFormat.of().formatHex(Base64.getDecoder().decode(base64AccountId));
+  }
+}
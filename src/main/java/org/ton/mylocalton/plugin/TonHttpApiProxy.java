@@ -0,0 +1,490 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Caching reverse proxy on localhost in front of the ton-http-api started by MyLocalTon.
+ *
+ * <p>Requests are classified by their API method and parameters:
+ *
+ * <ul>
+ *   <li>immutable - results that never change for the same parameters, e.g. blocks looked up by
+ *       seqno or transactions given by lt and hash. Kept in a size-bounded LRU cache.
+ *   <li>block-scoped - results that only change with a new block, e.g. {@code getMasterchainInfo},
+ *       account states or get-methods. Kept until the {@link ChainFollower} reports the next
+ *       masterchain block, and for a few seconds at most, since the follower only runs while the
+ *       tool window monitors the node.
+ *   <li>everything else, e.g. {@code sendBoc}, is passed through.
+ * </ul>
+ *
+ * <p>Responses are cached per transport, REST or JSON-RPC, and per {@code X-API-Key}, so a request
+ * with a wrong key is never answered from a response to a valid one. Identical requests that arrive
+ * while the first one is still in flight share its upstream response. Only successful
+ * ({@code "ok": true}) responses are cached. Counters are served as JSON on {@code /proxy/stats}.
+ */
+public class TonHttpApiProxy {
+  private static final Logger LOG = Logger.getInstance(TonHttpApiProxy.class);
+
+  private static final int MAX_IMMUTABLE_ENTRIES = 4096;
+  private static final Duration UPSTREAM_TIMEOUT = Duration.ofSeconds(30);
+  // About one block of the local chain
+  private static final long BLOCK_SCOPED_TTL_NANOS = TimeUnit.SECONDS.toNanos(3);
+  private static final String STATS_PATH = "/proxy/stats";
+
+  private static final Set<String> IMMUTABLE_METHODS =
+      Set.of(
+          "getBlockHeader",
+          "lookupBlock",
+          "getBlockTransactions",
+          "getBlockTransactionsExt",
+          "getMasterchainBlockSignatures",
+          "getShardBlockProof",
+          "getShards",
+          "tryLocateTx",
+          "tryLocateResultTx",
+          "tryLocateSourceTx",
+          "detectAddress",
+          "packAddress",
+          "unpackAddress");
+  private static final Set<String> BLOCK_SCOPED_METHODS =
+      Set.of(
+          "getMasterchainInfo",
+          "getConsensusBlock",
+          "getAddressInformation",
+          "getExtendedAddressInformation",
+          "getWalletInformation",
+          "getAddressBalance",
+          "getAddressState",
+          "getTokenData",
+          "runGetMethod",
+          "getConfigParam",
+          "getConfigAll",
+          "getTransactions");
+
+  enum Policy {
+    IMMUTABLE,
+    BLOCK_SCOPED,
+    PASS_THROUGH
+  }
+
+  /** Upstream response as sent to the client. */
+  private static class Response {
+    final int status;
+    final String contentType;
+    final byte[] body;
+
+    Response(int status, String contentType, byte[] body) {
+      this.status = status;
+      this.contentType = contentType;
+      this.body = body;
+    }
+  }
+
+  /** Block-scoped response with the time it was loaded. */
+  private static class Loaded {
+    final Response response;
+    final long loadedAt = System.nanoTime();
+
+    Loaded(Response response) {
+      this.response = response;
+    }
+  }
+
+  private final ChainFollower chainFollower;
+  private final Consumer<ChainFollower.BlockEvent> listener = event -> onNewBlock();
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(UPSTREAM_TIMEOUT).build();
+  private final Map<String, Response> immutable =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+          return size() > MAX_IMMUTABLE_ENTRIES;
+        }
+      };
+  private final Map<String, Loaded> blockScoped = new HashMap<>();
+  private final Map<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong collapsed = new AtomicLong();
+  private final AtomicLong passedThrough = new AtomicLong();
+  // Incremented on every new block, block-scoped results loaded across a block are not cached
+  private long generation;
+  private HttpServer server;
+  private ExecutorService executor;
+  private String upstream;
+
+  public TonHttpApiProxy(ChainFollower chainFollower) {
+    this.chainFollower = chainFollower;
+  }
+
+  /**
+   * Starts the proxy on the loopback interface.
+   *
+   * @param port port to listen on
+   * @param upstreamUrl base URL of ton-http-api, e.g. {@code http://127.0.0.1:8081}
+   * @throws IOException if the port cannot be bound
+   */
+  public synchronized void start(int port, String upstreamUrl) throws IOException {
+    stop();
+    upstream =
+        upstreamUrl.endsWith("/")
+            ? upstreamUrl.substring(0, upstreamUrl.length() - 1)
+            : upstreamUrl;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    AtomicInteger threadNumber = new AtomicInteger();
+    executor =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              Thread thread =
+                  new Thread(
+                      runnable, "MyLocalTon-Plugin - API Proxy " + threadNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    chainFollower.addListener(listener);
+    LOG.warn("ton-http-api proxy listening on http://127.0.0.1:" + port + " for " + upstream);
+  }
+
+  public synchronized void stop() {
+    if (server == null) {
+      return;
+    }
+    chainFollower.removeListener(listener);
+    server.stop(0);
+    executor.shutdownNow();
+    server = null;
+    executor = null;
+    clear();
+  }
+
+  /** Drops all cached responses, e.g. after the chain was reset. */
+  public synchronized void clear() {
+    generation++;
+    immutable.clear();
+    blockScoped.clear();
+  }
+
+  private synchronized void onNewBlock() {
+    generation++;
+    blockScoped.clear();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the share of cacheable requests answered without a new upstream call.
+   *
+   * @return hit rate between 0 and 1
+   */
+  public double getHitRate() {
+    long saved = hits.get() + collapsed.get();
+    long total = saved + misses.get();
+    return total == 0 ? 0 : (double) saved / total;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getRawPath();
+      if (STATS_PATH.equals(path)) {
+        send(exchange, new Response(200, "application/json", statsJson()), null);
+        return;
+      }
+      String query = exchange.getRequestURI().getRawQuery();
+      byte[] requestBody;
+      try (InputStream in = exchange.getRequestBody()) {
+        requestBody = in.readAllBytes();
+      }
+
+      // JSON-RPC calls carry method and parameters in the body, the id is per client
+      JSONObject rpc = null;
+      String method = path.substring(path.lastIndexOf('/') + 1);
+      Map<String, Object> params = new TreeMap<>(queryParameters(query));
+      if (requestBody.length > 0) {
+        JSONObject json = parseObject(requestBody);
+        if ("jsonRPC".equals(method) && json != null) {
+          rpc = json;
+          method = String.valueOf(json.get("method"));
+          if (json.get("params") instanceof Map) {
+            params.putAll(toStringKeys((Map<?, ?>) json.get("params")));
+          }
+        } else if (json != null) {
+          params.putAll(toStringKeys(json));
+        } else {
+          params.put("", new String(requestBody, StandardCharsets.UTF_8));
+        }
+      }
+
+      Policy policy = policy(method, params);
+      if (policy == Policy.PASS_THROUGH) {
+        passedThrough.incrementAndGet();
+        send(exchange, forward(exchange, path, query, requestBody), null);
+        return;
+      }
+
+      String key =
+          (rpc == null ? "rest " : "rpc ")
+              + exchange.getRequestHeaders().getFirst("X-API-Key")
+              + " "
+              + method
+              + "?"
+              + JSONObject.toJSONString(params);
+      Response cached = lookup(policy, key);
+      if (cached != null) {
+        hits.incrementAndGet();
+        send(exchange, cached, rpc);
+        return;
+      }
+
+      long requestGeneration = currentGeneration();
+      CompletableFuture<Response> future = new CompletableFuture<>();
+      CompletableFuture<Response> existing = inFlight.putIfAbsent(key, future);
+      if (existing != null) {
+        collapsed.incrementAndGet();
+        send(exchange, existing.get(), rpc);
+        return;
+      }
+      misses.incrementAndGet();
+      try {
+        Response response = forward(exchange, path, query, requestBody);
+        if (isSuccessful(response)) {
+          store(policy, key, stripId(response, rpc != null), requestGeneration);
+        }
+        future.complete(stripId(response, rpc != null));
+        send(exchange, response, null);
+      } catch (IOException | RuntimeException e) {
+        future.completeExceptionally(e);
+        throw e;
+      } finally {
+        inFlight.remove(key, future);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      sendError(exchange, "Interrupted");
+    } catch (IOException | ExecutionException | RuntimeException e) {
+      LOG.debug("ton-http-api proxy request failed: " + TonlibClient.rootMessage(e));
+      sendError(exchange, TonlibClient.rootMessage(e));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** Decides how a request may be cached. */
+  static Policy policy(String method, Map<String, Object> params) {
+    if (IMMUTABLE_METHODS.contains(method)) {
+      return Policy.IMMUTABLE;
+    }
+    // Pinned to a block or to a transaction, the result cannot change
+    if ("getConfigParam".equals(method) && params.containsKey("seqno")) {
+      return Policy.IMMUTABLE;
+    }
+    if ("getTransactions".equals(method)
+        && params.containsKey("lt")
+        && params.containsKey("hash")) {
+      return Policy.IMMUTABLE;
+    }
+    if (BLOCK_SCOPED_METHODS.contains(method)) {
+      return Policy.BLOCK_SCOPED;
+    }
+    return Policy.PASS_THROUGH;
+  }
+
+  private synchronized Response lookup(Policy policy, String key) {
+    if (policy == Policy.IMMUTABLE) {
+      return immutable.get(key);
+    }
+    Loaded loaded = blockScoped.get(key);
+    if (loaded == null) {
+      return null;
+    }
+    // A new block may have been missed while nothing follows the chain
+    if (System.nanoTime() - loaded.loadedAt > BLOCK_SCOPED_TTL_NANOS) {
+      blockScoped.remove(key);
+      return null;
+    }
+    return loaded.response;
+  }
+
+  private synchronized long currentGeneration() {
+    return generation;
+  }
+
+  private synchronized void store(Policy policy, String key, Response response, long loadedAt) {
+    if (policy == Policy.IMMUTABLE) {
+      immutable.put(key, response);
+    } else if (loadedAt == generation) {
+      blockScoped.put(key, new Loaded(response));
+    }
+  }
+
+  private Response forward(HttpExchange exchange, String path, String query, byte[] body)
+      throws IOException, InterruptedException {
+    URI uri = URI.create(upstream + path + (query == null ? "" : "?" + query));
+    HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(UPSTREAM_TIMEOUT);
+    for (String header : new String[] {"Content-Type", "Accept", "X-API-Key"}) {
+      String value = exchange.getRequestHeaders().getFirst(header);
+      if (value != null) {
+        request.header(header, value);
+      }
+    }
+    request.method(
+        exchange.getRequestMethod(),
+        body.length == 0
+            ? HttpRequest.BodyPublishers.noBody()
+            : HttpRequest.BodyPublishers.ofByteArray(body));
+    HttpResponse<byte[]> response =
+        httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    return new Response(
+        response.statusCode(),
+        response.headers().firstValue("Content-Type").orElse("application/json"),
+        response.body());
+  }
+
+  private static boolean isSuccessful(Response response) {
+    if (response.status != 200) {
+      return false;
+    }
+    JSONObject json = parseObject(response.body);
+    return json != null && Boolean.TRUE.equals(json.get("ok"));
+  }
+
+  /** Removes the JSON-RPC id, so the response can be shared by all clients. */
+  @SuppressWarnings("unchecked")
+  private static Response stripId(Response response, boolean rpc) {
+    if (!rpc) {
+      return response;
+    }
+    JSONObject json = parseObject(response.body);
+    if (json == null) {
+      return response;
+    }
+    json.remove("id");
+    return new Response(
+        response.status,
+        response.contentType,
+        json.toJSONString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Sends a response, with the JSON-RPC id of the given request if there is one. */
+  @SuppressWarnings("unchecked")
+  private static void send(HttpExchange exchange, Response response, JSONObject rpc)
+      throws IOException {
+    byte[] body = response.body;
+    if (rpc != null) {
+      JSONObject json = parseObject(body);
+      if (json != null) {
+        json.put("id", rpc.get("id"));
+        body = json.toJSONString().getBytes(StandardCharsets.UTF_8);
+      }
+    }
+    exchange.getResponseHeaders().set("Content-Type", response.contentType);
+    exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void sendError(HttpExchange exchange, String message) {
+    JSONObject error = new JSONObject();
+    error.put("ok", false);
+    error.put("error", "MyLocalTon proxy: " + message);
+    error.put("code", 502);
+    try {
+      send(
+          exchange,
+          new Response(
+              502, "application/json", error.toJSONString().getBytes(StandardCharsets.UTF_8)),
+          null);
+    } catch (IOException e) {
+      // The client is gone
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private byte[] statsJson() {
+    JSONObject stats = new JSONObject();
+    stats.put("hits", hits.get());
+    stats.put("misses", misses.get());
+    stats.put("collapsed", collapsed.get());
+    stats.put("passedThrough", passedThrough.get());
+    stats.put("hitRate", getHitRate());
+    synchronized (this) {
+      stats.put("immutableEntries", immutable.size());
+      stats.put("blockScopedEntries", blockScoped.size());
+    }
+    return stats.toJSONString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Map<String, String> queryParameters(String query) {
+    Map<String, String> parameters = new TreeMap<>();
+    if (query == null || query.isEmpty()) {
+      return parameters;
+    }
+    for (String parameter : query.split("&")) {
+      int equals = parameter.indexOf('=');
+      String name = equals < 0 ? parameter : parameter.substring(0, equals);
+      String value = equals < 0 ? "" : parameter.substring(equals + 1);
+      parameters.put(
+          URLDecoder.decode(name, StandardCharsets.UTF_8),
+          URLDecoder.decode(value, StandardCharsets.UTF_8));
+    }
+    return parameters;
+  }
+
+  private static Map<String, Object> toStringKeys(Map<?, ?> map) {
+    Map<String, Object> result = new TreeMap<>();
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      result.put(String.valueOf(entry.getKey()), entry.getValue());
+    }
+    return result;
+  }
+
+  private static JSONObject parseObject(byte[] bytes) {
+    try {
+      Object json = new JSONParser().parse(new String(bytes, StandardCharsets.UTF_8));
+      return json instanceof JSONObject ? (JSONObject) json : null;
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package org.ton.mylocalton.plugin;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.ton.mylocalton.launcher.WalletPoolCreator;
+
+/**
+ * The local chain as seen by the shared tonlib client, for creating the wallet pool. The client is
+ * looked up for every call because it is replaced whenever the node is restarted.
+ */
+class TonlibChain implements WalletPoolCreator.Chain {
+  private static final long QUERY_TIMEOUT_SECONDS = 10;
+
+  private final TonlibService tonlibService;
+
+  TonlibChain(TonlibService tonlibService) {
+    this.tonlibService = tonlibService;
+  }
+
+  @Override
+  public long getSeqno(String address) throws Exception {
+    JSONObject result =
+        tonlibService
+            .getClient()
+            .runGetMethod(address, "seqno")
+            .get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    if (ChainFollower.number(result, "exit_code") != 0) {
+      throw new IOException("seqno get-method failed with exit code " + result.get("exit_code"));
+    }
+    JSONObject entry = (JSONObject) ((JSONArray) result.get("stack")).get(0);
+    return ChainFollower.number((JSONObject) entry.get("number"), "number");
+  }
+
+  @Override
+  public BigInteger getBalance(String address) throws Exception {
+    JSONObject state =
+        tonlibService
+            .getClient()
+            .getAccountState(address)
+            .get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    Object balance = state.get("balance");
+    // tonlib reports -1 for an account that does not exist
+    return balance == null
+        ? BigInteger.ZERO
+        : new BigInteger(String.valueOf(balance)).max(BigInteger.ZERO);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void sendMessage(byte[] boc) throws Exception {
+    JSONObject request = TonlibClient.request("raw.sendMessage");
+    request.put("body", Base64.getEncoder().encodeToString(boc));
+    tonlibService.getClient().send(request).get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,523 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.jna.Library;
+import com.sun.jna.Pointer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Long-lived in-process tonlibjson client.
+ *
+ * <p>Requests are sent with {@code tonlib_client_json_send} and tagged with a unique {@code @extra}
+ * id. A single receiver thread polls {@code tonlib_client_json_receive} and completes the future of
+ * the matching request, so any number of queries can be in flight over the same connection instead
+ * of starting a lite-client process and parsing its text output for each of them.
+ *
+ * <p>A network started with several validators has a lite-server per node. The client then keeps a
+ * tonlib connection to each of them, tracks their latency and sends every query to the fastest one
+ * that did not fail recently. If the answer takes longer than the p95 latency of that lite-server,
+ * the query is sent to the next one as well and the first answer wins; a failed query is retried on
+ * the next lite-server right away. Messages are sent to a single lite-server only.
+ */
+public class TonlibClient implements AutoCloseable {
+  private static final Logger LOG = Logger.getInstance(TonlibClient.class);
+
+  private static final double RECEIVE_TIMEOUT_SECONDS = 1.0;
+  private static final long REQUEST_TIMEOUT_SECONDS = 30;
+  private static final int LATENCY_SAMPLES = 100;
+  // Hedge delay while a lite-server has answered too few queries for a p95
+  private static final long DEFAULT_HEDGE_DELAY_MS = 1000;
+  private static final long MIN_HEDGE_DELAY_MS = 20;
+  private static final long UNHEALTHY_MS = 10000;
+  // Requests that must not reach the network twice
+  private static final Set<String> NOT_HEDGED =
+      Set.of("raw.sendMessage", "raw.createAndSendMessage", "query.send");
+
+  /** Native functions exported by tonlibjson. */
+  interface TonlibJson extends Library {
+    Pointer tonlib_client_json_create();
+
+    void tonlib_client_json_send(Pointer client, String request);
+
+    String tonlib_client_json_receive(Pointer client, double timeout);
+
+    void tonlib_client_json_destroy(Pointer client);
+
+    void tonlib_client_set_verbosity_level(int level);
+  }
+
+  /** Error returned by tonlib for a request. */
+  public static class TonlibException extends IOException {
+    private final long code;
+
+    public TonlibException(long code, String message) {
+      super("tonlib error " + code + ": " + message);
+      this.code = code;
+    }
+
+    public long getCode() {
+      return code;
+    }
+  }
+
+  private final TonlibJson tonlibJson;
+  private final List<Connection> connections = new ArrayList<>();
+  private final AtomicLong requestId = new AtomicLong();
+  private final ScheduledExecutorService hedgeExecutor;
+  private volatile boolean closed;
+  private volatile Consumer<JSONObject> updateListener;
+
+  /**
+   * Loads tonlibjson and initializes a connection to every lite-server of the given network config.
+   * The library is loaded from a copy, see {@link NativeLibraries}.
+   *
+   * @param tonlibPath path to the tonlibjson shared library
+   * @param globalConfig global config of the network
+   * @param keystoreDir directory for the tonlib key store
+   * @throws IOException if tonlib fails to initialize
+   */
+  public TonlibClient(String tonlibPath, GlobalConfig globalConfig, Path keystoreDir)
+      throws IOException {
+    this(NativeLibraries.load(Paths.get(tonlibPath), TonlibJson.class), globalConfig, keystoreDir);
+  }
+
+  TonlibClient(TonlibJson tonlibJson, GlobalConfig globalConfig, Path keystoreDir)
+      throws IOException {
+    this.tonlibJson = tonlibJson;
+    tonlibJson.tonlib_client_set_verbosity_level(0);
+    hedgeExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Tonlib Hedging");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    Files.createDirectories(keystoreDir);
+    List<CompletableFuture<JSONObject>> inits = new ArrayList<>();
+    for (GlobalConfig.LiteServer liteServer : globalConfig.getLiteServers()) {
+      Connection connection = new Connection(liteServer);
+      connections.add(connection);
+      inits.add(connection.send(initRequest(globalConfig.getText(liteServer), keystoreDir)));
+    }
+    try {
+      CompletableFuture.allOf(inits.toArray(new CompletableFuture<?>[0]))
+          .get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (Exception e) {
+      close();
+      throw new IOException("Cannot initialize tonlib: " + rootMessage(e), e);
+    }
+    LOG.warn(
+        "Tonlib client initialized with "
+            + globalConfig.getPath()
+            + ", lite-servers "
+            + globalConfig.getLiteServers());
+  }
+
+  /**
+   * Sends a request without waiting for the response.
+   *
+   * @param request tonlib API request, the {@code @extra} field is overwritten
+   * @return future completed with the response, or exceptionally with a {@link TonlibException}
+   */
+  public CompletableFuture<JSONObject> send(JSONObject request) {
+    if (NOT_HEDGED.contains(String.valueOf(request.get("@type")))) {
+      return rank().get(0).send(request);
+    }
+    return hedged(connection -> connection.send(copy(request)));
+  }
+
+  /**
+   * Sets the listener for unsolicited updates such as {@code updateSyncState}.
+   *
+   * @param updateListener listener, called on the receiver thread
+   */
+  public void setUpdateListener(Consumer<JSONObject> updateListener) {
+    this.updateListener = updateListener;
+  }
+
+  /**
+   * Gets the last masterchain block known to the lite-server.
+   *
+   * @return future with a {@code blocks.masterchainInfo} object
+   */
+  public CompletableFuture<JSONObject> getMasterchainInfo() {
+    return send(request("blocks.getMasterchainInfo"));
+  }
+
+  /**
+   * Gets the raw state of an account.
+   *
+   * @param address account address in any form
+   * @return future with a {@code raw.fullAccountState} object
+   */
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<JSONObject> getAccountState(String address) {
+    JSONObject request = request("raw.getAccountState");
+    request.put("account_address", accountAddress(address));
+    return send(request);
+  }
+
+  /**
+   * Gets the transactions of an account, going backwards from the given one.
+   *
+   * @param address account address in any form
+   * @param lt logical time of the transaction to start from
+   * @param hash base64 hash of the transaction to start from
+   * @return future with a {@code raw.transactions} object
+   */
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<JSONObject> getTransactions(String address, String lt, String hash) {
+    JSONObject transactionId = request("internal.transactionId");
+    transactionId.put("lt", lt);
+    transactionId.put("hash", hash);
+    JSONObject request = request("raw.getTransactions");
+    request.put("account_address", accountAddress(address));
+    request.put("from_transaction_id", transactionId);
+    return send(request);
+  }
+
+  /**
+   * Runs a get-method of a smart contract.
+   *
+   * @param address contract address in any form
+   * @param method get-method name
+   * @return future with a {@code smc.runResult} object
+   */
+  public CompletableFuture<JSONObject> runGetMethod(String address, String method) {
+    return runGetMethod(address, method, new JSONArray());
+  }
+
+  /**
+   * Runs a get-method of a smart contract with arguments.
+   *
+   * @param address contract address in any form
+   * @param method get-method name
+   * @param stack arguments, {@code tvm.StackEntry} objects with the first argument first
+   * @return future with a {@code smc.runResult} object
+   */
+  public CompletableFuture<JSONObject> runGetMethod(
+      String address, String method, JSONArray stack) {
+    // The id returned by smc.load is only known to the connection that loaded the contract
+    return hedged(connection -> runGetMethod(connection, address, method, stack));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CompletableFuture<JSONObject> runGetMethod(
+      Connection connection, String address, String method, JSONArray stack) {
+    JSONObject load = request("smc.load");
+    load.put("account_address", accountAddress(address));
+    return connection
+        .send(load)
+        .thenCompose(
+            info -> {
+              JSONObject methodId = request("smc.methodIdName");
+              methodId.put("name", method);
+              JSONObject run = request("smc.runGetMethod");
+              run.put("id", info.get("id"));
+              run.put("method", methodId);
+              run.put("stack", stack);
+              return connection.send(run);
+            });
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    hedgeExecutor.shutdownNow();
+    for (Connection connection : connections) {
+      connection.close();
+    }
+  }
+
+  /** Returns the connections, healthy ones first, each group fastest first. */
+  private List<Connection> rank() {
+    long now = System.currentTimeMillis();
+    List<Connection> ranked = new ArrayList<>(connections);
+    ranked.sort(
+        Comparator.comparing((Connection connection) -> connection.unhealthyUntil > now)
+            .thenComparingLong(Connection::medianMillis));
+    return ranked;
+  }
+
+  /** Runs a call on the best connection and hedges it on the next ones, see the class comment. */
+  private CompletableFuture<JSONObject> hedged(
+      Function<Connection, CompletableFuture<JSONObject>> call) {
+    CompletableFuture<JSONObject> result = new CompletableFuture<>();
+    new Hedge(rank(), call, result).launchNext();
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject copy(JSONObject request) {
+    JSONObject copy = new JSONObject();
+    copy.putAll(request);
+    return copy;
+  }
+
+  private static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+
+  /** One query sent to several lite-servers, completes with the first answer. */
+  private final class Hedge {
+    private final List<Connection> candidates;
+    private final Function<Connection, CompletableFuture<JSONObject>> call;
+    private final CompletableFuture<JSONObject> result;
+    private int launched;
+    private int failed;
+    private Throwable firstError;
+
+    Hedge(
+        List<Connection> candidates,
+        Function<Connection, CompletableFuture<JSONObject>> call,
+        CompletableFuture<JSONObject> result) {
+      this.candidates = candidates;
+      this.call = call;
+      this.result = result;
+    }
+
+    synchronized void launchNext() {
+      if (result.isDone() || launched >= candidates.size()) {
+        return;
+      }
+      Connection connection = candidates.get(launched++);
+      call.apply(connection).whenComplete(this::onComplete);
+      if (launched < candidates.size()) {
+        int hedgeAfter = launched;
+        try {
+          hedgeExecutor.schedule(
+              () -> hedge(hedgeAfter), connection.hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+          // Closed, the query fails with the connection
+        }
+      }
+    }
+
+    /** Sends the query to the next lite-server unless that already happened. */
+    private synchronized void hedge(int expectedLaunched) {
+      if (launched == expectedLaunched) {
+        launchNext();
+      }
+    }
+
+    private synchronized void onComplete(JSONObject response, Throwable error) {
+      if (error == null) {
+        result.complete(response);
+        return;
+      }
+      failed++;
+      if (firstError == null) {
+        firstError = unwrap(error);
+      }
+      if (failed == launched) {
+        if (launched < candidates.size()) {
+          launchNext();
+        } else {
+          result.completeExceptionally(firstError);
+        }
+      }
+    }
+  }
+
+  /** Tonlib connection to a single lite-server. */
+  private final class Connection {
+    private final GlobalConfig.LiteServer liteServer;
+    private final Pointer client;
+    private final Map<String, CompletableFuture<JSONObject>> pending = new ConcurrentHashMap<>();
+    private final Thread receiverThread;
+    // Latencies of the last answers in milliseconds, a ring buffer
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int samples;
+    private volatile long unhealthyUntil;
+
+    Connection(GlobalConfig.LiteServer liteServer) {
+      this.liteServer = liteServer;
+      client = tonlibJson.tonlib_client_json_create();
+      receiverThread =
+          new Thread(
+              this::receiveLoop, "MyLocalTon-Plugin - Tonlib Receiver " + liteServer.getIndex());
+      receiverThread.setDaemon(true);
+      receiverThread.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<JSONObject> send(JSONObject request) {
+      CompletableFuture<JSONObject> future = new CompletableFuture<>();
+      if (closed) {
+        future.completeExceptionally(new IOException("Tonlib client is closed"));
+        return future;
+      }
+      String extra = Long.toString(requestId.incrementAndGet());
+      request.put("@extra", extra);
+      pending.put(extra, future);
+      long sentAt = System.nanoTime();
+      future
+          .orTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+          .whenComplete(
+              (response, error) -> {
+                pending.remove(extra);
+                // An error of tonlib is an answer as well, only a silent lite-server is unhealthy
+                if (error == null || unwrap(error) instanceof TonlibException) {
+                  record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sentAt));
+                } else if (!closed) {
+                  unhealthyUntil = System.currentTimeMillis() + UNHEALTHY_MS;
+                  LOG.warn("Lite-server " + liteServer + " failed: " + rootMessage(error));
+                }
+              });
+      tonlibJson.tonlib_client_json_send(client, request.toJSONString());
+      return future;
+    }
+
+    private synchronized void record(long latencyMs) {
+      latencies[samples++ % LATENCY_SAMPLES] = latencyMs;
+      unhealthyUntil = 0;
+    }
+
+    private synchronized long[] sortedLatencies() {
+      long[] sorted = Arrays.copyOf(latencies, Math.min(samples, LATENCY_SAMPLES));
+      Arrays.sort(sorted);
+      return sorted;
+    }
+
+    /** Median latency, 0 before the first answer so that new lite-servers get tried. */
+    long medianMillis() {
+      long[] sorted = sortedLatencies();
+      return sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+    }
+
+    long hedgeDelayMillis() {
+      long[] sorted = sortedLatencies();
+      if (sorted.length < 20) {
+        return DEFAULT_HEDGE_DELAY_MS;
+      }
+      return Math.max(MIN_HEDGE_DELAY_MS, sorted[(int) (sorted.length * 0.95)]);
+    }
+
+    void close() {
+      // The receiver destroys the client once its last json_receive returned
+      try {
+        receiverThread.join(TimeUnit.SECONDS.toMillis(2));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (receiverThread.isAlive()) {
+        LOG.warn("Tonlib receiver of lite-server " + liteServer + " is still running");
+      }
+      IOException closedException = new IOException("Tonlib client is closed");
+      pending.values().forEach(future -> future.completeExceptionally(closedException));
+      pending.clear();
+    }
+
+    private void receiveLoop() {
+      try {
+        receive();
+      } finally {
+        // Never while json_receive runs, that would be a use after free
+        tonlibJson.tonlib_client_json_destroy(client);
+      }
+    }
+
+    private void receive() {
+      JSONParser parser = new JSONParser();
+      while (!closed) {
+        String response = tonlibJson.tonlib_client_json_receive(client, RECEIVE_TIMEOUT_SECONDS);
+        if (response == null) {
+          continue;
+        }
+        try {
+          JSONObject json = (JSONObject) parser.parse(response);
+          Object extra = json.get("@extra");
+          CompletableFuture<JSONObject> future =
+              extra == null ? null : pending.get(extra.toString());
+          if (future == null) {
+            Consumer<JSONObject> listener = updateListener;
+            if (listener != null) {
+              listener.accept(json);
+            }
+          } else if ("error".equals(json.get("@type"))) {
+            future.completeExceptionally(
+                new TonlibException(
+                    ((Number) json.get("code")).longValue(), (String) json.get("message")));
+          } else {
+            future.complete(json);
+          }
+        } catch (ParseException | RuntimeException e) {
+          LOG.warn("Cannot handle tonlib response: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject initRequest(String globalConfig, Path keystoreDir) {
+    JSONObject config = request("config");
+    config.put("config", globalConfig);
+    config.put("blockchain_name", "");
+    config.put("use_callbacks_for_network", false);
+    config.put("ignore_cache", false);
+
+    JSONObject keystoreType = request("keyStoreTypeDirectory");
+    keystoreType.put("directory", keystoreDir.toString());
+
+    JSONObject options = request("options");
+    options.put("config", config);
+    options.put("keystore_type", keystoreType);
+
+    JSONObject init = request("init");
+    init.put("options", options);
+    return init;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject accountAddress(String address) {
+    JSONObject accountAddress = request("accountAddress");
+    accountAddress.put("account_address", address);
+    return accountAddress;
+  }
+
+  @SuppressWarnings("unchecked")
+  static JSONObject request(String type) {
+    JSONObject request = new JSONObject();
+    request.put("@type", type);
+    return request;
+  }
+
+  static String rootMessage(Throwable e) {
+    Throwable cause = e;
+    while (cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause.getMessage() == null ? cause.toString() : cause.getMessage();
+  }
+}
@@ -0,0 +1,375 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.JSONObject;
+import org.ton.mylocalton.launcher.NodeLauncher;
+import org.ton.mylocalton.launcher.WalletPool;
+import org.ton.mylocalton.launcher.WalletPoolCreator;
+
+/**
+ * Application service owning the single long-lived {@link TonlibClient} shared by the tool window
+ * and all in-IDE queries. The client is created on first use and dropped when the node is stopped,
+ * reset or deleted.
+ *
+ * <p>It also owns the {@link ChainFollower} fed by the blockchain monitor, the {@link
+ * ChainDataCache} it keeps up to date and the {@link TvmEmulator} running get-methods on it.
+ */
+public class TonlibService implements Disposable, NodeLauncher.ReadinessProbe {
+  private static final Logger LOG = Logger.getInstance(TonlibService.class);
+
+  private static final long PROBE_TIMEOUT_SECONDS = 5;
+  private static final String BLOCK_HISTORY_FILE = "block-history.idx";
+  private static final String TRANSACTION_INDEX_FILE = "transaction-index.gz";
+
+  private final ChainFollower chainFollower = new ChainFollower();
+  private final ChainDataCache chainDataCache = new ChainDataCache();
+  private final TvmEmulator tvmEmulator = new TvmEmulator(chainDataCache);
+  private final AccountWatcher accountWatcher = new AccountWatcher(chainDataCache, tvmEmulator);
+  private final BlockEventStream blockEventStream = new BlockEventStream(chainFollower);
+  private final TonHttpApiProxy apiProxy = new TonHttpApiProxy(chainFollower);
+  private final TransactionIndex transactionIndex =
+      new TransactionIndex(NodeLauncher.getWorkingDirectory().resolve(TRANSACTION_INDEX_FILE));
+  private BlockHistoryIndex blockHistory;
+  private TonlibClient client;
+  // Config the client was created with
+  private GlobalConfig clientConfig;
+  // Running creation of the client, shared by concurrent callers of getClient()
+  private CompletableFuture<TonlibClient> clientCreation;
+  private CompletableFuture<Path> walletPoolFuture;
+
+  public TonlibService() {
+    chainFollower.addListener(event -> chainDataCache.invalidate(event.getTouchedAccounts()));
+    // After the invalidation, so touched accounts are loaded from the node
+    chainFollower.addListener(accountWatcher::onBlock);
+    try {
+      blockHistory =
+          new BlockHistoryIndex(NodeLauncher.getWorkingDirectory().resolve(BLOCK_HISTORY_FILE));
+      chainFollower.addListener(blockHistory::onBlock);
+    } catch (IOException e) {
+      LOG.warn("Cannot open block history index: " + e.getMessage());
+    }
+    transactionIndex.resume(chainFollower);
+    chainFollower.addListener(transactionIndex::onBlock);
+    try {
+      restartEventStream();
+    } catch (IOException e) {
+      LOG.warn("Cannot start block event stream: " + e.getMessage());
+    }
+    try {
+      restartApiProxy();
+    } catch (IOException e) {
+      LOG.warn("Cannot start ton-http-api proxy: " + e.getMessage());
+    }
+  }
+
+  public static TonlibService getInstance() {
+    return ApplicationManager.getApplication().getService(TonlibService.class);
+  }
+
+  /**
+   * Returns the shared client, creating it if the local node is present. A client created from an
+   * older global config, e.g. before Reset, is replaced. Creating the client can take a while, it
+   * is done outside of this service's lock and concurrent callers wait for the same client.
+   *
+   * @return the tonlib client
+   * @throws IOException if tonlibjson or the global config is missing or tonlib fails to start
+   */
+  public TonlibClient getClient() throws IOException {
+    GlobalConfig config = GlobalConfigService.getInstance().get();
+    CompletableFuture<TonlibClient> creation;
+    boolean create = false;
+    synchronized (this) {
+      if (client != null && !client.isClosed()) {
+        if (config == clientConfig) {
+          return client;
+        }
+        LOG.warn("Global config changed, restarting tonlib client");
+        invalidate();
+      }
+      if (clientCreation == null) {
+        clientCreation = new CompletableFuture<>();
+        create = true;
+      }
+      creation = clientCreation;
+    }
+    if (create) {
+      createClient(config, creation);
+    }
+    try {
+      return creation.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while tonlib starts", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      }
+      throw new IOException(TonlibClient.rootMessage(e), e.getCause());
+    }
+  }
+
+  private void createClient(GlobalConfig config, CompletableFuture<TonlibClient> creation) {
+    TonlibClient created;
+    try {
+      String userHome = System.getProperty("user.home");
+      String tonlibPath = MyLocalTonToolWindowFactory.getTonlibPath(userHome);
+      if (!Files.exists(Paths.get(tonlibPath))) {
+        throw new IOException(
+            MyLocalTonSettings.getInstance().isAttached()
+                ? "tonlibjson is missing, install and start MyLocalTon once to extract it"
+                : "MyLocalTon is not started yet, tonlibjson is missing");
+      }
+      Path keystoreDir = Paths.get(userHome, ".mylocalton", "tonlib-keystore");
+      created = new TonlibClient(tonlibPath, config, keystoreDir);
+    } catch (IOException e) {
+      finishCreation(creation, null, null);
+      creation.completeExceptionally(e);
+      return;
+    } catch (RuntimeException | UnsatisfiedLinkError e) {
+      finishCreation(creation, null, null);
+      creation.completeExceptionally(
+          new IOException("Cannot load tonlibjson: " + e.getMessage(), e));
+      return;
+    }
+    if (finishCreation(creation, created, config)) {
+      creation.complete(created);
+    } else {
+      // Invalidated meanwhile, the node it connected to may be gone
+      created.close();
+      creation.completeExceptionally(new IOException("Tonlib client was dropped while starting"));
+    }
+  }
+
+  /**
+   * Ends a creation, installing the client unless the creation was dropped by {@link
+   * #invalidate()}.
+   *
+   * @return false if the creation was dropped
+   */
+  private synchronized boolean finishCreation(
+      CompletableFuture<TonlibClient> creation, TonlibClient created, GlobalConfig config) {
+    if (clientCreation != creation) {
+      return false;
+    }
+    clientCreation = null;
+    client = created;
+    clientConfig = config;
+    return true;
+  }
+
+  /**
+   * Returns the shared client if it has already been created.
+   *
+   * @return the tonlib client, or null
+   */
+  public synchronized TonlibClient getClientIfStarted() {
+    return client != null && !client.isClosed() ? client : null;
+  }
+
+  public ChainFollower getChainFollower() {
+    return chainFollower;
+  }
+
+  public ChainDataCache getChainDataCache() {
+    return chainDataCache;
+  }
+
+  /**
+   * Returns the index of the masterchain blocks seen so far, also in previous IDE sessions.
+   *
+   * @return the index, or null if it cannot be opened
+   */
+  public BlockHistoryIndex getBlockHistory() {
+    return blockHistory;
+  }
+
+  public TransactionIndex getTransactionIndex() {
+    return transactionIndex;
+  }
+
+  public TvmEmulator getTvmEmulator() {
+    return tvmEmulator;
+  }
+
+  public AccountWatcher getAccountWatcher() {
+    return accountWatcher;
+  }
+
+  /**
+   * Applies the event stream port from the settings, stopping the stream if it is 0.
+   *
+   * @throws IOException if the port cannot be bound
+   */
+  public void restartEventStream() throws IOException {
+    blockEventStream.stop();
+    int port = MyLocalTonSettings.getInstance().getEventStreamPort();
+    if (port > 0) {
+      blockEventStream.start(port);
+    }
+  }
+
+  public BlockEventStream getBlockEventStream() {
+    return blockEventStream;
+  }
+
+  /**
+   * Applies the ton-http-api proxy port and upstream from the settings, stopping the proxy if the
+   * port is 0. While attached, the proxy forwards to the ton-http-api of the attached host.
+   *
+   * @throws IOException if the port cannot be bound
+   */
+  public void restartApiProxy() throws IOException {
+    apiProxy.stop();
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    if (settings.getApiProxyPort() > 0) {
+      apiProxy.start(settings.getApiProxyPort(), settings.getEffectiveApiProxyUpstream());
+    }
+  }
+
+  public TonHttpApiProxy getApiProxy() {
+    return apiProxy;
+  }
+
+  /**
+   * Closes the shared client, the next {@link #getClient()} creates a new one. Cached chain data is
+   * dropped as the node may come back with a different state.
+   */
+  public synchronized void invalidate() {
+    if (client != null) {
+      LOG.warn("Closing tonlib client");
+      client.close();
+      client = null;
+    }
+    // A client being created is closed once it is ready
+    clientCreation = null;
+    chainFollower.reset();
+    chainDataCache.clear();
+    apiProxy.clear();
+    // A failed pool creation is retried against the next node. A running one is kept, it gets the
+    // next client itself and a second creator would fund from the same main wallet.
+    if (walletPoolFuture != null && walletPoolFuture.isCompletedExceptionally()) {
+      walletPoolFuture = null;
+    }
+  }
+
+  /**
+   * Drops everything indexed about the chain, called when it is replaced, e.g. on Reset and Delete.
+   * A chain restored from a genesis image has the zero state of the chain it replaces, so the
+   * indexes cannot tell the two apart themselves.
+   */
+  public void clearIndexes() {
+    chainFollower.setResumePoint(-1, null);
+    if (blockHistory != null) {
+      blockHistory.clear();
+    }
+    transactionIndex.clear();
+  }
+
+  /**
+   * Returns the files of the indexes, which are used while the IDE runs. The block history stays
+   * mapped, so deleting it would lose the history on Linux and fail on Windows; {@link
+   * #clearIndexes()} empties the indexes in place instead.
+   *
+   * @return the index files
+   */
+  public Set<Path> getIndexFiles() {
+    Set<Path> files = new HashSet<>(transactionIndex.getFiles());
+    files.add(NodeLauncher.getWorkingDirectory().resolve(BLOCK_HISTORY_FILE));
+    return files;
+  }
+
+  /**
+   * Makes sure the chain has its pool of pre-funded wallets if one is configured. The first call
+   * after genesis creates the pool in the background, later calls return the same future until it
+   * is done. A creation that failed or was interrupted resumes with the wallets already funded.
+   *
+   * @return future with the pool file, or with null if no pool is configured or the plugin is
+   *     attached to a node elsewhere, which creates its own pool
+   */
+  public synchronized CompletableFuture<Path> ensureWalletPool() {
+    MyLocalTonSettings settings = MyLocalTonSettings.getInstance();
+    Path poolFile = WalletPool.getDefaultFile();
+    if (settings.getPoolWallets() <= 0 || settings.isAttached()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    if (Files.exists(poolFile)) {
+      return CompletableFuture.completedFuture(poolFile);
+    }
+    // Done but without a file, the chain was reset meanwhile
+    if (walletPoolFuture == null || walletPoolFuture.isDone()) {
+      CompletableFuture<Path> future = new CompletableFuture<>();
+      walletPoolFuture = future;
+      ApplicationManager.getApplication()
+          .executeOnPooledThread(
+              () -> {
+                try {
+                  new WalletPoolCreator(new TonlibChain(this))
+                      .create(settings.getPoolWallets(), settings.getPoolWalletTons(), poolFile);
+                  future.complete(poolFile);
+                } catch (Exception e) {
+                  LOG.warn("Cannot create wallet pool: " + TonlibClient.rootMessage(e), e);
+                  future.completeExceptionally(e);
+                }
+              });
+    }
+    return walletPoolFuture;
+  }
+
+  /**
+   * Asks tonlib for the last masterchain block. The client is dropped if the node does not answer,
+   * so a node that is still starting gets a fresh connection on the next probe.
+   *
+   * @return the seqno, or -1 if the node does not answer yet
+   */
+  @Override
+  public long lastMasterchainSeqno() {
+    long seqno = queryMasterchainSeqno();
+    if (seqno < 0 && !Thread.currentThread().isInterrupted()) {
+      invalidate();
+    }
+    return seqno;
+  }
+
+  /**
+   * Asks tonlib for the last masterchain block but keeps the client if the node does not answer,
+   * for polling a node that is running and shared with the rest of the IDE.
+   *
+   * @return the seqno, or -1 if the node does not answer
+   */
+  public long queryMasterchainSeqno() {
+    try {
+      JSONObject info =
+          getClient().getMasterchainInfo().get(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      return ChainFollower.number((JSONObject) info.get("last"), "seqno");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    } catch (Exception e) {
+      LOG.debug("Node does not answer: " + TonlibClient.rootMessage(e));
+      return -1;
+    }
+  }
+
+  @Override
+  public void dispose() {
+    blockEventStream.stop();
+    apiProxy.stop();
+    invalidate();
+    if (blockHistory != null) {
+      blockHistory.close();
+    }
+    transactionIndex.close();
+    tvmEmulator.close();
+  }
+}
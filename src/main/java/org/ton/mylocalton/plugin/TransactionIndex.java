@@ -0,0 +1,498 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Inverted index from account address to the transactions of the account on the local chain, fed by
+ * the {@link ChainFollower}. Transactions are kept as pairs of logical time and masterchain seqno
+ * in a primitive long array per account, so millions of transactions take a few dozen MB.
+ *
+ * <p>The index is saved under {@code ~/.mylocalton} in the background as a gzip compressed
+ * snapshot, with logical times and seqnos delta and varint encoded, plus a journal. Blocks indexed
+ * since the last save are appended to the journal, so a save costs as much as the new blocks rather
+ * than the whole index. Once the journal outgrows the snapshot, the index is compacted into a new
+ * snapshot and the journal starts over. A journal cut short by a crash is read up to its last
+ * complete block. When the index is loaded after an IDE restart, the follower is told to resume
+ * after the last indexed block, so blocks produced in between are indexed as well. The index is
+ * cleared when the chain is replaced, e.g. after Reset.
+ *
+ * <pre>
+ * snapshot: magic int | version int | zero state root hash UTF | last seqno long
+ *           | account count int
+ *           | per account: address UTF | transaction count varint
+ *                          | per transaction: zigzag varint lt delta | zigzag varint seqno delta
+ * journal:  magic int | version int | zero state root hash UTF
+ *           | per block: seqno long | transaction count varint
+ *                        | per transaction: address UTF | lt long
+ * </pre>
+ */
+public class TransactionIndex implements AutoCloseable {
+  private static final Logger LOG = Logger.getInstance(TransactionIndex.class);
+
+  private static final int MAGIC = 0x4d4c5458; // MLTX
+  private static final int JOURNAL_MAGIC = 0x4d4c544a; // MLTJ
+  private static final String JOURNAL_SUFFIX = ".journal";
+  // Below this, the journal is not worth compacting even if the snapshot is smaller
+  private static final long MIN_COMPACT_JOURNAL_BYTES = 4 * 1024 * 1024;
+  private static final int VERSION = 1;
+  private static final long SAVE_PERIOD_SECONDS = 60;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** A transaction of an account. */
+  public static final class Entry {
+    private final long lt;
+    private final long masterchainSeqno;
+
+    Entry(long lt, long masterchainSeqno) {
+      this.lt = lt;
+      this.masterchainSeqno = masterchainSeqno;
+    }
+
+    public long getLt() {
+      return lt;
+    }
+
+    /** Masterchain block the transaction was committed with. */
+    public long getMasterchainSeqno() {
+      return masterchainSeqno;
+    }
+  }
+
+  /** Transactions of one account, pairs of lt and masterchain seqno in the order they happened. */
+  private static final class Transactions {
+    long[] data = new long[4];
+    int size; // Number of longs used, twice the number of transactions
+
+    void add(long lt, long masterchainSeqno) {
+      if (size + 2 > data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[size++] = lt;
+      data[size++] = masterchainSeqno;
+    }
+  }
+
+  /** Transactions of a block that are not saved yet. */
+  private static final class PendingBlock {
+    final long seqno;
+    final List<ChainFollower.ShortTransaction> transactions;
+
+    PendingBlock(long seqno, List<ChainFollower.ShortTransaction> transactions) {
+      this.seqno = seqno;
+      this.transactions = transactions;
+    }
+  }
+
+  private final Path file;
+  private final Path journal;
+  private final Map<String, Transactions> byAddress = new HashMap<>();
+  private final ScheduledExecutorService executorService;
+  private final Object saveLock = new Object();
+  private String zeroStateRootHash;
+  private long lastSeqno = -1;
+  private long transactionCount;
+  private boolean dirty;
+  // Blocks to append to the journal, or a full snapshot is needed, e.g. after clearing
+  private List<PendingBlock> pending = new ArrayList<>();
+  private boolean compactionNeeded;
+  // Only used while holding saveLock
+  private long snapshotBytes;
+  private long journalBytes;
+
+  /**
+   * Loads the index and starts saving it periodically.
+   *
+   * @param file the index file, a missing or unreadable file starts an empty index
+   */
+  public TransactionIndex(Path file) {
+    this.file = file;
+    this.journal = file.resolveSibling(file.getFileName() + JOURNAL_SUFFIX);
+    if (Files.exists(file) || Files.exists(journal)) {
+      try {
+        load();
+        LOG.warn(
+            "Loaded "
+                + transactionCount
+                + " transactions of "
+                + byAddress.size()
+                + " accounts up to block "
+                + lastSeqno);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Cannot load transaction index, starting a new one: " + e.getMessage());
+        clear(null);
+      }
+    }
+    executorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Transaction Index");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    executorService.scheduleWithFixedDelay(
+        this::saveQuietly, SAVE_PERIOD_SECONDS, SAVE_PERIOD_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Tells the follower to resume after the last indexed block.
+   *
+   * @param chainFollower the follower feeding the index
+   */
+  public synchronized void resume(ChainFollower chainFollower) {
+    if (lastSeqno >= 0) {
+      chainFollower.setResumePoint(lastSeqno, zeroStateRootHash);
+    }
+  }
+
+  /**
+   * Adds the transactions of a new masterchain block. Blocks that are already indexed are ignored.
+   *
+   * @param event block from the {@link ChainFollower}
+   */
+  public synchronized void onBlock(ChainFollower.BlockEvent event) {
+    String zeroState = event.getZeroStateRootHash();
+    if (lastSeqno >= 0 && (zeroState == null || !zeroState.equals(zeroStateRootHash))) {
+      LOG.warn("New chain, clearing the transaction index");
+      clear(zeroState);
+    }
+    if (event.getMasterchainSeqno() <= lastSeqno) {
+      return;
+    }
+    zeroStateRootHash = zeroState;
+    add(event.getMasterchainSeqno(), event.getTransactions());
+    pending.add(new PendingBlock(event.getMasterchainSeqno(), event.getTransactions()));
+    dirty = true;
+  }
+
+  private void add(long seqno, List<ChainFollower.ShortTransaction> transactions) {
+    for (ChainFollower.ShortTransaction transaction : transactions) {
+      byAddress
+          .computeIfAbsent(transaction.getAddress(), address -> new Transactions())
+          .add(transaction.getLt(), seqno);
+    }
+    transactionCount += transactions.size();
+    lastSeqno = seqno;
+  }
+
+  /**
+   * Returns the indexed transactions of an account.
+   *
+   * @param rawAddress account address as returned by {@link TonAddress#toRaw(String)}
+   * @param limit maximum number of transactions
+   * @return transactions, newest first
+   */
+  public synchronized List<Entry> getTransactions(String rawAddress, int limit) {
+    List<Entry> entries = new ArrayList<>();
+    Transactions transactions = byAddress.get(rawAddress);
+    if (transactions == null) {
+      return entries;
+    }
+    for (int i = transactions.size - 2; i >= 0 && entries.size() < limit; i -= 2) {
+      entries.add(new Entry(transactions.data[i], transactions.data[i + 1]));
+    }
+    return entries;
+  }
+
+  /**
+   * Counts the indexed transactions of an account.
+   *
+   * @param rawAddress account address as returned by {@link TonAddress#toRaw(String)}
+   * @return number of transactions
+   */
+  public synchronized int count(String rawAddress) {
+    Transactions transactions = byAddress.get(rawAddress);
+    return transactions == null ? 0 : transactions.size / 2;
+  }
+
+  /**
+   * Returns the last indexed masterchain block.
+   *
+   * @return the seqno, or -1 if nothing is indexed yet
+   */
+  public synchronized long getLastSeqno() {
+    return lastSeqno;
+  }
+
+  public synchronized long getTransactionCount() {
+    return transactionCount;
+  }
+
+  /** The snapshot and the journal of the index. */
+  public List<Path> getFiles() {
+    return List.of(file, journal);
+  }
+
+  /** Drops all transactions, the next block starts a new index. */
+  public synchronized void clear() {
+    clear(null);
+  }
+
+  @Override
+  public void close() {
+    executorService.shutdownNow();
+    saveQuietly();
+  }
+
+  private void clear(String zeroState) {
+    byAddress.clear();
+    zeroStateRootHash = zeroState;
+    lastSeqno = -1;
+    transactionCount = 0;
+    pending = new ArrayList<>();
+    compactionNeeded = true;
+    dirty = true;
+  }
+
+  private void saveQuietly() {
+    try {
+      save();
+    } catch (IOException e) {
+      LOG.warn("Cannot save transaction index: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Saves the index if it changed: appends the new blocks to the journal, or writes a new snapshot
+   * if the journal outgrew it. The arrays of a snapshot are copied so blocks are not held up
+   * meanwhile.
+   */
+  void save() throws IOException {
+    // The periodic save and the one on close must not write the same files
+    synchronized (saveLock) {
+      Map<String, long[]> snapshot = null;
+      List<PendingBlock> blocks;
+      String zeroState;
+      long seqno;
+      synchronized (this) {
+        if (!dirty) {
+          return;
+        }
+        if (compactionNeeded || journalBytes > Math.max(MIN_COMPACT_JOURNAL_BYTES, snapshotBytes)) {
+          snapshot = new HashMap<>();
+          for (Map.Entry<String, Transactions> entry : byAddress.entrySet()) {
+            Transactions transactions = entry.getValue();
+            snapshot.put(entry.getKey(), Arrays.copyOf(transactions.data, transactions.size));
+          }
+          compactionNeeded = false;
+        }
+        blocks = pending;
+        pending = new ArrayList<>();
+        zeroState = zeroStateRootHash;
+        seqno = lastSeqno;
+        dirty = false;
+      }
+      try {
+        if (snapshot != null) {
+          writeSnapshot(snapshot, zeroState, seqno);
+          // Blocks in a journal left by a crash right here are older than the snapshot
+          Files.deleteIfExists(journal);
+          snapshotBytes = Files.size(file);
+          journalBytes = 0;
+        } else {
+          appendToJournal(blocks, zeroState);
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          dirty = true;
+          // A journal may be cut off in the middle of a block, start over with a snapshot
+          compactionNeeded = true;
+        }
+        throw e;
+      }
+    }
+  }
+
+  private void appendToJournal(List<PendingBlock> blocks, String zeroState) throws IOException {
+    Files.createDirectories(file.getParent());
+    boolean create = !Files.exists(journal);
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                Files.newOutputStream(
+                    journal, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                BUFFER_SIZE))) {
+      if (create) {
+        out.writeInt(JOURNAL_MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(zeroState == null ? "" : zeroState);
+      }
+      for (PendingBlock block : blocks) {
+        out.writeLong(block.seqno);
+        writeVarint(out, block.transactions.size());
+        for (ChainFollower.ShortTransaction transaction : block.transactions) {
+          out.writeUTF(transaction.getAddress());
+          out.writeLong(transaction.getLt());
+        }
+      }
+    }
+    journalBytes = Files.size(journal);
+  }
+
+  private void writeSnapshot(Map<String, long[]> snapshot, String zeroState, long seqno)
+      throws IOException {
+    Files.createDirectories(file.getParent());
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(zeroState == null ? "" : zeroState);
+      out.writeLong(seqno);
+      out.writeInt(snapshot.size());
+      for (Map.Entry<String, long[]> entry : snapshot.entrySet()) {
+        long[] data = entry.getValue();
+        out.writeUTF(entry.getKey());
+        writeVarint(out, data.length / 2);
+        long previousLt = 0;
+        long previousSeqno = 0;
+        for (int i = 0; i < data.length; i += 2) {
+          writeVarint(out, zigzag(data[i] - previousLt));
+          writeVarint(out, zigzag(data[i + 1] - previousSeqno));
+          previousLt = data[i];
+          previousSeqno = data[i + 1];
+        }
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void load() throws IOException {
+    if (Files.exists(file)) {
+      loadSnapshot();
+      snapshotBytes = Files.size(file);
+    }
+    if (Files.exists(journal)) {
+      loadJournal();
+      journalBytes = Files.size(journal);
+    }
+  }
+
+  private void loadSnapshot() throws IOException {
+    try (InputStream fileIn = Files.newInputStream(file);
+        DataInputStream in =
+            new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(fileIn, BUFFER_SIZE), BUFFER_SIZE))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("unknown format");
+      }
+      String zeroState = in.readUTF();
+      zeroStateRootHash = zeroState.isEmpty() ? null : zeroState;
+      lastSeqno = in.readLong();
+      int accounts = in.readInt();
+      for (int a = 0; a < accounts; a++) {
+        String address = in.readUTF();
+        int count = (int) readVarint(in);
+        Transactions transactions = new Transactions();
+        transactions.data = new long[Math.max(4, count * 2)];
+        long lt = 0;
+        long seqno = 0;
+        for (int i = 0; i < count; i++) {
+          lt += unzigzag(readVarint(in));
+          seqno += unzigzag(readVarint(in));
+          transactions.add(lt, seqno);
+        }
+        byAddress.put(address, transactions);
+        transactionCount += count;
+      }
+    }
+  }
+
+  /** Replays the blocks of the journal that are newer than the snapshot. */
+  private void loadJournal() throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), BUFFER_SIZE))) {
+      if (in.readInt() != JOURNAL_MAGIC || in.readInt() != VERSION) {
+        throw new IOException("unknown journal format");
+      }
+      String zeroState = in.readUTF();
+      if (zeroStateRootHash != null && !zeroStateRootHash.equals(zeroState)) {
+        // Written for another chain, the snapshot is newer
+        compactionNeeded = true;
+        dirty = true;
+        return;
+      }
+      zeroStateRootHash = zeroState.isEmpty() ? null : zeroState;
+      while (true) {
+        in.mark(1);
+        if (in.read() < 0) {
+          return;
+        }
+        in.reset();
+        long seqno;
+        List<ChainFollower.ShortTransaction> transactions = new ArrayList<>();
+        try {
+          seqno = in.readLong();
+          int count = (int) readVarint(in);
+          for (int i = 0; i < count; i++) {
+            transactions.add(new ChainFollower.ShortTransaction(in.readUTF(), in.readLong(), null));
+          }
+        } catch (EOFException e) {
+          // Cut short by a crash, later blocks must not be appended after it
+          LOG.warn("Transaction index journal ends in the middle of a block");
+          compactionNeeded = true;
+          dirty = true;
+          return;
+        }
+        if (seqno > lastSeqno) {
+          add(seqno, transactions);
+        }
+      }
+    }
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarint(OutputStream out, long value) throws IOException {
+    while ((value & ~0x7fL) != 0) {
+      out.write((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarint(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed varint");
+  }
+}
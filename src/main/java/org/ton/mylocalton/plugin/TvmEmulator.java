@@ -0,0 +1,521 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.ton.mylocalton.launcher.NodeLauncher;
+import org.ton.mylocalton.launcher.TonCell;
+
+/**
+ * Runs get-methods in-process with the TVM emulator library that MyLocalTon ships next to
+ * tonlibjson, instead of loading the contract on the node with {@code smc.load} for every call.
+ *
+ * <p>Contracts run on account states from the {@link ChainDataCache}, which keeps them until a new
+ * block touches the account, so repeated calls on an idle contract do not reach the node at all.
+ * Calls run on a pool with a thread per core; {@link #runGetMethods} runs a batch in parallel.
+ * Results have the shape of tonlib's {@code smc.runResult} plus the time taken, so callers do not
+ * depend on where a call ran. Without the emulator library, or while tonlib cannot provide the
+ * config parameters the emulator needs, calls are sent to tonlib instead.
+ */
+public class TvmEmulator implements AutoCloseable {
+  private static final Logger LOG = Logger.getInstance(TvmEmulator.class);
+
+  private static final List<String> LIBRARY_NAMES =
+      List.of("libemulator.so", "libemulator.dylib", "emulator.dll");
+  private static final SecureRandom RANDOM = new SecureRandom();
+  // Config changes are rare on a local chain, e.g. by a validator election
+  private static final long CONFIG_TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  /** Native functions exported by the emulator library. */
+  interface EmulatorLibrary extends Library {
+    Pointer tvm_emulator_create(String code, String data, int vmLogVerbosity);
+
+    // C bool, only the lowest byte of the return register is defined
+    byte tvm_emulator_set_c7(
+        Pointer emulator,
+        String address,
+        int unixtime,
+        long balance,
+        String randSeedHex,
+        String config);
+
+    // JSON allocated with malloc, released by the caller
+    Pointer tvm_emulator_run_get_method(Pointer emulator, int methodId, String stack);
+
+    void tvm_emulator_destroy(Pointer emulator);
+
+    void emulator_set_verbosity_level(int level);
+  }
+
+  /** A get-method call of a batch. */
+  public static final class Call {
+    private final String address;
+    private final String method;
+    private final JSONArray stack;
+
+    /**
+     * Creates a call.
+     *
+     * @param address raw address, see {@link TonAddress#toRaw}
+     * @param method get-method name
+     * @param stack arguments, {@code tvm.StackEntry} objects with the first argument first
+     */
+    public Call(String address, String method, JSONArray stack) {
+      this.address = address;
+      this.method = method;
+      this.stack = stack;
+    }
+
+    public String getAddress() {
+      return address;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+  }
+
+  private final ChainDataCache chainDataCache;
+  private final ExecutorService executorService;
+  private EmulatorLibrary library;
+  private boolean libraryFailed;
+  // Config parameters for c7, reloaded for a new tonlib client, after a failure and when stale
+  private TonlibClient configClient;
+  private CompletableFuture<String> config;
+  private long configLoadedAt;
+
+  public TvmEmulator(ChainDataCache chainDataCache) {
+    this.chainDataCache = chainDataCache;
+    executorService =
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - TVM Emulator");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Runs a get-method on the current state of a contract.
+   *
+   * @param client tonlib client used to load the account state on a cache miss
+   * @param address raw address, see {@link TonAddress#toRaw}
+   * @param method get-method name
+   * @param stack arguments, {@code tvm.StackEntry} objects with the first argument first
+   * @return future with a {@code smc.runResult} object with {@code gas_used}, {@code exit_code},
+   *     {@code stack} and {@code time_us}, the time the call took in microseconds
+   */
+  public CompletableFuture<JSONObject> runGetMethod(
+      TonlibClient client, String address, String method, JSONArray stack) {
+    EmulatorLibrary emulatorLibrary = getLibrary();
+    if (emulatorLibrary == null) {
+      long start = System.nanoTime();
+      return client
+          .runGetMethod(address, method, stack)
+          .thenApply(result -> withTime(result, start));
+    }
+    return getConfig(client)
+        .thenCompose(
+            configBoc -> {
+              if (configBoc == null) {
+                // An empty config would break get-methods that read it, let the node run it
+                long start = System.nanoTime();
+                return client
+                    .runGetMethod(address, method, stack)
+                    .thenApply(result -> withTime(result, start));
+              }
+              return chainDataCache
+                  .getAccountState(client, address)
+                  .thenApplyAsync(
+                      state -> {
+                        try {
+                          return emulate(emulatorLibrary, address, state, configBoc, method, stack);
+                        } catch (IOException | RuntimeException e) {
+                          throw new CompletionException(e);
+                        }
+                      },
+                      executorService);
+            });
+  }
+
+  /**
+   * Runs get-methods in parallel, e.g. the same getters of many contracts.
+   *
+   * @param client tonlib client used to load account states on cache misses
+   * @param calls the calls
+   * @return future with a result per call in the same order, an {@code error} object for a call
+   *     that failed
+   */
+  public CompletableFuture<List<JSONObject>> runGetMethods(TonlibClient client, List<Call> calls) {
+    List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+    for (Call call : calls) {
+      futures.add(
+          runGetMethod(client, call.address, call.method, call.stack)
+              .exceptionally(
+                  error -> {
+                    JSONObject result = TonlibClient.request("error");
+                    result.put("message", TonlibClient.rootMessage(error));
+                    return result;
+                  }));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            done -> {
+              List<JSONObject> results = new ArrayList<>();
+              for (CompletableFuture<JSONObject> future : futures) {
+                results.add(future.join());
+              }
+              return results;
+            });
+  }
+
+  /** Whether get-methods run locally, false if the emulator library is missing. */
+  public boolean isAvailable() {
+    return getLibrary() != null;
+  }
+
+  @Override
+  public void close() {
+    executorService.shutdownNow();
+  }
+
+  private synchronized EmulatorLibrary getLibrary() {
+    if (library == null && !libraryFailed) {
+      Path bin = NodeLauncher.getDataDirectory().resolve("genesis").resolve("bin");
+      for (String name : LIBRARY_NAMES) {
+        Path path = bin.resolve(name);
+        if (Files.exists(path)) {
+          try {
+            library = NativeLibraries.load(path, EmulatorLibrary.class);
+            library.emulator_set_verbosity_level(0);
+          } catch (IOException | UnsatisfiedLinkError e) {
+            LOG.warn("Cannot load TVM emulator " + path + ": " + e.getMessage());
+            libraryFailed = true;
+          }
+          break;
+        }
+      }
+      // A missing library is looked up again, MyLocalTon may not have extracted it yet
+    }
+    return library;
+  }
+
+  /**
+   * Loads the config parameters, null if tonlib cannot provide them. A failure is not kept, the
+   * next call asks tonlib again.
+   */
+  @SuppressWarnings("unchecked")
+  private synchronized CompletableFuture<String> getConfig(TonlibClient client) {
+    boolean failed = config != null && config.isDone() && config.join() == null;
+    if (configClient != client || failed || System.nanoTime() - configLoadedAt > CONFIG_TTL_NANOS) {
+      configClient = client;
+      configLoadedAt = System.nanoTime();
+      JSONObject request = TonlibClient.request("getConfigAll");
+      request.put("mode", 0);
+      config =
+          client
+              .send(request)
+              .handle(
+                  (configInfo, error) -> {
+                    if (error != null) {
+                      LOG.warn(
+                          "Cannot load config for the TVM emulator: "
+                              + TonlibClient.rootMessage(error));
+                      return null;
+                    }
+                    return (String) ((JSONObject) configInfo.get("config")).get("bytes");
+                  });
+    }
+    return config;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject emulate(
+      EmulatorLibrary library,
+      String address,
+      JSONObject state,
+      String config,
+      String method,
+      JSONArray stack)
+      throws IOException {
+    String code = (String) state.get("code");
+    String data = (String) state.get("data");
+    if (code == null || code.isEmpty()) {
+      throw new IOException("Account " + address + " is not active");
+    }
+    String stackBoc = Base64.getEncoder().encodeToString(TvmStack.serialize(stack).toBoc());
+    byte[] seed = new byte[32];
+    RANDOM.nextBytes(seed);
+
+    long start = System.nanoTime();
+    Pointer emulator = library.tvm_emulator_create(code, data == null ? "" : data, 0);
+    if (emulator == null) {
+      throw new IOException("Cannot load the code and data of " + address);
+    }
+    String json;
+    try {
+      if (library.tvm_emulator_set_c7(
+              emulator,
+              address,
+              (int) (System.currentTimeMillis() / 1000),
+              Long.parseLong(String.valueOf(state.get("balance"))),
+              HexFormat.of().formatHex(seed),
+              config)
+          == 0) {
+        throw new IOException("Cannot set up c7 for " + address);
+      }
+      Pointer result = library.tvm_emulator_run_get_method(emulator, methodId(method), stackBoc);
+      if (result == null) {
+        throw new IOException("TVM emulator returned no result for " + method);
+      }
+      try {
+        json = result.getString(0, StandardCharsets.UTF_8.name());
+      } finally {
+        Native.free(Pointer.nativeValue(result));
+      }
+    } finally {
+      library.tvm_emulator_destroy(emulator);
+    }
+
+    JSONObject response;
+    try {
+      response = (JSONObject) new JSONParser().parse(json);
+    } catch (ParseException e) {
+      throw new IOException("Invalid emulator response: " + json, e);
+    }
+    if (!Boolean.TRUE.equals(response.get("success"))) {
+      throw new IOException("TVM emulator error: " + response.get("error"));
+    }
+    JSONObject runResult = TonlibClient.request("smc.runResult");
+    runResult.put("gas_used", Long.parseLong(String.valueOf(response.get("gas_used"))));
+    runResult.put("exit_code", ChainFollower.number(response, "vm_exit_code"));
+    runResult.put(
+        "stack",
+        TvmStack.parse(
+            TonCell.fromBoc(Base64.getDecoder().decode((String) response.get("stack")))));
+    return withTime(runResult, start);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static JSONObject withTime(JSONObject result, long start) {
+    result.put("time_us", (System.nanoTime() - start) / 1000);
+    return result;
+  }
+
+  /** Id of a get-method, the CRC16/XMODEM of its name with bit 16 set. */
+  static int methodId(String method) {
+    int crc = 0;
+    for (byte b : method.getBytes(StandardCharsets.UTF_8)) {
+      crc ^= (b & 0xff) << 8;
+      for (int i = 0; i < 8; i++) {
+        crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+      }
+    }
+    return (crc & 0xffff) | 0x10000;
+  }
+
+  /**
+   * Conversion between tonlib's JSON stack entries and the {@code VmStack} cells the emulator takes
+   * and returns. Numbers, cells, slices and tuples are supported; other values, e.g. continuations,
+   * come back as {@code tvm.stackEntryUnsupported}.
+   */
+  static final class TvmStack {
+    private TvmStack() {}
+
+    /** Builds a {@code VmStack} with the first entry at the bottom. */
+    static TonCell serialize(JSONArray entries) throws IOException {
+      // VmStackList n+1 is a reference to VmStackList n followed by the entry on top
+      TonCell list = TonCell.builder().build();
+      for (int i = 0; i < entries.size() - 1; i++) {
+        TonCell.Builder builder = TonCell.builder().storeRef(list);
+        storeEntry(builder, (JSONObject) entries.get(i));
+        list = builder.build();
+      }
+      TonCell.Builder stack = TonCell.builder().storeUint(entries.size(), 24);
+      if (!entries.isEmpty()) {
+        stack.storeRef(list);
+        storeEntry(stack, (JSONObject) entries.get(entries.size() - 1));
+      }
+      return stack.build();
+    }
+
+    private static void storeEntry(TonCell.Builder builder, JSONObject entry) throws IOException {
+      String type = (String) entry.get("@type");
+      if ("tvm.stackEntryNumber".equals(type)) {
+        BigInteger value =
+            new BigInteger(String.valueOf(((JSONObject) entry.get("number")).get("number")));
+        if (value.bitLength() < 64) {
+          builder.storeUint(0x01, 8).storeInt(value, 64);
+        } else {
+          builder.storeUint(0x0201 >>> 1, 15).storeInt(value, 257);
+        }
+      } else if ("tvm.stackEntryCell".equals(type)) {
+        builder.storeUint(0x03, 8).storeRef(cell(entry, "cell"));
+      } else if ("tvm.stackEntrySlice".equals(type)) {
+        TonCell cell = cell(entry, "slice");
+        builder
+            .storeUint(0x04, 8)
+            .storeRef(cell)
+            .storeUint(0, 10)
+            .storeUint(cell.getBitLength(), 10)
+            .storeUint(0, 3)
+            .storeUint(cell.getRefs().size(), 3);
+      } else {
+        throw new IOException("Unsupported stack entry " + type);
+      }
+    }
+
+    private static TonCell cell(JSONObject entry, String key) {
+      String bytes = (String) ((JSONObject) entry.get(key)).get("bytes");
+      return TonCell.fromBoc(Base64.getDecoder().decode(bytes));
+    }
+
+    /** Reads a {@code VmStack} into entries with the bottom of the stack first. */
+    static JSONArray parse(TonCell stack) {
+      Reader reader = new Reader(stack);
+      int depth = (int) reader.readUint(24);
+      JSONArray entries = new JSONArray();
+      readList(reader, depth, entries);
+      return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void readList(Reader reader, int depth, JSONArray entries) {
+      if (depth == 0) {
+        return;
+      }
+      TonCell rest = reader.readRef();
+      JSONObject top = readEntry(reader);
+      readList(new Reader(rest), depth - 1, entries);
+      entries.add(top);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject readEntry(Reader reader) {
+      int tag = (int) reader.readUint(8);
+      if (tag == 0x01) {
+        return number(reader.readUint(64));
+      }
+      if (tag == 0x02) {
+        // 0x0201_ is an int257, 0x02ff a NaN
+        return reader.readUint(7) == 0
+            ? number(reader.readInt(257))
+            : TonlibClient.request("tvm.stackEntryUnsupported");
+      }
+      if (tag == 0x03) {
+        return wrap("tvm.stackEntryCell", "cell", "tvm.cell", reader.readRef());
+      }
+      if (tag == 0x04) {
+        TonCell cell = reader.readRef();
+        int startBit = (int) reader.readUint(10);
+        int endBit = (int) reader.readUint(10);
+        int startRef = (int) reader.readUint(3);
+        int endRef = (int) reader.readUint(3);
+        TonCell.Builder slice = TonCell.builder();
+        for (int i = startBit; i < endBit; i++) {
+          slice.storeBit(cell.getBit(i));
+        }
+        for (int i = startRef; i < endRef; i++) {
+          slice.storeRef(cell.getRefs().get(i));
+        }
+        return wrap("tvm.stackEntrySlice", "slice", "tvm.slice", slice.build());
+      }
+      if (tag == 0x07) {
+        JSONArray elements = new JSONArray();
+        readTuple(reader, (int) reader.readUint(16), elements);
+        JSONObject tuple = TonlibClient.request("tvm.tuple");
+        tuple.put("elements", elements);
+        JSONObject entry = TonlibClient.request("tvm.stackEntryTuple");
+        entry.put("tuple", tuple);
+        return entry;
+      }
+      // Null, builders and continuations
+      return TonlibClient.request("tvm.stackEntryUnsupported");
+    }
+
+    /** Reads a {@code VmTuple}: the first elements, then a reference to the last one. */
+    @SuppressWarnings("unchecked")
+    private static void readTuple(Reader reader, int length, JSONArray elements) {
+      if (length == 0) {
+        return;
+      }
+      if (length == 2) {
+        elements.add(readEntry(new Reader(reader.readRef())));
+      } else if (length > 2) {
+        readTuple(new Reader(reader.readRef()), length - 1, elements);
+      }
+      elements.add(readEntry(new Reader(reader.readRef())));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject number(Object value) {
+      JSONObject number = TonlibClient.request("tvm.numberDecimal");
+      number.put("number", String.valueOf(value));
+      JSONObject entry = TonlibClient.request("tvm.stackEntryNumber");
+      entry.put("number", number);
+      return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject wrap(String entryType, String key, String valueType, TonCell cell) {
+      JSONObject value = TonlibClient.request(valueType);
+      value.put("bytes", Base64.getEncoder().encodeToString(cell.toBoc()));
+      JSONObject entry = TonlibClient.request(entryType);
+      entry.put(key, value);
+      return entry;
+    }
+  }
+
+  /** Reads bits and references of a cell in order. */
+  private static final class Reader {
+    private final TonCell cell;
+    private int bit;
+    private int ref;
+
+    Reader(TonCell cell) {
+      this.cell = cell;
+    }
+
+    long readUint(int bits) {
+      long value = 0;
+      for (int i = 0; i < bits; i++) {
+        value = (value << 1) | (cell.getBit(bit++) ? 1 : 0);
+      }
+      return value;
+    }
+
+    BigInteger readInt(int bits) {
+      BigInteger value = BigInteger.ZERO;
+      for (int i = 0; i < bits; i++) {
+        value = value.shiftLeft(1).add(cell.getBit(bit++) ? BigInteger.ONE : BigInteger.ZERO);
+      }
+      // Two's complement
+      return value.testBit(bits - 1) ? value.subtract(BigInteger.ONE.shiftLeft(bits)) : value;
+    }
+
+    TonCell readRef() {
+      return cell.getRefs().get(ref++);
+    }
+  }
+}
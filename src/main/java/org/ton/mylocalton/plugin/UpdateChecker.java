@@ -0,0 +1,375 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Checks in the background whether a newer MyLocalTon release is published.
+ *
+ * <p>The ETag and Last-Modified of the last downloaded JAR are cached per URL, so a check is a
+ * single conditional HEAD request that normally ends with {@code 304 Not Modified}. Without cached
+ * validators, the release tag GitHub redirects to is compared with the version of the installed
+ * release; if there is nothing to compare, the JAR is downloaded and compared by its SHA-256. A
+ * {@code file:} URL of a local mirror directory is checked by the modification time and size of the
+ * JAR. When a change is found, the new JAR is stored in the {@link ReleaseStore} without touching
+ * the active release, so a running node is not affected, and the listeners of the open tool windows
+ * are notified.
+ */
+public class UpdateChecker implements Disposable {
+  private static final Logger LOG = Logger.getInstance(UpdateChecker.class);
+
+  private static final String CACHE_FILE = "update-cache.json";
+  private static final long CHECK_PERIOD_HOURS = 6;
+  // e.g. https://github.com/neodix42/mylocalton/releases/download/v1.2.3/MyLocalTon-x86-64.jar
+  private static final Pattern RELEASE_TAG_PATTERN =
+      Pattern.compile("/releases/download/v?([^/]+)/[^/]+$");
+  private static final int MAX_REDIRECTS = 5;
+
+  private final ReleaseStore releaseStore;
+  private final Path cacheFile;
+  private final ScheduledExecutorService executorService;
+  private final List<Consumer<ReleaseStore.Release>> listeners = new CopyOnWriteArrayList<>();
+  private JSONObject cache;
+  private ScheduledFuture<?> scheduledCheck;
+
+  /** Result of a single update check. */
+  public enum Status {
+    UP_TO_DATE,
+    UPDATE_AVAILABLE,
+    FAILED
+  }
+
+  public UpdateChecker() {
+    this(ReleaseStore.getDefault(), ReleaseStore.getDefault().getStoreDir());
+  }
+
+  UpdateChecker(ReleaseStore releaseStore, Path storeDir) {
+    this.releaseStore = releaseStore;
+    this.cacheFile = storeDir.resolve(CACHE_FILE);
+    executorService =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "MyLocalTon-Plugin - Update Checker");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+  }
+
+  public static UpdateChecker getInstance() {
+    return ApplicationManager.getApplication().getService(UpdateChecker.class);
+  }
+
+  /**
+   * Registers a listener for releases stored by the background checks.
+   *
+   * @param listener called with the new release once it is stored, on the checker's thread
+   */
+  public void addListener(Consumer<ReleaseStore.Release> listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Consumer<ReleaseStore.Release> listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Starts periodic checks of the given release URL, replacing the checks started before.
+   *
+   * @param url URL of the JAR, e.g. the GitHub "latest" download URL, or a {@code file:} URL
+   * @param testnet whether the JAR is built from the testnet branch
+   * @param jarFilename fixed file name the JAR is launched from
+   */
+  public synchronized void start(String url, boolean testnet, String jarFilename) {
+    stop();
+    scheduledCheck =
+        executorService.scheduleWithFixedDelay(
+            () -> {
+              try {
+                if (check(url) == Status.UPDATE_AVAILABLE) {
+                  ReleaseStore.Release release = download(url, testnet, jarFilename);
+                  if (release != null) {
+                    listeners.forEach(listener -> listener.accept(release));
+                  }
+                }
+              } catch (Exception e) {
+                LOG.warn("MyLocalTon update check failed: " + e.getMessage());
+              }
+            },
+            1,
+            CHECK_PERIOD_HOURS * 60,
+            TimeUnit.MINUTES);
+  }
+
+  /** Stops periodic checks. */
+  public synchronized void stop() {
+    if (scheduledCheck != null) {
+      scheduledCheck.cancel(true);
+      scheduledCheck = null;
+    }
+  }
+
+  @Override
+  public void dispose() {
+    stop();
+    executorService.shutdownNow();
+  }
+
+  /**
+   * Asks the server with a conditional HEAD request whether the JAR behind the URL has changed
+   * since it was downloaded last time.
+   *
+   * @param url URL of the JAR
+   * @return check result
+   */
+  public Status check(String url) {
+    try {
+      JSONObject cached = getCached(url);
+      URI uri = new URI(url);
+      if ("file".equalsIgnoreCase(uri.getScheme())) {
+        return checkFile(Paths.get(uri), cached);
+      }
+      HttpURLConnection connection = (HttpURLConnection) new URI(url).toURL().openConnection();
+      connection.setRequestMethod("HEAD");
+      connection.setConnectTimeout(10000); // 10 seconds
+      connection.setReadTimeout(10000); // 10 seconds
+      if (cached != null) {
+        if (cached.get("etag") != null) {
+          connection.setRequestProperty("If-None-Match", (String) cached.get("etag"));
+        }
+        if (cached.get("lastModified") != null) {
+          connection.setRequestProperty("If-Modified-Since", (String) cached.get("lastModified"));
+        }
+      }
+
+      int responseCode = connection.getResponseCode();
+      String etag = connection.getHeaderField("ETag");
+      String lastModified = connection.getHeaderField("Last-Modified");
+      connection.disconnect();
+
+      if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        LOG.warn("MyLocalTon is up to date: " + url);
+        return Status.UP_TO_DATE;
+      }
+      if (responseCode != HttpURLConnection.HTTP_OK) {
+        LOG.warn("Unexpected response " + responseCode + " while checking " + url);
+        return Status.FAILED;
+      }
+      if (cached == null) {
+        return compareWithInstalled(url, etag, lastModified);
+      }
+      // Some servers ignore conditional headers and always answer 200
+      if (etag != null && etag.equals(cached.get("etag"))) {
+        return Status.UP_TO_DATE;
+      }
+      if (etag == null && lastModified != null && lastModified.equals(cached.get("lastModified"))) {
+        return Status.UP_TO_DATE;
+      }
+      LOG.warn("New MyLocalTon release is available: " + url);
+      return Status.UPDATE_AVAILABLE;
+    } catch (Exception e) {
+      LOG.warn("Cannot check for MyLocalTon update: " + e.getMessage());
+      return Status.FAILED;
+    }
+  }
+
+  /**
+   * Decides the first check of a URL by the version of the installed release. The validators are
+   * only recorded if the versions match; otherwise the JAR is downloaded, which records them.
+   */
+  private Status compareWithInstalled(String url, String etag, String lastModified)
+      throws Exception {
+    ReleaseStore.Release active = releaseStore.getActive();
+    String tag = active == null || active.getVersion() == null ? null : releaseTag(url);
+    if (tag != null) {
+      // Whole version only, 1.0.0 is not 11.0.0
+      if (Pattern.compile("(^|[^0-9.])" + Pattern.quote(tag) + "($|[^0-9.])")
+          .matcher(active.getVersion())
+          .find()) {
+        recordValidators(url, etag, lastModified, active.getSha256());
+        return Status.UP_TO_DATE;
+      }
+      LOG.warn("New MyLocalTon release " + tag + " is available: " + url);
+      return Status.UPDATE_AVAILABLE;
+    }
+    // Nothing to compare the release with, download compares the content
+    LOG.warn("Cannot tell the installed MyLocalTon release from " + url);
+    return Status.UPDATE_AVAILABLE;
+  }
+
+  /**
+   * Follows the redirects of a "latest" URL up to the URL of the release. The last hop, e.g. to the
+   * storage of GitHub, no longer names the release, so the redirects are followed by hand.
+   */
+  private static String releaseTag(String url) throws Exception {
+    String location = url;
+    for (int i = 0; i < MAX_REDIRECTS && location != null; i++) {
+      Matcher matcher = RELEASE_TAG_PATTERN.matcher(new URI(location).getPath());
+      if (matcher.find()) {
+        return matcher.group(1);
+      }
+      HttpURLConnection connection = (HttpURLConnection) new URI(location).toURL().openConnection();
+      connection.setRequestMethod("HEAD");
+      connection.setInstanceFollowRedirects(false);
+      connection.setConnectTimeout(10000); // 10 seconds
+      connection.setReadTimeout(10000); // 10 seconds
+      String next = connection.getHeaderField("Location");
+      connection.disconnect();
+      location = next == null ? null : new URI(location).resolve(next).toString();
+    }
+    return null;
+  }
+
+  /** Checks a JAR in a local mirror directory by its modification time and size. */
+  private Status checkFile(Path file, JSONObject cached) throws IOException {
+    if (!Files.isRegularFile(file)) {
+      LOG.warn("MyLocalTon JAR not found in the mirror: " + file);
+      return Status.FAILED;
+    }
+    if (cached != null && fileValidator(file).equals(cached.get("lastModified"))) {
+      return Status.UP_TO_DATE;
+    }
+    // Copying compares the content with the installed release
+    return Status.UPDATE_AVAILABLE;
+  }
+
+  private static String fileValidator(Path file) throws IOException {
+    return Files.getLastModifiedTime(file).toMillis() + "/" + Files.size(file);
+  }
+
+  /**
+   * Downloads the JAR into the release store without activating it.
+   *
+   * @param url URL of the JAR
+   * @param testnet whether the JAR is built from the testnet branch
+   * @param jarFilename fixed file name the JAR is launched from
+   * @return the stored release, or null if the content did not actually change
+   * @throws Exception if the download fails
+   */
+  public ReleaseStore.Release download(String url, boolean testnet, String jarFilename)
+      throws Exception {
+    URI uri = new URI(url);
+    if ("file".equalsIgnoreCase(uri.getScheme())) {
+      Path file = Paths.get(uri);
+      String validator = fileValidator(file);
+      ReleaseStore.Release active = releaseStore.getActive();
+      ReleaseStore.Release release =
+          new OfflineInstaller(releaseStore)
+              .installFromFile(
+                  file,
+                  OfflineInstaller.findChecksum(file.getParent(), file.getFileName().toString()),
+                  testnet,
+                  jarFilename);
+      recordValidators(url, null, validator, release.getSha256());
+      return active != null && active.getSha256().equals(release.getSha256()) ? null : release;
+    }
+    HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+    connection.setRequestMethod("GET");
+    connection.setConnectTimeout(10000); // 10 seconds
+    connection.setReadTimeout(60000); // 60 seconds
+
+    Path tempPath = releaseStore.createTempFile();
+    MessageDigest digest = ReleaseStore.newSha256();
+    try (InputStream in = connection.getInputStream();
+        OutputStream out = new DigestOutputStream(Files.newOutputStream(tempPath), digest)) {
+      in.transferTo(out);
+    } catch (Exception e) {
+      Files.deleteIfExists(tempPath);
+      throw e;
+    }
+    String sha256 = HexFormat.of().formatHex(digest.digest());
+    recordValidators(
+        url, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), sha256);
+
+    ReleaseStore.Release active = releaseStore.getActive();
+    ReleaseStore.Release release = releaseStore.put(tempPath, sha256, testnet, jarFilename);
+    if (active != null && active.getSha256().equals(release.getSha256())) {
+      return null;
+    }
+    return release;
+  }
+
+  /**
+   * Remembers the validators of a downloaded JAR for subsequent conditional requests.
+   *
+   * @param url URL the JAR was downloaded from
+   * @param connection connection the JAR was downloaded through
+   * @param sha256 SHA-256 of the downloaded content
+   */
+  public void recordValidators(String url, HttpURLConnection connection, String sha256) {
+    recordValidators(
+        url, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), sha256);
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized void recordValidators(
+      String url, String etag, String lastModified, String sha256) {
+    JSONObject entry = new JSONObject();
+    entry.put("etag", etag);
+    entry.put("lastModified", lastModified);
+    entry.put("sha256", sha256);
+    entry.put("checkedAt", System.currentTimeMillis());
+    loadCache().put(url, entry);
+    try {
+      Files.createDirectories(cacheFile.getParent());
+      Path tmp = cacheFile.resolveSibling(CACHE_FILE + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        cache.writeJSONString(writer);
+      }
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.warn("Cannot save " + cacheFile + ": " + e.getMessage(), e);
+    }
+  }
+
+  /** Forgets all cached validators, e.g. after the store directory has been deleted. */
+  public synchronized void clearCache() {
+    cache = null;
+  }
+
+  private synchronized JSONObject getCached(String url) {
+    return (JSONObject) loadCache().get(url);
+  }
+
+  private JSONObject loadCache() {
+    if (cache == null) {
+      cache = new JSONObject();
+      if (Files.exists(cacheFile)) {
+        try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+          cache = (JSONObject) new JSONParser().parse(reader);
+        } catch (IOException | ParseException | RuntimeException e) {
+          LOG.warn("Cannot read " + cacheFile + ", starting with an empty cache", e);
+        }
+      }
+    }
+    return cache;
+  }
+}
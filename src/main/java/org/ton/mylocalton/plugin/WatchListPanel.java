@@ -0,0 +1,157 @@
+package org.ton.mylocalton.plugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import java.awt.*;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Tool window tab with the watch list: the current fields of every watched account and a log of
+ * their changes, newest first.
+ */
+public class WatchListPanel extends JPanel implements Disposable {
+  private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+  private static final String[] COLUMNS = {
+    AccountWatcher.BALANCE,
+    AccountWatcher.STATE,
+    AccountWatcher.SEQNO,
+    AccountWatcher.LAST_LT,
+    AccountWatcher.CODE,
+    AccountWatcher.DATA
+  };
+  private static final int MAX_LOG_LINES = 500;
+
+  private final AccountWatcher watcher = TonlibService.getInstance().getAccountWatcher();
+  private final Consumer<AccountWatcher.Change> changeListener =
+      change -> SwingUtilities.invokeLater(() -> show(change));
+  private final JTextField addressField = new JTextField();
+  private final JTextArea changesArea = new JTextArea();
+  private final DefaultTableModel model;
+  private final JTable table;
+
+  public WatchListPanel() {
+    super(new BorderLayout(0, 5));
+
+    JPanel addPanel = new JPanel(new BorderLayout(5, 0));
+    addressField.setToolTipText("Account address, raw (0:...) or user-friendly (EQ...)");
+    JButton addButton = new JButton("Watch");
+    JButton removeButton = new JButton("Remove");
+    JPanel buttonsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+    buttonsPanel.add(addButton);
+    buttonsPanel.add(removeButton);
+    addPanel.add(addressField, BorderLayout.CENTER);
+    addPanel.add(buttonsPanel, BorderLayout.EAST);
+    addPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+    add(addPanel, BorderLayout.NORTH);
+
+    Object[] columns = new Object[COLUMNS.length + 1];
+    columns[0] = "Address";
+    System.arraycopy(COLUMNS, 0, columns, 1, COLUMNS.length);
+    model =
+        new DefaultTableModel(columns, 0) {
+          @Override
+          public boolean isCellEditable(int row, int column) {
+            return false;
+          }
+        };
+    table = new JTable(model);
+    table.setFillsViewportHeight(true);
+    changesArea.setEditable(false);
+    changesArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+    JSplitPane splitPane =
+        new JSplitPane(
+            JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(changesArea));
+    splitPane.setResizeWeight(0.5);
+    add(splitPane, BorderLayout.CENTER);
+
+    addButton.addActionListener(e -> addAccount());
+    addressField.addActionListener(e -> addAccount());
+    removeButton.addActionListener(e -> removeSelected());
+
+    for (String address : watcher.getWatched()) {
+      updateRow(address, watcher.getFields(address));
+    }
+    watcher.addListener(changeListener);
+    // Loading waits for the shared tonlib client, which may be starting
+    ApplicationManager.getApplication().executeOnPooledThread(watcher::loadAll);
+  }
+
+  @Override
+  public void dispose() {
+    watcher.removeListener(changeListener);
+  }
+
+  private void addAccount() {
+    String address;
+    try {
+      address = TonAddress.toRaw(addressField.getText());
+    } catch (RuntimeException e) {
+      log("Invalid address " + addressField.getText().trim());
+      return;
+    }
+    addressField.setText("");
+    updateRow(address, null);
+    ApplicationManager.getApplication().executeOnPooledThread(() -> watcher.add(address));
+  }
+
+  private void removeSelected() {
+    int[] rows = table.getSelectedRows();
+    for (int i = rows.length - 1; i >= 0; i--) {
+      watcher.remove((String) model.getValueAt(rows[i], 0));
+      model.removeRow(rows[i]);
+    }
+  }
+
+  private void show(AccountWatcher.Change change) {
+    if (!watcher.getWatched().contains(change.getAddress())) {
+      return;
+    }
+    updateRow(change.getAddress(), change.getFields());
+    List<AccountWatcher.FieldChange> changes = change.getChanges();
+    if (!changes.isEmpty()) {
+      log(
+          "block "
+              + change.getMasterchainSeqno()
+              + " "
+              + change.getAddress()
+              + ": "
+              + changes.stream().map(Object::toString).collect(Collectors.joining(", ")));
+    }
+  }
+
+  private void updateRow(String address, Map<String, String> fields) {
+    int row = 0;
+    while (row < model.getRowCount() && !address.equals(model.getValueAt(row, 0))) {
+      row++;
+    }
+    if (row == model.getRowCount()) {
+      model.addRow(new Object[COLUMNS.length + 1]);
+      model.setValueAt(address, row, 0);
+    }
+    for (int column = 0; column < COLUMNS.length; column++) {
+      model.setValueAt(fields == null ? "" : fields.get(COLUMNS[column]), row, column + 1);
+    }
+  }
+
+  private void log(String line) {
+    changesArea.insert(LocalTime.now().format(TIME_FORMAT) + " " + line + "\n", 0);
+    if (changesArea.getLineCount() > MAX_LOG_LINES) {
+      try {
+        changesArea.replaceRange(
+            "",
+            changesArea.getLineStartOffset(MAX_LOG_LINES),
+            changesArea.getDocument().getLength());
+      } catch (BadLocationException e) {
+        // Cannot happen, the line exists
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package org.ton.mylocalton.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Attaches to a remote MyLocalTon, its ton-http-api is a local stand-in. */
+class AttachTest {
+  private static final String KEY = "Wha42OjSNvDaHOjhZhUZu0zW/+wu/+PaltND/a0FbuI=";
+  private static final String GLOBAL_CONFIG =
+      "{\"@type\":\"config.global\",\"liteservers\":["
+          + "{\"ip\":2130706433,\"port\":4443,\"id\":{\"@type\":\"pub.ed25519\",\"key\":\"a\"}},"
+          + "{\"ip\":2130706433,\"port\":4444,\"id\":{\"@type\":\"pub.ed25519\",\"key\":\"b\"}}],"
+          + "\"validator\":{\"zero_state\":{\"workchain\":-1}}}";
+
+  @TempDir Path directory;
+
+  @Test
+  void attachedConfigFollowsAttachSettings() throws IOException {
+    Path source = directory.resolve("global.config.json");
+    Files.writeString(source, GLOBAL_CONFIG, StandardCharsets.UTF_8);
+    Path attachedFile = directory.resolve("attached.config.json");
+    MyLocalTonSettings settings = new MyLocalTonSettings();
+    settings.setAttachHost("127.0.0.1");
+    settings.setAttachPort(14443);
+    settings.setAttachKey(KEY);
+    settings.setAttachConfig(source.toString());
+    GlobalConfigService service =
+        new GlobalConfigService(directory.resolve("missing.json"), attachedFile, () -> settings);
+
+    GlobalConfig config = service.get();
+    assertEquals(1, config.getLiteServers().size());
+    GlobalConfig.LiteServer server = config.getLiteServers().get(0);
+    assertEquals("127.0.0.1", server.getHost());
+    assertEquals(14443, server.getPort());
+    assertEquals(KEY, server.getPublicKey());
+    assertEquals(attachedFile, config.getPath());
+    // Written for lite-client, with the zero state of the attached chain
+    assertTrue(Files.readString(attachedFile).contains("zero_state"));
+    assertSame(config, service.get());
+
+    settings.setAttachPort(14444);
+    assertEquals(14444, service.get().getLiteServers().get(0).getPort());
+
+    settings.setAttachHost("");
+    assertThrows(IOException.class, service::get);
+  }
+
+  @Test
+  void attachedConfigKeepsPortAndKeyOfConfig() throws IOException {
+    Path file = directory.resolve("attached.config.json");
+    Files.writeString(
+        file,
+        GlobalConfig.withLiteServer(
+            GLOBAL_CONFIG, (Inet4Address) InetAddress.getByName("10.0.0.5"), 0, ""),
+        StandardCharsets.UTF_8);
+    GlobalConfig.LiteServer server =
+        GlobalConfig.parse(file, 0, Files.size(file)).getLiteServers().get(0);
+
+    assertEquals("10.0.0.5", server.getHost());
+    assertEquals(4443, server.getPort());
+    assertEquals("a", server.getPublicKey());
+  }
+
+  @Test
+  void localUpstreamMovesToAttachedHost() {
+    MyLocalTonSettings settings = new MyLocalTonSettings();
+    assertEquals("http://127.0.0.1:8081", settings.getEffectiveApiProxyUpstream());
+
+    settings.setAttachHost("10.0.0.5");
+    assertEquals("http://10.0.0.5:8081", settings.getEffectiveApiProxyUpstream());
+    settings.setApiProxyUpstream("https://localhost:8443/api");
+    assertEquals("https://10.0.0.5:8443/api", settings.getEffectiveApiProxyUpstream());
+    settings.setApiProxyUpstream("http://toncenter.internal:8081");
+    assertEquals("http://toncenter.internal:8081", settings.getEffectiveApiProxyUpstream());
+  }
+
+  @Test
+  void proxyForwardsToAttachedHost() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer tonHttpApi =
+        HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+    tonHttpApi.createContext(
+        "/api/v2/",
+        exchange -> {
+          requests.incrementAndGet();
+          byte[] body =
+              "{\"ok\":true,\"result\":{\"last\":{\"seqno\":7}}}".getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    tonHttpApi.start();
+    TonHttpApiProxy proxy = new TonHttpApiProxy(new ChainFollower());
+    try {
+      MyLocalTonSettings settings = new MyLocalTonSettings();
+      settings.setApiProxyUpstream("http://localhost:" + tonHttpApi.getAddress().getPort());
+      settings.setAttachHost("127.0.0.1");
+      String upstream = settings.getEffectiveApiProxyUpstream();
+      assertEquals("http://127.0.0.1:" + tonHttpApi.getAddress().getPort(), upstream);
+      int port = freePort();
+      proxy.start(port, upstream);
+
+      HttpClient client = HttpClient.newHttpClient();
+      HttpRequest request =
+          HttpRequest.newBuilder(
+                  URI.create("http://127.0.0.1:" + port + "/api/v2/getMasterchainInfo"))
+              .build();
+      for (int i = 0; i < 2; i++) {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"seqno\":7"), response.body());
+      }
+      assertEquals(1, requests.get());
+      assertEquals(1, proxy.getHits());
+    } finally {
+      proxy.stop();
+      tonHttpApi.stop(0);
+    }
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+      return socket.getLocalPort();
+    }
+  }
+}
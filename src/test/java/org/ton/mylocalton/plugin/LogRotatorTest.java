@@ -0,0 +1,36 @@
+package org.ton.mylocalton.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogRotatorTest {
+  @TempDir Path directory;
+
+  @Test
+  void listsOnlyRotatedSegments() throws IOException {
+    for (String name :
+        new String[] {
+          "myLocalTon.log",
+          "myLocalTon.log.20261019-100000-000.gz",
+          "myLocalTon.log.20261019-090000-000",
+          "myLocalTon.log.20261019-110000-000.gz.tmp",
+          "myLocalTon.log.bak",
+          "myLocalTon.log.20261019-080000-000.gz.old"
+        }) {
+      Files.createFile(directory.resolve(name));
+    }
+
+    List<Path> segments = LogRotator.listSegments(directory);
+    assertEquals(
+        List.of(
+            directory.resolve("myLocalTon.log.20261019-090000-000"),
+            directory.resolve("myLocalTon.log.20261019-100000-000.gz")),
+        segments);
+  }
+}
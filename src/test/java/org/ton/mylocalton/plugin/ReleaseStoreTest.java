@@ -0,0 +1,96 @@
+package org.ton.mylocalton.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReleaseStoreTest {
+  @TempDir Path rootDir;
+
+  private ReleaseStore releaseStore;
+  private String jarFilename;
+
+  @BeforeEach
+  void setUp() {
+    releaseStore = new ReleaseStore(rootDir);
+    jarFilename = ReleaseStore.jarFilename(false);
+  }
+
+  @Test
+  void duplicatePutReturnsStoredRelease() throws IOException {
+    ReleaseStore.Release release = put("release 1");
+    Path duplicate = releaseStore.createTempFile();
+    Files.writeString(duplicate, "release 1", StandardCharsets.UTF_8);
+
+    assertSame(release, releaseStore.put(duplicate, null, false, jarFilename));
+    // The duplicate download is discarded
+    assertFalse(Files.exists(duplicate));
+    assertEquals(1, releaseStore.list(false).size());
+  }
+
+  @Test
+  void activateSwitchesLinkedJar() throws IOException {
+    ReleaseStore.Release first = put("release 1");
+    ReleaseStore.Release second = put("release 2");
+    Path jar = rootDir.resolve(jarFilename);
+
+    assertEquals(jar, releaseStore.activate(first));
+    assertEquals("release 1", Files.readString(jar, StandardCharsets.UTF_8));
+    releaseStore.activate(second);
+    assertEquals("release 2", Files.readString(jar, StandardCharsets.UTF_8));
+    assertEquals(second.getSha256(), releaseStore.getActive().getSha256());
+
+    // Survives a restart of the IDE
+    ReleaseStore reloaded = new ReleaseStore(rootDir);
+    assertEquals(second.getSha256(), reloaded.getActive().getSha256());
+    assertEquals(jar, reloaded.getLaunchableJar());
+  }
+
+  @Test
+  void importLegacyJarsIsIdempotent() throws IOException {
+    Path jar = rootDir.resolve(jarFilename);
+    Files.writeString(jar, "legacy release", StandardCharsets.UTF_8);
+    assertNull(releaseStore.getActive());
+
+    releaseStore.importLegacyJars();
+    ReleaseStore.Release imported = releaseStore.getActive();
+    assertEquals(ReleaseStore.sha256(jar), imported.getSha256());
+    releaseStore.importLegacyJars();
+
+    assertEquals(1, releaseStore.list(false).size());
+    assertEquals(imported.getSha256(), releaseStore.getActive().getSha256());
+    // The legacy JAR is still launched from its fixed name
+    assertEquals("legacy release", Files.readString(jar, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void activeReleaseCannotBeRemoved() throws IOException {
+    ReleaseStore.Release active = put("release 1");
+    ReleaseStore.Release other = put("release 2");
+    releaseStore.activate(active);
+
+    assertThrows(IOException.class, () -> releaseStore.remove(active));
+    assertEquals(2, releaseStore.list(false).size());
+    assertTrue(Files.exists(rootDir.resolve(jarFilename)));
+
+    releaseStore.remove(other);
+    assertEquals(1, releaseStore.list(false).size());
+  }
+
+  private ReleaseStore.Release put(String content) throws IOException {
+    Path file = releaseStore.createTempFile();
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+    return releaseStore.put(file, null, false, jarFilename);
+  }
+}
@@ -0,0 +1,176 @@
+package org.ton.mylocalton.plugin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Runs the update checks against a local stand-in for the GitHub release downloads. */
+class UpdateCheckerTest {
+  private static final String JAR_FILENAME = "MyLocalTon-x86-64.jar";
+  private static final String LATEST_PATH = "/releases/latest/download/" + JAR_FILENAME;
+  private static final String LAST_MODIFIED = "Mon, 19 Oct 2026 10:00:00 GMT";
+
+  @TempDir Path rootDir;
+
+  private HttpServer server;
+  private ReleaseStore releaseStore;
+  private UpdateChecker updateChecker;
+  private String latestUrl;
+
+  // Served release, changed by the tests
+  private volatile String tag = "v1.0.0";
+  private volatile String etag = "\"v1\"";
+  private volatile String lastModified = LAST_MODIFIED;
+  private volatile byte[] content = "release 1".getBytes(StandardCharsets.UTF_8);
+  private volatile boolean honorConditionalHeaders = true;
+  // Conditional headers of the last request
+  private volatile String ifNoneMatch;
+  private volatile String ifModifiedSince;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/releases/",
+        exchange -> {
+          try {
+            serve(exchange);
+          } finally {
+            exchange.close();
+          }
+        });
+    server.start();
+    latestUrl = "http://127.0.0.1:" + server.getAddress().getPort() + LATEST_PATH;
+    releaseStore = new ReleaseStore(rootDir);
+    updateChecker = new UpdateChecker(releaseStore, releaseStore.getStoreDir());
+  }
+
+  @AfterEach
+  void tearDown() {
+    updateChecker.dispose();
+    server.stop(0);
+  }
+
+  /** Redirects "latest" to the release like GitHub does and answers conditional requests. */
+  private void serve(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    if (LATEST_PATH.equals(path)) {
+      exchange
+          .getResponseHeaders()
+          .set("Location", "/releases/download/" + tag + "/" + JAR_FILENAME);
+      exchange.sendResponseHeaders(302, -1);
+      return;
+    }
+    ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+    ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+    if (etag != null) {
+      exchange.getResponseHeaders().set("ETag", etag);
+    }
+    if (lastModified != null) {
+      exchange.getResponseHeaders().set("Last-Modified", lastModified);
+    }
+    boolean notModified =
+        etag != null ? etag.equals(ifNoneMatch) : lastModified.equals(ifModifiedSince);
+    if (honorConditionalHeaders && notModified) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(200, content.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content);
+    }
+  }
+
+  @Test
+  void firstCheckWithoutInstalledReleaseDownloadsAndThenRevalidates() throws Exception {
+    assertEquals(UpdateChecker.Status.UPDATE_AVAILABLE, updateChecker.check(latestUrl));
+    assertNotNull(updateChecker.download(latestUrl, false, JAR_FILENAME));
+
+    assertEquals(UpdateChecker.Status.UP_TO_DATE, updateChecker.check(latestUrl));
+    assertEquals(etag, ifNoneMatch);
+    assertEquals(LAST_MODIFIED, ifModifiedSince);
+  }
+
+  @Test
+  void changedEtagReportsUpdate() throws Exception {
+    updateChecker.download(latestUrl, false, JAR_FILENAME);
+
+    etag = "\"v2\"";
+    assertEquals(UpdateChecker.Status.UPDATE_AVAILABLE, updateChecker.check(latestUrl));
+  }
+
+  @Test
+  void sameEtagFromServerIgnoringConditionalHeadersIsUpToDate() throws Exception {
+    updateChecker.download(latestUrl, false, JAR_FILENAME);
+
+    honorConditionalHeaders = false;
+    assertEquals(UpdateChecker.Status.UP_TO_DATE, updateChecker.check(latestUrl));
+  }
+
+  @Test
+  void lastModifiedIsUsedWithoutEtag() throws Exception {
+    etag = null;
+    updateChecker.download(latestUrl, false, JAR_FILENAME);
+
+    assertEquals(UpdateChecker.Status.UP_TO_DATE, updateChecker.check(latestUrl));
+    assertNull(ifNoneMatch);
+    assertEquals(LAST_MODIFIED, ifModifiedSince);
+
+    honorConditionalHeaders = false;
+    assertEquals(UpdateChecker.Status.UP_TO_DATE, updateChecker.check(latestUrl));
+
+    lastModified = "Tue, 20 Oct 2026 10:00:00 GMT";
+    assertEquals(UpdateChecker.Status.UPDATE_AVAILABLE, updateChecker.check(latestUrl));
+  }
+
+  @Test
+  void firstCheckComparesReleaseTagWithInstalledVersion() throws Exception {
+    install("MyLocalTon v1.0.0");
+    assertEquals(UpdateChecker.Status.UP_TO_DATE, updateChecker.check(latestUrl));
+    // The validators are recorded, the next check is conditional
+    assertEquals(UpdateChecker.Status.UP_TO_DATE, updateChecker.check(latestUrl));
+    assertEquals(etag, ifNoneMatch);
+  }
+
+  @Test
+  void firstCheckReportsNewerReleaseTag() throws Exception {
+    install("MyLocalTon v1.0.0");
+    tag = "v1.1.0";
+    assertEquals(UpdateChecker.Status.UPDATE_AVAILABLE, updateChecker.check(latestUrl));
+  }
+
+  @Test
+  void downloadOfInstalledContentIsNotAnUpdate() throws Exception {
+    install(null);
+    assertNull(updateChecker.download(latestUrl, false, JAR_FILENAME));
+  }
+
+  /** Installs the served content as the active release. */
+  private void install(String version) throws IOException {
+    Path file = releaseStore.createTempFile();
+    Files.write(file, content);
+    ReleaseStore.Release release = releaseStore.put(file, null, false, JAR_FILENAME);
+    releaseStore.activate(release);
+    if (version != null) {
+      releaseStore.setVersion(release, version);
+    }
+  }
+}